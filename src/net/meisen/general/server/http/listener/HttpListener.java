@@ -1,23 +1,55 @@
 package net.meisen.general.server.http.listener;
 
+import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
+import net.meisen.general.genmisc.types.Classes;
+import net.meisen.general.sbconfigurator.api.IConfiguration;
 import net.meisen.general.server.api.impl.BaseListener;
+import net.meisen.general.server.http.listener.api.IFilter;
 import net.meisen.general.server.http.listener.api.IHandler;
 import net.meisen.general.server.http.listener.api.IHandlerManager;
+import net.meisen.general.server.http.listener.exceptions.FilterException;
+import net.meisen.general.server.http.listener.handler.FilterChain;
 import net.meisen.general.server.listener.utility.AcceptListenerThread;
 import net.meisen.general.server.settings.pojos.Connector;
 import net.meisen.general.server.settings.pojos.Extension;
+import org.apache.http.protocol.HttpRequestHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * A <code>Listener</code> which handles HTTP requests.
+ * <p>
+ * Filters (see {@link IFilter}) can be defined to be called before the
+ * handler of a route. A filter is called for each request whose path
+ * matches the <code>urlmatcher</code> of the filter (all requests if none
+ * is defined), regardless of the route handling the request. Several
+ * filters are called in the order of their definition. The chains are
+ * compiled once when the listener is initialized, i.e. a route without
+ * overlapping filters calls its handler directly and the path of a request
+ * is only checked, if the <code>urlmatcher</code> of a filter doesn't cover
+ * the one of the route.
+ *
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;filter urlmatcher=&quot;/api/*&quot;&gt;hello.world.AuthFilter&lt;/filter&gt;
+ *     &lt;servlet urlmatcher=&quot;/api/*&quot;&gt;hello.world.MyServlet&lt;/servlet&gt;
+ *     &lt;docroot&gt;C:\web-root\&lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
  *
  * @author pmeisen
  */
@@ -37,12 +69,27 @@ public class HttpListener extends BaseListener {
      * Property which defines the url-matcher
      */
     public static final String PROPERTY_URLMATCHER = "urlmatcher";
+    /**
+     * The identifier of the extension defining a filter
+     */
+    public static final String FILTER_ID = "filter";
 
     @Autowired
     @Qualifier("httpListenerHandlerManager")
     private IHandlerManager handlerManager;
 
+    @Autowired
+    @Qualifier(IConfiguration.coreExceptionRegistryId)
+    private IExceptionRegistry exceptionRegistry;
+
+    @Autowired
+    @Qualifier(IConfiguration.coreConfigurationId)
+    private IConfiguration configuration;
+
     private final Map<String, IHandler> handlers = new LinkedHashMap<String, IHandler>();
+    private final Map<IFilter, String> filters = new LinkedHashMap<IFilter, String>();
+    private final Map<String, HttpRequestHandler> routes = new LinkedHashMap<String, HttpRequestHandler>();
+    private LoopbackDispatcher dispatcher = null;
 
     @Override
     public void initialize(final Connector c) {
@@ -50,6 +97,11 @@ public class HttpListener extends BaseListener {
 
         // get all the handlers defined
         for (final Extension e : c.getExtensions()) {
+            if (FILTER_ID.equals(e.getId())) {
+                filters.put(createFilter(e), getUrlMatcher(e));
+                continue;
+            }
+
             final IHandler handler = handlerManager.getHandler(e.getId());
             if (handler == null) {
                 if (LOG.isErrorEnabled()) {
@@ -80,6 +132,165 @@ public class HttpListener extends BaseListener {
                 LOG.warn("There aren't any handlers defined, please verify.");
             }
         }
+
+        // compile the chain of filters of each route
+        final Set<IFilter> usedFilters = new HashSet<IFilter>();
+        for (final Entry<String, IHandler> entry : handlers.entrySet()) {
+            final String routeMatcher = entry.getKey();
+            final List<IFilter> routeFilters = new ArrayList<IFilter>();
+            final List<String> routeFilterMatchers = new ArrayList<String>();
+            for (final Entry<IFilter, String> filter : filters.entrySet()) {
+                final String filterMatcher = filter.getValue();
+                if (!overlaps(filterMatcher, routeMatcher)) {
+                    continue;
+                }
+
+                // check the path of a request only if necessary
+                routeFilters.add(filter.getKey());
+                routeFilterMatchers.add(covers(filterMatcher, routeMatcher) ? null
+                        : filterMatcher);
+                usedFilters.add(filter.getKey());
+            }
+
+            routes.put(routeMatcher, FilterChain.compile(entry.getValue(),
+                    routeFilters, routeFilterMatchers));
+            if (routeFilters.size() > 0 && LOG.isDebugEnabled()) {
+                LOG.debug("Compiled " + routeFilters.size()
+                        + " filter(s) for the urlMatcher '" + entry.getKey()
+                        + "'");
+            }
+        }
+
+        // a filter not applied to any route is most likely a mistake
+        for (final Entry<IFilter, String> filter : filters.entrySet()) {
+            if (!usedFilters.contains(filter.getKey())
+                    && LOG.isErrorEnabled()) {
+                LOG.error("The filter '" + filter.getKey().getClass().getName()
+                        + "' with urlMatcher '" + filter.getValue()
+                        + "' isn't applied to any route, please verify.");
+            }
+        }
+
+        // dispatch in-process requests to the same routes
+        dispatcher = new LoopbackDispatcher(routes);
+    }
+
+    /**
+     * Creates and initializes the filter defined by the specified
+     * <code>Extension</code>.
+     *
+     * @param e the <code>Extension</code> defining the class of the filter
+     * @return the initialized filter
+     */
+    protected IFilter createFilter(final Extension e) {
+        String filterClazzName = e.getProperty("");
+        if (filterClazzName == null) {
+            exceptionRegistry.throwException(FilterException.class, 1000);
+        }
+
+        // remove any whitespaces
+        filterClazzName = filterClazzName.trim();
+
+        // get the class
+        final Class<?> filterClazz = Classes.getClass(filterClazzName);
+        if (filterClazz == null) {
+            exceptionRegistry.throwException(FilterException.class, 1001,
+                    filterClazzName);
+        } else if (!IFilter.class.isAssignableFrom(filterClazz)) {
+            exceptionRegistry.throwException(FilterException.class, 1002,
+                    filterClazzName);
+        }
+
+        // initialize the Filter
+        final IFilter filter = (IFilter) configuration
+                .createInstance(filterClazz);
+        try {
+            filter.initialize(e);
+        } catch (final Exception ex) {
+            exceptionRegistry.throwException(FilterException.class, 1003, ex,
+                    filterClazzName);
+        }
+
+        return filter;
+    }
+
+    /**
+     * Checks if the <code>urlMatcher</code> of a filter and the one of a
+     * route overlap, i.e. if a request handled by the route might have to be
+     * filtered. A <code>urlMatcher</code> can start or end with a
+     * <code>*</code>.
+     *
+     * @param filterMatcher the <code>urlMatcher</code> of the filter
+     * @param routeMatcher  the <code>urlMatcher</code> of the route
+     * @return <code>true</code> if the filter is applied to the route,
+     * otherwise <code>false</code>
+     */
+    protected boolean overlaps(final String filterMatcher,
+                               final String routeMatcher) {
+        final boolean filterPrefix = filterMatcher.endsWith("*");
+        final boolean routePrefix = routeMatcher.endsWith("*");
+
+        if (filterMatcher.equals("*") || routeMatcher.equals("*")) {
+            return true;
+        } else if (!isPattern(routeMatcher)) {
+            return FilterChain.matches(filterMatcher, routeMatcher);
+        } else if (!isPattern(filterMatcher)) {
+            return FilterChain.matches(routeMatcher, filterMatcher);
+        } else if (filterPrefix && routePrefix) {
+            final String filterValue = strip(filterMatcher);
+            final String routeValue = strip(routeMatcher);
+            return filterValue.startsWith(routeValue)
+                    || routeValue.startsWith(filterValue);
+        } else if (!filterPrefix && !routePrefix) {
+            final String filterValue = strip(filterMatcher);
+            final String routeValue = strip(routeMatcher);
+            return filterValue.endsWith(routeValue)
+                    || routeValue.endsWith(filterValue);
+        } else {
+
+            // a prefix and a suffix always overlap
+            return true;
+        }
+    }
+
+    /**
+     * Checks if the <code>urlMatcher</code> of a filter covers the one of a
+     * route, i.e. if each request handled by the route has to be filtered.
+     * Otherwise the path of each request is checked, before the filter is
+     * called.
+     *
+     * @param filterMatcher the <code>urlMatcher</code> of the filter
+     * @param routeMatcher  the <code>urlMatcher</code> of the route
+     * @return <code>true</code> if the filter is applied to all requests of
+     * the route, otherwise <code>false</code>
+     */
+    protected boolean covers(final String filterMatcher,
+                             final String routeMatcher) {
+        if (filterMatcher.equals("*")) {
+            return true;
+        } else if (routeMatcher.equals("*")) {
+            return false;
+        } else if (!isPattern(routeMatcher)) {
+            return FilterChain.matches(filterMatcher, routeMatcher);
+        } else if (!isPattern(filterMatcher)) {
+            return false;
+        } else if (filterMatcher.endsWith("*") && routeMatcher.endsWith("*")) {
+            return strip(routeMatcher).startsWith(strip(filterMatcher));
+        } else if (filterMatcher.startsWith("*")
+                && routeMatcher.startsWith("*")) {
+            return strip(routeMatcher).endsWith(strip(filterMatcher));
+        } else {
+            return false;
+        }
+    }
+
+    private boolean isPattern(final String urlMatcher) {
+        return urlMatcher.startsWith("*") || urlMatcher.endsWith("*");
+    }
+
+    private String strip(final String urlMatcher) {
+        return urlMatcher.endsWith("*") ? urlMatcher.substring(0,
+                urlMatcher.length() - 1) : urlMatcher.substring(1);
     }
 
     /**
@@ -91,6 +302,30 @@ public class HttpListener extends BaseListener {
         return Collections.unmodifiableMap(handlers);
     }
 
+    /**
+     * Gets the compiled routes, i.e. the handler of each
+     * <code>urlMatcher</code> preceded by the chain of its filters.
+     *
+     * @return the compiled routes
+     */
+    public Map<String, HttpRequestHandler> getRoutes() {
+        return Collections.unmodifiableMap(routes);
+    }
+
+    /**
+     * Gets the <code>LoopbackDispatcher</code>, which dispatches requests
+     * in-process to the routes of the listener. The dispatcher is also
+     * available within the <code>HttpContext</code> of each request.
+     *
+     * @return the <code>LoopbackDispatcher</code>, <code>null</code> if the
+     * listener isn't initialized
+     *
+     * @see LoopbackDispatcher#getDispatcher(org.apache.http.protocol.HttpContext)
+     */
+    public LoopbackDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
     /**
      * Determines the defined <code>urlMatcher</code> for the specified
      * <code>Extension</code>. Returns the <code>DEF_URLMATCHER</code> if the
@@ -114,7 +349,7 @@ public class HttpListener extends BaseListener {
     @Override
     protected AcceptListenerThread createAcceptListenerThread()
             throws IOException {
-        return new RequestListenerThread(getPort(), handlers);
+        return new RequestListenerThread(getPort(), routes, dispatcher);
     }
 
     @Override
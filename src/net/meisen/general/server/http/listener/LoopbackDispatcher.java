@@ -0,0 +1,359 @@
+package net.meisen.general.server.http.listener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseFactory;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.MethodNotSupportedException;
+import org.apache.http.ProtocolException;
+import org.apache.http.UnsupportedHttpVersionException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.DefaultHttpResponseFactory;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.protocol.UriHttpRequestHandlerMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches requests in-process to the routes of a <code>HttpListener</code>,
+ * i.e. a servlet can call another route without a connection. The
+ * dispatcher of the listener handling a request is available within the
+ * <code>HttpContext</code> (see {@link #getDispatcher(HttpContext)}).
+ * <p>
+ * The requests are looked up using the same <code>urlMatcher</code> and
+ * handlers (including the filters) as the requests of a connection, the
+ * response is neither serialized nor passed to the interceptors of the
+ * protocol. Several requests can be dispatched concurrently using
+ * {@link #dispatchAll(List, HttpContext, long)}.
+ *
+ * @author pmeisen
+ *
+ */
+public class LoopbackDispatcher {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(LoopbackDispatcher.class);
+
+	/**
+	 * The default amount of threads used to dispatch requests concurrently
+	 */
+	public final static int DEF_THREADS = 8;
+	/**
+	 * The maximal amount of nested dispatches, e.g. to stop a route
+	 * dispatching to itself
+	 */
+	public final static int MAX_DEPTH = 16;
+
+	private final static String CONTEXT_DEPTH = "http.listener.loopback.depth";
+
+	private final UriHttpRequestHandlerMapper mapper;
+	private final HttpResponseFactory responseFactory;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Creates a dispatcher for the specified routes using
+	 * {@link #DEF_THREADS} threads.
+	 *
+	 * @param routes
+	 *            the routes, i.e. the handlers of each <code>urlMatcher</code>
+	 */
+	public LoopbackDispatcher(
+			final Map<String, ? extends HttpRequestHandler> routes) {
+		this(routes, DEF_THREADS);
+	}
+
+	/**
+	 * Creates a dispatcher for the specified routes.
+	 *
+	 * @param routes
+	 *            the routes, i.e. the handlers of each <code>urlMatcher</code>
+	 * @param threads
+	 *            the maximal amount of threads used to dispatch requests
+	 *            concurrently, further requests are queued
+	 */
+	public LoopbackDispatcher(
+			final Map<String, ? extends HttpRequestHandler> routes,
+			final int threads) {
+		this.mapper = new UriHttpRequestHandlerMapper();
+		for (final Entry<String, ? extends HttpRequestHandler> entry : routes
+				.entrySet()) {
+			this.mapper.register(entry.getKey(), entry.getValue());
+		}
+		this.responseFactory = DefaultHttpResponseFactory.INSTANCE;
+
+		final int size = Math.max(1, threads);
+		this.executor = new ThreadPoolExecutor(size, size, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r,
+								"Loopback-Dispatcher");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Gets the dispatcher available within the <code>context</code>.
+	 *
+	 * @param context
+	 *            the <code>HttpContext</code> of the handled request
+	 *
+	 * @return the dispatcher, or <code>null</code> if none is available
+	 */
+	public static LoopbackDispatcher getDispatcher(final HttpContext context) {
+		if (context == null) {
+			return null;
+		}
+
+		final Object dispatcher = context
+				.getAttribute(WorkerThread.CONTEXT_DISPATCHER);
+		return dispatcher instanceof LoopbackDispatcher ? (LoopbackDispatcher) dispatcher
+				: null;
+	}
+
+	/**
+	 * Creates the <code>HttpContext</code> of the requests of a connection.
+	 *
+	 * @return the created <code>HttpContext</code>
+	 */
+	public HttpContext createContext() {
+		return createContext(0);
+	}
+
+	private HttpContext createContext(final int depth) {
+		final HttpContext context = new BasicHttpContext(null);
+		context.setAttribute(WorkerThread.CONTEXT_DISPATCHER, this);
+		context.setAttribute(CONTEXT_DEPTH, depth);
+
+		return context;
+	}
+
+	/**
+	 * Gets the handler of the route matching the <code>request</code>.
+	 *
+	 * @param request
+	 *            the request to get the handler for
+	 *
+	 * @return the handler, or <code>null</code> if no route matches
+	 */
+	public HttpRequestHandler lookup(final HttpRequest request) {
+		return mapper.lookup(request);
+	}
+
+	/**
+	 * Dispatches the <code>request</code> to the matching route, within the
+	 * calling thread.
+	 *
+	 * @param request
+	 *            the request to be dispatched
+	 * @param context
+	 *            the <code>HttpContext</code> of the request dispatching, can
+	 *            be <code>null</code>
+	 *
+	 * @return the response of the route
+	 *
+	 * @throws IOException
+	 *             if the request cannot be read or answered
+	 */
+	public HttpResponse dispatch(final HttpRequest request,
+			final HttpContext context) throws IOException {
+		final int depth = getDepth(context) + 1;
+		final HttpResponse response = responseFactory.newHttpResponse(
+				HttpVersion.HTTP_1_1, HttpStatus.SC_OK, context);
+
+		if (depth > MAX_DEPTH) {
+			setError(response, HttpStatus.SC_INTERNAL_SERVER_ERROR,
+					"Maximal depth of dispatching (" + MAX_DEPTH
+							+ ") exceeded.");
+			return response;
+		}
+
+		final HttpRequestHandler handler = lookup(request);
+		if (handler == null) {
+			response.setStatusCode(HttpStatus.SC_NOT_IMPLEMENTED);
+			return response;
+		}
+
+		try {
+			handler.handle(request, response, createContext(depth));
+		} catch (final HttpException e) {
+			final int status;
+			if (e instanceof MethodNotSupportedException) {
+				status = HttpStatus.SC_NOT_IMPLEMENTED;
+			} else if (e instanceof UnsupportedHttpVersionException) {
+				status = HttpStatus.SC_HTTP_VERSION_NOT_SUPPORTED;
+			} else if (e instanceof ProtocolException) {
+				status = HttpStatus.SC_BAD_REQUEST;
+			} else {
+				status = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+			}
+			setError(response, status, e.getMessage());
+		}
+
+		return response;
+	}
+
+	/**
+	 * Dispatches the <code>requests</code> concurrently and waits for all
+	 * responses. A request which fails is answered with status
+	 * <code>500</code>, a request which isn't answered within the
+	 * <code>timeout</code> is answered with status <code>504</code>.
+	 * <p>
+	 * All requests are handled by the threads of the dispatcher, i.e. the
+	 * <code>timeout</code> bounds the whole fan-out. The calling thread
+	 * handles a request, which isn't started yet when its response is
+	 * awaited, itself, i.e. nested fan-outs cannot exhaust the threads. The
+	 * <code>timeout</code> cannot interrupt such a request, i.e. it may be
+	 * exceeded if the threads of the dispatcher are all busy.
+	 *
+	 * @param requests
+	 *            the requests to be dispatched
+	 * @param context
+	 *            the <code>HttpContext</code> of the request dispatching, can
+	 *            be <code>null</code>
+	 * @param timeout
+	 *            the time (in milliseconds) to wait for all responses,
+	 *            <code>0</code> to wait without a timeout
+	 *
+	 * @return the responses, in the order of the <code>requests</code>
+	 */
+	public List<HttpResponse> dispatchAll(
+			final List<? extends HttpRequest> requests,
+			final HttpContext context, final long timeout) {
+		final long deadline = timeout > 0 ? System.currentTimeMillis()
+				+ timeout : 0;
+		final int size = requests.size();
+		final List<FutureTask<HttpResponse>> futures = new ArrayList<FutureTask<HttpResponse>>(
+				size);
+
+		// submit all requests
+		for (int i = 0; i < size; i++) {
+			final HttpRequest request = requests.get(i);
+			final FutureTask<HttpResponse> future = new FutureTask<HttpResponse>(
+					new Callable<HttpResponse>() {
+
+						@Override
+						public HttpResponse call() throws Exception {
+							return dispatch(request, context);
+						}
+					});
+			futures.add(future);
+			executor.execute(future);
+		}
+
+		// join the responses
+		final List<HttpResponse> responses = new ArrayList<HttpResponse>(size);
+		for (int i = 0; i < size; i++) {
+			final FutureTask<HttpResponse> future = futures.get(i);
+
+			HttpResponse response;
+			try {
+				// handle it if it's still queued
+				final long remaining = deadline - System.currentTimeMillis();
+				if ((deadline == 0 || remaining > 0)
+						&& executor.remove(future)) {
+					future.run();
+				}
+
+				if (deadline > 0) {
+					response = future.get(Math.max(0, remaining),
+							TimeUnit.MILLISECONDS);
+				} else {
+					response = future.get();
+				}
+			} catch (final TimeoutException e) {
+				future.cancel(true);
+				response = createError(context,
+						HttpStatus.SC_GATEWAY_TIMEOUT, "The request '"
+								+ requests.get(i).getRequestLine()
+								+ "' didn't complete within " + timeout
+								+ "ms.");
+			} catch (final CancellationException e) {
+				response = createError(context,
+						HttpStatus.SC_GATEWAY_TIMEOUT, "The request '"
+								+ requests.get(i).getRequestLine()
+								+ "' was cancelled.");
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.cancel(true);
+				response = createError(context,
+						HttpStatus.SC_SERVICE_UNAVAILABLE, "The request '"
+								+ requests.get(i).getRequestLine()
+								+ "' was interrupted.");
+			} catch (final ExecutionException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("Failed to dispatch the request '"
+							+ requests.get(i).getRequestLine() + "'",
+							e.getCause());
+				}
+				response = createError(context,
+						HttpStatus.SC_INTERNAL_SERVER_ERROR,
+						String.valueOf(e.getCause().getMessage()));
+			}
+
+			responses.add(response);
+		}
+
+		return responses;
+	}
+
+	private int getDepth(final HttpContext context) {
+		final Object depth = context == null ? null : context
+				.getAttribute(CONTEXT_DEPTH);
+		return depth instanceof Integer ? (Integer) depth : 0;
+	}
+
+	private HttpResponse createError(final HttpContext context,
+			final int status, final String message) {
+		final HttpResponse response = responseFactory.newHttpResponse(
+				HttpVersion.HTTP_1_1, status, context);
+		setError(response, status, message);
+
+		return response;
+	}
+
+	private void setError(final HttpResponse response, final int status,
+			final String message) {
+		response.setStatusCode(status);
+		response.setEntity(new StringEntity(message == null ? "" : message,
+				ContentType.DEFAULT_TEXT));
+	}
+
+	/**
+	 * Gets the amount of threads currently dispatching requests.
+	 *
+	 * @return the amount of dispatching threads
+	 */
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+
+	@Override
+	public String toString() {
+		return "LoopbackDispatcher (" + getActiveThreads() + " active)";
+	}
+}
@@ -5,7 +5,7 @@ import java.net.Socket;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import net.meisen.general.server.http.listener.api.IHandler;
+import net.meisen.general.server.http.listener.util.ResponseUpgradeControl;
 import net.meisen.general.server.listener.utility.AcceptListenerThread;
 
 import org.apache.http.HttpConnectionFactory;
@@ -14,6 +14,7 @@ import org.apache.http.HttpServerConnection;
 import org.apache.http.impl.DefaultBHttpServerConnection;
 import org.apache.http.impl.DefaultBHttpServerConnectionFactory;
 import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpRequestHandler;
 import org.apache.http.protocol.HttpService;
 import org.apache.http.protocol.ImmutableHttpProcessor;
 import org.apache.http.protocol.ResponseConnControl;
@@ -34,6 +35,7 @@ import org.apache.http.protocol.UriHttpRequestHandlerMapper;
 public class RequestListenerThread extends AcceptListenerThread {
 	private final HttpService httpService;
 	private final HttpConnectionFactory<DefaultBHttpServerConnection> connFactory;
+	private final LoopbackDispatcher dispatcher;
 
 	/**
 	 * Default constructor which specifies the <code>port</code> to listen to
@@ -50,18 +52,45 @@ public class RequestListenerThread extends AcceptListenerThread {
 	 *             if some IO operation fails
 	 */
 	public RequestListenerThread(final int port,
-			final Map<String, IHandler> handlers) throws IOException {
+			final Map<String, ? extends HttpRequestHandler> handlers)
+			throws IOException {
+		this(port, handlers, null);
+	}
+
+	/**
+	 * Constructor which specifies the <code>port</code> to listen to for
+	 * requests, the <code>handlers</code>, which specify how to handle the
+	 * request, and the <code>dispatcher</code> available within the
+	 * <code>HttpContext</code> of the requests.
+	 * 
+	 * @param port
+	 *            the port to listen to
+	 * @param handlers
+	 *            the handlers, which specify how to handle the different
+	 *            requests
+	 * @param dispatcher
+	 *            the <code>LoopbackDispatcher</code> of the handlers, can be
+	 *            <code>null</code>
+	 * 
+	 * @throws IOException
+	 *             if some IO operation fails
+	 */
+	public RequestListenerThread(final int port,
+			final Map<String, ? extends HttpRequestHandler> handlers,
+			final LoopbackDispatcher dispatcher) throws IOException {
 		super(port);
+		this.dispatcher = dispatcher;
 
 		// Set up the HTTP protocol processor
 		final HttpProcessor httpproc = new ImmutableHttpProcessor(
 				new HttpResponseInterceptor[] { new ResponseDate(),
 						new ResponseServer(), new ResponseContent(),
-						new ResponseConnControl() });
+						new ResponseConnControl(), new ResponseUpgradeControl() });
 
 		// Set up request handlers
 		UriHttpRequestHandlerMapper registry = new UriHttpRequestHandlerMapper();
-		for (final Entry<String, IHandler> entry : handlers.entrySet()) {
+		for (final Entry<String, ? extends HttpRequestHandler> entry : handlers
+				.entrySet()) {
 			registry.register(entry.getKey(), entry.getValue());
 		}
 
@@ -76,6 +105,6 @@ public class RequestListenerThread extends AcceptListenerThread {
 		// create the connection
 		final HttpServerConnection conn = connFactory.createConnection(socket);
 
-		return new WorkerThread(httpService, conn, socket);
+		return new WorkerThread(httpService, conn, socket, dispatcher);
 	}
 }
@@ -3,6 +3,8 @@ package net.meisen.general.server.http.listener;
 import java.io.IOException;
 import java.net.Socket;
 
+import net.meisen.general.server.http.listener.api.IConnectionUpgrade;
+
 import org.apache.http.ConnectionClosedException;
 import org.apache.http.HttpException;
 import org.apache.http.HttpServerConnection;
@@ -23,8 +25,29 @@ public class WorkerThread extends
 	private final static Logger LOG = LoggerFactory
 			.getLogger(WorkerThread.class);
 
+	/**
+	 * The attribute of the <code>HttpContext</code> which contains the
+	 * <code>Socket</code> of the connection.
+	 */
+	public final static String CONTEXT_SOCKET = "http.listener.socket";
+	/**
+	 * The attribute of the <code>HttpContext</code> which contains the
+	 * <code>IConnectionUpgrade</code> taking over the connection, after the
+	 * response was sent.
+	 */
+	public final static String CONTEXT_UPGRADE = "http.listener.upgrade";
+	/**
+	 * The attribute of the <code>HttpContext</code> which contains the
+	 * <code>LoopbackDispatcher</code> of the listener.
+	 * 
+	 * @see LoopbackDispatcher#getDispatcher(HttpContext)
+	 */
+	public final static String CONTEXT_DISPATCHER = "http.listener.dispatcher";
+
 	private final HttpService httpService;
 	private final HttpServerConnection conn;
+	private final Socket socket;
+	private final LoopbackDispatcher dispatcher;
 
 	/**
 	 * Default constructor which specifies the <code>HttpService</code> and the
@@ -42,10 +65,37 @@ public class WorkerThread extends
 	 */
 	public WorkerThread(final HttpService httpService,
 			final HttpServerConnection conn, final Socket socket) {
+		this(httpService, conn, socket, null);
+	}
+
+	/**
+	 * Constructor which specifies the <code>HttpService</code>, the
+	 * <code>HttpServerConnection</code> and the
+	 * <code>LoopbackDispatcher</code> available within the
+	 * <code>HttpContext</code>.
+	 * 
+	 * @param httpService
+	 *            the <code>HttpService</code> to be used
+	 * @param conn
+	 *            the <code>HttpServerConnection</code> to use
+	 * @param socket
+	 *            the socket used for the connection
+	 * @param dispatcher
+	 *            the <code>LoopbackDispatcher</code> of the listener, can be
+	 *            <code>null</code>
+	 * 
+	 * @see HttpService
+	 * @see HttpServerConnection
+	 */
+	public WorkerThread(final HttpService httpService,
+			final HttpServerConnection conn, final Socket socket,
+			final LoopbackDispatcher dispatcher) {
 		super(socket);
 
 		this.httpService = httpService;
 		this.conn = conn;
+		this.socket = socket;
+		this.dispatcher = dispatcher;
 	}
 
 	@Override
@@ -54,10 +104,25 @@ public class WorkerThread extends
 			LOG.debug("Starting the connection thread...");
 		}
 
-		final HttpContext context = new BasicHttpContext(null);
+		final HttpContext context = dispatcher == null ? new BasicHttpContext(
+				null) : dispatcher.createContext();
+		context.setAttribute(CONTEXT_SOCKET, socket);
+		boolean upgraded = false;
 		try {
 			while (!Thread.interrupted() && this.conn.isOpen()) {
 				httpService.handleRequest(conn, context);
+
+				// hand the connection over if the protocol was switched
+				final Object upgrade = context.removeAttribute(CONTEXT_UPGRADE);
+				if (upgrade instanceof IConnectionUpgrade && conn.isOpen()) {
+					((IConnectionUpgrade) upgrade).upgrade(socket);
+					upgraded = true;
+
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Handed over the upgraded connection.");
+					}
+					break;
+				}
 			}
 		} catch (final ConnectionClosedException ex) {
 			if (LOG.isTraceEnabled()) {
@@ -75,7 +140,9 @@ public class WorkerThread extends
 			}
 		} finally {
 			try {
-				conn.shutdown();
+				if (!upgraded) {
+					conn.shutdown();
+				}
 			} catch (final IOException ignore) {
 				// ignore
 			}
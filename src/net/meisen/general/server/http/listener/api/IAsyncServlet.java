@@ -0,0 +1,62 @@
+package net.meisen.general.server.http.listener.api;
+
+import java.util.concurrent.CompletionStage;
+
+import net.meisen.general.server.http.listener.handler.ServletHandler;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Interface to define asynchronous <code>Servlet</code> instances, which are
+ * used by the <code>ServletHandler</code> to handle requests. Instead of
+ * filling the response when being called, the <code>Servlet</code> returns a
+ * <code>CompletionStage</code>, which is completed (e.g. by a thread of the
+ * <code>Servlet</code> waiting for a backend) with the response to be sent.
+ * The <code>ServletHandler</code> applies the defined timeout and answers
+ * the client with an error, if the stage fails. A stage not completed within
+ * the timeout is cancelled, i.e. the <code>Servlet</code> should stop the
+ * work of a cancelled stage.
+ *
+ * @see ServletHandler
+ * @see IServlet
+ *
+ * @author pmeisen
+ *
+ */
+public interface IAsyncServlet {
+
+	/**
+	 * Initializes the <code>Servlet</code> passing the defined
+	 * <code>Extension</code>.
+	 *
+	 * @param e
+	 *            the <code>Extension</code> which defines the usage of the
+	 *            <code>Servlet</code>
+	 */
+	public void initialize(final Extension e);
+
+	/**
+	 * Method which is called whenever the <code>Servlet</code> is called. The
+	 * method should return immediately, i.e. without waiting for any
+	 * long-running operation.
+	 *
+	 * @param request
+	 *            the <code>HttpRequest</code> send to the <code>Server</code>
+	 * @param response
+	 *            the <code>HttpResponse</code> to be filled by the
+	 *            <code>Servlet</code> and used to complete the stage, the
+	 *            response is owned by the <code>Servlet</code> until the
+	 *            stage is completed
+	 * @param context
+	 *            the <code>HttpContext</code> of the request
+	 *
+	 * @return the stage completed with the response to be sent, i.e.
+	 *         normally the passed <code>response</code>; the status, the
+	 *         headers and the entity of the response are sent to the client
+	 */
+	public CompletionStage<HttpResponse> handle(final HttpRequest request,
+			final HttpResponse response, final HttpContext context);
+}
@@ -0,0 +1,31 @@
+package net.meisen.general.server.http.listener.api;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import net.meisen.general.server.http.listener.WorkerThread;
+
+/**
+ * A switch of the protocol of a connection. A handler answering a request
+ * with status <code>101</code> puts the upgrade into the
+ * <code>HttpContext</code> (see {@link WorkerThread#CONTEXT_UPGRADE}), the
+ * <code>WorkerThread</code> hands the <code>Socket</code> over after the
+ * response was sent and stops handling the connection.
+ *
+ * @author pmeisen
+ *
+ */
+public interface IConnectionUpgrade {
+
+	/**
+	 * Takes over the <code>Socket</code> of the connection.
+	 *
+	 * @param socket
+	 *            the <code>Socket</code> of the upgraded connection
+	 *
+	 * @throws IOException
+	 *             if the connection cannot be taken over, the connection is
+	 *             closed afterwards
+	 */
+	public void upgrade(final Socket socket) throws IOException;
+}
@@ -0,0 +1,61 @@
+package net.meisen.general.server.http.listener.api;
+
+import java.io.IOException;
+
+import net.meisen.general.server.http.listener.HttpListener;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+
+/**
+ * Interface to define <code>Filter</code> instances, which are called by the
+ * <code>HttpListener</code> before the <code>Handler</code> of a request,
+ * e.g. to check the authorization, normalize headers or measure the time of
+ * the request.
+ * 
+ * @see HttpListener
+ * 
+ * @author pmeisen
+ * 
+ */
+public interface IFilter {
+
+	/**
+	 * Initializes the <code>Filter</code> passing the defined
+	 * <code>Extension</code>.
+	 * 
+	 * @param e
+	 *            the <code>Extension</code> which defines the usage of the
+	 *            <code>Filter</code>
+	 */
+	public void initialize(final Extension e);
+
+	/**
+	 * Method which is called whenever a request is sent to a route of the
+	 * <code>Filter</code>. The request is passed on by calling the
+	 * <code>next</code> handler, i.e. the next <code>Filter</code> or the
+	 * <code>Handler</code> of the route. A <code>Filter</code> which doesn't
+	 * call the <code>next</code> handler answers the request itself.
+	 * 
+	 * @param request
+	 *            the <code>HttpRequest</code> send to the <code>Server</code>
+	 * @param response
+	 *            the <code>HttpResponse</code> to be filled
+	 * @param context
+	 *            the <code>HttpContext</code> of the request
+	 * @param next
+	 *            the handler to pass the request on
+	 * 
+	 * @throws HttpException
+	 *             if the request violates the protocol
+	 * @throws IOException
+	 *             if the request cannot be read or answered
+	 */
+	public void filter(final HttpRequest request, final HttpResponse response,
+			final HttpContext context, final HttpRequestHandler next)
+			throws HttpException, IOException;
+}
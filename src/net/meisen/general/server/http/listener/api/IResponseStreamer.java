@@ -0,0 +1,34 @@
+package net.meisen.general.server.http.listener.api;
+
+import java.io.IOException;
+
+import net.meisen.general.server.http.listener.util.ResponseWriter;
+import net.meisen.general.server.http.listener.util.StreamingEntity;
+
+/**
+ * Interface to define the producer of a streamed response, i.e. the content
+ * of a {@code StreamingEntity}. The producer is called when the response is
+ * sent, i.e. after the <code>Servlet</code> returned, and writes the content
+ * progressively to the client.
+ * 
+ * @see StreamingEntity
+ * 
+ * @author pmeisen
+ * 
+ */
+public interface IResponseStreamer {
+
+	/**
+	 * Writes the content of the response. The content is sent to the client
+	 * whenever the buffer of the <code>writer</code> is filled or
+	 * {@link ResponseWriter#flush()} is called.
+	 * 
+	 * @param writer
+	 *            the <code>ResponseWriter</code> to write the content to
+	 * 
+	 * @throws IOException
+	 *             if the content cannot be written, e.g. because the client
+	 *             closed the connection
+	 */
+	public void stream(final ResponseWriter writer) throws IOException;
+}
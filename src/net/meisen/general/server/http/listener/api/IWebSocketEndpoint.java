@@ -0,0 +1,99 @@
+package net.meisen.general.server.http.listener.api;
+
+import net.meisen.general.server.http.listener.handler.ServletHandler;
+import net.meisen.general.server.http.listener.websocket.WebSocketSession;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.HttpRequest;
+
+/**
+ * Interface to define <code>Endpoint</code> instances, which are used by the
+ * <code>ServletHandler</code> to handle the messages of upgraded WebSocket
+ * connections. An endpoint is called concurrently for different sessions,
+ * the calls of one session are made one after another.
+ *
+ * @see ServletHandler
+ *
+ * @author pmeisen
+ *
+ */
+public interface IWebSocketEndpoint {
+
+	/**
+	 * Initializes the <code>Endpoint</code> passing the defined
+	 * <code>Extension</code>.
+	 *
+	 * @param e
+	 *            the <code>Extension</code> which defines the usage of the
+	 *            <code>Endpoint</code>
+	 */
+	public void initialize(final Extension e);
+
+	/**
+	 * Method which is called whenever a connection was upgraded.
+	 *
+	 * @param session
+	 *            the <code>WebSocketSession</code> of the connection
+	 * @param request
+	 *            the <code>HttpRequest</code> which requested the upgrade
+	 */
+	public void onOpen(final WebSocketSession session,
+			final HttpRequest request);
+
+	/**
+	 * Method which is called whenever a (re-assembled) text message is
+	 * received.
+	 *
+	 * @param session
+	 *            the <code>WebSocketSession</code> of the connection
+	 * @param message
+	 *            the received message
+	 */
+	public void onText(final WebSocketSession session, final String message);
+
+	/**
+	 * Method which is called whenever a (re-assembled) binary message is
+	 * received.
+	 *
+	 * @param session
+	 *            the <code>WebSocketSession</code> of the connection
+	 * @param message
+	 *            the received message
+	 */
+	public void onBinary(final WebSocketSession session, final byte[] message);
+
+	/**
+	 * Method which is called whenever a ping is received, the pong is
+	 * already sent when the method is called.
+	 *
+	 * @param session
+	 *            the <code>WebSocketSession</code> of the connection
+	 * @param data
+	 *            the application data of the ping
+	 */
+	public void onPing(final WebSocketSession session, final byte[] data);
+
+	/**
+	 * Method which is called whenever a pong is received.
+	 *
+	 * @param session
+	 *            the <code>WebSocketSession</code> of the connection
+	 * @param data
+	 *            the application data of the pong
+	 */
+	public void onPong(final WebSocketSession session, final byte[] data);
+
+	/**
+	 * Method which is called once, when the session is closed.
+	 *
+	 * @param session
+	 *            the <code>WebSocketSession</code> of the connection
+	 * @param code
+	 *            the status code of the closing, <code>1006</code> if the
+	 *            connection was closed without a closing handshake
+	 * @param reason
+	 *            the reason of the closing, can be empty
+	 */
+	public void onClose(final WebSocketSession session, final int code,
+			final String reason);
+}
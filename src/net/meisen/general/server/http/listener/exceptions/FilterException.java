@@ -0,0 +1,36 @@
+package net.meisen.general.server.http.listener.exceptions;
+
+/**
+ * A <code>FilterException</code> is thrown whenever a filter cannot be
+ * created or initialized.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class FilterException extends RuntimeException {
+	private static final long serialVersionUID = -2481153087262719348L;
+
+	/**
+	 * Creates an exception which should been thrown whenever there is no other
+	 * reason for the exception, i.e. the exception is the root.
+	 * 
+	 * @param message
+	 *            the message of the exception
+	 */
+	public FilterException(final String message) {
+		super(message);
+	}
+
+	/**
+	 * Creates an exception which should been thrown whenever another
+	 * <code>Throwable</code> is the reason for this.
+	 * 
+	 * @param message
+	 *            the message of the exception
+	 * @param t
+	 *            the reason for the exception
+	 */
+	public FilterException(final String message, final Throwable t) {
+		super(message, t);
+	}
+}
@@ -0,0 +1,112 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parser of the {@code Accept-Encoding} header of a request, used to select
+ * the content-coding of a response.
+ *
+ * @author pmeisen
+ *
+ */
+public class AcceptEncoding {
+
+	/**
+	 * The content-coding {@code gzip}
+	 */
+	public static final String GZIP = "gzip";
+	/**
+	 * The content-coding {@code br} (i.e. Brotli)
+	 */
+	public static final String BROTLI = "br";
+	/**
+	 * The content-coding {@code deflate} (i.e. the zlib format)
+	 */
+	public static final String DEFLATE = "deflate";
+
+	private static final String WILDCARD = "*";
+
+	/**
+	 * Selects the content-coding to be used for a response. The coding with
+	 * the highest quality-value wins, if several codings have the same
+	 * quality-value the order of the specified {@code available} codings
+	 * defines the preference.
+	 *
+	 * @param header
+	 *            the value of the {@code Accept-Encoding} header, can be
+	 *            {@code null}
+	 * @param available
+	 *            the available content-codings in order of preference
+	 *
+	 * @return the selected content-coding or {@code null} if the response
+	 *         shouldn't be encoded
+	 */
+	public static String select(final String header,
+			final List<String> available) {
+		if (header == null || available == null || available.isEmpty()) {
+			return null;
+		}
+
+		final Map<String, Float> qualities = parse(header);
+		final Float wildcard = qualities.get(WILDCARD);
+
+		String selected = null;
+		float selectedQuality = 0.0f;
+		for (final String coding : available) {
+			Float quality = qualities.get(coding);
+			if (quality == null && GZIP.equals(coding)) {
+				quality = qualities.get("x-gzip");
+			}
+			if (quality == null) {
+				quality = wildcard;
+			}
+
+			if (quality != null && quality > selectedQuality) {
+				selected = coding;
+				selectedQuality = quality;
+			}
+		}
+
+		return selected;
+	}
+
+	/**
+	 * Parses the specified header into the content-codings and the
+	 * quality-values.
+	 *
+	 * @param header
+	 *            the value of the {@code Accept-Encoding} header
+	 *
+	 * @return the quality-values by content-coding
+	 */
+	protected static Map<String, Float> parse(final String header) {
+		final Map<String, Float> qualities = new HashMap<String, Float>();
+
+		for (final String element : header.split(",")) {
+			final String[] params = element.split(";");
+			final String coding = params[0].trim().toLowerCase(Locale.ENGLISH);
+			if (coding.isEmpty()) {
+				continue;
+			}
+
+			float quality = 1.0f;
+			for (int i = 1; i < params.length; i++) {
+				final String param = params[i].trim();
+				if (param.startsWith("q=") || param.startsWith("Q=")) {
+					try {
+						quality = Float.parseFloat(param.substring(2).trim());
+					} catch (final NumberFormatException e) {
+						quality = 0.0f;
+					}
+				}
+			}
+
+			qualities.put(coding, quality);
+		}
+
+		return qualities;
+	}
+}
@@ -0,0 +1,156 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+
+/**
+ * The meta-data of an entry of a {@code ZipArchive} served by the
+ * {@code FileHandler}. The file of the meta-data is the archive, the content
+ * is the (uncompressed) content of the entry. The entity-tag is based on the
+ * size and the CRC-32 of the entry.
+ * 
+ * A stored entry is sent as slice of the mapped archive, a deflated entry is
+ * either inflated while sending or (see {@link #createDeflateEntity}) sent
+ * without inflating it as {@code deflate} content-coding. Ranges of entries
+ * cannot be requested.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class ArchiveEntryMetaData extends FileMetaData {
+	private static final byte[] ZLIB_HEADER = new byte[] { 0x78, (byte) 0x9c };
+
+	private final ZipArchive.Entry entry;
+	private final String name;
+	private final String etag;
+
+	/**
+	 * Creates the meta-data of the specified {@code entry}.
+	 * 
+	 * @param entry
+	 *            the entry to create the meta-data for
+	 */
+	public ArchiveEntryMetaData(final ZipArchive.Entry entry) {
+		super(entry.getArchive().getFile(), entry.getSize(), entry
+				.getLastModified(), true);
+
+		final String entryName = entry.getName();
+		this.entry = entry;
+		this.name = entryName.substring(entryName.lastIndexOf('/') + 1);
+		this.etag = createETag(entry, null);
+	}
+
+	private static String createETag(final ZipArchive.Entry entry,
+			final String contentEncoding) {
+		return "\"" + Long.toHexString(entry.getSize()) + "-"
+				+ Long.toHexString(entry.getCrc())
+				+ (contentEncoding == null ? "" : "-" + contentEncoding)
+				+ "\"";
+	}
+
+	/**
+	 * Gets the entry of the archive.
+	 * 
+	 * @return the entry of the archive
+	 */
+	public ZipArchive.Entry getEntry() {
+		return entry;
+	}
+
+	/**
+	 * Checks if the entry is stored deflated, i.e. if it can be sent using
+	 * the {@code deflate} content-coding without compressing it.
+	 * 
+	 * @return {@code true} if the entry is deflated, otherwise {@code false}
+	 */
+	public boolean isDeflated() {
+		return entry.isDeflated();
+	}
+
+	@Override
+	public String getId() {
+		return entry.toString();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getETag() {
+		return etag;
+	}
+
+	@Override
+	public String getETag(final String contentEncoding) {
+		if (contentEncoding == null) {
+			return etag;
+		} else {
+			return createETag(entry, contentEncoding);
+		}
+	}
+
+	@Override
+	public InputStream openStream() {
+		return entry.openStream();
+	}
+
+	@Override
+	public AbstractHttpEntity createEntity(final ContentType contentType,
+			final WritableByteChannel socketChannel) {
+		if (entry.isDeflated()) {
+			return new InputStreamEntity(entry.openStream(), entry.getSize(),
+					contentType);
+		} else {
+			return new ByteBufferEntity(new ByteBuffer[] { entry.getData() },
+					contentType, socketChannel);
+		}
+	}
+
+	/**
+	 * Creates the entity sending the deflated entry using the
+	 * {@code deflate} content-coding. The raw data of the entry is wrapped
+	 * into the zlib format (RFC 1950), i.e. it's sent as slice of the mapped
+	 * archive between the zlib-header and the Adler-32 checksum.
+	 * 
+	 * @param contentType
+	 *            the type of the content
+	 * @param socketChannel
+	 *            the channel of the socket to write to directly, can be
+	 *            {@code null}
+	 * 
+	 * @return the created entity, or {@code null} if the entry isn't deflated
+	 * 
+	 * @throws IOException
+	 *             if the checksum cannot be calculated
+	 */
+	public AbstractHttpEntity createDeflateEntity(
+			final ContentType contentType,
+			final WritableByteChannel socketChannel) throws IOException {
+		if (!entry.isDeflated()) {
+			return null;
+		}
+
+		final ByteBuffer trailer = ByteBuffer.allocate(4);
+		trailer.putInt((int) entry.getAdler32());
+		trailer.flip();
+
+		final AbstractHttpEntity entity = new ByteBufferEntity(
+				new ByteBuffer[] { ByteBuffer.wrap(ZLIB_HEADER),
+						entry.getData(), trailer }, contentType, socketChannel);
+		entity.setContentEncoding(AcceptEncoding.DEFLATE);
+		return entity;
+	}
+
+	@Override
+	public boolean isRangeable() {
+		return false;
+	}
+}
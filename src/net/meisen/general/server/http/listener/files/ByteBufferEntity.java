@@ -0,0 +1,101 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * An {@code HttpEntity} sending the content of one or several
+ * {@code ByteBuffer} instances (e.g. slices of a memory-mapped file). The
+ * buffers are written to the channel of the socket if possible (see
+ * {@link ZeroCopyFileEntity#determineTarget(OutputStream, WritableByteChannel)}
+ * ), so that the content of a mapping isn't copied onto the heap.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class ByteBufferEntity extends AbstractHttpEntity {
+	private final ByteBuffer[] buffers;
+	private final long length;
+	private final WritableByteChannel socketChannel;
+
+	/**
+	 * Creates an entity sending the remaining bytes of the specified
+	 * {@code buffers} in order.
+	 * 
+	 * @param buffers
+	 *            the buffers to be sent, the buffers are not modified
+	 * @param contentType
+	 *            the type of the content
+	 * @param socketChannel
+	 *            the channel of the socket to write to directly, can be
+	 *            {@code null}
+	 */
+	public ByteBufferEntity(final ByteBuffer[] buffers,
+			final ContentType contentType,
+			final WritableByteChannel socketChannel) {
+		this.buffers = buffers;
+		this.socketChannel = socketChannel;
+
+		long length = 0;
+		for (final ByteBuffer buffer : buffers) {
+			length += buffer.remaining();
+		}
+		this.length = length;
+
+		if (contentType != null) {
+			setContentType(contentType.toString());
+		}
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return length;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		if (buffers.length == 1) {
+			return new ByteBufferInputStream(buffers[0]);
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(
+				(int) length);
+		writeTo(out);
+		return new ByteBufferInputStream(ByteBuffer.wrap(out.toByteArray()));
+	}
+
+	@Override
+	public void writeTo(final OutputStream outstream) throws IOException {
+		if (outstream == null) {
+			throw new IllegalArgumentException("Output stream may not be null");
+		}
+
+		final WritableByteChannel target = ZeroCopyFileEntity.determineTarget(
+				outstream, socketChannel);
+		for (final ByteBuffer buffer : buffers) {
+			final ByteBuffer data = buffer.duplicate();
+			while (data.hasRemaining()) {
+				target.write(data);
+			}
+		}
+
+		outstream.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
@@ -0,0 +1,93 @@
+package net.meisen.general.server.http.listener.files;
+
+/**
+ * A satisfiable range of bytes of a representation, i.e. the first and the
+ * last position (both inclusive) of the bytes to be sent.
+ *
+ * @author pmeisen
+ *
+ */
+public class ByteRange {
+	private final long first;
+	private final long last;
+
+	/**
+	 * Creates a range from {@code first} to {@code last} (both inclusive).
+	 *
+	 * @param first
+	 *            the position of the first byte
+	 * @param last
+	 *            the position of the last byte
+	 */
+	public ByteRange(final long first, final long last) {
+		if (first < 0 || last < first) {
+			throw new IllegalArgumentException("The range '" + first + "-"
+					+ last + "' is invalid.");
+		}
+
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Gets the position of the first byte.
+	 *
+	 * @return the position of the first byte
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Gets the position of the last byte (inclusive).
+	 *
+	 * @return the position of the last byte
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * Gets the amount of bytes of the range.
+	 *
+	 * @return the amount of bytes of the range
+	 */
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Gets the value of the {@code Content-Range} header for this range.
+	 *
+	 * @param completeLength
+	 *            the length of the complete representation
+	 *
+	 * @return the value of the {@code Content-Range} header
+	 */
+	public String toContentRange(final long completeLength) {
+		return "bytes " + first + "-" + last + "/" + completeLength;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) {
+			return true;
+		} else if (obj instanceof ByteRange) {
+			final ByteRange range = (ByteRange) obj;
+			return first == range.first && last == range.last;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (first ^ (first >>> 32)) * 31
+				+ (int) (last ^ (last >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return first + "-" + last;
+	}
+}
@@ -0,0 +1,149 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.http.Consts;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * An {@code HttpEntity} which sends several ranges of a file as
+ * {@code multipart/byteranges} (see RFC 7233). The ranges are transferred
+ * using positioned transfers of the {@code FileChannel}, i.e. the parts are
+ * never read into memory.
+ *
+ * @author pmeisen
+ *
+ * @see ZeroCopyFileEntity
+ */
+public class ByteRangesEntity extends AbstractHttpEntity {
+	private final File file;
+	private final long completeLength;
+	private final List<ByteRange> ranges;
+	private final WritableByteChannel socketChannel;
+
+	private final byte[][] partHeaders;
+	private final byte[] closingBoundary;
+	private final long contentLength;
+
+	/**
+	 * Creates an entity for the specified {@code ranges} of the {@code file}.
+	 *
+	 * @param file
+	 *            the file to be transferred
+	 * @param completeLength
+	 *            the complete length of the file
+	 * @param ranges
+	 *            the satisfiable ranges of the file to be sent
+	 * @param contentType
+	 *            the {@code ContentType} of the file, can be {@code null}
+	 * @param socketChannel
+	 *            the channel of the socket, can be {@code null} if the socket
+	 *            doesn't provide any channel
+	 */
+	public ByteRangesEntity(final File file, final long completeLength,
+			final List<ByteRange> ranges, final ContentType contentType,
+			final WritableByteChannel socketChannel) {
+		this.file = file;
+		this.completeLength = completeLength;
+		this.ranges = ranges;
+		this.socketChannel = socketChannel;
+
+		final String boundary = UUID.randomUUID().toString().replace("-", "");
+		setContentType("multipart/byteranges; boundary=" + boundary);
+
+		// create the headers of each part
+		long length = 0;
+		this.partHeaders = new byte[ranges.size()][];
+		for (int i = 0; i < ranges.size(); i++) {
+			final ByteRange range = ranges.get(i);
+
+			final StringBuilder sb = new StringBuilder();
+			if (i > 0) {
+				sb.append("\r\n");
+			}
+			sb.append("--").append(boundary).append("\r\n");
+			if (contentType != null) {
+				sb.append("Content-Type: ").append(contentType.toString())
+						.append("\r\n");
+			}
+			sb.append("Content-Range: ")
+					.append(range.toContentRange(completeLength))
+					.append("\r\n\r\n");
+
+			partHeaders[i] = sb.toString().getBytes(Consts.ASCII);
+			length += partHeaders[i].length + range.getLength();
+		}
+		this.closingBoundary = ("\r\n--" + boundary + "--\r\n")
+				.getBytes(Consts.ASCII);
+		this.contentLength = length + closingBoundary.length;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	@Override
+	public void writeTo(final OutputStream outstream) throws IOException {
+		if (outstream == null) {
+			throw new IllegalArgumentException(
+					"The output stream cannot be null.");
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+
+			for (int i = 0; i < ranges.size(); i++) {
+				final ByteRange range = ranges.get(i);
+
+				outstream.write(partHeaders[i]);
+				final WritableByteChannel target = ZeroCopyFileEntity
+						.determineTarget(outstream, socketChannel);
+				ZeroCopyFileEntity.transfer(channel, range.getFirst(),
+						range.getLength(), target);
+			}
+			outstream.write(closingBoundary);
+			outstream.flush();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Gets the complete length of the file.
+	 *
+	 * @return the complete length of the file
+	 */
+	public long getCompleteLength() {
+		return completeLength;
+	}
+}
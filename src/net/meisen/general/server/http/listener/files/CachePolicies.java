@@ -0,0 +1,75 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ordered rules defining the caching headers of files. The first rule
+ * matching a file is applied.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class CachePolicies {
+	private final List<CachePolicy> policies;
+
+	/**
+	 * Creates the rules from the specified list.
+	 * 
+	 * @param policies
+	 *            the ordered rules, can be {@code null}
+	 */
+	public CachePolicies(final List<CachePolicy> policies) {
+		if (policies == null || policies.isEmpty()) {
+			this.policies = Collections.emptyList();
+		} else {
+			this.policies = Collections
+					.unmodifiableList(new ArrayList<CachePolicy>(policies));
+		}
+	}
+
+	/**
+	 * Finds the first rule applying to the file with the specified
+	 * {@code path} and {@code mimeType}.
+	 * 
+	 * @param path
+	 *            the decoded path of the request (relative to the
+	 *            document-root)
+	 * @param mimeType
+	 *            the mime-type of the file
+	 * 
+	 * @return the first rule applying, or {@code null} if no rule applies
+	 */
+	public CachePolicy find(final String path, final String mimeType) {
+		if (path == null) {
+			return null;
+		}
+
+		for (final CachePolicy policy : policies) {
+			if (policy.matches(path, mimeType)) {
+				return policy;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks if any rule is defined.
+	 * 
+	 * @return {@code true} if no rule is defined, otherwise {@code false}
+	 */
+	public boolean isEmpty() {
+		return policies.isEmpty();
+	}
+
+	/**
+	 * Gets the defined rules.
+	 * 
+	 * @return the defined rules in order
+	 */
+	public List<CachePolicy> getPolicies() {
+		return policies;
+	}
+}
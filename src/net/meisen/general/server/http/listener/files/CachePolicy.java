@@ -0,0 +1,299 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import net.meisen.general.server.http.listener.util.HttpDateUtilities;
+
+/**
+ * A rule defining the caching headers (i.e. {@code Cache-Control} and
+ * {@code Expires}) of files. A rule applies to files matching one of the
+ * defined glob-patterns or one of the defined mime-types. The patterns are
+ * compiled when the rule is created, patterns of the form {@code *.ext} are
+ * matched using a simple lookup of the extension.
+ * 
+ * A glob-pattern without any {@code /} is matched against the name of the
+ * file, otherwise it is matched against the path of the request (without a
+ * leading {@code /}). Within a pattern {@code **} matches any characters,
+ * {@code *} any characters except {@code /} and {@code ?} a single
+ * character except {@code /}.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class CachePolicy {
+
+	/**
+	 * The value of the {@code Expires} header for a specific second.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	private static class Expires {
+		private final long second;
+		private final String header;
+
+		public Expires(final long second, final String header) {
+			this.second = second;
+			this.header = header;
+		}
+	}
+
+	private final Set<String> extensions;
+	private final Pattern namePattern;
+	private final Pattern pathPattern;
+	private final List<String> mimeTypes;
+
+	private final long maxAge;
+	private final String cacheControl;
+
+	private volatile Expires expires = null;
+
+	/**
+	 * Creates a rule for the specified patterns and types.
+	 * 
+	 * @param patterns
+	 *            the glob-patterns of the files the rule applies to, can be
+	 *            {@code null}
+	 * @param mimeTypes
+	 *            the mime-types of the files the rule applies to, a type can
+	 *            end with a wildcard (e.g. {@code text/*}), can be
+	 *            {@code null}
+	 * @param maxAge
+	 *            the time (in seconds) the file can be cached, a negative
+	 *            value if no {@code max-age} should be sent
+	 * @param immutable
+	 *            {@code true} if the file will never change, i.e. the client
+	 *            doesn't have to revalidate it
+	 * @param noCache
+	 *            {@code true} if the file must be revalidated before it is
+	 *            used from a cache
+	 */
+	public CachePolicy(final List<String> patterns,
+			final List<String> mimeTypes, final long maxAge,
+			final boolean immutable, final boolean noCache) {
+		final Set<String> extensions = new HashSet<String>();
+		final StringBuilder names = new StringBuilder();
+		final StringBuilder paths = new StringBuilder();
+
+		if (patterns != null) {
+			for (final String pattern : patterns) {
+				final String ext = getExtensionOfPattern(pattern);
+
+				if (ext != null) {
+					extensions.add(ext);
+				} else if (pattern.indexOf('/') == -1) {
+					names.append(names.length() == 0 ? "" : "|").append(
+							globToRegEx(pattern));
+				} else {
+					paths.append(paths.length() == 0 ? "" : "|").append(
+							globToRegEx(pattern.startsWith("/") ? pattern
+									.substring(1) : pattern));
+				}
+			}
+		}
+
+		this.extensions = extensions;
+		this.namePattern = names.length() == 0 ? null : Pattern.compile(names
+				.toString());
+		this.pathPattern = paths.length() == 0 ? null : Pattern.compile(paths
+				.toString());
+		this.mimeTypes = mimeTypes;
+
+		this.maxAge = maxAge;
+		this.cacheControl = createCacheControl(maxAge, immutable, noCache);
+	}
+
+	/**
+	 * Checks if the rule applies to the file with the specified
+	 * {@code path} and {@code mimeType}.
+	 * 
+	 * @param path
+	 *            the decoded path of the request (relative to the
+	 *            document-root)
+	 * @param mimeType
+	 *            the mime-type of the file
+	 * 
+	 * @return {@code true} if the rule applies, otherwise {@code false}
+	 */
+	public boolean matches(final String path, final String mimeType) {
+		final String normPath = path.startsWith("/") ? path.substring(1)
+				: path;
+		final String name = normPath.substring(normPath.lastIndexOf('/') + 1);
+
+		// check the extension first, it's the fastest
+		if (!extensions.isEmpty()) {
+			final int pos = name.lastIndexOf('.');
+			if (pos != -1
+					&& extensions.contains(name.substring(pos + 1).toLowerCase(
+							Locale.ENGLISH))) {
+				return true;
+			}
+		}
+
+		if (namePattern != null && namePattern.matcher(name).matches()) {
+			return true;
+		} else if (pathPattern != null
+				&& pathPattern.matcher(normPath).matches()) {
+			return true;
+		} else if (mimeTypes != null && mimeType != null) {
+			for (final String type : mimeTypes) {
+				if (type.endsWith("*")) {
+					if (mimeType.startsWith(type.substring(0,
+							type.length() - 1))) {
+						return true;
+					}
+				} else if (mimeType.equals(type)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the value of the {@code Cache-Control} header.
+	 * 
+	 * @return the value of the {@code Cache-Control} header, {@code null} if
+	 *         no header should be sent
+	 */
+	public String getCacheControl() {
+		return cacheControl;
+	}
+
+	/**
+	 * Gets the time (in seconds) a file can be cached.
+	 * 
+	 * @return the time (in seconds) a file can be cached, a negative value if
+	 *         not defined
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Gets the value of the {@code Expires} header for a response created at
+	 * the specified {@code time}. The value is reused for all responses
+	 * created within the same second.
+	 * 
+	 * @param time
+	 *            the time (in milliseconds) the response is created
+	 * 
+	 * @return the value of the {@code Expires} header, {@code null} if no
+	 *         header should be sent
+	 */
+	public String getExpires(final long time) {
+		if (maxAge < 0) {
+			return null;
+		}
+
+		final long second = time / 1000;
+		final Expires current = this.expires;
+		if (current != null && current.second == second) {
+			return current.header;
+		}
+
+		final Expires created = new Expires(second,
+				HttpDateUtilities.formatDate((second + maxAge) * 1000));
+		this.expires = created;
+		return created.header;
+	}
+
+	/**
+	 * Creates the value of the {@code Cache-Control} header.
+	 * 
+	 * @param maxAge
+	 *            the time (in seconds) the file can be cached
+	 * @param immutable
+	 *            {@code true} if the file will never change
+	 * @param noCache
+	 *            {@code true} if the file must be revalidated
+	 * 
+	 * @return the value of the header, {@code null} if no header is needed
+	 */
+	protected static String createCacheControl(final long maxAge,
+			final boolean immutable, final boolean noCache) {
+		final StringBuilder sb = new StringBuilder();
+
+		if (noCache) {
+			sb.append("no-cache");
+		}
+		if (maxAge >= 0) {
+			sb.append(sb.length() == 0 ? "" : ", ").append("max-age=")
+					.append(maxAge);
+		}
+		if (immutable && !noCache) {
+			sb.append(sb.length() == 0 ? "" : ", ").append("immutable");
+		}
+
+		return sb.length() == 0 ? null : sb.toString();
+	}
+
+	/**
+	 * Gets the extension of a pattern of the form {@code *.ext}.
+	 * 
+	 * @param pattern
+	 *            the pattern to get the extension from
+	 * 
+	 * @return the extension, or {@code null} if the pattern isn't of the form
+	 *         {@code *.ext}
+	 */
+	protected static String getExtensionOfPattern(final String pattern) {
+		if (!pattern.startsWith("*.") || pattern.length() < 3) {
+			return null;
+		}
+
+		final String ext = pattern.substring(2);
+		for (int i = 0; i < ext.length(); i++) {
+			final char c = ext.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+				return null;
+			}
+		}
+
+		return ext.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Transforms the specified glob-pattern into a regular expression.
+	 * 
+	 * @param glob
+	 *            the glob-pattern to be transformed
+	 * 
+	 * @return the regular expression
+	 */
+	protected static String globToRegEx(final String glob) {
+		final StringBuilder sb = new StringBuilder("(?:");
+
+		for (int i = 0; i < glob.length(); i++) {
+			final char c = glob.charAt(i);
+
+			if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					sb.append(".*");
+					i++;
+				} else {
+					sb.append("[^/]*");
+				}
+			} else if (c == '?') {
+				sb.append("[^/]");
+			} else if ("\\.[]{}()+-^$|".indexOf(c) != -1) {
+				sb.append('\\').append(c);
+			} else {
+				sb.append(c);
+			}
+		}
+
+		return sb.append(")").toString();
+	}
+
+	@Override
+	public String toString() {
+		return extensions + ", " + namePattern + ", " + pathPattern + ", "
+				+ mimeTypes + " => " + cacheControl;
+	}
+}
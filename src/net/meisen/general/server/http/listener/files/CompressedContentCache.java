@@ -0,0 +1,256 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A memory-bounded cache of {@code gzip} compressed file contents. The
+ * contents are keyed by the path of the file and are only valid for the
+ * entity-tag of the file they were created for, i.e. a modified file is
+ * compressed again. The least recently used contents are removed, if the
+ * cached bytes exceed the maximal size.
+ *
+ * @author pmeisen
+ *
+ */
+public class CompressedContentCache {
+	private final static byte[] NOT_COMPRESSIBLE = new byte[0];
+
+	/**
+	 * The cached content of one file.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	private static class CompressedContent {
+		private final String etag;
+		private final byte[] content;
+
+		public CompressedContent(final String etag, final byte[] content) {
+			this.etag = etag;
+			this.content = content;
+		}
+	}
+
+	private final long maxBytes;
+	private final long maxFileSize;
+	private final Map<String, CompressedContent> contents;
+
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Creates a cache which keeps at most {@code maxBytes} of compressed
+	 * contents.
+	 *
+	 * @param maxBytes
+	 *            the maximal amount of bytes kept, {@code 0} disables the
+	 *            cache
+	 * @param maxFileSize
+	 *            the maximal size of a file to be compressed
+	 */
+	public CompressedContentCache(final long maxBytes, final long maxFileSize) {
+		this.maxBytes = maxBytes;
+		this.maxFileSize = Math.min(maxFileSize, maxBytes);
+		this.contents = new LinkedHashMap<String, CompressedContent>(16,
+				0.75f, true);
+	}
+
+	/**
+	 * Checks if the cache is enabled.
+	 *
+	 * @return {@code true} if the cache is enabled, otherwise {@code false}
+	 */
+	public boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/**
+	 * Checks if the file of the specified meta-data can be compressed using
+	 * the cache, i.e. if the size of the file doesn't exceed the maximal size.
+	 *
+	 * @param metaData
+	 *            the meta-data of the file
+	 *
+	 * @return {@code true} if the file can be compressed, otherwise
+	 *         {@code false}
+	 */
+	public boolean isCacheable(final FileMetaData metaData) {
+		return isEnabled() && metaData.getLength() <= maxFileSize;
+	}
+
+	/**
+	 * Gets the compressed content of the file of the specified meta-data. The
+	 * file is compressed, if no content for the current version of the file
+	 * is cached.
+	 *
+	 * @param metaData
+	 *            the meta-data of the file to get the compressed content for
+	 *
+	 * @return the compressed content, or {@code null} if the file cannot be
+	 *         compressed (i.e. it's too large or the compressed content isn't
+	 *         smaller than the file)
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public byte[] get(final FileMetaData metaData) throws IOException {
+		if (!isCacheable(metaData)) {
+			return null;
+		}
+
+		final String key = metaData.getId();
+		final String etag = metaData.getETag();
+
+		// check if we have a valid content already
+		synchronized (contents) {
+			final CompressedContent content = contents.get(key);
+			if (content != null && content.etag.equals(etag)) {
+				hits++;
+				return content.content == NOT_COMPRESSIBLE ? null
+						: content.content;
+			}
+			misses++;
+		}
+
+		// compress the file outside of the lock
+		byte[] compressed = compress(metaData);
+		if (compressed.length >= metaData.getLength()) {
+			compressed = NOT_COMPRESSIBLE;
+		}
+
+		synchronized (contents) {
+			final CompressedContent old = contents.put(key,
+					new CompressedContent(etag, compressed));
+			if (old != null) {
+				bytes -= old.content.length;
+			}
+			bytes += compressed.length;
+
+			// remove the least recently used contents
+			final Iterator<CompressedContent> it = contents.values()
+					.iterator();
+			while (bytes > maxBytes && it.hasNext()) {
+				bytes -= it.next().content.length;
+				it.remove();
+			}
+		}
+
+		return compressed == NOT_COMPRESSIBLE ? null : compressed;
+	}
+
+	/**
+	 * Compresses the file of the specified meta-data.
+	 *
+	 * @param metaData
+	 *            the meta-data of the file to be compressed
+	 *
+	 * @return the compressed content
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected byte[] compress(final FileMetaData metaData) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(
+				(int) Math.max(64, metaData.getLength() / 4));
+		final InputStream in = metaData.openStream();
+		try {
+			final GZIPOutputStream gzip = new GZIPOutputStream(out, 8192);
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				gzip.write(buffer, 0, read);
+			}
+			gzip.close();
+		} finally {
+			in.close();
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Removes the cached content of the specified {@code file}.
+	 *
+	 * @param file
+	 *            the file to remove the content for
+	 */
+	public void remove(final File file) {
+		synchronized (contents) {
+			final CompressedContent old = contents.remove(file.getPath());
+			if (old != null) {
+				bytes -= old.content.length;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the cached contents.
+	 */
+	public void clear() {
+		synchronized (contents) {
+			contents.clear();
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * Gets the amount of cached contents.
+	 *
+	 * @return the amount of cached contents
+	 */
+	public int size() {
+		synchronized (contents) {
+			return contents.size();
+		}
+	}
+
+	/**
+	 * Gets the amount of bytes currently cached.
+	 *
+	 * @return the amount of bytes currently cached
+	 */
+	public long getBytes() {
+		synchronized (contents) {
+			return bytes;
+		}
+	}
+
+	/**
+	 * Gets the amount of requests answered by the cache.
+	 *
+	 * @return the amount of requests answered by the cache
+	 */
+	public long getHits() {
+		synchronized (contents) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Gets the amount of requests which needed to compress the file.
+	 *
+	 * @return the amount of requests which needed to compress the file
+	 */
+	public long getMisses() {
+		synchronized (contents) {
+			return misses;
+		}
+	}
+
+	/**
+	 * Gets the maximal amount of bytes kept by the cache.
+	 *
+	 * @return the maximal amount of bytes kept by the cache
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+}
@@ -0,0 +1,163 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An immutable index of all the files of a document-root, i.e. the resolution
+ * of every path to the {@code FileMetaData} of the file to be served. A
+ * lookup doesn't access the file-system at all.
+ * 
+ * The index consists of the files by path, the default files by path of the
+ * directory and an optional fallback (i.e. a location which is a file and is
+ * used for any path not found otherwise). Paths are normalized prior to the
+ * lookup, i.e. leading, trailing and duplicated {@code /} as well as
+ * {@code .} and {@code ..} segments are removed. Paths pointing outside of
+ * the document-root are never resolved.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class DocRootIndex {
+	private final Map<String, FileMetaData> files;
+	private final Map<String, FileMetaData> defaultFiles;
+	private final FileMetaData fallback;
+	private final long created;
+
+	/**
+	 * Creates an index for the specified files.
+	 * 
+	 * @param files
+	 *            the files by normalized path
+	 * @param defaultFiles
+	 *            the default files by normalized path of the directory
+	 * @param fallback
+	 *            the file used if a path cannot be resolved otherwise, can be
+	 *            {@code null}
+	 */
+	public DocRootIndex(final Map<String, FileMetaData> files,
+			final Map<String, FileMetaData> defaultFiles,
+			final FileMetaData fallback) {
+		this.files = Collections
+				.unmodifiableMap(new HashMap<String, FileMetaData>(files));
+		this.defaultFiles = Collections
+				.unmodifiableMap(new HashMap<String, FileMetaData>(
+						defaultFiles));
+		this.fallback = fallback;
+		this.created = System.currentTimeMillis();
+	}
+
+	/**
+	 * Resolves the specified decoded {@code path}.
+	 * 
+	 * @param path
+	 *            the decoded path relative to the document-root
+	 * 
+	 * @return the {@code FileMetaData} of the file to be served, or
+	 *         {@code null} if the path cannot be resolved
+	 */
+	public FileMetaData get(final String path) {
+		final String normPath = normalize(path);
+		if (normPath == null) {
+			return null;
+		}
+
+		FileMetaData metaData = files.get(normPath);
+		if (metaData == null) {
+			metaData = fallback;
+		}
+		if (metaData == null) {
+			metaData = defaultFiles.get(normPath);
+		}
+
+		return metaData;
+	}
+
+	/**
+	 * Lists the indexed files within the directory specified by the
+	 * normalized {@code dir} (including the files of sub-directories), until
+	 * the {@code limit} is reached.
+	 * 
+	 * @param dir
+	 *            the normalized path of the directory
+	 * @param limit
+	 *            the maximal amount of files to be listed
+	 * 
+	 * @return the paths of the files relative to the directory, at most
+	 *         {@code limit} paths
+	 * 
+	 * @see FileLister
+	 */
+	public SortedSet<String> listFiles(final String dir, final int limit) {
+		final SortedSet<String> names = new TreeSet<String>();
+		final String dirPrefix = dir.isEmpty() ? "" : dir + "/";
+
+		for (final String name : files.keySet()) {
+			if (names.size() >= limit) {
+				break;
+			} else if (name.startsWith(dirPrefix)) {
+				names.add(name.substring(dirPrefix.length()));
+			}
+		}
+
+		return names;
+	}
+
+	/**
+	 * Normalizes the specified {@code path}, see {@link PathNormalizer}.
+	 * 
+	 * @param path
+	 *            the path to be normalized
+	 * 
+	 * @return the normalized path, or {@code null} if the path cannot be
+	 *         normalized (i.e. if it points outside of the document-root)
+	 */
+	public static String normalize(final String path) {
+		return PathNormalizer.normalize(path);
+	}
+
+	/**
+	 * Gets the amount of indexed files.
+	 * 
+	 * @return the amount of indexed files
+	 */
+	public int size() {
+		return files.size();
+	}
+
+	/**
+	 * Gets the indexed files by normalized path.
+	 * 
+	 * @return the indexed files
+	 */
+	public Map<String, FileMetaData> getFiles() {
+		return files;
+	}
+
+	/**
+	 * Gets the indexed default files by normalized path of the directory.
+	 * 
+	 * @return the indexed default files
+	 */
+	public Map<String, FileMetaData> getDefaultFiles() {
+		return defaultFiles;
+	}
+
+	/**
+	 * Gets the time the index was created.
+	 * 
+	 * @return the time (in milliseconds) the index was created
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	@Override
+	public String toString() {
+		return "DocRootIndex (" + files.size() + " files, "
+				+ defaultFiles.size() + " default files)";
+	}
+}
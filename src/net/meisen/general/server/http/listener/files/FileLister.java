@@ -0,0 +1,113 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import net.meisen.general.genmisc.types.Files;
+
+/**
+ * Lists the files of a directory within all the locations of a
+ * document-root, i.e. the directories and archives of the locations. The
+ * file-system isn't walked any further, as soon as the requested amount of
+ * files is found. An indexed document-root can be listed without accessing
+ * the file-system, see {@link DocRootIndex#listFiles(String, int)}.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class FileLister {
+	private final List<String> docRoot;
+	private final Map<String, ZipArchive> archives;
+
+	/**
+	 * Creates a lister for the specified locations.
+	 * 
+	 * @param docRoot
+	 *            the canonical locations of the document-root
+	 * @param archives
+	 *            the opened archives by location, the map is read whenever
+	 *            files are listed, i.e. it can be modified afterwards
+	 */
+	public FileLister(final List<String> docRoot,
+			final Map<String, ZipArchive> archives) {
+		this.docRoot = docRoot;
+		this.archives = archives;
+	}
+
+	/**
+	 * Lists the files (including the files of sub-directories) of the
+	 * directory specified by the normalized {@code dir} within all the
+	 * locations, until the {@code limit} is reached.
+	 * 
+	 * @param dir
+	 *            the normalized path of the directory
+	 * @param limit
+	 *            the maximal amount of files to be listed
+	 * 
+	 * @return the paths of the files relative to the directory, at most
+	 *         {@code limit} paths
+	 */
+	public SortedSet<String> listFiles(final String dir, final int limit) {
+		final SortedSet<String> names = new TreeSet<String>();
+		final String dirPrefix = dir.isEmpty() ? "" : dir + "/";
+
+		for (final String location : docRoot) {
+			if (names.size() >= limit) {
+				break;
+			}
+			final ZipArchive archive = archives.get(location);
+
+			if (archive != null) {
+				for (final String name : archive.getEntries().keySet()) {
+					if (names.size() >= limit) {
+						break;
+					} else if (name.startsWith(dirPrefix)) {
+						names.add(name.substring(dirPrefix.length()));
+					}
+				}
+			} else {
+				final File locationDir = new File(location, dir);
+				if (locationDir.isDirectory()) {
+					listDirectory(locationDir, "", names,
+							new HashSet<String>(), limit);
+				}
+			}
+		}
+
+		return names;
+	}
+
+	private void listDirectory(final File dir, final String path,
+			final Set<String> names, final Set<String> visited,
+			final int limit) {
+
+		// make sure we don't run into a cycle of links
+		if (!visited.add(Files.getCanonicalPath(dir))) {
+			return;
+		}
+
+		final File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+
+		for (final File child : children) {
+			if (names.size() >= limit) {
+				return;
+			}
+
+			final String childPath = path.isEmpty() ? child.getName() : path
+					+ "/" + child.getName();
+			if (child.isDirectory()) {
+				listDirectory(child, childPath, names, visited, limit);
+			} else if (child.isFile()) {
+				names.add(childPath);
+			}
+		}
+	}
+}
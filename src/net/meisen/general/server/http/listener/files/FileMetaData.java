@@ -0,0 +1,372 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.meisen.general.server.http.listener.util.HttpDateUtilities;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * The meta-data of a file served by the {@code FileHandler}, i.e. the
+ * resolved {@code File}, the size, the time of the last modification and the
+ * validators (i.e. {@code ETag} and {@code Last-Modified}) derived from
+ * those. The instance is immutable and represents the state of the file at
+ * the time of creation.
+ * 
+ * The meta-data may contain variants of the file, i.e. precompressed
+ * siblings (e.g. {@code app.js.gz} for {@code app.js}), which can be sent
+ * instead of the file if the client accepts the content-coding of the
+ * variant.
+ *
+ * @author pmeisen
+ *
+ */
+public class FileMetaData {
+	private final File file;
+	private final long length;
+	private final long lastModified;
+	private final boolean readable;
+	private final String contentEncoding;
+	private final Map<String, FileMetaData> variants;
+
+	private final String etag;
+	private final String lastModifiedHeader;
+
+	/**
+	 * Creates the meta-data of the specified {@code file} by reading the
+	 * current state from the file-system.
+	 *
+	 * @param file
+	 *            the file to create the meta-data for
+	 */
+	public FileMetaData(final File file) {
+		this(file, null, null);
+	}
+
+	/**
+	 * Creates the meta-data of the specified {@code file} by reading the
+	 * current state from the file-system.
+	 *
+	 * @param file
+	 *            the file to create the meta-data for
+	 * @param contentEncoding
+	 *            the content-coding of the file (e.g. {@code gzip}), or
+	 *            {@code null} if the file isn't encoded
+	 * @param variants
+	 *            the encoded variants of the file by content-coding, can be
+	 *            {@code null}
+	 */
+	public FileMetaData(final File file, final String contentEncoding,
+			final Map<String, FileMetaData> variants) {
+		this(file, file.length(), file.lastModified(), file.canRead(),
+				contentEncoding, variants);
+	}
+
+	/**
+	 * Creates the meta-data of the specified {@code file}.
+	 *
+	 * @param file
+	 *            the file to create the meta-data for
+	 * @param length
+	 *            the size of the file in bytes
+	 * @param lastModified
+	 *            the time of the last modification in milliseconds
+	 * @param readable
+	 *            {@code true} if the file can be read, otherwise {@code false}
+	 */
+	public FileMetaData(final File file, final long length,
+			final long lastModified, final boolean readable) {
+		this(file, length, lastModified, readable, null, null);
+	}
+
+	/**
+	 * Creates the meta-data of the specified {@code file}.
+	 *
+	 * @param file
+	 *            the file to create the meta-data for
+	 * @param length
+	 *            the size of the file in bytes
+	 * @param lastModified
+	 *            the time of the last modification in milliseconds
+	 * @param readable
+	 *            {@code true} if the file can be read, otherwise {@code false}
+	 * @param contentEncoding
+	 *            the content-coding of the file (e.g. {@code gzip}), or
+	 *            {@code null} if the file isn't encoded
+	 * @param variants
+	 *            the encoded variants of the file by content-coding, can be
+	 *            {@code null}
+	 */
+	public FileMetaData(final File file, final long length,
+			final long lastModified, final boolean readable,
+			final String contentEncoding,
+			final Map<String, FileMetaData> variants) {
+		this.file = file;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.readable = readable;
+		this.contentEncoding = contentEncoding;
+
+		if (variants == null || variants.isEmpty()) {
+			this.variants = Collections.emptyMap();
+		} else {
+			this.variants = Collections
+					.unmodifiableMap(new LinkedHashMap<String, FileMetaData>(
+							variants));
+		}
+
+		this.etag = createETag(length, lastModified, contentEncoding);
+		this.lastModifiedHeader = HttpDateUtilities.formatDate(lastModified);
+	}
+
+	private static String createETag(final long length,
+			final long lastModified, final String contentEncoding) {
+		return "\"" + Long.toHexString(length) + "-"
+				+ Long.toHexString(lastModified)
+				+ (contentEncoding == null ? "" : "-" + contentEncoding)
+				+ "\"";
+	}
+
+	/**
+	 * Gets the resolved file.
+	 *
+	 * @return the resolved file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the identifier of the served content, i.e. the path of the file.
+	 * The identifier is used as key when caching data derived from the
+	 * content.
+	 *
+	 * @return the identifier of the served content
+	 */
+	public String getId() {
+		return file.getPath();
+	}
+
+	/**
+	 * Gets the name of the served content, i.e. the name of the file.
+	 *
+	 * @return the name of the served content
+	 */
+	public String getName() {
+		return file.getName();
+	}
+
+	/**
+	 * Opens a stream to read the content of the file.
+	 *
+	 * @return the stream to read the content
+	 *
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public InputStream openStream() throws IOException {
+		return new FileInputStream(file);
+	}
+
+	/**
+	 * Creates the entity sending the whole content of the file.
+	 *
+	 * @param contentType
+	 *            the type of the content
+	 * @param socketChannel
+	 *            the channel of the socket to write to directly, can be
+	 *            {@code null}
+	 *
+	 * @return the created entity
+	 */
+	public AbstractHttpEntity createEntity(final ContentType contentType,
+			final WritableByteChannel socketChannel) {
+		return new ZeroCopyFileEntity(file, 0, length, contentType,
+				socketChannel);
+	}
+
+	/**
+	 * Checks if ranges of the content can be requested, i.e. if the content
+	 * can be sent partially using the file.
+	 *
+	 * @return {@code true} if ranges can be requested, otherwise {@code false}
+	 */
+	public boolean isRangeable() {
+		return true;
+	}
+
+	/**
+	 * Gets the size of the file.
+	 *
+	 * @return the size of the file in bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the time of the last modification.
+	 *
+	 * @return the time of the last modification in milliseconds
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Checks if the file was readable when the meta-data was created.
+	 *
+	 * @return {@code true} if the file can be read, otherwise {@code false}
+	 */
+	public boolean isReadable() {
+		return readable;
+	}
+
+	/**
+	 * Gets the entity-tag of the file, i.e. a strong validator based on the
+	 * size and the time of the last modification.
+	 *
+	 * @return the quoted entity-tag of the file
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Gets the entity-tag of the file encoded with the specified
+	 * {@code contentEncoding}, i.e. the entity-tag of a representation which
+	 * is created from the file (e.g. by compressing it on-the-fly).
+	 *
+	 * @param contentEncoding
+	 *            the content-coding of the representation, {@code null} for
+	 *            the file itself
+	 *
+	 * @return the quoted entity-tag of the encoded representation
+	 */
+	public String getETag(final String contentEncoding) {
+		if (contentEncoding == null) {
+			return etag;
+		} else {
+			return createETag(length, lastModified, contentEncoding);
+		}
+	}
+
+	/**
+	 * Gets the content-coding of the file.
+	 *
+	 * @return the content-coding of the file, {@code null} if the file isn't
+	 *         encoded
+	 */
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+
+	/**
+	 * Gets the variant of the file encoded with the specified
+	 * {@code contentEncoding}.
+	 *
+	 * @param contentEncoding
+	 *            the content-coding of the variant
+	 *
+	 * @return the meta-data of the variant, or {@code null} if no such variant
+	 *         exists
+	 */
+	public FileMetaData getVariant(final String contentEncoding) {
+		return variants.get(contentEncoding);
+	}
+
+	/**
+	 * Gets all the encoded variants of the file.
+	 *
+	 * @return the encoded variants of the file by content-coding
+	 */
+	public Map<String, FileMetaData> getVariants() {
+		return variants;
+	}
+
+	/**
+	 * Gets the formatted value of the {@code Last-Modified} header.
+	 *
+	 * @return the formatted value of the {@code Last-Modified} header
+	 */
+	public String getLastModifiedHeader() {
+		return lastModifiedHeader;
+	}
+
+	/**
+	 * Checks if the specified {@code If-None-Match} header matches the
+	 * entity-tag of the file. The weak comparison is used, as defined for
+	 * {@code If-None-Match}.
+	 *
+	 * @param ifNoneMatch
+	 *            the value of the header
+	 *
+	 * @return {@code true} if one of the entity-tags matches, otherwise
+	 *         {@code false}
+	 */
+	public boolean matchesETag(final String ifNoneMatch) {
+		return matchesETag(ifNoneMatch, getETag());
+	}
+
+	/**
+	 * Checks if the specified {@code If-None-Match} header matches the
+	 * specified {@code etag} using the weak comparison.
+	 *
+	 * @param ifNoneMatch
+	 *            the value of the header
+	 * @param etag
+	 *            the quoted entity-tag to compare with
+	 *
+	 * @return {@code true} if one of the entity-tags matches, otherwise
+	 *         {@code false}
+	 */
+	public static boolean matchesETag(final String ifNoneMatch,
+			final String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if ("*".equals(tag)) {
+				return true;
+			} else if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+
+			if (etag.equals(tag)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if the file was modified after the specified time. The check is
+	 * performed with the precision of seconds, because HTTP dates don't
+	 * support any finer precision.
+	 *
+	 * @param time
+	 *            the time in milliseconds
+	 *
+	 * @return {@code true} if the file was modified after the specified time,
+	 *         otherwise {@code false}
+	 */
+	public boolean isModifiedSince(final long time) {
+		return lastModified / 1000 > time / 1000;
+	}
+
+	@Override
+	public String toString() {
+		return getId() + " (" + length + " bytes, " + getETag() + ")";
+	}
+}
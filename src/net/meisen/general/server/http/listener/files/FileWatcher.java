@@ -0,0 +1,432 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.meisen.general.server.http.listener.files.IFileChangeListener.Change;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches directories (including all sub-directories) for changes using a
+ * {@link WatchService} and informs the registered
+ * {@code IFileChangeListener} instances. The events are dispatched by a
+ * single daemon thread, which is started when the first directory is
+ * watched. Sub-directories created within a watched directory are watched
+ * automatically. Single files can be watched as well (see
+ * {@link #watchFile(File, IFileChangeListener)}), i.e. the directory of the
+ * file is watched without its sub-directories.
+ * 
+ * @author pmeisen
+ * 
+ * @see IFileChangeListener
+ */
+public class FileWatcher {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(FileWatcher.class);
+
+	private static FileWatcher sharedInstance = null;
+
+	/**
+	 * A registration of a listener for a root directory or a single file.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	private static class Registration {
+		private final File root;
+		private final Path rootPath;
+		private final IFileChangeListener listener;
+		private final boolean tree;
+
+		public Registration(final File root,
+				final IFileChangeListener listener, final boolean tree) {
+			this.root = root;
+			this.rootPath = root.toPath();
+			this.listener = listener;
+			this.tree = tree;
+		}
+
+		public boolean covers(final Path path) {
+			return tree ? path.startsWith(rootPath) : path.equals(rootPath);
+		}
+	}
+
+	private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+	private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+	private final Set<Path> directories = new HashSet<Path>();
+
+	private WatchService watchService = null;
+	private Thread thread = null;
+
+	/**
+	 * Gets the instance shared by all the handlers of the server.
+	 * 
+	 * @return the shared instance
+	 */
+	public synchronized static FileWatcher getSharedInstance() {
+		if (sharedInstance == null) {
+			sharedInstance = new FileWatcher();
+		}
+
+		return sharedInstance;
+	}
+
+	/**
+	 * Starts to watch the specified {@code root} directory and all its
+	 * sub-directories, the specified {@code listener} is informed about any
+	 * change.
+	 * 
+	 * @param root
+	 *            the directory to be watched
+	 * @param listener
+	 *            the listener to be informed
+	 * 
+	 * @throws IOException
+	 *             if the directory cannot be watched
+	 */
+	public void watch(final File root, final IFileChangeListener listener)
+			throws IOException {
+		if (!root.isDirectory()) {
+			throw new IOException("The file '" + root
+					+ "' is not a directory and cannot be watched.");
+		}
+
+		final Registration registration = new Registration(
+				root.getCanonicalFile(), listener, true);
+
+		synchronized (keys) {
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+			}
+
+			registerAll(registration.rootPath);
+			registrations.add(registration);
+			start();
+		}
+	}
+
+	/**
+	 * Starts to watch the specified {@code file}, the specified
+	 * {@code listener} is informed about its creation, modification and
+	 * deletion (the {@code root} passed to the listener is the file itself).
+	 * The directory of the file is watched, but not its sub-directories, i.e.
+	 * replacing the file by renaming another one is detected as well.
+	 * 
+	 * @param file
+	 *            the file to be watched
+	 * @param listener
+	 *            the listener to be informed
+	 * 
+	 * @throws IOException
+	 *             if the directory of the file cannot be watched
+	 */
+	public void watchFile(final File file, final IFileChangeListener listener)
+			throws IOException {
+		final File canonicalFile = file.getCanonicalFile();
+		final File dir = canonicalFile.getParentFile();
+		if (dir == null || !dir.isDirectory()) {
+			throw new IOException("The directory of the file '" + file
+					+ "' cannot be watched.");
+		}
+
+		final Registration registration = new Registration(canonicalFile,
+				listener, false);
+
+		synchronized (keys) {
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+			}
+
+			register(dir.toPath());
+			registrations.add(registration);
+			start();
+		}
+	}
+
+	/**
+	 * Starts the thread dispatching the events, if it's not running yet. Must
+	 * be called while holding the lock of {@code keys}.
+	 */
+	private void start() {
+		if (thread == null) {
+			thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					processEvents();
+				}
+			}, "FileWatcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Removes all the registrations of the specified {@code listener}. The
+	 * directories stay registered with the {@code WatchService}, but no
+	 * events are dispatched to the listener anymore.
+	 * 
+	 * @param listener
+	 *            the listener to be removed
+	 */
+	public void unwatch(final IFileChangeListener listener) {
+		for (final Registration registration : registrations) {
+			if (registration.listener == listener) {
+				registrations.remove(registration);
+			}
+		}
+	}
+
+	/**
+	 * Stops watching any directory and stops the thread dispatching the
+	 * events.
+	 */
+	public void close() {
+		final Thread thread;
+		synchronized (keys) {
+			thread = this.thread;
+
+			if (watchService != null) {
+				try {
+					watchService.close();
+				} catch (final IOException e) {
+					// ignore
+				}
+			}
+
+			this.watchService = null;
+			this.thread = null;
+			keys.clear();
+			directories.clear();
+		}
+		registrations.clear();
+
+		if (thread != null) {
+			try {
+				thread.join(1000);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Checks if the watcher is running, i.e. if any directory is watched.
+	 * 
+	 * @return {@code true} if directories are watched, otherwise
+	 *         {@code false}
+	 */
+	public boolean isRunning() {
+		synchronized (keys) {
+			return thread != null;
+		}
+	}
+
+	/**
+	 * Registers the specified directory and all its sub-directories with the
+	 * {@code WatchService}. Must be called while holding the lock of
+	 * {@code keys}.
+	 * 
+	 * @param dir
+	 *            the directory to be registered
+	 * 
+	 * @throws IOException
+	 *             if a directory cannot be registered
+	 */
+	private void registerAll(final Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(final Path d,
+					final BasicFileAttributes attrs) throws IOException {
+				register(d);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(final Path file,
+					final IOException e) {
+				if (LOG.isWarnEnabled()) {
+					LOG.warn("Unable to watch '" + file + "'.", e);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Registers the specified directory (without its sub-directories) with
+	 * the {@code WatchService}, if it's not registered yet. Must be called
+	 * while holding the lock of {@code keys}.
+	 * 
+	 * @param dir
+	 *            the directory to be registered
+	 * 
+	 * @throws IOException
+	 *             if the directory cannot be registered
+	 */
+	private void register(final Path dir) throws IOException {
+		if (directories.add(dir)) {
+			final WatchKey key = dir.register(watchService,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+			keys.put(key, dir);
+		}
+	}
+
+	/**
+	 * Processes the events of the {@code WatchService} until the service is
+	 * closed.
+	 */
+	protected void processEvents() {
+		final WatchService service;
+		synchronized (keys) {
+			service = watchService;
+		}
+
+		while (true) {
+			final WatchKey key;
+			try {
+				key = service.take();
+			} catch (final InterruptedException e) {
+				return;
+			} catch (final ClosedWatchServiceException e) {
+				return;
+			}
+
+			final Path dir;
+			synchronized (keys) {
+				dir = keys.get(key);
+			}
+			if (dir == null) {
+				key.cancel();
+				continue;
+			}
+
+			for (final WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					fireOverflow(dir);
+					continue;
+				}
+
+				final Path child = dir.resolve((Path) event.context());
+				final Change change;
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					change = Change.CREATED;
+				} else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+					change = Change.DELETED;
+				} else {
+					change = Change.MODIFIED;
+				}
+
+				final boolean directory;
+				synchronized (keys) {
+					if (change == Change.CREATED && Files.isDirectory(child)) {
+						directory = true;
+
+						// watch the new directory and all its children
+						try {
+							if (watchService != null && isWatchedTree(child)) {
+								registerAll(child);
+							}
+						} catch (final IOException e) {
+							if (LOG.isWarnEnabled()) {
+								LOG.warn("Unable to watch '" + child + "'.", e);
+							}
+						}
+					} else {
+						directory = directories.contains(child)
+								|| Files.isDirectory(child);
+					}
+				}
+
+				fireChanged(child, change, directory);
+			}
+
+			// the key is invalid if the directory was deleted
+			if (!key.reset()) {
+				synchronized (keys) {
+					keys.remove(key);
+					directories.remove(dir);
+				}
+			}
+		}
+	}
+
+	private void fireChanged(final Path file, final Change change,
+			final boolean directory) {
+		for (final Registration registration : getRegistrations(file)) {
+			try {
+				registration.listener.fileChanged(registration.root,
+						file.toFile(), change, directory);
+			} catch (final RuntimeException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("The listener failed to handle the change of '"
+							+ file + "'.", e);
+				}
+			}
+		}
+	}
+
+	private boolean isWatchedTree(final Path dir) {
+		for (final Registration registration : registrations) {
+			if (registration.tree && dir.startsWith(registration.rootPath)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void fireOverflow(final Path dir) {
+		final List<Registration> affected = getRegistrations(dir);
+		for (final Registration registration : registrations) {
+			if (!registration.tree
+					&& dir.equals(registration.rootPath.getParent())) {
+				affected.add(registration);
+			}
+		}
+
+		for (final Registration registration : affected) {
+			try {
+				registration.listener.overflow(registration.root);
+			} catch (final RuntimeException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("The listener failed to handle an overflow.", e);
+				}
+			}
+		}
+	}
+
+	private List<Registration> getRegistrations(final Path path) {
+		final List<Registration> result = new ArrayList<Registration>();
+		for (final Registration registration : registrations) {
+			if (registration.covers(path)) {
+				result.add(registration);
+			}
+		}
+
+		return result;
+	}
+}
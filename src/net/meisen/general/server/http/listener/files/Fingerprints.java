@@ -0,0 +1,289 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.meisen.general.server.http.listener.util.LruCache;
+
+/**
+ * The fingerprints (i.e. hashes of the content) of files, used to expose files
+ * under names containing the fingerprint (e.g. {@code app.3f9a1c2b.js} for
+ * {@code app.js}). Such names identify a specific content and can be cached
+ * forever by clients. The fingerprints are kept by the path of the file and
+ * are only valid for the entity-tag of the file they were created for.
+ * 
+ * A file requested using its current fingerprint is sent with the
+ * {@code IMMUTABLE_POLICY}, i.e. clients never revalidate it. A file
+ * requested using an outdated fingerprint is answered with the current
+ * content and the {@code OUTDATED_POLICY}, i.e. it must be revalidated.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class Fingerprints {
+
+	/**
+	 * The amount of hexadecimal characters of a fingerprint
+	 */
+	public static final int LENGTH = 8;
+	/**
+	 * The algorithm used to hash the content of a file
+	 */
+	public static final String ALGORITHM = "SHA-256";
+	/**
+	 * The caching rule of a file requested using its current fingerprint
+	 */
+	public static final CachePolicy IMMUTABLE_POLICY = new CachePolicy(null,
+			null, 31536000, true, false);
+	/**
+	 * The caching rule of a file requested using an outdated fingerprint
+	 */
+	public static final CachePolicy OUTDATED_POLICY = new CachePolicy(null,
+			null, -1, false, true);
+
+	private static final Pattern NAME_PATTERN = Pattern
+			.compile("^(.*)\\.([0-9a-f]{" + LENGTH + "})(\\.[^./]+)?$");
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The fingerprint of a specific version of a file.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	private static class Fingerprint {
+		private final String etag;
+		private final String hash;
+
+		public Fingerprint(final String etag, final String hash) {
+			this.etag = etag;
+			this.hash = hash;
+		}
+	}
+
+	private final LruCache<String, Fingerprint> fingerprints;
+
+	/**
+	 * Creates the fingerprints keeping at most {@code maxSize} fingerprints.
+	 * 
+	 * @param maxSize
+	 *            the maximal amount of fingerprints kept
+	 */
+	public Fingerprints(final int maxSize) {
+		this.fingerprints = new LruCache<String, Fingerprint>(maxSize, 0);
+	}
+
+	/**
+	 * Gets the fingerprint of the file of the specified meta-data, the
+	 * content is hashed if no fingerprint of the current version of the file
+	 * is known.
+	 * 
+	 * @param metaData
+	 *            the meta-data of the file
+	 * 
+	 * @return the fingerprint of the file
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public String get(final FileMetaData metaData) throws IOException {
+		final String key = metaData.getId();
+
+		final Fingerprint fingerprint = fingerprints.get(key);
+		if (fingerprint != null
+				&& fingerprint.etag.equals(metaData.getETag())) {
+			return fingerprint.hash;
+		}
+
+		final String hash = hash(metaData);
+		fingerprints.put(key, new Fingerprint(metaData.getETag(), hash));
+
+		return hash;
+	}
+
+	/**
+	 * Gets the caching rule of the file of the specified meta-data, which was
+	 * requested using the specified {@code fingerprint}.
+	 * 
+	 * @param metaData
+	 *            the meta-data of the file
+	 * @param fingerprint
+	 *            the fingerprint used to request the file
+	 * 
+	 * @return {@code IMMUTABLE_POLICY} if the fingerprint is the current one,
+	 *         otherwise {@code OUTDATED_POLICY}
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public CachePolicy getPolicy(final FileMetaData metaData,
+			final String fingerprint) throws IOException {
+		return get(metaData).equals(fingerprint) ? IMMUTABLE_POLICY
+				: OUTDATED_POLICY;
+	}
+
+	/**
+	 * Creates the URI of the file of the specified meta-data containing its
+	 * current fingerprint. The name of the file within the specified
+	 * {@code uri} is replaced by the fingerprinted name, or the fingerprinted
+	 * name is added if the {@code uri} points to a directory (i.e. if a
+	 * default file was resolved).
+	 * 
+	 * @param uri
+	 *            the URI (without any parameters) the file was resolved for
+	 * @param metaData
+	 *            the meta-data of the file
+	 * 
+	 * @return the URI containing the fingerprint
+	 * 
+	 * @throws IOException
+	 *             if the {@code uri} cannot be decoded or the file cannot be
+	 *             read
+	 */
+	public String createUri(final String uri, final FileMetaData metaData)
+			throws IOException {
+
+		// get the name of the file including the fingerprint
+		final String name = metaData.getName();
+		final String fingerprintedName = createName(name, get(metaData));
+		final String encodedName;
+		try {
+			encodedName = new URI(null, null, fingerprintedName, null)
+					.getRawPath();
+		} catch (final URISyntaxException e) {
+			throw new IOException(e);
+		}
+
+		// replace the name of the URI or add it if a directory is requested
+		String base = uri;
+		final int pos = base.lastIndexOf('/');
+		if (URLDecoder.decode(base.substring(pos + 1), "UTF-8").equals(name)) {
+			base = base.substring(0, pos + 1);
+		} else if (!base.endsWith("/")) {
+			base = base + "/";
+		}
+
+		return base + encodedName;
+	}
+
+	/**
+	 * Hashes the content of the file of the specified meta-data.
+	 * 
+	 * @param metaData
+	 *            the meta-data of the file
+	 * 
+	 * @return the fingerprint, i.e. the first {@code LENGTH} hexadecimal
+	 *         characters of the hash
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected String hash(final FileMetaData metaData) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IOException("The algorithm '" + ALGORITHM
+					+ "' isn't available.", e);
+		}
+
+		final InputStream in = metaData.openStream();
+		try {
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+
+		return hex(digest.digest(), LENGTH);
+	}
+
+	/**
+	 * Creates the hexadecimal representation of the first {@code length}
+	 * characters of the specified {@code hash}.
+	 * 
+	 * @param hash
+	 *            the hash to be represented
+	 * @param length
+	 *            the amount of hexadecimal characters, at most twice the
+	 *            length of the {@code hash}
+	 * 
+	 * @return the hexadecimal representation
+	 */
+	public static String hex(final byte[] hash, final int length) {
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			final int b = hash[i / 2] & 0xff;
+			chars[i] = HEX[i % 2 == 0 ? b >>> 4 : b & 0x0f];
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Gets the amount of fingerprints kept.
+	 * 
+	 * @return the amount of fingerprints kept
+	 */
+	public int size() {
+		return fingerprints.size();
+	}
+
+	/**
+	 * Creates the name of a file containing the specified {@code hash}, i.e.
+	 * the hash is inserted prior to the extension of the file.
+	 * 
+	 * @param name
+	 *            the name of the file
+	 * @param hash
+	 *            the fingerprint of the file
+	 * 
+	 * @return the name containing the fingerprint
+	 */
+	public static String createName(final String name, final String hash) {
+		final int pos = name.lastIndexOf('.');
+		if (pos <= 0) {
+			return name + "." + hash;
+		} else {
+			return name.substring(0, pos) + "." + hash + name.substring(pos);
+		}
+	}
+
+	/**
+	 * Parses the specified {@code path}, which might contain a fingerprint
+	 * within the name of the file.
+	 * 
+	 * @param path
+	 *            the path to be parsed
+	 * 
+	 * @return an array containing the path without the fingerprint and the
+	 *         fingerprint, or {@code null} if the path doesn't contain any
+	 *         fingerprint
+	 */
+	public static String[] parse(final String path) {
+		if (path == null) {
+			return null;
+		}
+
+		final int pos = path.lastIndexOf('/');
+		final Matcher matcher = NAME_PATTERN.matcher(path.substring(pos + 1));
+		if (!matcher.matches() || matcher.group(1).isEmpty()) {
+			return null;
+		}
+
+		final String ext = matcher.group(3) == null ? "" : matcher.group(3);
+		return new String[] {
+				path.substring(0, pos + 1) + matcher.group(1) + ext,
+				matcher.group(2) };
+	}
+}
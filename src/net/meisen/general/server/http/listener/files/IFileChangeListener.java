@@ -0,0 +1,62 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+
+/**
+ * A listener informed by the {@code FileWatcher} about changes of files
+ * within a watched directory.
+ * 
+ * @author pmeisen
+ * 
+ * @see FileWatcher
+ */
+public interface IFileChangeListener {
+
+	/**
+	 * The types of changes of a file.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	public enum Change {
+		/**
+		 * The file or directory was created
+		 */
+		CREATED,
+		/**
+		 * The file or directory was modified
+		 */
+		MODIFIED,
+		/**
+		 * The file or directory was deleted
+		 */
+		DELETED;
+	}
+
+	/**
+	 * Method called whenever a file or directory within the watched
+	 * {@code root} changed.
+	 * 
+	 * @param root
+	 *            the watched directory the listener is registered for
+	 * @param file
+	 *            the changed file or directory
+	 * @param change
+	 *            the type of the change
+	 * @param directory
+	 *            {@code true} if the changed file is (or was) a directory,
+	 *            otherwise {@code false}
+	 */
+	public void fileChanged(final File root, final File file,
+			final Change change, final boolean directory);
+
+	/**
+	 * Method called if changes of the watched {@code root} might have been
+	 * lost (e.g. because too many changes happened at once). The listener
+	 * must assume that anything within the {@code root} might have changed.
+	 * 
+	 * @param root
+	 *            the watched directory the listener is registered for
+	 */
+	public void overflow(final File root);
+}
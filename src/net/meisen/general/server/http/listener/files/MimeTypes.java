@@ -0,0 +1,259 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.meisen.general.genmisc.types.Files;
+
+import org.apache.http.entity.ContentType;
+
+/**
+ * A table of the {@code ContentType} instances by file-extension. The table
+ * is created from the defaults (see {@link #DEFAULTS_RESOURCE}) and
+ * additional mappings, the {@code ContentType} instances are created once
+ * and shared by all responses. The mime-type of a file with an unknown
+ * extension is determined by probing the file, the result is kept for the
+ * extension.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class MimeTypes {
+
+	/**
+	 * The resource defining the default mapping of file-extensions
+	 */
+	public static final String DEFAULTS_RESOURCE = "mimetypes.properties";
+	/**
+	 * The {@code ContentType} used if no other type can be determined
+	 */
+	public static final ContentType DEF_CONTENTTYPE = ContentType.APPLICATION_OCTET_STREAM;
+
+	private static Map<String, ContentType> defaults = null;
+
+	private final Map<String, ContentType> types;
+	private final ConcurrentMap<String, ContentType> probedTypes = new ConcurrentHashMap<String, ContentType>();
+
+	/**
+	 * Creates a table with the default mapping.
+	 */
+	public MimeTypes() {
+		this(null);
+	}
+
+	/**
+	 * Creates a table with the default mapping, extended (or overridden) by
+	 * the specified {@code mappings}.
+	 * 
+	 * @param mappings
+	 *            the additional mappings of file-extensions to mime-types
+	 *            (e.g. {@code text/html; charset=UTF-8}), can be {@code null}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a mime-type cannot be parsed
+	 */
+	public MimeTypes(final Map<String, String> mappings)
+			throws IllegalArgumentException {
+		final Map<String, ContentType> types = new HashMap<String, ContentType>(
+				getDefaults());
+
+		if (mappings != null) {
+			for (final Entry<String, String> mapping : mappings.entrySet()) {
+				types.put(normalize(mapping.getKey()),
+						parse(mapping.getValue()));
+			}
+		}
+
+		this.types = types;
+	}
+
+	/**
+	 * Gets the {@code ContentType} of the content described by the specified
+	 * {@code metaData}. The type of an entry of an archive is determined by
+	 * the extension of the entry only, because there is no file which could
+	 * be probed.
+	 * 
+	 * @param metaData
+	 *            the meta-data of the content to get the {@code ContentType}
+	 *            for
+	 * 
+	 * @return the {@code ContentType} of the content, never {@code null}
+	 */
+	public ContentType getContentType(final FileMetaData metaData) {
+		if (metaData instanceof ArchiveEntryMetaData) {
+			final String name = metaData.getName();
+			final int pos = name.lastIndexOf('.');
+			final ContentType type = pos == -1 ? null : getContentType(name
+					.substring(pos + 1));
+
+			return type == null ? DEF_CONTENTTYPE : type;
+		} else {
+			return getContentType(metaData.getFile());
+		}
+	}
+
+	/**
+	 * Gets the {@code ContentType} of the specified {@code file}.
+	 * 
+	 * @param file
+	 *            the file to get the {@code ContentType} for
+	 * 
+	 * @return the {@code ContentType} of the file, never {@code null}
+	 */
+	public ContentType getContentType(final File file) {
+		final String name = file.getName();
+		final int pos = name.lastIndexOf('.');
+		final String ext = pos == -1 ? null : normalize(name
+				.substring(pos + 1));
+
+		// check the table first
+		if (ext != null) {
+			ContentType type = types.get(ext);
+			if (type == null) {
+				type = probedTypes.get(ext);
+			}
+
+			if (type != null) {
+				return type;
+			}
+		}
+
+		// probe the file and keep the result for the extension
+		final ContentType probedType = probe(file);
+		if (ext != null) {
+			final ContentType type = probedTypes.putIfAbsent(ext, probedType);
+			return type == null ? probedType : type;
+		} else {
+			return probedType;
+		}
+	}
+
+	/**
+	 * Gets the {@code ContentType} defined for the specified
+	 * {@code extension}.
+	 * 
+	 * @param extension
+	 *            the file-extension (without any dot)
+	 * 
+	 * @return the {@code ContentType} or {@code null} if no type is defined or
+	 *         was probed for the extension
+	 */
+	public ContentType getContentType(final String extension) {
+		final String ext = normalize(extension);
+
+		final ContentType type = types.get(ext);
+		return type == null ? probedTypes.get(ext) : type;
+	}
+
+	/**
+	 * Gets the amount of extensions, for which the type was determined by
+	 * probing a file.
+	 * 
+	 * @return the amount of probed extensions
+	 */
+	public int getProbedExtensions() {
+		return probedTypes.size();
+	}
+
+	/**
+	 * Probes the {@code ContentType} of the specified {@code file}.
+	 * 
+	 * @param file
+	 *            the file to be probed
+	 * 
+	 * @return the probed {@code ContentType}
+	 */
+	protected ContentType probe(final File file) {
+		final String mimeType = Files.getMimeType(file);
+		if (mimeType == null) {
+			return DEF_CONTENTTYPE;
+		}
+
+		try {
+			return parse(mimeType);
+		} catch (final IllegalArgumentException e) {
+			return DEF_CONTENTTYPE;
+		}
+	}
+
+	/**
+	 * Parses the specified mime-type, which might contain parameters (e.g.
+	 * {@code text/html; charset=UTF-8}).
+	 * 
+	 * @param mimeType
+	 *            the mime-type to be parsed
+	 * 
+	 * @return the parsed {@code ContentType}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the mime-type cannot be parsed
+	 */
+	protected static ContentType parse(final String mimeType)
+			throws IllegalArgumentException {
+		if (mimeType == null || "".equals(mimeType.trim())) {
+			throw new IllegalArgumentException("The mime-type '" + mimeType
+					+ "' is invalid.");
+		}
+
+		try {
+			return ContentType.parse(mimeType.trim());
+		} catch (final Exception e) {
+			throw new IllegalArgumentException("The mime-type '" + mimeType
+					+ "' is invalid.", e);
+		}
+	}
+
+	/**
+	 * Gets the default mapping, which is loaded once from the
+	 * {@link #DEFAULTS_RESOURCE}.
+	 * 
+	 * @return the default mapping
+	 */
+	protected synchronized static Map<String, ContentType> getDefaults() {
+		if (defaults != null) {
+			return defaults;
+		}
+
+		final Properties properties = new Properties();
+		final InputStream in = MimeTypes.class
+				.getResourceAsStream(DEFAULTS_RESOURCE);
+		if (in != null) {
+			try {
+				properties.load(in);
+			} catch (final IOException e) {
+				// use the ones loaded so far
+			} finally {
+				try {
+					in.close();
+				} catch (final IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		final Map<String, ContentType> types = new HashMap<String, ContentType>();
+		for (final String ext : properties.stringPropertyNames()) {
+			types.put(normalize(ext), parse(properties.getProperty(ext)));
+		}
+
+		defaults = types;
+		return defaults;
+	}
+
+	private static String normalize(final String extension) {
+		String ext = extension.trim();
+		if (ext.startsWith(".")) {
+			ext = ext.substring(1);
+		}
+
+		return ext.toLowerCase(Locale.ENGLISH);
+	}
+}
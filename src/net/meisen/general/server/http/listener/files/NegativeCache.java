@@ -0,0 +1,185 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.meisen.general.server.http.listener.util.LruCache;
+
+/**
+ * A bounded cache of paths known not to be resolvable, i.e. paths which
+ * would lead to a {@code 404} without checking the file-system again. The
+ * exact paths are kept within a {@code LruCache}, which is guarded by a Bloom
+ * filter. The filter answers the lookup of most of the existing paths without
+ * entering the synchronized cache.
+ * 
+ * A Bloom filter doesn't support the removal of single entries, therefore
+ * the filter is rebuilt from the cached paths whenever it contains too many
+ * evicted ones. The cache has to be cleared whenever the document-root
+ * changes.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class NegativeCache {
+	private static final int BITS_PER_ENTRY = 10;
+	private static final int HASHES = 7;
+
+	private final LruCache<String, Boolean> paths;
+	private final int bits;
+	private final AtomicInteger additions = new AtomicInteger(0);
+
+	private volatile AtomicLongArray filter;
+
+	/**
+	 * Creates a cache which keeps at most {@code maxSize} paths, whereby each
+	 * path is kept for {@code ttl} milliseconds.
+	 * 
+	 * @param maxSize
+	 *            the maximal amount of paths, a value smaller or equal to
+	 *            {@code 0} disables the cache
+	 * @param ttl
+	 *            the time-to-live of a path in milliseconds, a value smaller
+	 *            or equal to {@code 0} keeps the paths until these are evicted
+	 */
+	public NegativeCache(final int maxSize, final long ttl) {
+		this.paths = new LruCache<String, Boolean>(maxSize, ttl);
+		this.bits = Math.max(64, maxSize * BITS_PER_ENTRY);
+		this.filter = new AtomicLongArray((bits + 63) / 64);
+	}
+
+	/**
+	 * Checks if the cache is enabled.
+	 * 
+	 * @return {@code true} if the cache is enabled, otherwise {@code false}
+	 */
+	public boolean isEnabled() {
+		return paths.isEnabled();
+	}
+
+	/**
+	 * Checks if the specified {@code path} is known not to be resolvable.
+	 * 
+	 * @param path
+	 *            the path to be checked
+	 * 
+	 * @return {@code true} if the path is known not to be resolvable,
+	 *         otherwise {@code false}
+	 */
+	public boolean contains(final String path) {
+		if (!isEnabled() || !mightContain(filter, path)) {
+			return false;
+		}
+
+		return paths.get(path) != null;
+	}
+
+	/**
+	 * Marks the specified {@code path} to be not resolvable.
+	 * 
+	 * @param path
+	 *            the path which cannot be resolved
+	 */
+	public void add(final String path) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		paths.put(path, Boolean.TRUE);
+		set(filter, path);
+
+		// rebuild the filter if it contains too many evicted paths
+		if (additions.incrementAndGet() > 2 * paths.getMaxSize()) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Removes all the paths, e.g. because a file was created.
+	 */
+	public void clear() {
+		paths.clear();
+		additions.set(0);
+		filter = new AtomicLongArray(filter.length());
+	}
+
+	/**
+	 * Gets the amount of paths kept.
+	 * 
+	 * @return the amount of paths kept
+	 */
+	public int size() {
+		return paths.size();
+	}
+
+	/**
+	 * Gets the amount of lookups answered by the cache, i.e. the amount of
+	 * lookups of the file-system saved.
+	 * 
+	 * @return the amount of lookups answered by the cache
+	 */
+	public long getHits() {
+		return paths.getHits();
+	}
+
+	private synchronized void rebuild() {
+		if (additions.get() <= 2 * paths.getMaxSize()) {
+			return;
+		}
+
+		final AtomicLongArray newFilter = new AtomicLongArray(filter.length());
+		for (final String path : paths.keys()) {
+			set(newFilter, path);
+		}
+
+		/*
+		 * paths added meanwhile might be missing within the new filter, which
+		 * only leads to an additional lookup of the file-system
+		 */
+		additions.set(paths.size());
+		filter = newFilter;
+	}
+
+	private void set(final AtomicLongArray filter, final String path) {
+		final int h1 = path.hashCode();
+		final int h2 = mix(h1);
+
+		for (int i = 0; i < HASHES; i++) {
+			final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+			final int pos = bit >>> 6;
+			final long mask = 1l << (bit & 63);
+
+			long value;
+			do {
+				value = filter.get(pos);
+			} while ((value & mask) == 0
+					&& !filter.compareAndSet(pos, value, value | mask));
+		}
+	}
+
+	private boolean mightContain(final AtomicLongArray filter,
+			final String path) {
+		final int h1 = path.hashCode();
+		final int h2 = mix(h1);
+
+		for (int i = 0; i < HASHES; i++) {
+			final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+			if ((filter.get(bit >>> 6) & (1l << (bit & 63))) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int mix(final int hash) {
+		int h = hash * 0x9e3779b9;
+		h ^= h >>> 16;
+		return h | 1;
+	}
+
+	@Override
+	public String toString() {
+		return "NegativeCache (" + paths.size() + " of "
+				+ paths.getMaxSize() + " paths)";
+	}
+}
@@ -0,0 +1,216 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Normalizes the paths of requested URIs without accessing the file-system.
+ * A normalized path is relative (i.e. it doesn't start with a {@code /}),
+ * uses {@code /} as the only separator and doesn't contain any empty,
+ * {@code .} or {@code ..} segments. Therefore resolving a normalized path
+ * against a canonical location of the document-root (e.g. using
+ * {@code new File(location, path)}) never leads to a file outside of the
+ * location, without canonicalizing the resolved file again. Symbolic links
+ * within a location are followed as before.
+ *
+ * A path is rejected (i.e. {@code null} is returned) if
+ * <ul>
+ * <li>it contains an invalid percent-encoding or the decoded bytes aren't
+ * valid UTF-8 (which includes overlong encodings like {@code %C0%AE}),</li>
+ * <li>it contains a null byte (encoded or not),</li>
+ * <li>one of its {@code ..} segments would leave the document-root, whereby
+ * encoded separators (i.e. {@code %2F} and {@code %5C}) and backslashes are
+ * handled like {@code /},</li>
+ * <li>a segment contains a {@code :} on file-systems using drive letters.</li>
+ * </ul>
+ *
+ * @author pmeisen
+ *
+ */
+public class PathNormalizer {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final boolean DRIVE_LETTERS = File.separatorChar == '\\';
+
+	/**
+	 * Determines the normalized path of the specified raw (i.e. still
+	 * percent-encoded) {@code uri}. The query and the fragment of the URI
+	 * are removed prior to decoding.
+	 *
+	 * @param uri
+	 *            the raw URI
+	 *
+	 * @return the normalized path, or {@code null} if the URI is rejected
+	 */
+	public static String normalizeUri(final String uri) {
+		return normalize(decode(stripQuery(uri)));
+	}
+
+	/**
+	 * Removes the query and the fragment of the specified raw {@code uri}.
+	 *
+	 * @param uri
+	 *            the raw URI
+	 *
+	 * @return the URI without query and fragment
+	 */
+	public static String stripQuery(final String uri) {
+		if (uri == null) {
+			return null;
+		}
+
+		for (int i = 0; i < uri.length(); i++) {
+			final char c = uri.charAt(i);
+			if (c == '?' || c == '#') {
+				return uri.substring(0, i);
+			}
+		}
+
+		return uri;
+	}
+
+	/**
+	 * Decodes the percent-encoded octets of the specified {@code path} using
+	 * UTF-8. A {@code +} is kept, because it doesn't encode a space within a
+	 * path.
+	 *
+	 * @param path
+	 *            the path to be decoded
+	 *
+	 * @return the decoded path, or {@code null} if the path is {@code null},
+	 *         contains an invalid encoding or a null byte
+	 */
+	public static String decode(final String path) {
+		if (path == null) {
+			return null;
+		}
+
+		// nothing to decode, just check for null bytes
+		final int first = path.indexOf('%');
+		if (first == -1) {
+			return path.indexOf('\0') == -1 ? path : null;
+		}
+
+		final StringBuilder sb = new StringBuilder(path.length());
+		sb.append(path, 0, first);
+
+		final byte[] bytes = new byte[path.length() / 3];
+		int i = first;
+		while (i < path.length()) {
+			final char c = path.charAt(i);
+			if (c == '\0') {
+				return null;
+			} else if (c != '%') {
+				sb.append(c);
+				i++;
+				continue;
+			}
+
+			// collect the sequence of encoded octets
+			int len = 0;
+			while (i < path.length() && path.charAt(i) == '%') {
+				if (i + 2 >= path.length()) {
+					return null;
+				}
+
+				final int hi = Character.digit(path.charAt(i + 1), 16);
+				final int lo = Character.digit(path.charAt(i + 2), 16);
+				if (hi == -1 || lo == -1) {
+					return null;
+				}
+
+				final byte b = (byte) ((hi << 4) + lo);
+				if (b == 0) {
+					return null;
+				}
+				bytes[len++] = b;
+				i += 3;
+			}
+
+			// decode the octets strictly
+			try {
+				final CharBuffer chars = UTF8.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPORT)
+						.onUnmappableCharacter(CodingErrorAction.REPORT)
+						.decode(ByteBuffer.wrap(bytes, 0, len));
+				sb.append(chars);
+			} catch (final CharacterCodingException e) {
+				return null;
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Normalizes the specified decoded {@code path}, i.e. removes empty and
+	 * {@code .} segments and resolves {@code ..} segments. Backslashes are
+	 * handled as separators.
+	 *
+	 * @param path
+	 *            the decoded path to be normalized
+	 *
+	 * @return the normalized path, or {@code null} if the path is
+	 *         {@code null}, contains a null byte or points outside of the
+	 *         document-root
+	 */
+	public static String normalize(final String path) {
+		if (path == null) {
+			return null;
+		}
+
+		final int length = path.length();
+		final char[] result = new char[length];
+		final int[] starts = new int[length / 2 + 1];
+		int segments = 0;
+		int pos = 0;
+
+		int i = 0;
+		while (i < length) {
+
+			// skip the separators
+			char c = path.charAt(i);
+			if (c == '/' || c == '\\') {
+				i++;
+				continue;
+			}
+
+			// determine the end of the segment
+			final int start = i;
+			boolean colon = false;
+			while (i < length && (c = path.charAt(i)) != '/' && c != '\\') {
+				if (c == '\0') {
+					return null;
+				} else if (c == ':') {
+					colon = true;
+				}
+				i++;
+			}
+			final int segmentLength = i - start;
+
+			if (segmentLength == 1 && path.charAt(start) == '.') {
+				continue;
+			} else if (segmentLength == 2 && path.charAt(start) == '.'
+					&& path.charAt(start + 1) == '.') {
+				if (segments == 0) {
+					return null;
+				}
+				pos = starts[--segments];
+			} else if (colon && DRIVE_LETTERS) {
+				return null;
+			} else {
+				starts[segments++] = pos;
+				if (pos > 0) {
+					result[pos++] = '/';
+				}
+				path.getChars(start, i, result, pos);
+				pos += segmentLength;
+			}
+		}
+
+		return new String(result, 0, pos);
+	}
+}
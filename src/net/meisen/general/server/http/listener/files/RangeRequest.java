@@ -0,0 +1,264 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Parser of the {@code Range} header of a request (see RFC 7233). Only the
+ * unit {@code bytes} is supported, other units are ignored.
+ *
+ * A request with an {@code If-Range} header, which doesn't match the current
+ * version of the file, is answered with the complete file. The requested
+ * ranges are answered with {@code 206 Partial Content}, a single range is
+ * sent as {@code ZeroCopyFileEntity} and several ranges as
+ * {@code ByteRangesEntity}, i.e. using positioned transfers of the file.
+ *
+ * @author pmeisen
+ *
+ */
+public class RangeRequest {
+
+	/**
+	 * The maximal amount of ranges accepted within one request, requests with
+	 * more ranges are answered with the complete representation
+	 */
+	public static final int MAX_RANGES = 32;
+
+	private static final String UNIT = "bytes=";
+
+	/**
+	 * Determines the ranges of the file of the specified {@code metaData}
+	 * requested by the {@code request}. The {@code Range} header is ignored,
+	 * if an {@code If-Range} header is specified, which doesn't match the
+	 * current version of the file.
+	 *
+	 * @param request
+	 *            the request to determine the ranges for
+	 * @param metaData
+	 *            the meta-data of the requested file
+	 *
+	 * @return {@code null} if the complete file should be sent, an empty list
+	 *         if the requested ranges are not satisfiable, otherwise the
+	 *         ranges to be sent
+	 */
+	public static List<ByteRange> determine(final HttpRequest request,
+			final FileMetaData metaData) {
+		final Header range = request.getFirstHeader("Range");
+		if (range == null) {
+			return null;
+		}
+
+		// check the If-Range, which needs a strong validator
+		final Header ifRange = request.getFirstHeader("If-Range");
+		if (ifRange != null) {
+			final String value = ifRange.getValue().trim();
+
+			if (value.startsWith("\"")) {
+				if (!metaData.getETag().equals(value)) {
+					return null;
+				}
+			} else if (!metaData.getLastModifiedHeader().equals(value)) {
+				return null;
+			}
+		}
+
+		return parse(range.getValue(), metaData.getLength());
+	}
+
+	/**
+	 * Fills the {@code response} with the specified {@code ranges} of the
+	 * file of the {@code metaData}. If none of the ranges is satisfiable, the
+	 * response is answered with {@code 416 Range Not Satisfiable}.
+	 *
+	 * @param response
+	 *            the response to be filled
+	 * @param metaData
+	 *            the meta-data of the requested file
+	 * @param ranges
+	 *            the ranges to be sent, see
+	 *            {@link #determine(HttpRequest, FileMetaData)}
+	 * @param contentType
+	 *            the content-type of the file
+	 * @param socketChannel
+	 *            the channel of the socket to transfer the ranges to
+	 *            directly, can be {@code null}
+	 */
+	public static void respond(final HttpResponse response,
+			final FileMetaData metaData, final List<ByteRange> ranges,
+			final ContentType contentType,
+			final WritableByteChannel socketChannel) {
+		final long length = metaData.getLength();
+
+		if (ranges.size() == 0) {
+			response.setStatusCode(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader("Content-Range", "bytes */" + length);
+		} else if (ranges.size() == 1) {
+			final ByteRange range = ranges.get(0);
+
+			response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", range.toContentRange(length));
+			response.setEntity(new ZeroCopyFileEntity(metaData.getFile(),
+					range.getFirst(), range.getLength(), contentType,
+					socketChannel));
+		} else {
+			response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+			response.setEntity(new ByteRangesEntity(metaData.getFile(),
+					length, ranges, contentType, socketChannel));
+		}
+	}
+
+	/**
+	 * Parses the specified {@code Range} header for a representation of the
+	 * specified {@code length}.
+	 *
+	 * @param header
+	 *            the value of the {@code Range} header
+	 * @param length
+	 *            the length of the complete representation
+	 *
+	 * @return {@code null} if the header has to be ignored (i.e. if it is not
+	 *         defined, invalid, uses another unit or defines too many ranges),
+	 *         an empty list if none of the ranges is satisfiable, otherwise
+	 *         the satisfiable ranges
+	 */
+	public static List<ByteRange> parse(final String header, final long length) {
+		if (header == null) {
+			return null;
+		}
+
+		final String value = header.trim();
+		if (!value.regionMatches(true, 0, UNIT, 0, UNIT.length())) {
+			return null;
+		}
+
+		final String[] specs = value.substring(UNIT.length()).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		final List<ByteRange> ranges = new ArrayList<ByteRange>();
+		for (final String rawSpec : specs) {
+			final String spec = rawSpec.trim();
+			final int pos = spec.indexOf('-');
+			if (pos == -1) {
+				return null;
+			}
+
+			final long first = parsePosition(spec.substring(0, pos));
+			final long last = parsePosition(spec.substring(pos + 1));
+
+			if (first == -2 || last == -2) {
+				return null;
+			}
+			// a suffix range, i.e. the last n bytes
+			else if (first == -1) {
+				if (last == -1) {
+					return null;
+				} else if (last > 0 && length > 0) {
+					ranges.add(new ByteRange(Math.max(0, length - last),
+							length - 1));
+				}
+			}
+			// a range starting at first
+			else if (last != -1 && last < first) {
+				return null;
+			} else if (first < length) {
+				final long end = last == -1 ? length - 1 : Math.min(last,
+						length - 1);
+				ranges.add(new ByteRange(first, end));
+			}
+		}
+
+		return coalesce(ranges);
+	}
+
+	/**
+	 * Merges overlapping or adjacent ranges, if the ranges aren't already
+	 * ascending and disjoint.
+	 *
+	 * @param ranges
+	 *            the ranges to be merged
+	 *
+	 * @return the merged ranges
+	 */
+	protected static List<ByteRange> coalesce(final List<ByteRange> ranges) {
+		if (ranges.size() < 2 || isAscendingAndDisjoint(ranges)) {
+			return ranges;
+		}
+
+		final List<ByteRange> sorted = new ArrayList<ByteRange>(ranges);
+		Collections.sort(sorted, new Comparator<ByteRange>() {
+
+			@Override
+			public int compare(final ByteRange r1, final ByteRange r2) {
+				return r1.getFirst() < r2.getFirst() ? -1 : (r1.getFirst() == r2
+						.getFirst() ? 0 : 1);
+			}
+		});
+
+		final List<ByteRange> merged = new ArrayList<ByteRange>();
+		ByteRange current = sorted.get(0);
+		for (int i = 1; i < sorted.size(); i++) {
+			final ByteRange next = sorted.get(i);
+			if (next.getFirst() <= current.getLast() + 1) {
+				current = new ByteRange(current.getFirst(), Math.max(
+						current.getLast(), next.getLast()));
+			} else {
+				merged.add(current);
+				current = next;
+			}
+		}
+		merged.add(current);
+
+		return merged;
+	}
+
+	private static boolean isAscendingAndDisjoint(final List<ByteRange> ranges) {
+		for (int i = 1; i < ranges.size(); i++) {
+			if (ranges.get(i).getFirst() <= ranges.get(i - 1).getLast() + 1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Parses a position of a range.
+	 *
+	 * @param value
+	 *            the value to be parsed
+	 *
+	 * @return the position, {@code -1} if no position is defined, or
+	 *         {@code -2} if the value is invalid
+	 */
+	private static long parsePosition(final String value) {
+		final String trimmed = value.trim();
+		if (trimmed.isEmpty()) {
+			return -1;
+		}
+
+		for (int i = 0; i < trimmed.length(); i++) {
+			final char c = trimmed.charAt(i);
+			if (c < '0' || c > '9') {
+				return -2;
+			}
+		}
+
+		try {
+			return Long.parseLong(trimmed);
+		} catch (final NumberFormatException e) {
+			// the value is too large, so use the largest possible
+			return Long.MAX_VALUE;
+		}
+	}
+}
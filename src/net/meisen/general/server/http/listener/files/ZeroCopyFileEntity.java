@@ -0,0 +1,271 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.io.ContentLengthOutputStream;
+import org.apache.http.impl.io.IdentityOutputStream;
+
+/**
+ * An {@code HttpEntity} which transfers (a region of) a file using
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. If a
+ * channel of the socket is available and the content is not wrapped (e.g.
+ * chunked) the bytes are transferred directly to the socket, so that the
+ * operating system can use {@code sendfile}. Otherwise the bytes are copied
+ * to the {@code OutputStream} of the connection using a channel wrapping the
+ * stream, i.e. through a buffer on the heap.
+ * <p>
+ * <b>Note:</b> Only sockets accepted by a {@code ServerSocketChannel}
+ * provide a channel. The {@code HttpListener} accepts its connections using
+ * a classic {@code ServerSocket}, i.e. with the current acceptor the bytes
+ * are always copied through the {@code OutputStream}.
+ *
+ * @author pmeisen
+ *
+ */
+public class ZeroCopyFileEntity extends AbstractHttpEntity {
+
+	/**
+	 * {@code InputStream} which reads at most a specified amount of bytes.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		private long remaining;
+
+		public LimitedInputStream(final InputStream in, final long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+
+			final int b = super.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+
+			final int read = super.read(b, off,
+					(int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+	}
+
+	private final File file;
+	private final long offset;
+	private final long length;
+	private final WritableByteChannel socketChannel;
+
+	/**
+	 * Creates an entity for the whole {@code file}.
+	 *
+	 * @param file
+	 *            the file to be transferred
+	 * @param contentType
+	 *            the {@code ContentType} of the file, can be {@code null}
+	 * @param socketChannel
+	 *            the channel of the socket, can be {@code null} if the socket
+	 *            doesn't provide any channel
+	 */
+	public ZeroCopyFileEntity(final File file, final ContentType contentType,
+			final WritableByteChannel socketChannel) {
+		this(file, 0, file.length(), contentType, socketChannel);
+	}
+
+	/**
+	 * Creates an entity for the specified region of the {@code file}.
+	 *
+	 * @param file
+	 *            the file to be transferred
+	 * @param offset
+	 *            the offset of the first byte to be transferred
+	 * @param length
+	 *            the amount of bytes to be transferred
+	 * @param contentType
+	 *            the {@code ContentType} of the file, can be {@code null}
+	 * @param socketChannel
+	 *            the channel of the socket, can be {@code null} if the socket
+	 *            doesn't provide any channel
+	 */
+	public ZeroCopyFileEntity(final File file, final long offset,
+			final long length, final ContentType contentType,
+			final WritableByteChannel socketChannel) {
+		if (file == null) {
+			throw new IllegalArgumentException("The file cannot be null.");
+		} else if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException(
+					"The offset and the length must be positive.");
+		}
+
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+		this.socketChannel = socketChannel;
+
+		if (contentType != null) {
+			setContentType(contentType.toString());
+		}
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public long getContentLength() {
+		return length;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final FileChannel channel = raf.getChannel();
+		channel.position(offset);
+
+		return new LimitedInputStream(Channels.newInputStream(channel),
+				length);
+	}
+
+	@Override
+	public void writeTo(final OutputStream outstream) throws IOException {
+		if (outstream == null) {
+			throw new IllegalArgumentException(
+					"The output stream cannot be null.");
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+
+			final WritableByteChannel target = determineTarget(outstream,
+					socketChannel);
+			transfer(channel, offset, length, target);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Determines the channel to write the bytes of a file to. If the bytes can
+	 * be transferred directly to the channel of the socket (i.e. if a channel
+	 * is available and the {@code outstream} doesn't modify the transferred
+	 * bytes), the {@code outstream} is flushed and the {@code socketChannel}
+	 * is returned. Otherwise a channel writing to the {@code outstream} is
+	 * returned.
+	 *
+	 * @param outstream
+	 *            the {@code OutputStream} of the connection
+	 * @param socketChannel
+	 *            the channel of the socket, can be {@code null}
+	 *
+	 * @return the channel to write to
+	 *
+	 * @throws IOException
+	 *             if the {@code outstream} cannot be flushed
+	 */
+	public static WritableByteChannel determineTarget(
+			final OutputStream outstream,
+			final WritableByteChannel socketChannel) throws IOException {
+		final boolean direct = outstream instanceof ContentLengthOutputStream
+				|| outstream instanceof IdentityOutputStream;
+		if (socketChannel != null && direct) {
+
+			// make sure everything buffered (i.e. the header) is sent
+			outstream.flush();
+			return socketChannel;
+		} else {
+			return Channels.newChannel(outstream);
+		}
+	}
+
+	/**
+	 * Transfers the specified region of the {@code channel} to the
+	 * {@code target}.
+	 *
+	 * @param channel
+	 *            the {@code FileChannel} to read from
+	 * @param offset
+	 *            the position of the first byte to be transferred
+	 * @param length
+	 *            the amount of bytes to be transferred
+	 * @param target
+	 *            the channel to write to
+	 *
+	 * @throws IOException
+	 *             if the transfer fails, e.g. if the file was truncated
+	 */
+	public static void transfer(final FileChannel channel, final long offset,
+			final long length, final WritableByteChannel target)
+			throws IOException {
+		long position = offset;
+		long remaining = length;
+		while (remaining > 0) {
+			final long transferred = channel.transferTo(position, remaining,
+					target);
+			if (transferred <= 0 && position >= channel.size()) {
+				throw new IOException(
+						"The file was truncated while being sent.");
+			}
+
+			position += transferred;
+			remaining -= transferred;
+		}
+	}
+
+	/**
+	 * Gets the transferred file.
+	 *
+	 * @return the transferred file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the offset of the first transferred byte.
+	 *
+	 * @return the offset of the first transferred byte
+	 */
+	public long getOffset() {
+		return offset;
+	}
+}
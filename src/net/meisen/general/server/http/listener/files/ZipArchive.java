@@ -0,0 +1,418 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A ZIP (or JAR) archive, which is mapped into memory. The central directory
+ * of the archive is read once, when the archive is opened, and kept as index
+ * of the entries by name. The content of an entry is a slice of the mapping,
+ * i.e. reading an entry doesn't need any further access of the file-system.
+ * 
+ * The mapping is never modified and not unmapped explicitly, it's released
+ * by the garbage collector as soon as the archive and its entries aren't
+ * used anymore. Changes of the file are not reflected, i.e. a changed file
+ * has to be opened as new {@code ZipArchive}. The file must therefore be
+ * replaced atomically (i.e. by renaming a new file to its name), because
+ * truncating or rewriting the mapped file in place may crash the process
+ * (e.g. with a {@code SIGBUS}) or lead to corrupted content.
+ * 
+ * Only the methods {@code STORED} and {@code DEFLATED} are supported, other
+ * entries (as well as encrypted ones) are ignored. Archives using ZIP64
+ * extensions (i.e. larger than 4 GB or with more than 65535 entries) are not
+ * supported.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class ZipArchive {
+	private static final int EOCD_SIGNATURE = 0x06054b50;
+	private static final int CEN_SIGNATURE = 0x02014b50;
+	private static final int LOC_SIGNATURE = 0x04034b50;
+	private static final int EOCD_SIZE = 22;
+	private static final int CEN_SIZE = 46;
+	private static final int LOC_SIZE = 30;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset CP437 = Charset.forName("ISO-8859-1");
+
+	/**
+	 * The method of an entry, which is stored without compression
+	 */
+	public static final int STORED = 0;
+	/**
+	 * The method of an entry, which is compressed using deflate
+	 */
+	public static final int DEFLATED = 8;
+
+	/**
+	 * An entry of the archive.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	public class Entry {
+		private final String name;
+		private final int method;
+		private final int offset;
+		private final int compressedSize;
+		private final long size;
+		private final long crc;
+		private final long lastModified;
+
+		private volatile long adler32 = -1;
+
+		private Entry(final String name, final int method, final int offset,
+				final int compressedSize, final long size, final long crc,
+				final long lastModified) {
+			this.name = name;
+			this.method = method;
+			this.offset = offset;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.crc = crc;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Gets the name of the entry.
+		 * 
+		 * @return the name of the entry
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the method used to store the entry, i.e. {@code STORED} or
+		 * {@code DEFLATED}.
+		 * 
+		 * @return the method used to store the entry
+		 */
+		public int getMethod() {
+			return method;
+		}
+
+		/**
+		 * Checks if the entry is compressed using deflate.
+		 * 
+		 * @return {@code true} if the entry is deflated, otherwise
+		 *         {@code false}
+		 */
+		public boolean isDeflated() {
+			return method == DEFLATED;
+		}
+
+		/**
+		 * Gets the size of the (uncompressed) content.
+		 * 
+		 * @return the size of the content
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Gets the size of the data stored within the archive.
+		 * 
+		 * @return the size of the stored data
+		 */
+		public int getCompressedSize() {
+			return compressedSize;
+		}
+
+		/**
+		 * Gets the CRC-32 of the (uncompressed) content.
+		 * 
+		 * @return the CRC-32 of the content
+		 */
+		public long getCrc() {
+			return crc;
+		}
+
+		/**
+		 * Gets the time of the last modification.
+		 * 
+		 * @return the time of the last modification in milliseconds
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Gets the data of the entry as stored within the archive (i.e.
+		 * compressed if the entry is deflated).
+		 * 
+		 * @return a read-only slice of the mapping
+		 */
+		public ByteBuffer getData() {
+			return slice(offset, compressedSize);
+		}
+
+		/**
+		 * Opens a stream to read the (uncompressed) content of the entry.
+		 * 
+		 * @return the stream to read the content
+		 */
+		public InputStream openStream() {
+			final InputStream in = new ByteBufferInputStream(getData());
+			if (!isDeflated()) {
+				return in;
+			}
+
+			final Inflater inflater = new Inflater(true);
+			return new InflaterInputStream(in, inflater, 8192) {
+				private boolean closed = false;
+
+				@Override
+				public void close() throws IOException {
+					if (!closed) {
+						closed = true;
+						inflater.end();
+						super.close();
+					}
+				}
+			};
+		}
+
+		/**
+		 * Gets the Adler-32 checksum of the (uncompressed) content, which is
+		 * needed to wrap the deflated data into the zlib format. The checksum
+		 * is calculated once, when it's requested for the first time.
+		 * 
+		 * @return the Adler-32 checksum of the content
+		 * 
+		 * @throws IOException
+		 *             if the data cannot be inflated
+		 */
+		public long getAdler32() throws IOException {
+			if (adler32 == -1) {
+				final Adler32 checksum = new Adler32();
+				final InputStream in = openStream();
+				try {
+					final byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						checksum.update(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+
+				adler32 = checksum.getValue();
+			}
+
+			return adler32;
+		}
+
+		/**
+		 * Gets the archive the entry belongs to.
+		 * 
+		 * @return the archive the entry belongs to
+		 */
+		public ZipArchive getArchive() {
+			return ZipArchive.this;
+		}
+
+		@Override
+		public String toString() {
+			return file.getPath() + "!/" + name;
+		}
+	}
+
+	private final File file;
+	private final MappedByteBuffer mapping;
+	private final Map<String, Entry> entries;
+
+	/**
+	 * Opens the specified archive, i.e. maps it into memory and reads the
+	 * central directory.
+	 * 
+	 * @param file
+	 *            the archive to be opened
+	 * 
+	 * @throws IOException
+	 *             if the archive cannot be read or is invalid
+	 */
+	public ZipArchive(final File file) throws IOException {
+		this.file = file;
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("The archive '" + file
+						+ "' is too large to be mapped.");
+			}
+
+			this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			this.mapping.order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			raf.close();
+		}
+
+		this.entries = Collections.unmodifiableMap(readCentralDirectory());
+	}
+
+	/**
+	 * Checks if the specified file is an archive supported by the
+	 * {@code ZipArchive}, i.e. if it's a {@code .zip} or {@code .jar} file.
+	 * 
+	 * @param file
+	 *            the file to be checked
+	 * 
+	 * @return {@code true} if the file is an archive, otherwise {@code false}
+	 */
+	public static boolean isArchive(final File file) {
+		final String name = file.getName().toLowerCase(Locale.ENGLISH);
+		return file.isFile() && (name.endsWith(".zip") || name.endsWith(".jar"));
+	}
+
+	/**
+	 * Gets the entry with the specified {@code name}.
+	 * 
+	 * @param name
+	 *            the name of the entry, i.e. the path within the archive
+	 *            without any leading {@code /}
+	 * 
+	 * @return the entry, or {@code null} if no such entry exists
+	 */
+	public Entry getEntry(final String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Gets all the entries by name, directories are not included.
+	 * 
+	 * @return the entries by name
+	 */
+	public Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Gets the file of the archive.
+	 * 
+	 * @return the file of the archive
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	private ByteBuffer slice(final int position, final int length) {
+		final ByteBuffer buffer = mapping.duplicate();
+		buffer.position(position);
+		buffer.limit(position + length);
+
+		return buffer.slice().asReadOnlyBuffer();
+	}
+
+	private Map<String, Entry> readCentralDirectory() throws IOException {
+		final int eocd = findEndOfCentralDirectory();
+		final int count = mapping.getShort(eocd + 10) & 0xffff;
+		final long cenOffset = mapping.getInt(eocd + 16) & 0xffffffffl;
+		if (count == 0xffff || cenOffset == 0xffffffffl) {
+			throw new IOException("The archive '" + file
+					+ "' uses ZIP64 extensions, which are not supported.");
+		}
+
+		final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		int pos = (int) cenOffset;
+		for (int i = 0; i < count; i++) {
+			if (pos + CEN_SIZE > mapping.limit()
+					|| mapping.getInt(pos) != CEN_SIGNATURE) {
+				throw new IOException("The central directory of the archive '"
+						+ file + "' is invalid.");
+			}
+
+			final int flags = mapping.getShort(pos + 8) & 0xffff;
+			final int method = mapping.getShort(pos + 10) & 0xffff;
+			final int time = mapping.getShort(pos + 12) & 0xffff;
+			final int date = mapping.getShort(pos + 14) & 0xffff;
+			final long crc = mapping.getInt(pos + 16) & 0xffffffffl;
+			final long compressedSize = mapping.getInt(pos + 20) & 0xffffffffl;
+			final long size = mapping.getInt(pos + 24) & 0xffffffffl;
+			final int nameLength = mapping.getShort(pos + 28) & 0xffff;
+			final int extraLength = mapping.getShort(pos + 30) & 0xffff;
+			final int commentLength = mapping.getShort(pos + 32) & 0xffff;
+			final long locOffset = mapping.getInt(pos + 42) & 0xffffffffl;
+
+			final byte[] nameBytes = new byte[nameLength];
+			final ByteBuffer nameBuffer = mapping.duplicate();
+			nameBuffer.position(pos + CEN_SIZE);
+			nameBuffer.get(nameBytes);
+			final String name = new String(nameBytes,
+					(flags & 0x800) == 0 ? CP437 : UTF8);
+
+			pos += CEN_SIZE + nameLength + extraLength + commentLength;
+
+			// skip directories, encrypted and unsupported entries
+			if (name.endsWith("/") || (flags & 0x1) != 0
+					|| (method != STORED && method != DEFLATED)) {
+				continue;
+			}
+
+			// the data follows the local header
+			final int loc = (int) locOffset;
+			if (loc + LOC_SIZE > mapping.limit()
+					|| mapping.getInt(loc) != LOC_SIGNATURE) {
+				throw new IOException("The local header of the entry '"
+						+ name + "' of the archive '" + file
+						+ "' is invalid.");
+			}
+			final int dataOffset = loc + LOC_SIZE
+					+ (mapping.getShort(loc + 26) & 0xffff)
+					+ (mapping.getShort(loc + 28) & 0xffff);
+			if (dataOffset + compressedSize > mapping.limit()) {
+				throw new IOException("The data of the entry '" + name
+						+ "' of the archive '" + file + "' is invalid.");
+			}
+
+			entries.put(name, new Entry(name, method, dataOffset,
+					(int) compressedSize, size, crc, dosToJavaTime(date, time)));
+		}
+
+		return entries;
+	}
+
+	private int findEndOfCentralDirectory() throws IOException {
+		final int min = Math.max(0, mapping.limit() - EOCD_SIZE - 0xffff);
+		for (int pos = mapping.limit() - EOCD_SIZE; pos >= min; pos--) {
+			if (mapping.getInt(pos) == EOCD_SIGNATURE) {
+				return pos;
+			}
+		}
+
+		throw new IOException("The file '" + file
+				+ "' is not a valid archive.");
+	}
+
+	private static long dosToJavaTime(final int date, final int time) {
+		final Calendar cal = new GregorianCalendar(((date >> 9) & 0x7f) + 1980,
+				((date >> 5) & 0x0f) - 1, date & 0x1f, (time >> 11) & 0x1f,
+				(time >> 5) & 0x3f, (time << 1) & 0x3e);
+		return cal.getTimeInMillis();
+	}
+
+	@Override
+	public String toString() {
+		return file.getPath() + " (" + entries.size() + " entries)";
+	}
+}
@@ -0,0 +1,218 @@
+package net.meisen.general.server.http.listener.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
+
+/**
+ * A ZIP archive of several files, which is created while it's written (e.g.
+ * as content of an {@code EntityTemplate}). Neither the archive nor a file
+ * is kept in memory or written to disk, i.e. the files are read while the
+ * archive is written.
+ * 
+ * A file is either added deflated or stored. A stored file needs its CRC-32
+ * prior to writing it, therefore it's read twice (except for entries of a
+ * {@code ZipArchive}, which provide the CRC-32).
+ * 
+ * @author pmeisen
+ * 
+ */
+public class ZipBundle implements ContentProducer {
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The content-type of a bundle
+	 */
+	public static final ContentType CONTENTTYPE = ContentType
+			.create("application/zip");
+
+	/**
+	 * A file of the bundle.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	private static class BundleEntry {
+		private final String name;
+		private final FileMetaData metaData;
+		private final boolean deflate;
+
+		public BundleEntry(final String name, final FileMetaData metaData,
+				final boolean deflate) {
+			this.name = name;
+			this.metaData = metaData;
+			this.deflate = deflate;
+		}
+	}
+
+	private final List<BundleEntry> entries = new ArrayList<BundleEntry>();
+
+	/**
+	 * Adds the file described by the {@code metaData} to the bundle.
+	 * 
+	 * @param name
+	 *            the name of the file within the bundle
+	 * @param metaData
+	 *            the meta-data of the file
+	 * @param deflate
+	 *            {@code true} if the file should be deflated, {@code false}
+	 *            if it should be stored
+	 */
+	public void add(final String name, final FileMetaData metaData,
+			final boolean deflate) {
+		entries.add(new BundleEntry(name, metaData, deflate));
+	}
+
+	/**
+	 * Gets the amount of files of the bundle.
+	 * 
+	 * @return the amount of files of the bundle
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Creates the chunked entity sending the bundle, i.e. the bundle is
+	 * written while the entity is sent.
+	 * 
+	 * @return the entity sending the bundle
+	 */
+	public HttpEntity createEntity() {
+		final EntityTemplate entity = new EntityTemplate(this);
+		entity.setContentType(CONTENTTYPE.toString());
+		entity.setChunked(true);
+
+		return entity;
+	}
+
+	/**
+	 * Parses the comma separated {@code list} of paths, which are relative to
+	 * the directory of the bundle.
+	 * 
+	 * @param list
+	 *            the comma separated list of paths
+	 * 
+	 * @return the normalized paths, or {@code null} if a path is empty or
+	 *         points outside of the directory
+	 */
+	public static Set<String> parseNames(final String list) {
+		final Set<String> names = new LinkedHashSet<String>();
+		for (final String name : list.split(",")) {
+			final String normName = PathNormalizer.normalize(name.trim());
+			if (normName == null || normName.isEmpty()) {
+				return null;
+			}
+			names.add(normName);
+		}
+
+		return names;
+	}
+
+	/**
+	 * Creates the name of the file of the bundle of the specified directory,
+	 * i.e. the name of the directory (or {@code bundle} for the root) with
+	 * the extension {@code .zip}.
+	 * 
+	 * @param dir
+	 *            the normalized path of the directory
+	 * 
+	 * @return the name of the file, which can be quoted safely
+	 */
+	public static String createFileName(final String dir) {
+		final String dirName = dir.substring(dir.lastIndexOf('/') + 1);
+		return (dirName.isEmpty() ? "bundle" : dirName).replaceAll(
+				"[\"\\\\]", "_") + ".zip";
+	}
+
+	@Override
+	public void writeTo(final OutputStream outstream) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+
+		// the stream isn't closed, because that would close the outstream
+		final ZipOutputStream zip = new ZipOutputStream(outstream);
+		zip.setLevel(Deflater.BEST_SPEED);
+
+		for (final BundleEntry entry : entries) {
+			final ZipEntry zipEntry = new ZipEntry(entry.name);
+			zipEntry.setTime(entry.metaData.getLastModified());
+
+			if (!entry.deflate) {
+				final long[] checksum = checksum(entry.metaData, buffer);
+
+				zipEntry.setMethod(ZipEntry.STORED);
+				zipEntry.setSize(checksum[0]);
+				zipEntry.setCompressedSize(checksum[0]);
+				zipEntry.setCrc(checksum[1]);
+			}
+
+			zip.putNextEntry(zipEntry);
+			final InputStream in = entry.metaData.openStream();
+			try {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					zip.write(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+			zip.closeEntry();
+		}
+
+		zip.finish();
+		outstream.flush();
+	}
+
+	/**
+	 * Determines the size and the CRC-32 of the file described by the
+	 * specified {@code metaData}.
+	 * 
+	 * @param metaData
+	 *            the meta-data of the file
+	 * @param buffer
+	 *            the buffer to be used to read the file
+	 * 
+	 * @return the size and the CRC-32 of the file
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected long[] checksum(final FileMetaData metaData, final byte[] buffer)
+			throws IOException {
+
+		// the entries of an archive know their checksum
+		if (metaData instanceof ArchiveEntryMetaData) {
+			final ZipArchive.Entry entry = ((ArchiveEntryMetaData) metaData)
+					.getEntry();
+			return new long[] { entry.getSize(), entry.getCrc() };
+		}
+
+		final CRC32 crc = new CRC32();
+		long size = 0;
+		final InputStream in = metaData.openStream();
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+				size += read;
+			}
+		} finally {
+			in.close();
+		}
+
+		return new long[] { size, crc.getValue() };
+	}
+}
@@ -0,0 +1,659 @@
+package net.meisen.general.server.http.listener.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
+import net.meisen.general.sbconfigurator.api.IConfiguration;
+import net.meisen.general.server.http.listener.exceptions.FileHandlerException;
+import net.meisen.general.server.http.listener.files.AcceptEncoding;
+import net.meisen.general.server.http.listener.files.FileMetaData;
+import net.meisen.general.server.http.listener.files.Fingerprints;
+import net.meisen.general.server.http.listener.files.PathNormalizer;
+import net.meisen.general.server.http.listener.util.ExtensionUtilities;
+import net.meisen.general.server.http.listener.util.HttpDateUtilities;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.MethodNotSupportedException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+/**
+ * The <code>ComboHandler</code> is used to request several static files
+ * (e.g. the scripts or style-sheets of a page) using one request. The paths
+ * of the files are listed within the query of the request, the response
+ * contains the concatenated contents of the files. The document-root is
+ * defined like the one of the {@link FileHandler}, i.e. the files are
+ * resolved using the same locations, default files, caches and index.
+ *
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;combo urlmatcher=&quot;/combo&quot;&gt;C:\web-root\&lt;/combo&gt;
+ *     &lt;docroot&gt;C:\web-root\&lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
+ *
+ * The request <code>/combo?js/lib.js&amp;js/app.js</code> is answered with
+ * the content of <code>js/lib.js</code> followed by the content of
+ * <code>js/app.js</code>, a line-break is added between the files if a file
+ * doesn't end with one. All the files must have the same mime-type.
+ * Parameters within the query (i.e. parts containing a <code>=</code>, e.g.
+ * <code>v=3</code>) are ignored.
+ *
+ * The entity-tag of the response is derived from the list of paths and the
+ * entity-tags of the files. The assembled contents are kept within a cache
+ * (see <code>combocache</code>) using the same key, i.e. a modification of
+ * a file leads to a new entry. The cache is bounded by the bytes of the
+ * assembled and the compressed contents, the least recently used contents
+ * are removed first.
+ *
+ * @author pmeisen
+ *
+ */
+public class ComboHandler extends FileHandler {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(ComboHandler.class);
+	private final static ContentType HTML_CONTENTTYPE = ContentType.create(
+			"text/html", "UTF-8");
+
+	/**
+	 * The property to define the maximal size (in bytes) of the assembled
+	 * and compressed contents to be cached, <code>0</code> disables the cache
+	 */
+	public final static String PROPERTY_COMBOCACHE = "combocache";
+	/**
+	 * The default maximal size (in bytes) of the cached contents
+	 */
+	public final static long DEF_COMBOCACHE = 8 * 1024 * 1024;
+	/**
+	 * The property to define the maximal amount of files of one request
+	 */
+	public final static String PROPERTY_COMBOMAXFILES = "combomaxfiles";
+	/**
+	 * The default maximal amount of files of one request
+	 */
+	public final static int DEF_COMBOMAXFILES = 50;
+	/**
+	 * The property to define the maximal size (in bytes) of the assembled
+	 * content
+	 */
+	public final static String PROPERTY_COMBOMAXSIZE = "combomaxsize";
+	/**
+	 * The default maximal size (in bytes) of the assembled content
+	 */
+	public final static long DEF_COMBOMAXSIZE = 1024 * 1024;
+
+	/**
+	 * The assembled content of several files.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	protected static class CombinedContent {
+		private final String etag;
+		private final byte[] content;
+		private volatile byte[] gzipped = null;
+
+		/**
+		 * Creates the assembled content.
+		 *
+		 * @param etag
+		 *            the quoted entity-tag of the content
+		 * @param content
+		 *            the assembled content
+		 */
+		public CombinedContent(final String etag, final byte[] content) {
+			this.etag = etag;
+			this.content = content;
+		}
+
+		/**
+		 * Gets the entity-tag of the content.
+		 *
+		 * @return the quoted entity-tag of the content
+		 */
+		public String getETag() {
+			return etag;
+		}
+
+		/**
+		 * Gets the assembled content.
+		 *
+		 * @return the assembled content
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * Gets the gzip compressed content, which is created once, when it's
+		 * requested for the first time.
+		 *
+		 * @return the compressed content
+		 *
+		 * @throws IOException
+		 *             if the content cannot be compressed
+		 */
+		public byte[] getGzipped() throws IOException {
+			compress();
+			return gzipped;
+		}
+
+		/**
+		 * Creates the gzip compressed content, if it isn't created yet.
+		 *
+		 * @return <code>true</code> if the compressed content was created by
+		 *         this call, otherwise <code>false</code>
+		 *
+		 * @throws IOException
+		 *             if the content cannot be compressed
+		 */
+		protected synchronized boolean compress() throws IOException {
+			if (gzipped != null) {
+				return false;
+			}
+
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(
+					content.length / 2 + 64);
+			final GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(content);
+			gzip.close();
+
+			gzipped = out.toByteArray();
+			return true;
+		}
+
+		/**
+		 * Gets the amount of bytes kept, i.e. the assembled and the
+		 * compressed content.
+		 *
+		 * @return the amount of bytes kept
+		 */
+		public long getBytes() {
+			final byte[] g = gzipped;
+			return content.length + (g == null ? 0 : g.length);
+		}
+	}
+
+	/**
+	 * A memory-bounded cache of assembled contents. The least recently used
+	 * contents are removed, if the cached bytes (including the compressed
+	 * copies) exceed the maximal size.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	protected static class CombinedContentCache {
+		private final long maxBytes;
+		private final Map<String, CombinedContent> contents;
+
+		private long bytes = 0;
+		private long hits = 0;
+		private long misses = 0;
+
+		/**
+		 * Creates a cache which keeps at most <code>maxBytes</code> of
+		 * contents.
+		 *
+		 * @param maxBytes
+		 *            the maximal amount of bytes kept, <code>0</code> disables
+		 *            the cache
+		 */
+		public CombinedContentCache(final long maxBytes) {
+			this.maxBytes = maxBytes;
+			this.contents = new LinkedHashMap<String, CombinedContent>(16,
+					0.75f, true);
+		}
+
+		/**
+		 * Gets the cached content with the specified <code>key</code>.
+		 *
+		 * @param key
+		 *            the key of the content
+		 *
+		 * @return the content, or <code>null</code> if it isn't cached
+		 */
+		public CombinedContent get(final String key) {
+			synchronized (contents) {
+				final CombinedContent content = contents.get(key);
+				if (content == null) {
+					misses++;
+				} else {
+					hits++;
+				}
+
+				return content;
+			}
+		}
+
+		/**
+		 * Caches the <code>content</code> with the specified
+		 * <code>key</code>, if it doesn't exceed the maximal size.
+		 *
+		 * @param key
+		 *            the key of the content
+		 * @param content
+		 *            the content to be cached
+		 */
+		public void put(final String key, final CombinedContent content) {
+			if (content.getBytes() > maxBytes) {
+				return;
+			}
+
+			synchronized (contents) {
+				final CombinedContent old = contents.put(key, content);
+				if (old != null) {
+					bytes -= old.getBytes();
+				}
+				bytes += content.getBytes();
+
+				evict();
+			}
+		}
+
+		/**
+		 * Gets the compressed copy of the <code>content</code>, whereby the
+		 * bytes of a newly created copy are added to the cache, if the
+		 * content is still cached.
+		 *
+		 * @param key
+		 *            the key of the content
+		 * @param content
+		 *            the content to get the compressed copy for
+		 *
+		 * @return the compressed copy
+		 *
+		 * @throws IOException
+		 *             if the content cannot be compressed
+		 */
+		public byte[] getGzipped(final String key,
+				final CombinedContent content) throws IOException {
+
+			// compress the content outside of the lock
+			if (content.compress()) {
+				synchronized (contents) {
+					if (contents.get(key) == content) {
+						bytes += content.gzipped.length;
+						evict();
+					}
+				}
+			}
+
+			return content.getGzipped();
+		}
+
+		private void evict() {
+			final Iterator<CombinedContent> it = contents.values().iterator();
+			while (bytes > maxBytes && it.hasNext()) {
+				bytes -= it.next().getBytes();
+				it.remove();
+			}
+		}
+
+		/**
+		 * Gets the amount of cached contents.
+		 *
+		 * @return the amount of cached contents
+		 */
+		public int size() {
+			synchronized (contents) {
+				return contents.size();
+			}
+		}
+
+		/**
+		 * Gets the amount of bytes currently cached.
+		 *
+		 * @return the amount of bytes currently cached
+		 */
+		public long getBytes() {
+			synchronized (contents) {
+				return bytes;
+			}
+		}
+
+		/**
+		 * Gets the amount of requests answered by the cache.
+		 *
+		 * @return the amount of requests answered by the cache
+		 */
+		public long getHits() {
+			synchronized (contents) {
+				return hits;
+			}
+		}
+
+		/**
+		 * Gets the amount of requests which needed to assemble the content.
+		 *
+		 * @return the amount of requests which needed to assemble the content
+		 */
+		public long getMisses() {
+			synchronized (contents) {
+				return misses;
+			}
+		}
+	}
+
+	private CombinedContentCache combined = null;
+	private int maxFiles = DEF_COMBOMAXFILES;
+	private long maxSize = DEF_COMBOMAXSIZE;
+
+	@Autowired
+	@Qualifier(IConfiguration.coreExceptionRegistryId)
+	private IExceptionRegistry exceptionRegistry;
+
+	@Override
+	public void initialize(final Extension e) {
+		super.initialize(e);
+
+		this.combined = new CombinedContentCache(ExtensionUtilities.getLong(
+				e, PROPERTY_COMBOCACHE, DEF_COMBOCACHE));
+		this.maxFiles = ExtensionUtilities.getInt(e, PROPERTY_COMBOMAXFILES,
+				DEF_COMBOMAXFILES);
+		this.maxSize = ExtensionUtilities.getLong(e, PROPERTY_COMBOMAXSIZE,
+				DEF_COMBOMAXSIZE);
+	}
+
+	/**
+	 * Determines the normalized paths listed within the query of the
+	 * specified <code>uri</code>.
+	 *
+	 * @param uri
+	 *            the URI to determine the paths from
+	 *
+	 * @return the normalized paths, or <code>null</code> if a path is invalid
+	 *         (e.g. points outside of the document-root)
+	 *
+	 * @throws IOException
+	 *             if a path cannot be decoded
+	 */
+	protected List<String> determinePaths(final String uri)
+			throws IOException {
+		final List<String> paths = new ArrayList<String>();
+
+		final int pos = uri.indexOf('?');
+		if (pos == -1) {
+			return paths;
+		}
+
+		for (final String part : uri.substring(pos + 1).split("&")) {
+			if (part.isEmpty() || part.indexOf('=') != -1) {
+				continue;
+			}
+
+			final String path = PathNormalizer.normalize(PathNormalizer
+					.decode(part));
+			if (path == null || path.isEmpty()) {
+				return null;
+			}
+			paths.add(path);
+		}
+
+		return paths;
+	}
+
+	/**
+	 * Creates the key of the assembled content of the specified files, i.e.
+	 * the list of paths and the entity-tags of the files.
+	 *
+	 * @param paths
+	 *            the paths of the files
+	 * @param members
+	 *            the meta-data of the files
+	 *
+	 * @return the key of the assembled content
+	 */
+	protected String createKey(final List<String> paths,
+			final FileMetaData[] members) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < members.length; i++) {
+			sb.append(paths.get(i)).append('|')
+					.append(members[i].getETag()).append('\n');
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the entity-tag of the assembled content with the specified
+	 * <code>key</code>.
+	 *
+	 * @param key
+	 *            the key of the assembled content
+	 *
+	 * @return the quoted entity-tag
+	 *
+	 * @throws IOException
+	 *             if the hash cannot be created
+	 */
+	protected String createETag(final String key) throws IOException {
+		final byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(
+					key.getBytes("UTF-8"));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IOException("The algorithm 'SHA-256' isn't available.",
+					e);
+		}
+
+		return "\"c-" + Fingerprints.hex(hash, 16) + "\"";
+	}
+
+	/**
+	 * Assembles the contents of the specified files.
+	 *
+	 * @param members
+	 *            the meta-data of the files
+	 *
+	 * @return the assembled content
+	 *
+	 * @throws IOException
+	 *             if a file cannot be read
+	 */
+	protected byte[] assemble(final FileMetaData[] members) throws IOException {
+		long length = 0;
+		for (final FileMetaData member : members) {
+			length += member.getLength() + 1;
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(
+				(int) Math.min(length, maxSize));
+		final byte[] buffer = new byte[8192];
+		for (final FileMetaData member : members) {
+			int last = '\n';
+
+			final InputStream in = member.openStream();
+			try {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+					if (read > 0) {
+						last = buffer[read - 1];
+					}
+				}
+			} finally {
+				in.close();
+			}
+
+			// make sure the next file starts on a new line
+			if (last != '\n') {
+				out.write('\n');
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	@Override
+	public void handle(final HttpRequest request, final HttpResponse response,
+			final HttpContext context) throws HttpException, IOException {
+
+		// check if it has been initialized
+		if (combined == null) {
+			exceptionRegistry.throwException(FileHandlerException.class, 1001);
+		}
+
+		// determine the called method for the request
+		final String method = request.getRequestLine().getMethod()
+				.toUpperCase(Locale.ENGLISH);
+		if (!method.equals("GET") && !method.equals("HEAD")) {
+			throw new MethodNotSupportedException(method
+					+ " method not supported");
+		}
+
+		// get the files of the request
+		final String target = request.getRequestLine().getUri();
+		final List<String> paths = determinePaths(target);
+		if (paths == null || paths.isEmpty()) {
+			setNotFound(response, target);
+			return;
+		} else if (paths.size() > maxFiles) {
+			setError(response, HttpStatus.SC_BAD_REQUEST,
+					"Too many files requested");
+			return;
+		}
+
+		// resolve the files like single ones
+		final FileMetaData[] members = new FileMetaData[paths.size()];
+		FileMetaData newest = null;
+		ContentType contentType = null;
+		long length = 0;
+		for (int i = 0; i < members.length; i++) {
+			final FileMetaData member = lookupMetaData(paths.get(i));
+			if (member == null || !member.isReadable()) {
+				setNotFound(response, target);
+				return;
+			}
+
+			// all the files must be of the same type
+			final ContentType memberType = getMimeTypes().getContentType(
+					member);
+			if (contentType == null) {
+				contentType = memberType;
+			} else if (!contentType.getMimeType().equals(
+					memberType.getMimeType())) {
+				setError(response, HttpStatus.SC_BAD_REQUEST,
+						"Files of different types requested");
+				return;
+			}
+
+			if (newest == null
+					|| member.getLastModified() > newest.getLastModified()) {
+				newest = member;
+			}
+
+			// count the line-break which might be added after the file
+			length += member.getLength() + 1;
+			members[i] = member;
+		}
+		if (length > maxSize) {
+			setError(response, HttpStatus.SC_BAD_REQUEST,
+					"Requested files are too large");
+			return;
+		}
+
+		// check if the content is assembled already
+		final String key = createKey(paths, members);
+		CombinedContent content = combined.get(key);
+		final String etag = content == null ? createETag(key) : content
+				.getETag();
+
+		// negotiate the content-coding
+		final String mimeType = contentType.getMimeType();
+		String encoding = null;
+		if (isCompressible(mimeType)) {
+			response.setHeader("Vary", "Accept-Encoding");
+
+			final Header acceptEncoding = request
+					.getFirstHeader("Accept-Encoding");
+			if (acceptEncoding != null) {
+				encoding = AcceptEncoding.select(acceptEncoding.getValue(),
+						Arrays.asList(AcceptEncoding.GZIP));
+			}
+		}
+
+		// add the validators
+		final String encodedETag = encoding == null ? etag : etag.substring(0,
+				etag.length() - 1) + "-" + encoding + "\"";
+		response.setHeader("ETag", encodedETag);
+		response.setHeader("Last-Modified",
+				HttpDateUtilities.formatDate(newest.getLastModified()));
+		addCachingHeaders(response, paths.get(0), mimeType);
+
+		// check if the client has a valid version already
+		if (isNotModified(request, newest, encodedETag)) {
+			response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+			return;
+		}
+
+		// assemble the content if needed
+		if (content == null) {
+			content = new CombinedContent(etag, assemble(members));
+			combined.put(key, content);
+
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Assembled " + members.length + " files "
+						+ paths + " (" + content.getContent().length
+						+ " bytes)");
+			}
+		}
+
+		final ByteArrayEntity entity;
+		if (encoding == null) {
+			entity = new ByteArrayEntity(content.getContent(), contentType);
+		} else {
+			entity = new ByteArrayEntity(combined.getGzipped(key, content),
+					contentType);
+			entity.setContentEncoding(encoding);
+		}
+
+		response.setStatusCode(HttpStatus.SC_OK);
+		response.setEntity(entity);
+	}
+
+	private void setError(final HttpResponse response, final int status,
+			final String message) {
+		response.setStatusCode(status);
+		response.setEntity(new StringEntity("<html><body><h1>" + message
+				+ "</h1></body></html>", HTML_CONTENTTYPE));
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(message);
+		}
+	}
+
+	/**
+	 * Gets the cache of the assembled contents.
+	 *
+	 * @return the cache of the assembled contents, <code>null</code> if the
+	 *         handler isn't initialized
+	 */
+	public CombinedContentCache getCombined() {
+		return combined;
+	}
+}
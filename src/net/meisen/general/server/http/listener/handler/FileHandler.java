@@ -2,27 +2,64 @@ package net.meisen.general.server.http.listener.handler;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.Socket;
 import java.net.URLDecoder;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
 import net.meisen.general.genmisc.types.Files;
 import net.meisen.general.sbconfigurator.api.IConfiguration;
 import net.meisen.general.server.http.listener.HttpListener;
+import net.meisen.general.server.http.listener.WorkerThread;
 import net.meisen.general.server.http.listener.api.IHandler;
 import net.meisen.general.server.http.listener.exceptions.FileHandlerException;
+import net.meisen.general.server.http.listener.files.AcceptEncoding;
+import net.meisen.general.server.http.listener.files.ArchiveEntryMetaData;
+import net.meisen.general.server.http.listener.files.ByteRange;
+import net.meisen.general.server.http.listener.files.CachePolicies;
+import net.meisen.general.server.http.listener.files.CachePolicy;
+import net.meisen.general.server.http.listener.files.CompressedContentCache;
+import net.meisen.general.server.http.listener.files.DocRootIndex;
+import net.meisen.general.server.http.listener.files.FileLister;
+import net.meisen.general.server.http.listener.files.FileMetaData;
+import net.meisen.general.server.http.listener.files.Fingerprints;
+import net.meisen.general.server.http.listener.files.FileWatcher;
+import net.meisen.general.server.http.listener.files.IFileChangeListener;
+import net.meisen.general.server.http.listener.files.MimeTypes;
+import net.meisen.general.server.http.listener.files.NegativeCache;
+import net.meisen.general.server.http.listener.files.PathNormalizer;
+import net.meisen.general.server.http.listener.files.RangeRequest;
+import net.meisen.general.server.http.listener.files.ZeroCopyFileEntity;
+import net.meisen.general.server.http.listener.files.ZipArchive;
+import net.meisen.general.server.http.listener.files.ZipBundle;
+import net.meisen.general.server.http.listener.util.ExtensionUtilities;
+import net.meisen.general.server.http.listener.util.HttpDateUtilities;
+import net.meisen.general.server.http.listener.util.LruCache;
 import net.meisen.general.server.settings.pojos.Extension;
 
+import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.MethodNotSupportedException;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
@@ -66,6 +103,152 @@ import org.springframework.beans.factory.annotation.Qualifier;
  * &lt;/connector&gt;
  * </pre>
  * 
+ * The resolution of an URI to a file is cached, so that subsequent requests
+ * of the same URI don't have to search the locations again. The cache can be
+ * configured (or disabled by setting the size to <code>0</code>) using the
+ * properties <code>cachesize</code> and <code>cachettl</code>. Paths which
+ * couldn't be resolved are cached as well (see {@link NegativeCache}), so that
+ * scanners probing for non-existing files don't hit the file-system, the size
+ * of that cache is defined by <code>notfoundcachesize</code>.
+ * 
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;docroot cachesize=&quot;5000&quot; cachettl=&quot;60000&quot;&gt;C:\web-root\&lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
+ * 
+ * Files are transferred using <code>FileChannel.transferTo</code>, i.e. if
+ * the socket of the connection provides a channel, the file is sent directly
+ * by the operating system (e.g. using <code>sendfile</code>). Otherwise the
+ * file is copied to the stream of the connection. The sockets accepted by
+ * the <code>HttpListener</code> (using a classic <code>ServerSocket</code>)
+ * don't provide a channel, i.e. currently the files are always copied. The
+ * behavior can be disabled by setting the property <code>zerocopy</code> to
+ * <code>false</code>.
+ * 
+ * Each served file is sent with an <code>ETag</code> and a
+ * <code>Last-Modified</code> header. Conditional requests (i.e.
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code>) are answered
+ * with <code>304 Not Modified</code>, if the file wasn't modified. The
+ * validators are kept with the cached resolution of the file, i.e. these are
+ * not recomputed for every request.
+ * 
+ * Range requests (including <code>If-Range</code> and multiple ranges) are
+ * answered with <code>206 Partial Content</code> (see {@link RangeRequest}).
+ * 
+ * Responses are compressed, if the client accepts it (i.e. by sending an
+ * <code>Accept-Encoding</code> header). A precompressed sibling of the file
+ * (e.g. <code>app.js.br</code> or <code>app.js.gz</code> for
+ * <code>app.js</code>) is sent if it exists and isn't older than the file.
+ * Otherwise files of a compressible type (see <code>compressiontypes</code>)
+ * are compressed using <code>gzip</code> once and kept in a memory-bounded
+ * cache (see <code>compressioncache</code> and
+ * <code>compressionmaxsize</code>). Requests with a <code>Range</code> header
+ * are always answered with the not encoded file. The compression can be
+ * disabled by setting the property <code>compression</code> to
+ * <code>false</code>.
+ * 
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;docroot compressiontypes=&quot;text/*, application/javascript&quot; compressioncache=&quot;1048576&quot;&gt;C:\web-root\&lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
+ * 
+ * The caching headers (i.e. <code>Cache-Control</code> and
+ * <code>Expires</code>) are defined by <code>cache</code> rules. A rule
+ * applies to files matching one of the glob-patterns (<code>pattern</code>)
+ * or one of the mime-types (<code>type</code>), the first matching rule is
+ * used. Without any matching rule no caching headers are sent.
+ * 
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;docroot&gt;
+ *       &lt;location&gt;C:\web-root\&lt;/location&gt;
+ *       &lt;cache pattern=&quot;assets/**, *.woff2&quot; maxage=&quot;31536000&quot; immutable=&quot;true&quot;/&gt;
+ *       &lt;cache type=&quot;text/html&quot; nocache=&quot;true&quot;/&gt;
+ *       &lt;cache pattern=&quot;*.js, *.css&quot; maxage=&quot;3600&quot;/&gt;
+ *     &lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
+ * 
+ * The mime-type of a file is determined by its extension (see
+ * {@link MimeTypes}), the defaults can be overridden or extended using
+ * <code>mimetype</code> definitions. Files with an unknown extension are
+ * probed, the result is kept for the extension.
+ * 
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;docroot&gt;
+ *       &lt;location&gt;C:\web-root\&lt;/location&gt;
+ *       &lt;mimetype extension=&quot;html&quot; type=&quot;text/html; charset=UTF-8&quot;/&gt;
+ *       &lt;mimetype extension=&quot;log&quot; type=&quot;text/plain&quot;/&gt;
+ *     &lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
+ * 
+ * If the property <code>watch</code> is set to <code>true</code>, the
+ * locations of the document-root are watched for changes (see
+ * {@link FileWatcher}). The cached resolutions and compressed contents are
+ * invalidated whenever a file is created, modified or deleted, so that the
+ * resolutions are kept until evicted (if no <code>cachettl</code> is
+ * defined).
+ * 
+ * If the property <code>fingerprint</code> is set to <code>true</code>, each
+ * file can also be requested using a name containing its fingerprint, e.g.
+ * <code>app.3f9a1c2b.js</code> for <code>app.js</code> (see
+ * {@link Fingerprints}). The fingerprinted URI of a file is requested by
+ * adding the parameter <code>fingerprint</code> (e.g.
+ * <code>/app.js?fingerprint</code>).
+ * 
+ * If the property <code>bundle</code> is set to <code>true</code>, the
+ * parameter <code>bundle</code> added to the URI of a directory requests all
+ * its files (e.g. <code>/js/?bundle</code>) or the listed ones (e.g.
+ * <code>/js/?bundle=app.js,lib/jquery.js</code>) as one ZIP archive (see
+ * {@link ZipBundle}). The files are resolved like single files.
+ * 
+ * For read-only deployments the property <code>index</code> can be set to
+ * <code>true</code>. All the locations are scanned once when the handler is
+ * initialized and the resolution of every path is kept in an immutable
+ * {@link DocRootIndex}, i.e. a request doesn't access the file-system to
+ * resolve the file. The index is rebuilt in the background if the locations
+ * are watched and a change is detected, or periodically if
+ * <code>indexrefresh</code> (in milliseconds) is defined.
+ * 
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;docroot index=&quot;true&quot; watch=&quot;true&quot;&gt;C:\web-root\&lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
+ * 
+ * A location can also be a ZIP (or JAR) archive, i.e. a file ending with
+ * <code>.zip</code> or <code>.jar</code>, which is mapped into memory (see
+ * {@link ZipArchive}). The entries are resolved like the files of a
+ * directory, a deflated entry is sent as is if the client accepts
+ * <code>deflate</code>. The archive is always watched and mapped again
+ * whenever it changes, it must be replaced atomically (i.e. by renaming a
+ * completely written file), never modified in place.
+ * 
+ * <pre>
+ * &lt;connector port=&quot;666&quot; listener=&quot;HTTP&quot;&gt;
+ *   &lt;e:extension&gt;
+ *     &lt;docroot&gt;
+ *       &lt;location&gt;C:\web-root\&lt;/location&gt;
+ *       &lt;location&gt;C:\web-root.zip&lt;/location&gt;
+ *     &lt;/docroot&gt;
+ *   &lt;/e:extension&gt;
+ * &lt;/connector&gt;
+ * </pre>
+ * 
  * @see #DEF_DOCROOT
  * 
  * @author pmeisen
@@ -75,6 +258,12 @@ import org.springframework.beans.factory.annotation.Qualifier;
 public class FileHandler implements IHandler {
 	private final static Logger LOG = LoggerFactory
 			.getLogger(FileHandler.class);
+	private final static ContentType HTML_CONTENTTYPE = ContentType.create(
+			"text/html", "UTF-8");
+	private final static ContentType TEXT_CONTENTTYPE = ContentType.create(
+			"text/plain", "UTF-8");
+	private final static byte[] NOT_FOUND_BODY = "<html><body><h1>File not found</h1></body></html>"
+			.getBytes(HTML_CONTENTTYPE.getCharset());
 
 	/**
 	 * The extension which can be used to define several locations to look for a
@@ -103,10 +292,202 @@ public class FileHandler implements IHandler {
 	 * The regular expression used to validate the default-filenames
 	 */
 	public final static String DEFFILE_MATCHER = "(?:[a-zA-Z0-9]+[_\\-]?)+\\.[a-zA-Z0-9]+";
+	/**
+	 * The property to define the maximal amount of resolved files to be
+	 * cached, <code>0</code> disables the cache
+	 */
+	public final static String PROPERTY_CACHESIZE = "cachesize";
+	/**
+	 * The property to define the time (in milliseconds) a resolved file is
+	 * kept within the cache
+	 */
+	public final static String PROPERTY_CACHETTL = "cachettl";
+	/**
+	 * The default maximal amount of resolved files to be cached
+	 */
+	public final static int DEF_CACHESIZE = 1000;
+	/**
+	 * The default time (in milliseconds) a resolved file is cached
+	 */
+	public final static long DEF_CACHETTL = 5000;
+	/**
+	 * The property to define the maximal amount of paths, which couldn't be
+	 * resolved, to be cached, <code>0</code> disables the cache
+	 */
+	public final static String PROPERTY_NOTFOUNDCACHESIZE = "notfoundcachesize";
+	/**
+	 * The default maximal amount of paths, which couldn't be resolved, to be
+	 * cached
+	 */
+	public final static int DEF_NOTFOUNDCACHESIZE = 1000;
+	/**
+	 * The minimal time (in milliseconds) between two logged requests of files
+	 * which are not found, the requests in between are only counted
+	 */
+	public final static long NOTFOUND_LOG_INTERVAL = 1000;
+	/**
+	 * The property to enable or disable the transfer of files directly to the
+	 * channel of the socket
+	 */
+	public final static String PROPERTY_ZEROCOPY = "zerocopy";
+	/**
+	 * The property to enable or disable the compression of responses
+	 */
+	public final static String PROPERTY_COMPRESSION = "compression";
+	/**
+	 * The property to define a comma separated list of mime-types which are
+	 * compressed on-the-fly, a type can end with a wildcard, e.g.
+	 * <code>text/*</code>
+	 */
+	public final static String PROPERTY_COMPRESSIONTYPES = "compressiontypes";
+	/**
+	 * The property to define the maximal amount of bytes of compressed
+	 * contents to be cached, <code>0</code> disables the on-the-fly
+	 * compression
+	 */
+	public final static String PROPERTY_COMPRESSIONCACHE = "compressioncache";
+	/**
+	 * The property to define the maximal size (in bytes) of a file to be
+	 * compressed on-the-fly
+	 */
+	public final static String PROPERTY_COMPRESSIONMAXSIZE = "compressionmaxsize";
+	/**
+	 * The default list of mime-types compressed on-the-fly
+	 */
+	public final static String DEF_COMPRESSIONTYPES = "text/*, application/javascript, application/x-javascript, application/json, application/xml, image/svg+xml";
+	/**
+	 * The default maximal amount of bytes of compressed contents to be cached
+	 */
+	public final static long DEF_COMPRESSIONCACHE = 16 * 1024 * 1024;
+	/**
+	 * The default maximal size (in bytes) of a file to be compressed
+	 * on-the-fly
+	 */
+	public final static long DEF_COMPRESSIONMAXSIZE = 1024 * 1024;
+	/**
+	 * The extension which can be used to define the mime-type of files with a
+	 * specific extension
+	 */
+	public static final String EXTENSION_MIMETYPE = "mimetype";
+	/**
+	 * The property of a <code>mimetype</code> to define the file-extension
+	 */
+	public final static String PROPERTY_MIMETYPEEXTENSION = "extension";
+	/**
+	 * The property of a <code>mimetype</code> to define the mime-type, which
+	 * might include parameters (e.g. <code>text/html; charset=UTF-8</code>)
+	 */
+	public final static String PROPERTY_MIMETYPETYPE = "type";
+	/**
+	 * The property to enable or disable the watching of the locations for
+	 * changes
+	 */
+	public final static String PROPERTY_WATCH = "watch";
+	/**
+	 * The property to enable the requesting of files using fingerprinted
+	 * names
+	 */
+	public final static String PROPERTY_FINGERPRINT = "fingerprint";
+	/**
+	 * The parameter used to request the fingerprinted URI of a file
+	 */
+	public final static String PARAMETER_FINGERPRINT = "fingerprint";
+	/**
+	 * The maximal amount of fingerprints kept by the handler
+	 */
+	public final static int DEF_FINGERPRINTS = 10000;
+	/**
+	 * The property to enable the download of several files as ZIP archive
+	 */
+	public final static String PROPERTY_BUNDLE = "bundle";
+	/**
+	 * The parameter used to request a ZIP archive of several files
+	 */
+	public final static String PARAMETER_BUNDLE = "bundle";
+	/**
+	 * The property to define the maximal amount of files of a ZIP archive
+	 */
+	public final static String PROPERTY_BUNDLEMAXFILES = "bundlemaxfiles";
+	/**
+	 * The default maximal amount of files of a ZIP archive
+	 */
+	public final static int DEF_BUNDLEMAXFILES = 1000;
+	/**
+	 * The property to enable the index of all the files of the locations
+	 */
+	public final static String PROPERTY_INDEX = "index";
+	/**
+	 * The property to define the interval (in milliseconds) the index is
+	 * rebuilt, <code>0</code> disables the periodic rebuild
+	 */
+	public final static String PROPERTY_INDEXREFRESH = "indexrefresh";
+	/**
+	 * The delay (in milliseconds) between a detected change and the rebuild
+	 * of the index, used to combine several changes into one rebuild
+	 */
+	public final static long INDEX_REFRESH_DELAY = 200;
+	/**
+	 * The extension which can be used to define the caching headers of files
+	 */
+	public static final String EXTENSION_CACHE = "cache";
+	/**
+	 * The property of a <code>cache</code> rule to define a comma separated
+	 * list of glob-patterns the rule applies to
+	 */
+	public final static String PROPERTY_CACHEPATTERN = "pattern";
+	/**
+	 * The property of a <code>cache</code> rule to define a comma separated
+	 * list of mime-types the rule applies to
+	 */
+	public final static String PROPERTY_CACHETYPE = "type";
+	/**
+	 * The property of a <code>cache</code> rule to define the time (in
+	 * seconds) a file can be cached by the client
+	 */
+	public final static String PROPERTY_CACHEMAXAGE = "maxage";
+	/**
+	 * The property of a <code>cache</code> rule to mark the files as
+	 * immutable, i.e. these never have to be revalidated
+	 */
+	public final static String PROPERTY_CACHEIMMUTABLE = "immutable";
+	/**
+	 * The property of a <code>cache</code> rule to force the revalidation of
+	 * the files
+	 */
+	public final static String PROPERTY_CACHENOCACHE = "nocache";
+	/**
+	 * The suffixes of precompressed siblings by content-coding, the order
+	 * defines the preference of the content-coding
+	 */
+	public final static String[][] PRECOMPRESSED_SUFFIXES = new String[][] {
+			{ AcceptEncoding.BROTLI, ".br" }, { AcceptEncoding.GZIP, ".gz" } };
 
 	private List<String> docRoot = null;
+	private Map<String, ZipArchive> archives = null;
+	private FileLister lister = null;
 	private String prefix = null;
 	private List<String> defFileNames = null;
+	private LruCache<String, FileMetaData> resolvedFiles = null;
+	private NegativeCache notFound = null;
+	private boolean zeroCopy = true;
+	private boolean compression = true;
+	private List<String> compressionTypes = null;
+	private CompressedContentCache compressedContents = null;
+	private CachePolicies cachePolicies = null;
+	private MimeTypes mimeTypes = null;
+	private IFileChangeListener watchListener = null;
+	private volatile DocRootIndex index = null;
+	private Fingerprints fingerprints = null;
+	private boolean bundle = false;
+	private int bundleMaxFiles = DEF_BUNDLEMAXFILES;
+	private Timer indexTimer = null;
+
+	private final AtomicLong fileLookups = new AtomicLong(0);
+	private final AtomicLong invalidations = new AtomicLong(0);
+	private final AtomicLong lastNotFoundLog = new AtomicLong(0);
+	private final AtomicLong suppressedNotFoundLogs = new AtomicLong(0);
+	private final AtomicBoolean indexRefreshScheduled = new AtomicBoolean(
+			false);
 
 	@Autowired
 	@Qualifier(IConfiguration.coreExceptionRegistryId)
@@ -128,6 +509,10 @@ public class FileHandler implements IHandler {
 			this.docRoot.add(canonicalLocation);
 		}
 
+		// open the archives used as locations
+		this.archives = openArchives(this.docRoot);
+		this.lister = new FileLister(this.docRoot, this.archives);
+
 		/*
 		 * get the urlMatcher we need that to strip the URI correctly, i.e. if
 		 * someone defines the folder 'C:\myTestFolder' to be matched with
@@ -145,251 +530,1573 @@ public class FileHandler implements IHandler {
 
 		// use the defaultFiles
 		this.defFileNames = defFiles;
+
+		// create the cache used for resolved files, watched ones don't expire
+		final boolean watch = ExtensionUtilities.getBoolean(e,
+				PROPERTY_WATCH, false);
+		this.resolvedFiles = new LruCache<String, FileMetaData>(
+				ExtensionUtilities.getInt(e, PROPERTY_CACHESIZE, DEF_CACHESIZE),
+				ExtensionUtilities.getLong(e, PROPERTY_CACHETTL, watch ? 0
+						: DEF_CACHETTL));
+		this.notFound = new NegativeCache(ExtensionUtilities.getInt(e,
+				PROPERTY_NOTFOUNDCACHESIZE, DEF_NOTFOUNDCACHESIZE),
+				resolvedFiles.getTtl());
+
+		// check if we should transfer files directly to the socket
+		this.zeroCopy = ExtensionUtilities.getBoolean(e, PROPERTY_ZEROCOPY,
+				true);
+
+		// determine the compression settings
+		this.compression = ExtensionUtilities.getBoolean(e,
+				PROPERTY_COMPRESSION, true);
+		this.compressionTypes = Arrays.asList(ExtensionUtilities
+				.getString(e, PROPERTY_COMPRESSIONTYPES, DEF_COMPRESSIONTYPES)
+				.trim().split("\\s*,\\s*"));
+		this.compressedContents = new CompressedContentCache(
+				ExtensionUtilities.getLong(e, PROPERTY_COMPRESSIONCACHE,
+						DEF_COMPRESSIONCACHE), ExtensionUtilities.getLong(e,
+						PROPERTY_COMPRESSIONMAXSIZE, DEF_COMPRESSIONMAXSIZE));
+
+		// compile the rules of the caching headers
+		this.cachePolicies = new CachePolicies(determineCachePolicies(e));
+
+		// create the table of the mime-types
+		this.mimeTypes = createMimeTypes(e);
+
+		// create the fingerprints, if needed
+		if (ExtensionUtilities.getBoolean(e, PROPERTY_FINGERPRINT, false)) {
+			this.fingerprints = new Fingerprints(DEF_FINGERPRINTS);
+		} else {
+			this.fingerprints = null;
+		}
+
+		// check if bundles of files can be requested
+		this.bundle = ExtensionUtilities.getBoolean(e, PROPERTY_BUNDLE, false);
+		this.bundleMaxFiles = ExtensionUtilities.getInt(e,
+				PROPERTY_BUNDLEMAXFILES, DEF_BUNDLEMAXFILES);
+
+		// build the index of the files
+		if (ExtensionUtilities.getBoolean(e, PROPERTY_INDEX, false)) {
+			this.index = buildIndex();
+
+			final long refresh = ExtensionUtilities.getLong(e,
+					PROPERTY_INDEXREFRESH, 0);
+			if (refresh > 0) {
+				getIndexTimer().schedule(new TimerTask() {
+
+					@Override
+					public void run() {
+						refreshIndex();
+					}
+				}, refresh, refresh);
+			}
+		}
+
+		// start to watch the locations, archives are always watched
+		if (watch || !archives.isEmpty()) {
+			watchDocRoot(watch);
+		}
+	}
+
+	/**
+	 * Scans all the locations of the document-root and creates the index of
+	 * the files. The precedence of the locations and the default files are
+	 * handled like by {@link #resolveFile(String)}.
+	 * 
+	 * @return the created index
+	 */
+	protected DocRootIndex buildIndex() {
+		final Map<String, FileMetaData> files = new HashMap<String, FileMetaData>();
+		final Map<String, FileMetaData> defaultFiles = new HashMap<String, FileMetaData>();
+		FileMetaData fallback = null;
+
+		for (final String location : docRoot) {
+			final File locationFile = new File(location);
+
+			if (!locationFile.exists() || !locationFile.canRead()) {
+				continue;
+			} else if (archives.containsKey(location)) {
+				indexArchive(archives.get(location), files, defaultFiles);
+			} else if (ZipArchive.isArchive(locationFile)) {
+				// an archive which cannot be opened (currently)
+				continue;
+			} else if (locationFile.isFile()) {
+				fallback = createMetaData(locationFile);
+			} else {
+				indexDirectory(locationFile, "", files, defaultFiles,
+						new HashSet<String>());
+			}
+		}
+
+		final DocRootIndex index = new DocRootIndex(files, defaultFiles,
+				fallback);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Created " + index + " of " + docRoot);
+		}
+
+		return index;
+	}
+
+	private void indexDirectory(final File dir, final String path,
+			final Map<String, FileMetaData> files,
+			final Map<String, FileMetaData> defaultFiles,
+			final Set<String> visited) {
+
+		// make sure we don't run into a cycle of links
+		if (!visited.add(Files.getCanonicalPath(dir))) {
+			return;
+		}
+
+		// the default file of the first location defining one is used
+		if (!defaultFiles.containsKey(path) && defFileNames != null) {
+			File defFile = null;
+			for (final String defFileName : defFileNames) {
+				final File defFilePath = new File(dir, defFileName);
+				if (defFilePath.exists() && defFilePath.canRead()
+						&& defFilePath.isFile()) {
+					defFile = defFilePath;
+				}
+			}
+
+			if (defFile != null) {
+				defaultFiles.put(path, createMetaData(defFile));
+			}
+		}
+
+		final File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+
+		for (final File child : children) {
+			final String childPath = path.isEmpty() ? child.getName() : path
+					+ "/" + child.getName();
+
+			if (child.isDirectory()) {
+				indexDirectory(child, childPath, files, defaultFiles, visited);
+			} else if (child.isFile() && !files.containsKey(childPath)) {
+				final FileMetaData metaData = createMetaData(child);
+				files.put(childPath, metaData);
+				prepareIndexed(metaData);
+			}
+		}
+	}
+
+	private void indexArchive(final ZipArchive archive,
+			final Map<String, FileMetaData> files,
+			final Map<String, FileMetaData> defaultFiles) {
+		final Set<String> dirs = new HashSet<String>();
+		dirs.add("");
+
+		for (final ZipArchive.Entry entry : archive.getEntries().values()) {
+			final String name = entry.getName();
+			if (!files.containsKey(name)) {
+				final FileMetaData metaData = new ArchiveEntryMetaData(entry);
+				files.put(name, metaData);
+				prepareIndexed(metaData);
+			}
+
+			// collect the directories, which might have a default file
+			for (int pos = name.indexOf('/'); pos != -1; pos = name.indexOf(
+					'/', pos + 1)) {
+				dirs.add(name.substring(0, pos));
+			}
+		}
+
+		// the default file of the first location defining one is used
+		for (final String dir : dirs) {
+			if (!defaultFiles.containsKey(dir)) {
+				final ZipArchive.Entry defEntry = resolveDefaultEntry(archive,
+						dir);
+				if (defEntry != null) {
+					defaultFiles.put(dir, new ArchiveEntryMetaData(defEntry));
+				}
+			}
+		}
+	}
+
+	private void prepareIndexed(final FileMetaData metaData) {
+
+		// make sure the mime-type is known for the extension
+		mimeTypes.getContentType(metaData);
+
+		// create the fingerprint while indexing
+		if (fingerprints != null && metaData.isReadable()) {
+			try {
+				fingerprints.get(metaData);
+			} catch (final IOException ex) {
+				if (LOG.isWarnEnabled()) {
+					LOG.warn("Unable to create the fingerprint of "
+							+ metaData.getId(), ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the index, if the handler uses one.
+	 */
+	public void refreshIndex() {
+		if (index != null) {
+			index = buildIndex();
+		}
+	}
+
+	/**
+	 * Gets the index of the files.
+	 * 
+	 * @return the index of the files, <code>null</code> if no index is used
+	 */
+	public DocRootIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Schedules the rebuild of the index, several calls within the
+	 * <code>INDEX_REFRESH_DELAY</code> lead to a single rebuild.
+	 */
+	protected void scheduleIndexRefresh() {
+		if (index != null && indexRefreshScheduled.compareAndSet(false, true)) {
+			getIndexTimer().schedule(new TimerTask() {
+
+				@Override
+				public void run() {
+					indexRefreshScheduled.set(false);
+					refreshIndex();
+				}
+			}, INDEX_REFRESH_DELAY);
+		}
+	}
+
+	private synchronized Timer getIndexTimer() {
+		if (indexTimer == null) {
+			indexTimer = new Timer("FileHandlerIndex", true);
+		}
+
+		return indexTimer;
+	}
+
+	/**
+	 * Starts to watch the locations of the document-root using the shared
+	 * <code>FileWatcher</code>. The archives are always watched, so that
+	 * those are mapped again if replaced (see {@link #reopenArchive(String)}
+	 * ), the directories only if <code>directories</code> is
+	 * <code>true</code>.
+	 * 
+	 * @param directories
+	 *            <code>true</code> if the locations, which are directories,
+	 *            should be watched as well, otherwise <code>false</code>
+	 * 
+	 * @throws FileHandlerException
+	 *             if a location cannot be watched
+	 */
+	protected void watchDocRoot(final boolean directories)
+			throws FileHandlerException {
+		final FileWatcher watcher = FileWatcher.getSharedInstance();
+		if (watchListener != null) {
+			watcher.unwatch(watchListener);
+		}
+
+		watchListener = new IFileChangeListener() {
+
+			@Override
+			public void fileChanged(final File root, final File file,
+					final Change change, final boolean directory) {
+
+				// an event of the root itself is one of a watched archive
+				if (file.equals(root)) {
+					reopenArchive(root.getPath());
+				} else {
+					invalidate(root, file, directory);
+				}
+			}
+
+			@Override
+			public void overflow(final File root) {
+				invalidateAll();
+			}
+		};
+
+		for (final String location : docRoot) {
+			final File locationFile = new File(location);
+
+			try {
+				if (archives.containsKey(location)) {
+					watcher.watchFile(locationFile, watchListener);
+				} else if (directories && locationFile.isDirectory()) {
+					watcher.watch(locationFile, watchListener);
+				}
+			} catch (final IOException ex) {
+				exceptionRegistry.throwException(FileHandlerException.class,
+						1006, ex, location);
+			}
+		}
+	}
+
+	/**
+	 * Stops watching the locations of the document-root.
+	 */
+	public void unwatchDocRoot() {
+		if (watchListener != null) {
+			FileWatcher.getSharedInstance().unwatch(watchListener);
+			watchListener = null;
+		}
+	}
+
+	/**
+	 * Invalidates all the cached data which might be affected by the change
+	 * of the specified <code>file</code>. The resolution of a path might
+	 * change by the creation or deletion of a file in any location (e.g. a
+	 * new default file or a file within a location with a higher
+	 * precedence), therefore all the paths which might be resolved to the
+	 * file are invalidated.
+	 * 
+	 * @param root
+	 *            the location the file belongs to
+	 * @param file
+	 *            the changed file
+	 * @param directory
+	 *            <code>true</code> if the changed file is a directory
+	 */
+	protected void invalidate(final File root, final File file,
+			final boolean directory) {
+		invalidations.incrementAndGet();
+
+		// a changed directory might change the resolution of anything
+		if (directory) {
+			invalidateAll();
+			return;
+		}
+
+		// a created file might be the one, which was not found before
+		notFound.clear();
+
+		// determine the paths which might be resolved to the file
+		final String relPath = root.toURI().relativize(file.toURI())
+				.getPath();
+		final List<String> paths = new ArrayList<String>();
+		paths.add(relPath);
+		for (final String[] suffix : PRECOMPRESSED_SUFFIXES) {
+			if (relPath.endsWith(suffix[1])) {
+				paths.add(relPath.substring(0,
+						relPath.length() - suffix[1].length()));
+			}
+		}
+		final int pos = relPath.lastIndexOf('/');
+		paths.add(pos == -1 ? "" : relPath.substring(0, pos));
+
+		// remove all the affected resolutions
+		for (final String key : resolvedFiles.keys()) {
+			String normKey = key.replace('\\', '/');
+			while (normKey.startsWith("/")) {
+				normKey = normKey.substring(1);
+			}
+			while (normKey.endsWith("/")) {
+				normKey = normKey.substring(0, normKey.length() - 1);
+			}
+
+			if (paths.contains(normKey)) {
+				resolvedFiles.remove(key);
+			}
+		}
+		compressedContents.remove(file);
+		scheduleIndexRefresh();
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Invalidated cached data of " + file.getPath());
+		}
+	}
+
+	/**
+	 * Maps the archive of the specified <code>location</code> again, e.g.
+	 * after it was replaced, and invalidates all the cached data. If the
+	 * archive was deleted or cannot be opened, the location is skipped until
+	 * it's available again. The former mapping is released by the garbage
+	 * collector, as soon as no response is using it anymore.
+	 * 
+	 * @param location
+	 *            the location of the archive
+	 */
+	protected void reopenArchive(final String location) {
+		final File locationFile = new File(location);
+
+		if (ZipArchive.isArchive(locationFile) && locationFile.canRead()) {
+			try {
+				final ZipArchive archive = new ZipArchive(locationFile);
+				archives.put(location, archive);
+
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Reopened archive " + archive);
+				}
+			} catch (final IOException e) {
+				archives.remove(location);
+
+				if (LOG.isWarnEnabled()) {
+					LOG.warn("Unable to reopen the archive '" + location
+							+ "', the location is skipped.", e);
+				}
+			}
+		} else {
+			archives.remove(location);
+		}
+
+		invalidateAll();
+	}
+
+	/**
+	 * Invalidates all the cached data, i.e. the resolved files, the paths not
+	 * found and the compressed contents.
+	 */
+	protected void invalidateAll() {
+		invalidations.incrementAndGet();
+
+		resolvedFiles.clear();
+		notFound.clear();
+		compressedContents.clear();
+		scheduleIndexRefresh();
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Invalidated all cached data of " + docRoot);
+		}
+	}
+
+	/**
+	 * Determines the rules of the caching headers defined by the
+	 * <code>Extension</code>.
+	 * 
+	 * @param e
+	 *            the <code>Extension</code> to determine the rules from
+	 * 
+	 * @return the determined rules in order of definition
+	 * 
+	 * @throws FileHandlerException
+	 *             if a rule is invalid
+	 */
+	protected List<CachePolicy> determineCachePolicies(final Extension e)
+			throws FileHandlerException {
+		final List<CachePolicy> policies = new ArrayList<CachePolicy>();
+		if (e == null || !e.hasExtension(EXTENSION_CACHE)) {
+			return policies;
+		}
+
+		for (final Extension cacheExtension : e
+				.getExtensions(EXTENSION_CACHE)) {
+			final List<String> patterns = split(ExtensionUtilities.getString(
+					cacheExtension, PROPERTY_CACHEPATTERN, null));
+			final List<String> types = split(ExtensionUtilities.getString(
+					cacheExtension, PROPERTY_CACHETYPE, null));
+			if (patterns == null && types == null) {
+				exceptionRegistry.throwException(FileHandlerException.class,
+						1004, EXTENSION_CACHE, PROPERTY_CACHEPATTERN,
+						PROPERTY_CACHETYPE);
+			}
+
+			long maxAge;
+			try {
+				maxAge = ExtensionUtilities.getLong(cacheExtension,
+						PROPERTY_CACHEMAXAGE, -1);
+			} catch (final NumberFormatException ex) {
+				maxAge = -2;
+			}
+			if (maxAge < -1) {
+				exceptionRegistry.throwException(FileHandlerException.class,
+						1005, cacheExtension
+								.<Object> getProperty(PROPERTY_CACHEMAXAGE));
+			}
+
+			policies.add(new CachePolicy(patterns, types, maxAge,
+					ExtensionUtilities.getBoolean(cacheExtension,
+							PROPERTY_CACHEIMMUTABLE, false), ExtensionUtilities
+							.getBoolean(cacheExtension, PROPERTY_CACHENOCACHE,
+									false)));
+		}
+
+		return policies;
+	}
+
+	/**
+	 * Creates the table of the mime-types, using the defaults and the
+	 * <code>mimetype</code> definitions of the <code>Extension</code>.
+	 * 
+	 * @param e
+	 *            the <code>Extension</code> to read the definitions from
+	 * 
+	 * @return the created <code>MimeTypes</code>
+	 * 
+	 * @throws FileHandlerException
+	 *             if a definition is invalid
+	 */
+	protected MimeTypes createMimeTypes(final Extension e)
+			throws FileHandlerException {
+		final Map<String, String> mappings = new HashMap<String, String>();
+
+		if (e != null && e.hasExtension(EXTENSION_MIMETYPE)) {
+			for (final Extension mimeExtension : e
+					.getExtensions(EXTENSION_MIMETYPE)) {
+				final String ext = ExtensionUtilities.getString(mimeExtension,
+						PROPERTY_MIMETYPEEXTENSION, null);
+				final String type = ExtensionUtilities.getString(
+						mimeExtension, PROPERTY_MIMETYPETYPE, null);
+
+				if (ext == null || type == null) {
+					exceptionRegistry.throwException(
+							FileHandlerException.class, 1007,
+							EXTENSION_MIMETYPE, ext, type);
+				}
+				mappings.put(ext, type);
+			}
+		}
+
+		try {
+			return new MimeTypes(mappings);
+		} catch (final IllegalArgumentException ex) {
+			exceptionRegistry.throwException(FileHandlerException.class,
+					1007, ex, EXTENSION_MIMETYPE, mappings.keySet(),
+					mappings.values());
+
+			// will never happen
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the table of the mime-types.
+	 * 
+	 * @return the table of the mime-types, <code>null</code> if the handler
+	 *         isn't initialized
+	 */
+	public MimeTypes getMimeTypes() {
+		return mimeTypes;
+	}
+
+	private List<String> split(final String list) {
+		return list == null ? null : Arrays.asList(list.split("\\s*,\\s*"));
+	}
+
+	/**
+	 * Validates the passed <code>defFiles</code> and throws a
+	 * <code>FileHandlerException</code> if at least one cannot be validated.
+	 * 
+	 * @param defFiles
+	 *            the files to be validated
+	 * 
+	 * @throws FileHandlerException
+	 *             if at least one of the <code>defFiles</code> cannot be
+	 *             validated
+	 */
+	protected void validateDefFiles(final List<String> defFiles)
+			throws FileHandlerException {
+		if (defFiles == null) {
+			return;
+		} else if (defFiles.size() > 0) {
+			for (final String defFile : defFiles) {
+				// check the file-syntax
+				if (!defFile.matches(DEFFILE_MATCHER)) {
+					exceptionRegistry.throwException(
+							FileHandlerException.class, 1002, defFile,
+							DEFFILE_MATCHER);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines the default files defined by the <code>Extension</code>.
+	 * 
+	 * @param e
+	 *            the <code>Extension</code> to determine the default files from
+	 * 
+	 * @return the determined default files
+	 */
+	protected List<String> determineDefaultFiles(final Extension e) {
+		String defFilesList;
+
+		if (e == null) {
+			defFilesList = DEF_DEFFILES;
+		} else if ((defFilesList = e.<String> getProperty(PROPERTY_DEFFILES)) != null) {
+			// nothing to do
+		} else {
+			defFilesList = DEF_DEFFILES;
+		}
+
+		// get the list
+		final List<String> list;
+		if (defFilesList == null || "".equals(defFilesList.trim())) {
+			list = new ArrayList<String>();
+		} else {
+			list = Arrays.asList(defFilesList.split("\\s*,\\s*"));
+		}
+
+		return list;
+	}
+
+	/**
+	 * Determines the prefix, which should be removed from the URI, prior to
+	 * looking up the file to be requested from the file-system.
+	 * 
+	 * @param e
+	 *            the <code>Extension</code> to read the prefix from
+	 * 
+	 * @return the determined prefix
+	 */
+	protected String determinePrefix(final Extension e) {
+		String prefix;
+		if (e == null) {
+			prefix = "";
+		} else if ((prefix = e
+				.<String> getProperty(HttpListener.PROPERTY_URLMATCHER)) != null) {
+
+			final int pos = prefix.lastIndexOf("/");
+			if (pos == -1) {
+				prefix = "";
+			} else {
+				prefix = prefix.substring(0, pos + 1);
+			}
+		} else {
+			prefix = "";
+		}
+
+		return prefix;
+	}
+
+	/**
+	 * Opens all the locations of the specified <code>docRoot</code>, which are
+	 * archives (see {@link ZipArchive#isArchive(File)}).
+	 * 
+	 * @param docRoot
+	 *            the canonical locations of the document-root
+	 * 
+	 * @return the opened archives by location
+	 * 
+	 * @throws FileHandlerException
+	 *             if an archive cannot be opened
+	 */
+	protected Map<String, ZipArchive> openArchives(final List<String> docRoot)
+			throws FileHandlerException {
+		final Map<String, ZipArchive> archives = new ConcurrentHashMap<String, ZipArchive>();
+
+		for (final String location : docRoot) {
+			final File locationFile = new File(location);
+			if (!locationFile.canRead() || !ZipArchive.isArchive(locationFile)) {
+				continue;
+			}
+
+			try {
+				final ZipArchive archive = new ZipArchive(locationFile);
+				archives.put(location, archive);
+
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Opened archive " + archive);
+				}
+			} catch (final IOException ex) {
+				exceptionRegistry.throwException(FileHandlerException.class,
+						1008, ex, location);
+			}
+		}
+
+		return archives;
+	}
+
+	/**
+	 * Determines the document-root based on the specified
+	 * <code>Extension</code>. The returned document-root shouldn't be validated
+	 * within here, this is done in a separate method (
+	 * {@link #validateDocRoot(File)}). A document-root can be defined by
+	 * several locations, which are searched in order of definition, whereby the
+	 * first-location will always be the value defined by the property (i.e.
+	 * within the docroot-element).
+	 * 
+	 * @param e
+	 *            the <code>Extension</code> to determine the document-root from
+	 * 
+	 * @return the not validated document-root
+	 * 
+	 * @see #validateDocRoot(File)
+	 */
+	private List<String> determineDocumentRoot(final Extension e) {
+
+		final List<String> docRoot = new ArrayList<String>();
+
+		// make sure that we have an extension for further processing
+		if (e == null) {
+			docRoot.add(DEF_DOCROOT);
+			return docRoot;
+		}
+
+		// look up the default location (normally defined that way)
+		final String defLocation = e.<String> getProperty(PROPERTY_DOCROOT);
+		if (defLocation != null && !"".equals(defLocation.trim())) {
+			docRoot.add(defLocation);
+		}
+
+		// add all defined locations
+		if (e.hasExtension(EXTENSION_LOCATION)) {
+			final List<Extension> locExtensions = e
+					.getExtensions(EXTENSION_LOCATION);
+			for (final Extension locExtension : locExtensions) {
+				final String location = locExtension
+						.<String> getProperty(PROPERTY_DOCROOT);
+
+				// add the location if one is defined
+				if (location == null || "".equals(location.trim())) {
+					exceptionRegistry.throwException(
+							FileHandlerException.class, 1003,
+							EXTENSION_LOCATION);
+				} else {
+					docRoot.add(location);
+				}
+			}
+		}
+
+		// check if we found something
+		if (docRoot.size() == 0) {
+			docRoot.add(DEF_DOCROOT);
+		}
+
+		return docRoot;
+	}
+
+	/**
+	 * Validates the passed file, to be used as document-root. The method should
+	 * throw a <code>FileHandlerException</code> if the validation is fails.
+	 * 
+	 * @param docRoot
+	 *            the document-root to be validated
+	 * 
+	 * @throws FileHandlerException
+	 *             if the validation fails
+	 */
+	protected void validateDocRoot(final List<String> docRoot)
+			throws FileHandlerException {
+
+		if (docRoot == null || docRoot.size() == 0) {
+			exceptionRegistry.throwException(FileHandlerException.class, 1001);
+		}
+	}
+
+	/**
+	 * Determines the file to be used for the specified <code>uri</code>.
+	 * 
+	 * @param uri
+	 *            the uri to determine the <code>File</code> for
+	 * 
+	 * @return the <code>File</code> the passed <code>uri</code> points to
+	 * 
+	 * @throws IOException
+	 *             if the <code>uri</code> cannot be decoded
+	 */
+	protected File determineFile(final String uri) throws IOException {
+		final FileMetaData metaData = determineMetaData(uri);
+		return metaData == null ? null : metaData.getFile();
+	}
+
+	/**
+	 * Determines the meta-data of the file to be used for the specified
+	 * <code>uri</code>. The meta-data is cached, i.e. it reflects the state of
+	 * the file at the time of the resolution.
+	 * 
+	 * @param uri
+	 *            the uri to determine the meta-data for
+	 * 
+	 * @return the <code>FileMetaData</code> of the file the passed
+	 *         <code>uri</code> points to, <code>null</code> if no file could
+	 *         be found
+	 * 
+	 * @throws IOException
+	 *             if the <code>uri</code> cannot be decoded
+	 */
+	protected FileMetaData determineMetaData(final String uri)
+			throws IOException {
+
+		final String path = determinePath(uri);
+		return path == null ? null : lookupMetaData(path);
+	}
+
+	/**
+	 * Determines the decoded path of the specified <code>uri</code> relative
+	 * to the document-root, i.e. without any parameters and prefix. The path
+	 * is normalized in memory (see {@link PathNormalizer}), i.e. it can be
+	 * resolved against the canonical locations without leaving these.
+	 * 
+	 * @param uri
+	 *            the uri to determine the path for
+	 * 
+	 * @return the decoded path, or <code>null</code> if the <code>uri</code>
+	 *         is empty, doesn't start with the prefix or is rejected by the
+	 *         normalization (e.g. because it points outside of the
+	 *         document-root)
+	 * 
+	 * @throws IOException
+	 *             if the <code>uri</code> cannot be decoded
+	 */
+	protected String determinePath(final String uri) throws IOException {
+
+		// there is no empty file
+		if (uri == null || "".equals(uri.trim())) {
+			return null;
+		}
+
+		// decode it without any parameters
+		final String decUri = PathNormalizer.decode(PathNormalizer
+				.stripQuery(uri));
+
+		// normalize it, so that it cannot point outside of a location
+		if (decUri != null && decUri.startsWith(prefix)) {
+			return PathNormalizer.normalize(decUri.substring(prefix.length()));
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Looks up the meta-data of the file for the specified decoded
+	 * <code>path</code>, using the index or the cache of resolved files.
+	 * 
+	 * @param path
+	 *            the decoded path relative to the document-root
+	 * 
+	 * @return the <code>FileMetaData</code> of the file, <code>null</code> if
+	 *         no file could be found
+	 */
+	protected FileMetaData lookupMetaData(final String path) {
+
+		// an index resolves everything without any access of the file-system
+		final DocRootIndex index = this.index;
+		if (index != null) {
+			return index.get(path);
+		}
+
+		// check if we resolved the file already
+		FileMetaData metaData = resolvedFiles.get(path);
+		if (metaData == null) {
+
+			// check if we know that the file doesn't exist
+			if (notFound.contains(path)) {
+				return null;
+			}
+
+			final long invalidation = invalidations.get();
+			metaData = resolveMetaData(path);
+
+			// don't cache it, if it might have been invalidated meanwhile
+			if (invalidation == invalidations.get()) {
+				if (metaData != null) {
+					resolvedFiles.put(path, metaData);
+				} else {
+					notFound.add(path);
+				}
+			}
+		}
+
+		return metaData;
+	}
+
+	/**
+	 * Creates the meta-data of the specified resolved <code>file</code>,
+	 * including the precompressed siblings of the file, if compression is
+	 * enabled. A sibling is ignored if it's older than the file.
+	 * 
+	 * @param file
+	 *            the resolved file to create the meta-data for
+	 * 
+	 * @return the created <code>FileMetaData</code>
+	 */
+	protected FileMetaData createMetaData(final File file) {
+		if (!compression) {
+			return new FileMetaData(file);
+		}
+
+		final Map<String, FileMetaData> variants = new LinkedHashMap<String, FileMetaData>();
+		for (final String[] suffix : PRECOMPRESSED_SUFFIXES) {
+			final File sibling = new File(file.getPath() + suffix[1]);
+			if (sibling.isFile() && sibling.canRead()
+					&& sibling.lastModified() >= file.lastModified()) {
+				variants.put(suffix[0], new FileMetaData(sibling, suffix[0],
+						null));
+			}
+		}
+
+		return new FileMetaData(file, null, variants);
+	}
+
+	/**
+	 * Searches the locations of the document-root for the file specified by
+	 * the decoded <code>path</code>, i.e. the path without any prefix. If the
+	 * path points to a directory, the first default file found is used.
+	 * 
+	 * @param path
+	 *            the decoded path to search the file for
+	 * 
+	 * @return the found <code>File</code> or <code>null</code> if no file
+	 *         could be found, the archive is returned if the path is resolved
+	 *         to an entry of an archive
+	 * 
+	 * @see #resolveMetaData(String)
+	 */
+	protected File resolveFile(final String path) {
+		final FileMetaData metaData = resolveMetaData(path);
+		return metaData == null ? null : metaData.getFile();
+	}
+
+	/**
+	 * Searches the locations of the document-root for the file (or the entry
+	 * of an archive) specified by the decoded <code>path</code>, i.e. the path
+	 * without any prefix. If the path points to a directory, the first default
+	 * file found is used.
+	 * 
+	 * @param path
+	 *            the decoded path to search the file for
+	 * 
+	 * @return the <code>FileMetaData</code> of the found file or
+	 *         <code>null</code> if no file could be found
+	 */
+	protected FileMetaData resolveMetaData(final String path) {
+		fileLookups.incrementAndGet();
+
+		// we search for the file and for a default file
+		File file = null;
+		File defFile = null;
+		ZipArchive.Entry entry = null;
+		ZipArchive.Entry defEntry = null;
+
+		// search in each location if we have the file
+		for (final String location : docRoot) {
+			File locationFile = new File(location);
+			final ZipArchive archive = archives.get(location);
+
+			/*
+			 * check if a file is specified which we can use
+			 */
+			if (!locationFile.exists() || !locationFile.canRead()) {
+				continue;
+			}
+			/*
+			 * check if we can find the specified file (via URI) in the
+			 * archive
+			 */
+			else if (archive != null) {
+				final String entryPath = DocRootIndex.normalize(path);
+				if (entryPath == null) {
+					continue;
+				}
+
+				entry = archive.getEntry(entryPath);
+				if (entry != null) {
+					file = null;
+					break;
+				} else if (defFile == null && defEntry == null
+						&& defFileNames != null) {
+					defEntry = resolveDefaultEntry(archive, entryPath);
+				}
+			}
+			/*
+			 * skip an archive which cannot be opened (currently)
+			 */
+			else if (ZipArchive.isArchive(locationFile)) {
+				continue;
+			}
+			/*
+			 * if we have a file directly we are done
+			 */
+			else if (locationFile.isFile()) {
+				file = locationFile;
+			}
+			/*
+			 * check if we can find the specified file (via URI) in the
+			 * directory
+			 */
+			else {
+				locationFile = new File(locationFile, path);
+				if (locationFile.isFile()) {
+					file = locationFile;
+					break;
+				}
+				/*
+				 * if we didn't find any default yet, we look it up in the
+				 * directory
+				 */
+				else if (defFile == null && defEntry == null
+						&& defFileNames != null && locationFile.isDirectory()) {
+					for (final String defFiletName : defFileNames) {
+						final File defFilePath = new File(locationFile,
+								defFiletName);
+
+						// check if the defFilePath is a valid file
+						if (defFilePath.exists() && defFilePath.canRead()
+								&& defFilePath.isFile()) {
+							defFile = defFilePath;
+						}
+					}
+				}
+			}
+		}
+
+		if (entry != null) {
+			return new ArchiveEntryMetaData(entry);
+		} else if (file != null) {
+			return createMetaData(file);
+		} else if (defEntry != null) {
+			return new ArchiveEntryMetaData(defEntry);
+		} else if (defFile != null) {
+			return createMetaData(defFile);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Resolves the default file of the directory <code>dir</code> within the
+	 * specified <code>archive</code>.
+	 * 
+	 * @param archive
+	 *            the archive to search in
+	 * @param dir
+	 *            the normalized path of the directory within the archive
+	 * 
+	 * @return the entry of the default file, or <code>null</code> if none is
+	 *         found
+	 */
+	protected ZipArchive.Entry resolveDefaultEntry(final ZipArchive archive,
+			final String dir) {
+		if (defFileNames == null) {
+			return null;
+		}
+
+		ZipArchive.Entry defEntry = null;
+		for (final String defFileName : defFileNames) {
+			final String name = dir.isEmpty() ? defFileName : dir + "/"
+					+ defFileName;
+			final ZipArchive.Entry candidate = archive.getEntry(name);
+			if (candidate != null) {
+				defEntry = candidate;
+			}
+		}
+
+		return defEntry;
+	}
+
+	/**
+	 * Gets the cache of the paths, which couldn't be resolved.
+	 * 
+	 * @return the cache of the paths, which couldn't be resolved,
+	 *         <code>null</code> if the handler isn't initialized
+	 */
+	public NegativeCache getNotFound() {
+		return notFound;
+	}
+
+	/**
+	 * Answers the request of a file, which couldn't be found.
+	 * 
+	 * @param response
+	 *            the response to be filled
+	 * @param target
+	 *            the requested target
+	 */
+	protected void setNotFound(final HttpResponse response, final String target) {
+		response.setStatusCode(HttpStatus.SC_NOT_FOUND);
+		response.setEntity(new ByteArrayEntity(NOT_FOUND_BODY,
+				HTML_CONTENTTYPE));
+
+		logNotFound(target);
+	}
+
+	/**
+	 * Logs the request of a file, which couldn't be found. At most one
+	 * request is logged within <code>NOTFOUND_LOG_INTERVAL</code>, so that
+	 * scanners probing lots of paths don't flood the log.
+	 * 
+	 * @param target
+	 *            the requested target
+	 */
+	protected void logNotFound(final String target) {
+		if (!LOG.isInfoEnabled()) {
+			return;
+		}
+
+		final long now = System.currentTimeMillis();
+		final long last = lastNotFoundLog.get();
+		if (now - last >= NOTFOUND_LOG_INTERVAL
+				&& lastNotFoundLog.compareAndSet(last, now)) {
+			final long suppressed = suppressedNotFoundLogs.getAndSet(0);
+			LOG.info("File "
+					+ new File(target).getPath()
+					+ " not found"
+					+ (suppressed > 0 ? " (" + suppressed
+							+ " further requests of files not found since)"
+							: ""));
+		} else {
+			suppressedNotFoundLogs.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the amount of lookups performed against the file-system, i.e. the
+	 * amount of requests which couldn't be answered by the cache of resolved
+	 * files.
+	 * 
+	 * @return the amount of lookups performed against the file-system
+	 */
+	public long getFileLookups() {
+		return fileLookups.get();
+	}
+
+	/**
+	 * Gets the cache used to keep the on-the-fly compressed contents.
+	 * 
+	 * @return the cache used to keep the compressed contents,
+	 *         <code>null</code> if the handler isn't initialized
+	 */
+	public CompressedContentCache getCompressedContents() {
+		return compressedContents;
+	}
+
+	/**
+	 * Checks if files of the specified <code>mimeType</code> should be
+	 * compressed on-the-fly.
+	 * 
+	 * @param mimeType
+	 *            the mime-type to be checked
+	 * 
+	 * @return <code>true</code> if files of the type should be compressed,
+	 *         otherwise <code>false</code>
+	 */
+	protected boolean isCompressible(final String mimeType) {
+		if (mimeType == null || compressionTypes == null) {
+			return false;
+		}
+
+		for (final String type : compressionTypes) {
+			if (type.endsWith("*")) {
+				if (mimeType.startsWith(type.substring(0, type.length() - 1))) {
+					return true;
+				}
+			} else if (mimeType.equals(type)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Determines the content-codings available for the specified file, in
+	 * order of preference.
+	 * 
+	 * @param metaData
+	 *            the meta-data of the file
+	 * @param mimeType
+	 *            the mime-type of the file
+	 * 
+	 * @return the available content-codings, an empty list if the file can
+	 *         only be sent without encoding
+	 */
+	protected List<String> determineEncodings(final FileMetaData metaData,
+			final String mimeType) {
+		final List<String> encodings = new ArrayList<String>();
+		if (!compression) {
+			return encodings;
+		}
+
+		// a deflated entry of an archive can be sent without compressing it
+		if (metaData instanceof ArchiveEntryMetaData
+				&& ((ArchiveEntryMetaData) metaData).isDeflated()) {
+			encodings.add(AcceptEncoding.DEFLATE);
+		}
+
+		encodings.addAll(metaData.getVariants().keySet());
+		if (!encodings.contains(AcceptEncoding.GZIP)
+				&& isCompressible(mimeType)
+				&& compressedContents.isCacheable(metaData)) {
+			encodings.add(AcceptEncoding.GZIP);
+		}
+
+		return encodings;
+	}
+
+	/**
+	 * Creates the entity of the file encoded with the specified
+	 * <code>encoding</code>, i.e. the precompressed sibling, the deflated
+	 * entry of an archive or the content compressed on-the-fly.
+	 * 
+	 * @param metaData
+	 *            the meta-data of the file
+	 * @param encoding
+	 *            the content-coding of the entity
+	 * @param contentType
+	 *            the type of the content
+	 * @param context
+	 *            the <code>HttpContext</code> of the request
+	 * 
+	 * @return the encoded entity, or <code>null</code> if the file cannot be
+	 *         encoded
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected AbstractHttpEntity createEncodedEntity(
+			final FileMetaData metaData, final String encoding,
+			final ContentType contentType, final HttpContext context)
+			throws IOException {
+		final AbstractHttpEntity entity;
+
+		final FileMetaData variant = metaData.getVariant(encoding);
+		if (variant != null) {
+			entity = new ZeroCopyFileEntity(variant.getFile(), 0,
+					variant.getLength(), contentType, getSocketChannel(context));
+		} else if (AcceptEncoding.DEFLATE.equals(encoding)
+				&& metaData instanceof ArchiveEntryMetaData) {
+			entity = ((ArchiveEntryMetaData) metaData).createDeflateEntity(
+					contentType, getSocketChannel(context));
+		} else if (AcceptEncoding.GZIP.equals(encoding)) {
+			final byte[] content = compressedContents.get(metaData);
+			entity = content == null ? null : new ByteArrayEntity(content,
+					contentType);
+		} else {
+			entity = null;
+		}
+
+		if (entity != null) {
+			entity.setContentEncoding(encoding);
+		}
+		return entity;
 	}
 
 	/**
-	 * Validates the passed <code>defFiles</code> and throws a
-	 * <code>FileHandlerException</code> if at least one cannot be validated.
+	 * Gets the fingerprinted URI of the file the specified <code>uri</code>
+	 * points to, i.e. the URI which can be cached forever by clients.
 	 * 
-	 * @param defFiles
-	 *            the files to be validated
+	 * @param uri
+	 *            the URI to get the fingerprinted URI for
 	 * 
-	 * @throws FileHandlerException
-	 *             if at least one of the <code>defFiles</code> cannot be
-	 *             validated
+	 * @return the fingerprinted URI, or <code>null</code> if no readable file
+	 *         is found or fingerprints are not enabled
+	 * 
+	 * @throws IOException
+	 *             if the <code>uri</code> cannot be decoded or the file
+	 *             cannot be read
 	 */
-	protected void validateDefFiles(final List<String> defFiles)
-			throws FileHandlerException {
-		if (defFiles == null) {
-			return;
-		} else if (defFiles.size() > 0) {
-			for (final String defFile : defFiles) {
-				// check the file-syntax
-				if (!defFile.matches(DEFFILE_MATCHER)) {
-					exceptionRegistry.throwException(
-							FileHandlerException.class, 1002, defFile,
-							DEFFILE_MATCHER);
-				}
-			}
+	public String getFingerprintedUri(final String uri) throws IOException {
+		if (fingerprints == null) {
+			return null;
 		}
+
+		final String path = determinePath(uri);
+		final FileMetaData metaData = path == null ? null
+				: lookupMetaData(path);
+		if (metaData == null || !metaData.isReadable()) {
+			return null;
+		}
+
+		return fingerprints.createUri(deparameterize(uri), metaData);
 	}
 
 	/**
-	 * Determines the default files defined by the <code>Extension</code>.
-	 * 
-	 * @param e
-	 *            the <code>Extension</code> to determine the default files from
+	 * Gets the fingerprints of the files.
 	 * 
-	 * @return the determined default files
+	 * @return the fingerprints of the files, <code>null</code> if
+	 *         fingerprints are not enabled
 	 */
-	protected List<String> determineDefaultFiles(final Extension e) {
-		String defFilesList;
+	public Fingerprints getFingerprints() {
+		return fingerprints;
+	}
 
-		if (e == null) {
-			defFilesList = DEF_DEFFILES;
-		} else if ((defFilesList = e.<String> getProperty(PROPERTY_DEFFILES)) != null) {
-			// nothing to do
-		} else {
-			defFilesList = DEF_DEFFILES;
+	/**
+	 * Checks if the query of the specified <code>uri</code> contains the
+	 * parameter with the specified <code>name</code>.
+	 * 
+	 * @param uri
+	 *            the URI to be checked
+	 * @param name
+	 *            the name of the parameter
+	 * 
+	 * @return <code>true</code> if the parameter is defined, otherwise
+	 *         <code>false</code>
+	 */
+	protected boolean hasParameter(final String uri, final String name) {
+		final int pos = uri.lastIndexOf('?');
+		if (pos == -1) {
+			return false;
 		}
 
-		// get the list
-		final List<String> list;
-		if (defFilesList == null || "".equals(defFilesList.trim())) {
-			list = new ArrayList<String>();
-		} else {
-			list = Arrays.asList(defFilesList.split("\\s*,\\s*"));
+		for (final String parameter : uri.substring(pos + 1).split("&")) {
+			if (parameter.equals(name) || parameter.startsWith(name + "=")) {
+				return true;
+			}
 		}
 
-		return list;
+		return false;
 	}
 
 	/**
-	 * Determines the prefix, which should be removed from the URI, prior to
-	 * looking up the file to be requested from the file-system.
+	 * Gets the decoded value of the parameter with the specified
+	 * <code>name</code> of the query of the <code>uri</code>.
 	 * 
-	 * @param e
-	 *            the <code>Extension</code> to read the prefix from
+	 * @param uri
+	 *            the URI to get the parameter from
+	 * @param name
+	 *            the name of the parameter
 	 * 
-	 * @return the determined prefix
+	 * @return the decoded value, an empty string if the parameter has no
+	 *         value, or <code>null</code> if the parameter isn't defined
+	 * 
+	 * @throws IOException
+	 *             if the value cannot be decoded
 	 */
-	protected String determinePrefix(final Extension e) {
-		String prefix;
-		if (e == null) {
-			prefix = "";
-		} else if ((prefix = e
-				.<String> getProperty(HttpListener.PROPERTY_URLMATCHER)) != null) {
+	protected String getParameter(final String uri, final String name)
+			throws IOException {
+		final int pos = uri.lastIndexOf('?');
+		if (pos == -1) {
+			return null;
+		}
 
-			final int pos = prefix.lastIndexOf("/");
-			if (pos == -1) {
-				prefix = "";
-			} else {
-				prefix = prefix.substring(0, pos + 1);
+		for (final String parameter : uri.substring(pos + 1).split("&")) {
+			if (parameter.equals(name)) {
+				return "";
+			} else if (parameter.startsWith(name + "=")) {
+				return URLDecoder.decode(
+						parameter.substring(name.length() + 1), "UTF-8");
 			}
-		} else {
-			prefix = "";
 		}
 
-		return prefix;
+		return null;
 	}
 
 	/**
-	 * Determines the document-root based on the specified
-	 * <code>Extension</code>. The returned document-root shouldn't be validated
-	 * within here, this is done in a separate method (
-	 * {@link #validateDocRoot(File)}). A document-root can be defined by
-	 * several locations, which are searched in order of definition, whereby the
-	 * first-location will always be the value defined by the property (i.e.
-	 * within the docroot-element).
-	 * 
-	 * @param e
-	 *            the <code>Extension</code> to determine the document-root from
+	 * Answers the request of a ZIP archive of several files, see
+	 * <code>PARAMETER_BUNDLE</code>. The archive is created while it's sent,
+	 * i.e. the files are neither kept in memory nor written to disk.
 	 * 
-	 * @return the not validated document-root
+	 * @param target
+	 *            the requested target
+	 * @param path
+	 *            the decoded path of the directory
+	 * @param response
+	 *            the response to be filled
 	 * 
-	 * @see #validateDocRoot(File)
+	 * @throws IOException
+	 *             if the parameter cannot be decoded
 	 */
-	private List<String> determineDocumentRoot(final Extension e) {
-
-		final List<String> docRoot = new ArrayList<String>();
+	protected void handleBundle(final String target, final String path,
+			final HttpResponse response) throws IOException {
+		final String dir = DocRootIndex.normalize(path);
+		if (dir == null) {
+			setNotFound(response, target);
+			return;
+		}
 
-		// make sure that we have an extension for further processing
-		if (e == null) {
-			docRoot.add(DEF_DOCROOT);
-			return docRoot;
+		// determine the files to be added, stop listing if there are too many
+		final String list = getParameter(target, PARAMETER_BUNDLE);
+		final boolean listed = list != null && !list.trim().isEmpty();
+		final DocRootIndex index = this.index;
+		final Set<String> names;
+		if (listed) {
+			names = ZipBundle.parseNames(list);
+		} else if (index != null) {
+			names = index.listFiles(dir, bundleMaxFiles + 1);
+		} else {
+			names = lister.listFiles(dir, bundleMaxFiles + 1);
 		}
 
-		// look up the default location (normally defined that way)
-		final String defLocation = e.<String> getProperty(PROPERTY_DOCROOT);
-		if (defLocation != null && !"".equals(defLocation.trim())) {
-			docRoot.add(defLocation);
+		if (names == null) {
+			setNotFound(response, target);
+			return;
+		} else if (names.size() > bundleMaxFiles) {
+			response.setStatusCode(HttpStatus.SC_FORBIDDEN);
+			response.setEntity(new StringEntity(
+					"<html><body><h1>Too many files requested</h1></body></html>",
+					HTML_CONTENTTYPE));
+
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("Denied bundle of more than " + bundleMaxFiles
+						+ " files of '" + dir + "'");
+			}
+			return;
 		}
 
-		// add all defined locations
-		if (e.hasExtension(EXTENSION_LOCATION)) {
-			final List<Extension> locExtensions = e
-					.getExtensions(EXTENSION_LOCATION);
-			for (final Extension locExtension : locExtensions) {
-				final String location = locExtension
-						.<String> getProperty(PROPERTY_DOCROOT);
+		// resolve the files like single ones
+		final ZipBundle zipBundle = new ZipBundle();
+		for (final String name : names) {
+			final FileMetaData metaData = lookupMetaData(dir.isEmpty() ? name
+					: dir + "/" + name);
 
-				// add the location if one is defined
-				if (location == null || "".equals(location.trim())) {
-					exceptionRegistry.throwException(
-							FileHandlerException.class, 1003,
-							EXTENSION_LOCATION);
-				} else {
-					docRoot.add(location);
-				}
+			if (metaData != null && metaData.isReadable()) {
+				final String mimeType = mimeTypes.getContentType(metaData)
+						.getMimeType();
+				zipBundle.add(name, metaData, isCompressible(mimeType));
+			} else if (listed) {
+				setNotFound(response, target);
+				return;
 			}
 		}
+		if (zipBundle.size() == 0) {
+			setNotFound(response, target);
+			return;
+		}
 
-		// check if we found something
-		if (docRoot.size() == 0) {
-			docRoot.add(DEF_DOCROOT);
+		response.setStatusCode(HttpStatus.SC_OK);
+		response.setHeader("Content-Disposition", "attachment; filename=\""
+				+ ZipBundle.createFileName(dir) + "\"");
+		response.setEntity(zipBundle.createEntity());
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Serving bundle of " + zipBundle.size()
+					+ " files of '" + dir + "'");
 		}
+	}
 
-		return docRoot;
+	/**
+	 * Gets the lister of the files of the locations, used to bundle all the
+	 * files of a directory if no index is available.
+	 * 
+	 * @return the lister of the files, <code>null</code> if the handler isn't
+	 *         initialized
+	 */
+	public FileLister getLister() {
+		return lister;
 	}
 
 	/**
-	 * Validates the passed file, to be used as document-root. The method should
-	 * throw a <code>FileHandlerException</code> if the validation is fails.
+	 * Gets the rules of the caching headers.
 	 * 
-	 * @param docRoot
-	 *            the document-root to be validated
+	 * @return the rules of the caching headers, <code>null</code> if the
+	 *         handler isn't initialized
+	 */
+	public CachePolicies getCachePolicies() {
+		return cachePolicies;
+	}
+
+	/**
+	 * Adds the caching headers (i.e. <code>Cache-Control</code> and
+	 * <code>Expires</code>) to the <code>response</code>, if a rule applies
+	 * to the requested file.
 	 * 
-	 * @throws FileHandlerException
-	 *             if the validation fails
+	 * @param response
+	 *            the response to add the headers to
+	 * @param path
+	 *            the decoded path of the request
+	 * @param mimeType
+	 *            the mime-type of the requested file
 	 */
-	protected void validateDocRoot(final List<String> docRoot)
-			throws FileHandlerException {
+	protected void addCachingHeaders(final HttpResponse response,
+			final String path, final String mimeType) {
+		addCachingHeaders(response, cachePolicies.find(path, mimeType));
+	}
 
-		if (docRoot == null || docRoot.size() == 0) {
-			exceptionRegistry.throwException(FileHandlerException.class, 1001);
+	/**
+	 * Adds the caching headers (i.e. <code>Cache-Control</code> and
+	 * <code>Expires</code>) of the specified <code>policy</code> to the
+	 * <code>response</code>.
+	 * 
+	 * @param response
+	 *            the response to add the headers to
+	 * @param policy
+	 *            the rule defining the headers, can be <code>null</code>
+	 */
+	protected void addCachingHeaders(final HttpResponse response,
+			final CachePolicy policy) {
+		if (policy == null) {
+			return;
+		}
+
+		final String cacheControl = policy.getCacheControl();
+		if (cacheControl != null) {
+			response.setHeader("Cache-Control", cacheControl);
+		}
+		final String expires = policy.getExpires(System.currentTimeMillis());
+		if (expires != null) {
+			response.setHeader("Expires", expires);
 		}
 	}
 
 	/**
-	 * Determines the file to be used for the specified <code>uri</code>.
+	 * Gets the cache used to keep the resolved files.
 	 * 
-	 * @param uri
-	 *            the uri to determine the <code>File</code> for
+	 * @return the cache used to keep the resolved files, <code>null</code> if
+	 *         the handler isn't initialized
+	 */
+	public LruCache<String, FileMetaData> getResolvedFiles() {
+		return resolvedFiles;
+	}
+
+	/**
+	 * Checks if the conditional headers (i.e. <code>If-None-Match</code> and
+	 * <code>If-Modified-Since</code>) of the <code>request</code> state, that
+	 * the client has a valid version of the file. The
+	 * <code>If-Modified-Since</code> header is only evaluated if no
+	 * <code>If-None-Match</code> header is present.
 	 * 
-	 * @return the <code>File</code> the passed <code>uri</code> points to
+	 * @param request
+	 *            the request to be checked
+	 * @param metaData
+	 *            the meta-data of the requested file
 	 * 
-	 * @throws IOException
-	 *             if the <code>uri</code> cannot be decoded
+	 * @return <code>true</code> if the file wasn't modified, otherwise
+	 *         <code>false</code>
 	 */
-	protected File determineFile(final String uri) throws IOException {
+	protected boolean isNotModified(final HttpRequest request,
+			final FileMetaData metaData) {
+		return isNotModified(request, metaData, metaData.getETag());
+	}
 
-		// there is no empty file
-		if (uri == null || "".equals(uri.trim())) {
-			return null;
+	/**
+	 * Checks if the conditional headers of the <code>request</code> state,
+	 * that the client has a valid version of the representation identified by
+	 * the specified <code>etag</code>.
+	 * 
+	 * @param request
+	 *            the request to be checked
+	 * @param metaData
+	 *            the meta-data of the requested file
+	 * @param etag
+	 *            the entity-tag of the representation to be sent
+	 * 
+	 * @return <code>true</code> if the file wasn't modified, otherwise
+	 *         <code>false</code>
+	 * 
+	 * @see #isNotModified(HttpRequest, FileMetaData)
+	 */
+	protected boolean isNotModified(final HttpRequest request,
+			final FileMetaData metaData, final String etag) {
+		final Header ifNoneMatch = request.getFirstHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			return FileMetaData.matchesETag(ifNoneMatch.getValue(), etag);
 		}
 
-		// first decode it
-		String decUri = URLDecoder.decode(uri, "UTF-8");
-		decUri = deparameterize(decUri);
-
-		if (decUri.startsWith(prefix)) {
-			decUri = decUri.substring(prefix.length());
-
-			// we search for the file and for a default file
-			File file = null;
-			File defFile = null;
+		final Header ifModifiedSince = request
+				.getFirstHeader("If-Modified-Since");
+		if (ifModifiedSince != null) {
+			final long time = HttpDateUtilities.parseDate(ifModifiedSince
+					.getValue());
+			return time != -1 && !metaData.isModifiedSince(time);
+		}
 
-			// search in each location if we have the file
-			for (final String location : docRoot) {
-				File locationFile = new File(location);
+		return false;
+	}
 
-				/*
-				 * check if a file is specified which we can use
-				 */
-				if (!locationFile.exists() || !locationFile.canRead()) {
-					continue;
-				}
-				/*
-				 * if we have a file directly we are done
-				 */
-				else if (locationFile.isFile()) {
-					file = locationFile;
-				}
-				/*
-				 * check if we can find the specified file (via URI) in the
-				 * directory
-				 */
-				else {
-					locationFile = new File(locationFile, decUri);
-					if (locationFile.isFile()) {
-						file = locationFile;
-						break;
-					}
-					/*
-					 * if we didn't find any default yet, we look it up in the
-					 * directory
-					 */
-					else if (defFile == null && defFileNames != null
-							&& locationFile.isDirectory()) {
-						for (final String defFiletName : defFileNames) {
-							final File defFilePath = new File(locationFile,
-									defFiletName);
-
-							// check if the defFilePath is a valid file
-							if (defFilePath.exists() && defFilePath.canRead()
-									&& defFilePath.isFile()) {
-								defFile = defFilePath;
-							}
-						}
-					}
-				}
-			}
+	/**
+	 * Gets the channel of the socket used by the connection, if the channel
+	 * should and can be used to transfer files directly. Only sockets accepted
+	 * by a <code>ServerSocketChannel</code> provide a channel, the sockets of
+	 * the <code>HttpListener</code> don't.
+	 * 
+	 * @param context
+	 *            the <code>HttpContext</code> of the request
+	 * 
+	 * @return the channel of the socket, or <code>null</code> if no channel is
+	 *         available or should not be used
+	 */
+	protected WritableByteChannel getSocketChannel(final HttpContext context) {
+		if (!zeroCopy || context == null) {
+			return null;
+		}
 
-			return file == null ? defFile : file;
+		final Object socket = context.getAttribute(WorkerThread.CONTEXT_SOCKET);
+		if (socket instanceof Socket) {
+			return ((Socket) socket).getChannel();
 		} else {
 			return null;
 		}
-
 	}
 
 	/**
@@ -429,44 +2136,167 @@ public class FileHandler implements IHandler {
 
 		// get the target of the request
 		final String target = request.getRequestLine().getUri();
-		final File file = determineFile(target);
-		if (file == null || !file.exists()) {
-			final String failedFile = new File(target).getPath();
-
-			response.setStatusCode(HttpStatus.SC_NOT_FOUND);
-			final StringEntity entity = new StringEntity("<html><body><h1>File"
-					+ failedFile + " not found</h1></body></html>",
-					ContentType.create("text/html", "UTF-8"));
-			response.setEntity(entity);
+		final String path = determinePath(target);
+
+		// check if a bundle of files is requested
+		if (bundle && path != null && hasParameter(target, PARAMETER_BUNDLE)) {
+			handleBundle(target, path, response);
+			return;
+		}
+		FileMetaData metaData = path == null ? null : lookupMetaData(path);
 
-			if (LOG.isInfoEnabled()) {
-				LOG.info("File " + failedFile + " not found");
+		// check if the file is requested using a fingerprinted name
+		CachePolicy fingerprintPolicy = null;
+		if (metaData == null && fingerprints != null) {
+			final String[] fingerprinted = Fingerprints.parse(path);
+			if (fingerprinted != null) {
+				metaData = lookupMetaData(fingerprinted[0]);
+
+				if (metaData != null && metaData.isReadable()) {
+					fingerprintPolicy = fingerprints.getPolicy(metaData,
+							fingerprinted[1]);
+				}
 			}
-		} else if (!file.canRead() || file.isDirectory()) {
+		}
 
+		if (metaData == null) {
+			setNotFound(response, target);
+		} else if (!metaData.isReadable()) {
 			response.setStatusCode(HttpStatus.SC_FORBIDDEN);
 			final StringEntity entity = new StringEntity(
 					"<html><body><h1>Access denied</h1></body></html>",
-					ContentType.create("text/html", "UTF-8"));
+					HTML_CONTENTTYPE);
 			response.setEntity(entity);
 
 			if (LOG.isWarnEnabled()) {
-				LOG.warn("Cannot read file " + file.getPath());
+				LOG.warn("Cannot read file " + metaData.getFile().getPath());
 			}
-		} else {
+		} else if (fingerprints != null && fingerprintPolicy == null
+				&& hasParameter(target, PARAMETER_FINGERPRINT)) {
+			final String uri = getFingerprintedUri(target);
+
 			response.setStatusCode(HttpStatus.SC_OK);
+			response.setHeader("Cache-Control", "no-cache");
+			response.setEntity(new StringEntity(uri, TEXT_CONTENTTYPE));
+		} else {
+			handleFile(request, response, context, path, metaData,
+					fingerprintPolicy);
+		}
+	}
 
-			// get the mime of the file and response with it
-			final String mimeType = Files.getMimeType(file);
-			final ContentType contentType = ContentType.create(mimeType);
-			final FileEntity body = new FileEntity(file, contentType);
+	/**
+	 * Answers the request of the readable file of the specified
+	 * <code>metaData</code>, i.e. negotiates the content-coding, adds the
+	 * validators and caching headers, checks the conditional headers and
+	 * sends the (encoded) file or the requested ranges.
+	 * 
+	 * @param request
+	 *            the request to be answered
+	 * @param response
+	 *            the response to be filled
+	 * @param context
+	 *            the <code>HttpContext</code> of the request
+	 * @param path
+	 *            the decoded path of the request
+	 * @param metaData
+	 *            the meta-data of the requested file
+	 * @param fingerprintPolicy
+	 *            the caching rule if the file was requested using a
+	 *            fingerprinted name, otherwise <code>null</code>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected void handleFile(final HttpRequest request,
+			final HttpResponse response, final HttpContext context,
+			final String path, final FileMetaData metaData,
+			final CachePolicy fingerprintPolicy) throws IOException {
+		final String method = request.getRequestLine().getMethod()
+				.toUpperCase(Locale.ENGLISH);
+		final String id = metaData.getId();
+
+		// get the mime of the file and response with it
+		final ContentType contentType = mimeTypes.getContentType(metaData);
+		final String mimeType = contentType.getMimeType();
+
+		// negotiate the content-coding, ranges are sent without any
+		final List<String> encodings = determineEncodings(metaData, mimeType);
+		String encoding = null;
+		if (encodings.size() > 0) {
+			response.setHeader("Vary", "Accept-Encoding");
+
+			final Header acceptEncoding = request
+					.getFirstHeader("Accept-Encoding");
+			if (acceptEncoding != null && !request.containsHeader("Range")) {
+				encoding = AcceptEncoding.select(acceptEncoding.getValue(),
+						encodings);
+			}
+		}
+
+		// add the validators, without reading or compressing the file
+		final String etag;
+		if (encoding == null) {
+			etag = metaData.getETag();
+		} else if (metaData.getVariant(encoding) == null) {
+			etag = metaData.getETag(encoding);
+		} else {
+			etag = metaData.getVariant(encoding).getETag();
+		}
+		response.setHeader("ETag", etag);
+		response.setHeader("Last-Modified", metaData.getLastModifiedHeader());
+		if (fingerprintPolicy == null) {
+			addCachingHeaders(response, path, mimeType);
+		} else {
+			addCachingHeaders(response, fingerprintPolicy);
+		}
 
-			response.setEntity(body);
+		// check if the client has a valid version already
+		if (!method.equals("POST") && isNotModified(request, metaData, etag)) {
+			response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
 
 			if (LOG.isDebugEnabled()) {
-				LOG.debug("Serving file " + file.getPath() + " of type "
-						+ mimeType);
+				LOG.debug("File " + id + " not modified");
+			}
+			return;
+		}
+		response.setHeader("Accept-Ranges", metaData.isRangeable() ? "bytes"
+				: "none");
+
+		// create the encoded entity, the file is sent without any encoding
+		// if it cannot be encoded
+		AbstractHttpEntity encodedEntity = null;
+		if (encoding != null) {
+			encodedEntity = createEncodedEntity(metaData, encoding,
+					contentType, context);
+
+			if (encodedEntity == null) {
+				response.setHeader("ETag", metaData.getETag());
 			}
 		}
+
+		// check if a range is requested
+		final List<ByteRange> ranges;
+		if (encodedEntity == null && method.equals("GET")
+				&& metaData.isRangeable()) {
+			ranges = RangeRequest.determine(request, metaData);
+		} else {
+			ranges = null;
+		}
+
+		if (encodedEntity != null) {
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setEntity(encodedEntity);
+		} else if (ranges == null) {
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setEntity(metaData.createEntity(contentType,
+					getSocketChannel(context)));
+		} else {
+			RangeRequest.respond(response, metaData, ranges, contentType,
+					getSocketChannel(context));
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Serving file " + id + " of type " + mimeType);
+		}
 	}
 }
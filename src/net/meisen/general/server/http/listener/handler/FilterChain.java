@@ -0,0 +1,204 @@
+package net.meisen.general.server.http.listener.handler;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.meisen.general.server.http.listener.api.IFilter;
+import net.meisen.general.server.http.listener.files.PathNormalizer;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+
+/**
+ * A link of the chain of the filters of a route, i.e. a handler calling an
+ * {@link IFilter} and passing the next link (or the handler of the route)
+ * to it. A chain is compiled once, when the listener is initialized; a route
+ * without filters uses its handler directly. If the filter isn't applied to
+ * all requests of the route, the link checks the path of each request and
+ * passes a request not matching the <code>urlMatcher</code> of the filter
+ * on to the next handler.
+ *
+ * @author pmeisen
+ *
+ */
+public class FilterChain implements HttpRequestHandler {
+	private final IFilter filter;
+	private final String urlMatcher;
+	private final HttpRequestHandler next;
+
+	/**
+	 * Creates a link of the chain, calling the filter for each request.
+	 *
+	 * @param filter
+	 *            the filter to be called
+	 * @param next
+	 *            the handler passed to the filter
+	 */
+	public FilterChain(final IFilter filter, final HttpRequestHandler next) {
+		this(filter, null, next);
+	}
+
+	/**
+	 * Creates a link of the chain, calling the filter for each request
+	 * matching the <code>urlMatcher</code>.
+	 *
+	 * @param filter
+	 *            the filter to be called
+	 * @param urlMatcher
+	 *            the <code>urlMatcher</code> the path of a request has to
+	 *            match, <code>null</code> to call the filter for each request
+	 * @param next
+	 *            the handler passed to the filter
+	 */
+	public FilterChain(final IFilter filter, final String urlMatcher,
+			final HttpRequestHandler next) {
+		this.filter = filter;
+		this.urlMatcher = urlMatcher;
+		this.next = next;
+	}
+
+	/**
+	 * Compiles the chain calling the <code>filters</code> (in the specified
+	 * order) before the <code>handler</code>.
+	 *
+	 * @param handler
+	 *            the handler of the route
+	 * @param filters
+	 *            the filters of the route
+	 *
+	 * @return the first link of the chain, or the <code>handler</code> if no
+	 *         filters are defined
+	 */
+	public static HttpRequestHandler compile(final HttpRequestHandler handler,
+			final List<IFilter> filters) {
+		return compile(handler, filters, null);
+	}
+
+	/**
+	 * Compiles the chain calling the <code>filters</code> (in the specified
+	 * order) before the <code>handler</code>, each filter is only called for
+	 * the requests matching its <code>urlMatcher</code>.
+	 *
+	 * @param handler
+	 *            the handler of the route
+	 * @param filters
+	 *            the filters of the route
+	 * @param urlMatchers
+	 *            the <code>urlMatcher</code> of each filter, <code>null</code>
+	 *            (for the list or an entry) to call the filter for each
+	 *            request
+	 *
+	 * @return the first link of the chain, or the <code>handler</code> if no
+	 *         filters are defined
+	 */
+	public static HttpRequestHandler compile(final HttpRequestHandler handler,
+			final List<IFilter> filters, final List<String> urlMatchers) {
+		HttpRequestHandler chain = handler;
+		for (int i = filters.size() - 1; i >= 0; i--) {
+			final String urlMatcher = urlMatchers == null ? null : urlMatchers
+					.get(i);
+			chain = new FilterChain(filters.get(i), urlMatcher, chain);
+		}
+
+		return chain;
+	}
+
+	/**
+	 * Checks if the <code>path</code> matches the <code>urlMatcher</code>,
+	 * i.e. if it's equal or if it starts or ends with the value of a
+	 * <code>urlMatcher</code> ending or starting with a <code>*</code>.
+	 *
+	 * @param urlMatcher
+	 *            the <code>urlMatcher</code> to be checked
+	 * @param path
+	 *            the path to be checked
+	 *
+	 * @return <code>true</code> if the <code>path</code> matches, otherwise
+	 *         <code>false</code>
+	 */
+	public static boolean matches(final String urlMatcher, final String path) {
+		if (urlMatcher.equals("*")) {
+			return true;
+		} else if (urlMatcher.endsWith("*")) {
+			return path.startsWith(urlMatcher.substring(0,
+					urlMatcher.length() - 1));
+		} else if (urlMatcher.startsWith("*")) {
+			return path.endsWith(urlMatcher.substring(1));
+		} else {
+			return path.equals(urlMatcher);
+		}
+	}
+
+	/**
+	 * Checks if the filter is applied to the <code>request</code>. The raw
+	 * as well as the normalized path of the request are checked, i.e. an
+	 * encoded or a not normalized path doesn't bypass the filter. A request
+	 * with a path which cannot be normalized is always filtered.
+	 *
+	 * @param request
+	 *            the request to be checked
+	 *
+	 * @return <code>true</code> if the filter is applied, otherwise
+	 *         <code>false</code>
+	 */
+	protected boolean isFiltered(final HttpRequest request) {
+		if (urlMatcher == null) {
+			return true;
+		}
+
+		final String uri = request.getRequestLine().getUri();
+		if (matches(urlMatcher, PathNormalizer.stripQuery(uri))) {
+			return true;
+		}
+
+		final String normalized = PathNormalizer.normalizeUri(uri);
+		return normalized == null || matches(urlMatcher, "/" + normalized);
+	}
+
+	@Override
+	public void handle(final HttpRequest request, final HttpResponse response,
+			final HttpContext context) throws HttpException, IOException {
+		if (isFiltered(request)) {
+			filter.filter(request, response, context, next);
+		} else {
+			next.handle(request, response, context);
+		}
+	}
+
+	/**
+	 * Gets the filter called by the link.
+	 *
+	 * @return the filter
+	 */
+	public IFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Gets the <code>urlMatcher</code> the path of a request has to match.
+	 *
+	 * @return the <code>urlMatcher</code>, <code>null</code> if the filter is
+	 *         called for each request
+	 */
+	public String getUrlMatcher() {
+		return urlMatcher;
+	}
+
+	/**
+	 * Gets the handler passed to the filter, i.e. the next link or the
+	 * handler of the route.
+	 *
+	 * @return the next handler
+	 */
+	public HttpRequestHandler getNext() {
+		return next;
+	}
+
+	@Override
+	public String toString() {
+		return filter.getClass().getName() + " -> " + next;
+	}
+}
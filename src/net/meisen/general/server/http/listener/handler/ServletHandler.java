@@ -3,16 +3,35 @@ package net.meisen.general.server.http.listener.handler;
 import net.meisen.general.genmisc.exceptions.registry.IExceptionRegistry;
 import net.meisen.general.genmisc.types.Classes;
 import net.meisen.general.sbconfigurator.api.IConfiguration;
+import net.meisen.general.server.http.listener.WorkerThread;
+import net.meisen.general.server.http.listener.api.IAsyncServlet;
+import net.meisen.general.server.http.listener.api.IConnectionUpgrade;
 import net.meisen.general.server.http.listener.api.IHandler;
 import net.meisen.general.server.http.listener.api.IServlet;
+import net.meisen.general.server.http.listener.api.IWebSocketEndpoint;
 import net.meisen.general.server.http.listener.exceptions.ServletHandlerException;
+import net.meisen.general.server.http.listener.util.CachedResponse;
+import net.meisen.general.server.http.listener.util.CircuitBreaker;
+import net.meisen.general.server.http.listener.util.EventBroadcaster;
+import net.meisen.general.server.http.listener.util.ExtensionUtilities;
+import net.meisen.general.server.http.listener.util.InstancePool;
+import net.meisen.general.server.http.listener.util.RequestCoalescer;
+import net.meisen.general.server.http.listener.util.ResponseCache;
+import net.meisen.general.server.http.listener.util.StreamingEntity;
+import net.meisen.general.server.http.listener.websocket.WebSocketHandshake;
+import net.meisen.general.server.http.listener.websocket.WebSocketSelector;
 import net.meisen.general.server.settings.pojos.Extension;
+import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +39,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 /**
  * Handler to handle servlet like requests, i.e. a servlet is a Java
@@ -35,6 +66,99 @@ import java.io.IOException;
  *   &lt;/e:extension&gt;
  * &lt;/connector&gt;
  * </pre>
+ * <p>
+ * The class of the servlet has to implement either {@link IServlet} or
+ * {@link IAsyncServlet}. The response of an asynchronous servlet is sent
+ * when the returned stage is completed, the time to wait for the completion
+ * is defined by <code>asynctimeout</code> (in milliseconds, <code>0</code>
+ * to wait without any limit). A response with status <code>504</code> is
+ * sent if the stage isn't completed in time.
+ * <p>
+ * The listener is blocking, i.e. the thread of the connection waits for the
+ * completion of the stage, whereby the servlet doesn't block any of its own
+ * threads while waiting for e.g. a backend.
+ * <p>
+ * A servlet can stream a large response instead of building it in memory,
+ * by setting a {@link StreamingEntity}. The content is written while the
+ * response is sent, such responses are never cached or shared. Server-sent
+ * events are streamed the same way, i.e. a servlet subscribes the client to
+ * an {@link EventBroadcaster}, which publishes events to all of its
+ * subscribers.
+ * <p>
+ * An instance of an {@link IServlet} is called concurrently by all the
+ * threads of the listener. A servlet which isn't thread-safe can be pooled
+ * by defining the <code>poolsize</code>, i.e. the amount of instances
+ * created and initialized with the same extension. Each instance is used by
+ * one thread at a time; a request waits at most <code>pooltimeout</code>
+ * milliseconds for an instance and is answered with status <code>503</code>
+ * if none becomes available.
+ *
+ * <pre>
+ * &lt;servlet poolsize=&quot;8&quot; pooltimeout=&quot;5000&quot;&gt;hello.world.MyServlet&lt;/servlet&gt;
+ * </pre>
+ * <p>
+ * The responses of <code>GET</code> and <code>HEAD</code> requests can be
+ * cached by defining <code>cachettl</code> (in milliseconds). A response is
+ * identified by the method, the path, the parameters of the query listed in
+ * <code>cacheparams</code> (all if not defined) and the values of the
+ * headers listed in <code>cachevary</code>. Only responses with status
+ * <code>200</code>, which don't set a cookie and aren't marked as private,
+ * are cached. Requests with an <code>Authorization</code> or
+ * <code>Cookie</code> header neither use nor fill the cache, unless the
+ * header is listed in <code>cachevary</code>. An expired response is still
+ * served for <code>cachestale</code> milliseconds, while a single refresh
+ * (using only the path, the selected parameters and the selected headers of
+ * the request) is executed in the background. The memory used is bounded by
+ * <code>cachemaxsize</code> and <code>cachemaxentrysize</code> (in bytes).
+ *
+ * <pre>
+ * &lt;servlet cachettl=&quot;60000&quot; cachestale=&quot;30000&quot; cacheparams=&quot;q,page&quot; cachevary=&quot;Accept-Language&quot;&gt;hello.world.MyServlet&lt;/servlet&gt;
+ * </pre>
+ * <p>
+ * Identical concurrent <code>GET</code> and <code>HEAD</code> requests
+ * (identified like cached responses) can be coalesced by setting
+ * <code>coalesce</code> to <code>true</code>. The servlet is executed for
+ * the first request only, the other requests wait and receive a copy of its
+ * response. A response which cannot be cached (e.g. setting a cookie) or
+ * which is larger than <code>coalescemaxsize</code> (in bytes) isn't
+ * shared, i.e. the waiting requests execute the servlet themselves. A
+ * request waits at most <code>coalescetimeout</code> milliseconds for the
+ * response, before it executes the servlet itself. Requests
+ * with an <code>Authorization</code> or <code>Cookie</code> header aren't
+ * coalesced, unless the header is listed in <code>cachevary</code>.
+ * <p>
+ * A circuit-breaker stops calling a failing servlet, if
+ * <code>breakerthreshold</code> (i.e. the rate of failed calls in percent)
+ * is defined. A call fails if the response has a status of <code>5xx</code>
+ * or if it takes longer than <code>breakerslowcall</code> milliseconds. If
+ * the threshold is reached within the last <code>breakerwindow</code>
+ * calls, the breaker opens and all requests are answered with a
+ * preallocated response with status <code>503</code>. After
+ * <code>breakeropen</code> milliseconds one request is passed to the
+ * servlet, closing the breaker if it succeeds.
+ *
+ * <pre>
+ * &lt;servlet breakerthreshold=&quot;50&quot; breakerwindow=&quot;20&quot; breakerslowcall=&quot;2000&quot; breakeropen=&quot;10000&quot;&gt;hello.world.MyServlet&lt;/servlet&gt;
+ * </pre>
+ * <p>
+ * If the class implements {@link IWebSocketEndpoint}, the requests are
+ * upgraded to the WebSocket protocol (other requests are answered with
+ * status <code>426</code>). The upgraded connections are handed over to a
+ * {@link WebSocketSelector}, i.e. they are watched by one thread and the
+ * received messages are passed to the endpoint using
+ * <code>websocketthreads</code> threads. This needs sockets providing a
+ * channel, which the acceptor of the <code>HttpListener</code> (a classic
+ * <code>ServerSocket</code>) doesn't create, i.e. currently each connection
+ * is read by its own blocking thread instead. Fragmented messages are
+ * re-assembled up to <code>websocketmaxsize</code> bytes,
+ * <code>permessage-deflate</code> is used if offered by the client and
+ * <code>websocketdeflate</code> isn't <code>false</code>. A connection is
+ * closed if more than <code>websocketqueue</code> bytes are queued for the
+ * client or if it is idle for <code>websocketidle</code> milliseconds.
+ *
+ * <pre>
+ * &lt;servlet urlmatcher=&quot;/chat&quot; websocketmaxsize=&quot;65536&quot; websocketidle=&quot;300000&quot;&gt;hello.world.MyEndpoint&lt;/servlet&gt;
+ * </pre>
  *
  * @author pmeisen
  */
@@ -50,7 +174,222 @@ public class ServletHandler implements IHandler {
     @Qualifier(IConfiguration.coreConfigurationId)
     private IConfiguration configuration;
 
+    /**
+     * The property to define the time (in milliseconds) to wait for the
+     * completion of an asynchronous servlet, <code>0</code> to wait without
+     * any limit
+     */
+    public final static String PROPERTY_ASYNCTIMEOUT = "asynctimeout";
+    /**
+     * The default time (in milliseconds) to wait for the completion of an
+     * asynchronous servlet
+     */
+    public final static long DEF_ASYNCTIMEOUT = 30000;
+    /**
+     * The property to define the amount of pooled instances of the servlet,
+     * <code>0</code> to use one instance for all requests
+     */
+    public final static String PROPERTY_POOLSIZE = "poolsize";
+    /**
+     * The default amount of pooled instances of the servlet
+     */
+    public final static int DEF_POOLSIZE = 0;
+    /**
+     * The property to define the time (in milliseconds) to wait for a pooled
+     * instance of the servlet
+     */
+    public final static String PROPERTY_POOLTIMEOUT = "pooltimeout";
+    /**
+     * The default time (in milliseconds) to wait for a pooled instance of the
+     * servlet
+     */
+    public final static long DEF_POOLTIMEOUT = 30000;
+    /**
+     * The property to define the time (in milliseconds) a response of the
+     * servlet is cached, <code>0</code> disables the cache
+     */
+    public final static String PROPERTY_CACHETTL = "cachettl";
+    /**
+     * The default time (in milliseconds) a response of the servlet is
+     * cached
+     */
+    public final static long DEF_CACHETTL = 0;
+    /**
+     * The property to define the time (in milliseconds) an expired response
+     * is served while it's refreshed in the background
+     */
+    public final static String PROPERTY_CACHESTALE = "cachestale";
+    /**
+     * The default time (in milliseconds) an expired response is served while
+     * it's refreshed in the background
+     */
+    public final static long DEF_CACHESTALE = 0;
+    /**
+     * The property to define the maximal size (in bytes) of all cached
+     * responses
+     */
+    public final static String PROPERTY_CACHEMAXSIZE = "cachemaxsize";
+    /**
+     * The default maximal size (in bytes) of all cached responses
+     */
+    public final static long DEF_CACHEMAXSIZE = 10 * 1024 * 1024;
+    /**
+     * The property to define the maximal size (in bytes) of a cached
+     * response
+     */
+    public final static String PROPERTY_CACHEMAXENTRYSIZE = "cachemaxentrysize";
+    /**
+     * The default maximal size (in bytes) of a cached response
+     */
+    public final static int DEF_CACHEMAXENTRYSIZE = 1024 * 1024;
+    /**
+     * The property to define if identical concurrent requests share one
+     * execution of the servlet
+     */
+    public final static String PROPERTY_COALESCE = "coalesce";
+    /**
+     * The default value defining if identical concurrent requests share one
+     * execution of the servlet
+     */
+    public final static boolean DEF_COALESCE = false;
+    /**
+     * The property to define the maximal size (in bytes) of a response shared
+     * by identical concurrent requests
+     */
+    public final static String PROPERTY_COALESCEMAXSIZE = "coalescemaxsize";
+    /**
+     * The default maximal size (in bytes) of a response shared by identical
+     * concurrent requests
+     */
+    public final static int DEF_COALESCEMAXSIZE = 1024 * 1024;
+    /**
+     * The property to define the maximal time (in milliseconds) a request
+     * waits for the response of an identical concurrent request, before the
+     * servlet is executed for it, <code>0</code> waits without a timeout
+     */
+    public final static String PROPERTY_COALESCETIMEOUT = "coalescetimeout";
+    /**
+     * The default maximal time (in milliseconds) a request waits for the
+     * response of an identical concurrent request
+     */
+    public final static long DEF_COALESCETIMEOUT = 30000;
+    /**
+     * The property to define the rate of failed calls (in percent) opening
+     * the circuit-breaker, <code>0</code> disables the breaker
+     */
+    public final static String PROPERTY_BREAKERTHRESHOLD = "breakerthreshold";
+    /**
+     * The default rate of failed calls (in percent) opening the
+     * circuit-breaker
+     */
+    public final static int DEF_BREAKERTHRESHOLD = 0;
+    /**
+     * The property to define the amount of calls within the sliding window of
+     * the circuit-breaker
+     */
+    public final static String PROPERTY_BREAKERWINDOW = "breakerwindow";
+    /**
+     * The default amount of calls within the sliding window of the
+     * circuit-breaker
+     */
+    public final static int DEF_BREAKERWINDOW = 20;
+    /**
+     * The property to define the duration (in milliseconds) after which a
+     * call is considered to be failed, <code>0</code> to ignore the duration
+     */
+    public final static String PROPERTY_BREAKERSLOWCALL = "breakerslowcall";
+    /**
+     * The default duration (in milliseconds) after which a call is
+     * considered to be failed
+     */
+    public final static long DEF_BREAKERSLOWCALL = 0;
+    /**
+     * The property to define the time (in milliseconds) the circuit-breaker
+     * stays open
+     */
+    public final static String PROPERTY_BREAKEROPEN = "breakeropen";
+    /**
+     * The default time (in milliseconds) the circuit-breaker stays open
+     */
+    public final static long DEF_BREAKEROPEN = 30000;
+    /**
+     * The property to define the comma-separated parameters of the query
+     * used to identify a cached or shared response, by default the whole
+     * query is used
+     */
+    public final static String PROPERTY_CACHEPARAMS = "cacheparams";
+    /**
+     * The property to define the comma-separated headers of the request used
+     * to identify a cached or shared response
+     */
+    public final static String PROPERTY_CACHEVARY = "cachevary";
+    /**
+     * The property to define the maximal size (in bytes) of a message
+     * received by a WebSocket endpoint
+     */
+    public final static String PROPERTY_WEBSOCKETMAXSIZE = "websocketmaxsize";
+    /**
+     * The default maximal size (in bytes) of a message received by a
+     * WebSocket endpoint
+     */
+    public final static int DEF_WEBSOCKETMAXSIZE = 1024 * 1024;
+    /**
+     * The property to define the maximal amount of bytes queued for a
+     * WebSocket client, before the connection is closed
+     */
+    public final static String PROPERTY_WEBSOCKETQUEUE = "websocketqueue";
+    /**
+     * The default maximal amount of bytes queued for a WebSocket client
+     */
+    public final static long DEF_WEBSOCKETQUEUE = 4 * 1024 * 1024;
+    /**
+     * The property to define the time (in milliseconds) after which an idle
+     * WebSocket connection is closed, <code>0</code> to keep idle connections
+     */
+    public final static String PROPERTY_WEBSOCKETIDLE = "websocketidle";
+    /**
+     * The default time (in milliseconds) after which an idle WebSocket
+     * connection is closed
+     */
+    public final static long DEF_WEBSOCKETIDLE = 0;
+    /**
+     * The property to define the amount of threads passing the messages to a
+     * WebSocket endpoint
+     */
+    public final static String PROPERTY_WEBSOCKETTHREADS = "websocketthreads";
+    /**
+     * The default amount of threads passing the messages to a WebSocket
+     * endpoint
+     */
+    public final static int DEF_WEBSOCKETTHREADS = 4;
+    /**
+     * The property to define if <code>permessage-deflate</code> is used, if
+     * offered by a WebSocket client
+     */
+    public final static String PROPERTY_WEBSOCKETDEFLATE = "websocketdeflate";
+    /**
+     * The default value defining if <code>permessage-deflate</code> is used
+     */
+    public final static boolean DEF_WEBSOCKETDEFLATE = true;
+
+    private final static int SC_UPGRADE_REQUIRED = 426;
+
     private IServlet servlet;
+    private IAsyncServlet asyncServlet;
+    private WebSocketSelector webSocketSelector;
+    private boolean webSocketDeflate = DEF_WEBSOCKETDEFLATE;
+    private long asyncTimeout = DEF_ASYNCTIMEOUT;
+    private InstancePool<IServlet> pool;
+    private long poolTimeout = DEF_POOLTIMEOUT;
+    private ResponseCache responseCache;
+    private int cacheMaxEntrySize = DEF_CACHEMAXENTRYSIZE;
+    private CircuitBreaker breaker;
+    private CachedResponse breakerResponse;
+    private RequestCoalescer coalescer;
+    private int coalesceMaxSize = DEF_COALESCEMAXSIZE;
+    private long coalesceTimeout = DEF_COALESCETIMEOUT;
+    private List<String> cacheParams;
+    private List<String> cacheVary = Collections.emptyList();
 
     @Override
     public void initialize(final Extension e) {
@@ -70,11 +409,8 @@ public class ServletHandler implements IHandler {
             if (definedServletClazz == null) {
                 exceptionRegistry.throwException(ServletHandlerException.class,
                         1001, servletClazzName);
-            } else if (!IServlet.class.isAssignableFrom(definedServletClazz)) {
-                exceptionRegistry.throwException(ServletHandlerException.class,
-                        1002, servletClazzName);
-            } else {
-                final IServlet servlet = (IServlet) configuration
+            } else if (IAsyncServlet.class.isAssignableFrom(definedServletClazz)) {
+                final IAsyncServlet servlet = (IAsyncServlet) configuration
                         .createInstance(definedServletClazz);
 
                 // initialize the Servlet
@@ -85,11 +421,170 @@ public class ServletHandler implements IHandler {
                 }
 
                 // keep it
-                this.servlet = servlet;
+                this.asyncServlet = servlet;
+                this.asyncTimeout = ExtensionUtilities.getLong(e,
+                        PROPERTY_ASYNCTIMEOUT, DEF_ASYNCTIMEOUT);
+            } else if (IWebSocketEndpoint.class.isAssignableFrom(definedServletClazz)) {
+                final IWebSocketEndpoint endpoint = (IWebSocketEndpoint) configuration
+                        .createInstance(definedServletClazz);
+
+                // initialize the Endpoint
+                try {
+                    endpoint.initialize(e);
+                } catch (final Exception ex) {
+                    exceptionRegistry.throwException(ServletHandlerException.class, 1004, ex);
+                }
+
+                // keep it within the selector of the connections
+                this.webSocketSelector = new WebSocketSelector(endpoint,
+                        ExtensionUtilities.getInt(e, PROPERTY_WEBSOCKETMAXSIZE,
+                                DEF_WEBSOCKETMAXSIZE),
+                        ExtensionUtilities.getLong(e, PROPERTY_WEBSOCKETQUEUE,
+                                DEF_WEBSOCKETQUEUE),
+                        ExtensionUtilities.getLong(e, PROPERTY_WEBSOCKETIDLE,
+                                DEF_WEBSOCKETIDLE),
+                        ExtensionUtilities.getInt(e, PROPERTY_WEBSOCKETTHREADS,
+                                DEF_WEBSOCKETTHREADS));
+                this.webSocketDeflate = ExtensionUtilities.getBoolean(e,
+                        PROPERTY_WEBSOCKETDEFLATE, DEF_WEBSOCKETDEFLATE);
+            } else if (!IServlet.class.isAssignableFrom(definedServletClazz)) {
+                exceptionRegistry.throwException(ServletHandlerException.class,
+                        1002, servletClazzName);
+            } else {
+                final int poolSize = ExtensionUtilities.getInt(e,
+                        PROPERTY_POOLSIZE, DEF_POOLSIZE);
+
+                if (poolSize > 0) {
+                    final List<IServlet> instances = new ArrayList<IServlet>(poolSize);
+                    for (int i = 0; i < poolSize; i++) {
+                        instances.add(createServlet(definedServletClazz, e));
+                    }
+
+                    // keep the pool and one instance as representative
+                    this.servlet = instances.get(0);
+                    this.pool = new InstancePool<IServlet>(instances);
+                    this.poolTimeout = ExtensionUtilities.getLong(e,
+                            PROPERTY_POOLTIMEOUT, DEF_POOLTIMEOUT);
+
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Created a pool of " + poolSize
+                                + " instances of servlet '" + servletClazzName
+                                + "'");
+                    }
+                } else {
+                    this.servlet = createServlet(definedServletClazz, e);
+                }
             }
         } else {
             exceptionRegistry.throwException(ServletHandlerException.class, 1000);
         }
+
+        // create the cache of the responses
+        final long cacheTtl = ExtensionUtilities.getLong(e, PROPERTY_CACHETTL,
+                DEF_CACHETTL);
+        if (cacheTtl > 0) {
+            this.responseCache = new ResponseCache(ExtensionUtilities.getLong(
+                    e, PROPERTY_CACHEMAXSIZE, DEF_CACHEMAXSIZE), cacheTtl,
+                    ExtensionUtilities.getLong(e, PROPERTY_CACHESTALE,
+                            DEF_CACHESTALE));
+            this.cacheMaxEntrySize = ExtensionUtilities.getInt(e,
+                    PROPERTY_CACHEMAXENTRYSIZE, DEF_CACHEMAXENTRYSIZE);
+        }
+
+        // create the coalescer of identical requests
+        if (ExtensionUtilities.getBoolean(e, PROPERTY_COALESCE, DEF_COALESCE)) {
+            this.coalescer = new RequestCoalescer();
+            this.coalesceMaxSize = ExtensionUtilities.getInt(e,
+                    PROPERTY_COALESCEMAXSIZE, DEF_COALESCEMAXSIZE);
+            this.coalesceTimeout = ExtensionUtilities.getLong(e,
+                    PROPERTY_COALESCETIMEOUT, DEF_COALESCETIMEOUT);
+        }
+
+        // create the circuit-breaker
+        final int breakerThreshold = ExtensionUtilities.getInt(e,
+                PROPERTY_BREAKERTHRESHOLD, DEF_BREAKERTHRESHOLD);
+        if (breakerThreshold > 0) {
+            final long breakerOpen = ExtensionUtilities.getLong(e,
+                    PROPERTY_BREAKEROPEN, DEF_BREAKEROPEN);
+
+            this.breaker = new CircuitBreaker(getServletClassName(),
+                    ExtensionUtilities.getInt(e, PROPERTY_BREAKERWINDOW,
+                            DEF_BREAKERWINDOW), breakerThreshold,
+                    ExtensionUtilities.getLong(e, PROPERTY_BREAKERSLOWCALL,
+                            DEF_BREAKERSLOWCALL), breakerOpen);
+            this.breakerResponse = createBreakerResponse(breakerOpen);
+        }
+
+        // determine the parts of the request identifying a response
+        final String params = e.getProperty(PROPERTY_CACHEPARAMS);
+        this.cacheParams = params == null ? null : split(params);
+        final String vary = e.getProperty(PROPERTY_CACHEVARY);
+        this.cacheVary = vary == null ? Collections.<String> emptyList()
+                : split(vary);
+    }
+
+    /**
+     * Creates the response sent while the circuit-breaker is open.
+     *
+     * @param breakerOpen
+     *            the time (in milliseconds) the breaker stays open
+     *
+     * @return the created response
+     */
+    protected CachedResponse createBreakerResponse(final long breakerOpen) {
+        final HttpResponse response = new BasicHttpResponse(
+                HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE,
+                "Service Unavailable");
+        response.setHeader("Retry-After",
+                String.valueOf(Math.max(1, (breakerOpen + 999) / 1000)));
+        setError(response, HttpStatus.SC_SERVICE_UNAVAILABLE,
+                "Servlet Unavailable",
+                "The servlet is currently unavailable, please try again later.");
+
+        try {
+            return CachedResponse.create(response, Integer.MAX_VALUE);
+        } catch (final IOException ex) {
+            // cannot happen, the entity is in memory
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private List<String> split(final String value) {
+        final List<String> values = new ArrayList<String>();
+        for (final String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                values.add(part.trim());
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Creates and initializes an instance of the specified
+     * <code>servletClazz</code>.
+     *
+     * @param servletClazz
+     *            the class of the servlet, which has to implement
+     *            <code>IServlet</code>
+     * @param e
+     *            the <code>Extension</code> to initialize the servlet with
+     *
+     * @return the initialized servlet
+     */
+    protected IServlet createServlet(final Class<?> servletClazz,
+                                     final Extension e) {
+        final IServlet servlet = (IServlet) configuration
+                .createInstance(servletClazz);
+
+        // initialize the Servlet
+        try {
+            servlet.initialize(e);
+        } catch (final Exception ex) {
+            exceptionRegistry.throwException(ServletHandlerException.class, 1004, ex);
+        }
+
+        return servlet;
     }
 
     @Override
@@ -97,29 +592,743 @@ public class ServletHandler implements IHandler {
                        final HttpContext context) throws HttpException, IOException {
 
         // check if it has been initialized
-        if (servlet == null) {
+        if (servlet == null && asyncServlet == null
+                && webSocketSelector == null) {
             exceptionRegistry.throwException(ServletHandlerException.class,
                     1003);
         }
 
         // handle the request
+        if (webSocketSelector != null) {
+            handleUpgrade(request, response, context);
+        } else if ((responseCache != null || coalescer != null)
+                && isCacheable(request)) {
+            handleCached(request, response, context);
+        } else {
+            execute(request, response, context);
+        }
+    }
+
+    /**
+     * Handles a request of a WebSocket endpoint, i.e. answers a valid
+     * request with the opening handshake and hands the connection over to
+     * the <code>WebSocketSelector</code>, after the response was sent.
+     *
+     * @param request
+     *            the request to be handled
+     * @param response
+     *            the response to be sent
+     * @param context
+     *            the context of the request
+     */
+    protected void handleUpgrade(final HttpRequest request,
+                                 final HttpResponse response, final HttpContext context) {
+        final Object socket = context == null ? null : context
+                .getAttribute(WorkerThread.CONTEXT_SOCKET);
+        if (!(socket instanceof Socket) || !WebSocketHandshake.isUpgrade(request)) {
+            setError(response, SC_UPGRADE_REQUIRED, "Upgrade Required",
+                    "The resource is only available using the WebSocket protocol.");
+            response.setReasonPhrase("Upgrade Required");
+            response.setHeader("Upgrade", "websocket");
+            response.setHeader("Sec-WebSocket-Version",
+                    WebSocketHandshake.VERSION);
+            return;
+        }
+
+        final boolean deflate = WebSocketHandshake.accept(request, response,
+                webSocketDeflate);
+        context.setAttribute(WorkerThread.CONTEXT_UPGRADE,
+                new IConnectionUpgrade() {
+
+                    @Override
+                    public void upgrade(final Socket socket) throws IOException {
+                        webSocketSelector.open(socket, request, deflate);
+                    }
+                });
+    }
+
+    /**
+     * Executes the servlet to handle the request, if the circuit-breaker (if
+     * any) permits it. Otherwise the request is answered with the
+     * preallocated response of the open breaker.
+     *
+     * @param request
+     *            the request to be handled
+     * @param response
+     *            the response to be sent
+     * @param context
+     *            the context of the request
+     */
+    protected void execute(final HttpRequest request,
+                           final HttpResponse response, final HttpContext context) {
+        if (breaker == null) {
+            invoke(request, response, context);
+            return;
+        }
+
+        final long permit = breaker.acquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            breakerResponse.apply(response);
+        } else {
+            final long start = System.nanoTime();
+            invoke(request, response, context);
+
+            final int status = response.getStatusLine().getStatusCode();
+            breaker.record(permit,
+                    status >= HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Invokes the servlet to handle the request. Any failure of the servlet
+     * is answered with an error.
+     *
+     * @param request
+     *            the request to be handled
+     * @param response
+     *            the response to be sent
+     * @param context
+     *            the context of the request
+     */
+    protected void invoke(final HttpRequest request,
+                          final HttpResponse response, final HttpContext context) {
         try {
-            servlet.handle(request, response, context);
+            if (asyncServlet != null) {
+                handleAsync(request, response, context);
+            } else if (pool != null) {
+                handlePooled(request, response, context);
+            } else {
+                servlet.handle(request, response, context);
+            }
         }
         // make sure that nothing can stop the servlet
         catch (final Throwable t) {
+            final Throwable cause;
+            if ((t instanceof ExecutionException || t instanceof CompletionException)
+                    && t.getCause() != null) {
+                cause = t.getCause();
+            } else {
+                cause = t;
+            }
+
             if (LOG.isErrorEnabled()) {
-                LOG.error("Failed to execute servlet '"
-                        + servlet.getClass().getName() + "'", t);
+                LOG.error("Failed to execute servlet '" + getServletClassName()
+                        + "'", cause);
             }
 
             // answer the client
-            response.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
-            StringEntity entity = new StringEntity(
-                    "<html><body><h1>Servlet Exception</h1><div>"
-                            + t.getLocalizedMessage() + "</div></body></html>",
-                    ContentType.create("text/html", "UTF-8"));
-            response.setEntity(entity);
+            setError(response, HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                    "Servlet Exception", cause.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Handles the request using the cache, i.e. answers the request with a
+     * cached response or executes the servlet and caches its response. A
+     * stale response is refreshed in the background. If requests are
+     * coalesced, identical concurrent requests not answered by the cache
+     * share one execution of the servlet. A request identifying a user (see
+     * {@link #isShareable(HttpRequest)}) bypasses the cache.
+     *
+     * @param request
+     *            the request to be handled
+     * @param response
+     *            the response to be sent
+     * @param context
+     *            the context of the request
+     *
+     * @throws IOException
+     *             if the response of the servlet cannot be buffered
+     */
+    protected void handleCached(final HttpRequest request,
+                                final HttpResponse response, final HttpContext context)
+            throws IOException {
+        if (!isShareable(request)) {
+            execute(request, response, context);
+            return;
+        }
+        final String key = createCacheKey(request);
+
+        final CachedResponse cached = responseCache == null ? null
+                : responseCache.get(key);
+        if (cached == null && coalescer != null) {
+            handleCoalesced(key, request, response, context);
+        } else if (cached == null) {
+            execute(request, response, context);
+            cache(key, response);
+        } else {
+            cached.apply(response);
+
+            if (!responseCache.isFresh(cached)) {
+                final HttpRequest refreshRequest = createRefreshRequest(request);
+                responseCache.revalidate(key, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        refresh(key, refreshRequest);
+                    }
+                });
+            }
         }
     }
-}
+
+    /**
+     * Handles the request as part of the identical concurrent requests, i.e.
+     * either executes the servlet and shares the response (if it can be
+     * cached and isn't larger than <code>coalescemaxsize</code>) or waits for
+     * the shared response. If the shared response isn't available within
+     * <code>coalescetimeout</code> milliseconds, the servlet is executed.
+     *
+     * @param key
+     *            the key identifying the request
+     * @param request
+     *            the request to be handled
+     * @param response
+     *            the response to be sent
+     * @param context
+     *            the context of the request
+     *
+     * @throws IOException
+     *             if the response of the servlet cannot be buffered
+     */
+    protected void handleCoalesced(final String key,
+                                   final HttpRequest request, final HttpResponse response,
+                                   final HttpContext context) throws IOException {
+        final RequestCoalescer.Flight flight = coalescer.join(key);
+
+        if (flight.isLeader()) {
+            CachedResponse shared = null;
+            try {
+                execute(request, response, context);
+
+                // buffer the response once for the cache and the followers
+                final CachedResponse buffered = buffer(response,
+                        Math.max(coalesceMaxSize, responseCache == null ? 0
+                                : cacheMaxEntrySize));
+                if (buffered != null) {
+                    cache(key, buffered);
+                    if (getContentLength(buffered) <= coalesceMaxSize) {
+                        shared = buffered;
+                    }
+                }
+            } finally {
+                flight.complete(shared);
+            }
+        } else {
+            final CachedResponse shared = flight.await(coalesceTimeout);
+
+            // the response of the leader cannot be shared, so execute it
+            if (shared == null) {
+                execute(request, response, context);
+                cache(key, response);
+            } else {
+                shared.apply(response);
+            }
+        }
+    }
+
+    /**
+     * Creates the request used to refresh the cached response of the
+     * specified <code>request</code> in the background. The request is
+     * created from the parts of the key only, i.e. the method, the path, the
+     * selected parameters of the query and the selected headers, so that the
+     * refreshed response doesn't depend on any other header of the client.
+     *
+     * @param request
+     *            the request to create the refreshing request for
+     *
+     * @return the created request
+     */
+    protected HttpRequest createRefreshRequest(final HttpRequest request) {
+        final HttpRequest refreshRequest = new BasicHttpRequest(request
+                .getRequestLine().getMethod(), createCacheUri(request),
+                request.getRequestLine().getProtocolVersion());
+        for (final String name : cacheVary) {
+            for (final Header header : request.getHeaders(name)) {
+                refreshRequest.addHeader(header);
+            }
+        }
+
+        return refreshRequest;
+    }
+
+    /**
+     * Executes the servlet in the background to refresh the cached response
+     * of the specified <code>key</code>. The servlet gets an empty context,
+     * because the connection of the client isn't available anymore, i.e.
+     * neither the socket (<code>WorkerThread.CONTEXT_SOCKET</code>) nor the
+     * <code>LoopbackDispatcher</code>
+     * (<code>WorkerThread.CONTEXT_DISPATCHER</code>) nor any attribute of
+     * the connection set by <code>httpcore</code> is available.
+     *
+     * @param key
+     *            the key of the response
+     * @param request
+     *            the request to be handled, see
+     *            {@link #createRefreshRequest(HttpRequest)}
+     */
+    protected void refresh(final String key, final HttpRequest request) {
+        final HttpResponse response = new BasicHttpResponse(
+                HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        execute(request, response, new BasicHttpContext());
+
+        try {
+            cache(key, response);
+        } catch (final IOException e) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Unable to refresh the response of '" + key + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Caches the specified <code>response</code>, if it can be cached.
+     *
+     * @param key
+     *            the key of the response
+     * @param response
+     *            the response to be cached
+     *
+     * @throws IOException
+     *             if the response cannot be buffered
+     */
+    protected void cache(final String key, final HttpResponse response)
+            throws IOException {
+        if (responseCache == null) {
+            return;
+        }
+
+        final CachedResponse cached = buffer(response, cacheMaxEntrySize);
+        if (cached != null) {
+            cache(key, cached);
+        }
+    }
+
+    /**
+     * Caches the specified buffered <code>response</code>, if it isn't larger
+     * than <code>cachemaxentrysize</code>.
+     *
+     * @param key
+     *            the key of the response
+     * @param cached
+     *            the buffered response to be cached
+     */
+    protected void cache(final String key, final CachedResponse cached) {
+        if (responseCache != null
+                && getContentLength(cached) <= cacheMaxEntrySize) {
+            responseCache.put(key, cached);
+        }
+    }
+
+    /**
+     * Buffers the specified <code>response</code>, if it can be cached (see
+     * {@link #isCacheable(HttpResponse)}).
+     *
+     * @param response
+     *            the response to be buffered
+     * @param maxSize
+     *            the maximal size of the content in bytes
+     *
+     * @return the buffered response, or <code>null</code> if the response
+     *         cannot be cached or is larger than <code>maxSize</code>
+     *
+     * @throws IOException
+     *             if the response cannot be buffered
+     */
+    protected CachedResponse buffer(final HttpResponse response,
+                                    final int maxSize) throws IOException {
+        if (!isCacheable(response)) {
+            return null;
+        }
+
+        return CachedResponse.create(response, maxSize);
+    }
+
+    private int getContentLength(final CachedResponse cached) {
+        return cached.getContent() == null ? 0 : cached.getContent().length;
+    }
+
+    /**
+     * Checks if the response of the specified <code>request</code> can be
+     * cached, i.e. if it's a <code>GET</code> or <code>HEAD</code> request.
+     *
+     * @param request
+     *            the request to be checked
+     *
+     * @return <code>true</code> if the response can be cached, otherwise
+     *         <code>false</code>
+     */
+    protected boolean isCacheable(final HttpRequest request) {
+        final String method = request.getRequestLine().getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    /**
+     * Checks if the response of the specified <code>request</code> can be
+     * shared with other requests (i.e. cached or coalesced), i.e. if it
+     * doesn't identify a user by an <code>Authorization</code> or
+     * <code>Cookie</code> header, which isn't part of the key (see
+     * <code>cachevary</code>).
+     *
+     * @param request
+     *            the request to be checked
+     *
+     * @return <code>true</code> if the response can be shared, otherwise
+     *         <code>false</code>
+     */
+    protected boolean isShareable(final HttpRequest request) {
+        return isVaried(request, "Authorization")
+                && isVaried(request, "Cookie");
+    }
+
+    private boolean isVaried(final HttpRequest request, final String name) {
+        if (!request.containsHeader(name)) {
+            return true;
+        }
+
+        for (final String vary : cacheVary) {
+            if (vary.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if the specified <code>response</code> can be cached, i.e. if
+     * its status is <code>200</code>, it doesn't set any cookie and it
+     * isn't marked as private or not to be stored.
+     *
+     * @param response
+     *            the response to be checked
+     *
+     * @return <code>true</code> if the response can be cached, otherwise
+     *         <code>false</code>
+     */
+    protected boolean isCacheable(final HttpResponse response) {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK
+                || response.containsHeader("Set-Cookie")) {
+            return false;
+        }
+
+        for (final Header header : response.getHeaders("Cache-Control")) {
+            final String value = header.getValue() == null ? "" : header
+                    .getValue().toLowerCase(Locale.US);
+            if (value.contains("no-store") || value.contains("private")
+                    || value.contains("no-cache")) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates the key of the cached response of the specified
+     * <code>request</code>, i.e. the method, the path, the selected
+     * parameters of the query and the values of the selected headers.
+     *
+     * @param request
+     *            the request to create the key for
+     *
+     * @return the created key
+     */
+    protected String createCacheKey(final HttpRequest request) {
+        final StringBuilder key = new StringBuilder();
+        key.append(request.getRequestLine().getMethod()).append(' ');
+        key.append(createCacheUri(request));
+
+        // add the values of the selected headers
+        for (final String name : cacheVary) {
+            key.append('\n').append(name).append(':');
+            for (final Header header : request.getHeaders(name)) {
+                key.append(header.getValue()).append(',');
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Creates the URI identifying the cached response of the specified
+     * <code>request</code>, i.e. the path and the selected parameters of the
+     * query.
+     *
+     * @param request
+     *            the request to create the URI for
+     *
+     * @return the created URI
+     */
+    protected String createCacheUri(final HttpRequest request) {
+        final String uri = request.getRequestLine().getUri();
+        final int pos = uri.indexOf('?');
+
+        final StringBuilder key = new StringBuilder();
+        key.append(pos == -1 ? uri : uri.substring(0, pos));
+
+        // add the selected parameters
+        if (pos != -1) {
+            final String query = uri.substring(pos + 1);
+            if (cacheParams == null) {
+                key.append('?').append(query);
+            } else {
+                char separator = '?';
+                for (final String param : cacheParams) {
+                    for (final String part : query.split("&")) {
+                        if (part.equals(param) || part.startsWith(param + "=")) {
+                            key.append(separator).append(part);
+                            separator = '&';
+                        }
+                    }
+                }
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Handles the request using a pooled instance of the servlet.
+     *
+     * @param request
+     *            the request to be handled
+     * @param response
+     *            the response to be sent
+     * @param context
+     *            the context of the request
+     *
+     * @throws HttpException
+     *             if the servlet fails
+     * @throws IOException
+     *             if the servlet fails
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for an instance
+     */
+    protected void handlePooled(final HttpRequest request,
+                                final HttpResponse response, final HttpContext context)
+            throws HttpException, IOException, InterruptedException {
+        final IServlet instance = pool.borrow(poolTimeout);
+        if (instance == null) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("No instance of servlet '" + getServletClassName()
+                        + "' available within " + poolTimeout + "ms (" + pool
+                        + ")");
+            }
+
+            setError(response, HttpStatus.SC_SERVICE_UNAVAILABLE,
+                    "Servlet Busy", "The servlet is busy, please try again later.");
+            return;
+        }
+
+        try {
+            instance.handle(request, response, context);
+        } finally {
+            pool.release(instance);
+        }
+    }
+
+    /**
+     * Handles the request using the asynchronous servlet, i.e. waits for the
+     * completion of the stage returned by the servlet and applies the
+     * completed response to the <code>response</code>.
+     *
+     * @param request
+     *            the request to be handled
+     * @param response
+     *            the response to be sent
+     * @param context
+     *            the context of the request
+     *
+     * @throws ExecutionException
+     *             if the stage is completed exceptionally
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    protected void handleAsync(final HttpRequest request,
+                               final HttpResponse response, final HttpContext context)
+            throws ExecutionException, InterruptedException {
+
+        /*
+         * The servlet gets its own response, so that a stage completed after
+         * the timeout cannot modify the response already sent.
+         */
+        final HttpResponse asyncResponse = new BasicHttpResponse(
+                response.getStatusLine());
+        if (response.getLocale() != null) {
+            asyncResponse.setLocale(response.getLocale());
+        }
+
+        final CompletionStage<HttpResponse> stage = asyncServlet.handle(
+                request, asyncResponse, context);
+        if (stage == null) {
+            apply(asyncResponse, response);
+            return;
+        }
+
+        final CompletableFuture<HttpResponse> future = toFuture(stage);
+        final HttpResponse result;
+        try {
+            if (asyncTimeout > 0) {
+                result = future.get(asyncTimeout, TimeUnit.MILLISECONDS);
+            } else {
+                result = future.get();
+            }
+        } catch (final TimeoutException e) {
+
+            // abandon the work of the servlet
+            future.cancel(true);
+
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("The servlet '" + getServletClassName()
+                        + "' didn't complete within " + asyncTimeout + "ms");
+            }
+
+            setError(response, HttpStatus.SC_GATEWAY_TIMEOUT, "Servlet Timeout",
+                    "The servlet didn't respond in time.");
+            return;
+        }
+
+        apply(result == null ? asyncResponse : result, response);
+    }
+
+    /**
+     * Creates a future completed with the specified <code>stage</code>.
+     *
+     * @param stage
+     *            the stage to create the future for
+     *
+     * @return the future completed with the stage
+     */
+    protected CompletableFuture<HttpResponse> toFuture(
+            final CompletionStage<HttpResponse> stage) {
+        try {
+            return stage.toCompletableFuture();
+        } catch (final UnsupportedOperationException e) {
+            final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+            stage.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+
+                @Override
+                public void accept(final HttpResponse result,
+                                   final Throwable t) {
+                    if (t == null) {
+                        future.complete(result);
+                    } else {
+                        future.completeExceptionally(t);
+                    }
+                }
+            });
+
+            return future;
+        }
+    }
+
+    /**
+     * Applies the status, the headers and the entity of the
+     * <code>source</code> to the <code>target</code>.
+     *
+     * @param source
+     *            the response to read from
+     * @param target
+     *            the response to be modified
+     */
+    protected void apply(final HttpResponse source, final HttpResponse target) {
+        if (source == target) {
+            return;
+        }
+
+        target.setStatusLine(source.getStatusLine());
+        target.setHeaders(source.getAllHeaders());
+        target.setEntity(source.getEntity());
+    }
+
+    /**
+     * Answers the client with an error.
+     *
+     * @param response
+     *            the response to be filled
+     * @param statusCode
+     *            the status of the response
+     * @param title
+     *            the title of the error
+     * @param message
+     *            the message of the error
+     */
+    protected void setError(final HttpResponse response, final int statusCode,
+                            final String title, final String message) {
+        response.setStatusCode(statusCode);
+        StringEntity entity = new StringEntity(
+                "<html><body><h1>" + title + "</h1><div>"
+                        + message + "</div></body></html>",
+                ContentType.create("text/html", "UTF-8"));
+        response.setEntity(entity);
+    }
+
+    /**
+     * Gets the name of the class of the used servlet.
+     *
+     * @return the name of the class of the used servlet
+     */
+    protected String getServletClassName() {
+        if (asyncServlet != null) {
+            return asyncServlet.getClass().getName();
+        } else if (servlet != null) {
+            return servlet.getClass().getName();
+        } else if (webSocketSelector != null) {
+            return webSocketSelector.getEndpoint().getClass().getName();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the pool of the instances of the servlet.
+     *
+     * @return the pool of the instances, or <code>null</code> if the servlet
+     *         isn't pooled
+     */
+    public InstancePool<IServlet> getPool() {
+        return pool;
+    }
+
+    /**
+     * Gets the cache of the responses of the servlet.
+     *
+     * @return the cache of the responses, or <code>null</code> if the
+     *         responses aren't cached
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Gets the coalescer of identical concurrent requests.
+     *
+     * @return the coalescer, or <code>null</code> if requests aren't
+     *         coalesced
+     */
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Gets the circuit-breaker of the servlet.
+     *
+     * @return the circuit-breaker, or <code>null</code> if none is used
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Gets the selector of the upgraded connections of the WebSocket
+     * endpoint.
+     *
+     * @return the selector, or <code>null</code> if the class isn't a
+     *         WebSocket endpoint
+     */
+    public WebSocketSelector getWebSocketSelector() {
+        return webSocketSelector;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,203 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+
+/**
+ * A response buffered in memory, i.e. the status, the headers and the
+ * content of a response, which can be applied to any amount of other
+ * responses. The instance is immutable.
+ *
+ * @author pmeisen
+ *
+ */
+public class CachedResponse {
+	private final StatusLine statusLine;
+	private final Header[] headers;
+	private final byte[] content;
+	private final Header contentType;
+	private final Header contentEncoding;
+	private final long size;
+	private final long created;
+
+	/**
+	 * Creates a buffered response.
+	 *
+	 * @param statusLine
+	 *            the status of the response
+	 * @param headers
+	 *            the headers of the response
+	 * @param content
+	 *            the content of the response, {@code null} if the response
+	 *            doesn't have any entity
+	 * @param contentType
+	 *            the type of the content, can be {@code null}
+	 * @param contentEncoding
+	 *            the encoding of the content, can be {@code null}
+	 */
+	public CachedResponse(final StatusLine statusLine, final Header[] headers,
+			final byte[] content, final Header contentType,
+			final Header contentEncoding) {
+		this.statusLine = statusLine;
+		this.headers = headers;
+		this.content = content;
+		this.contentType = contentType;
+		this.contentEncoding = contentEncoding;
+		this.size = determineSize(headers, content);
+		this.created = System.currentTimeMillis();
+	}
+
+	private static long determineSize(final Header[] headers,
+			final byte[] content) {
+		long size = content == null ? 0 : content.length;
+		for (final Header header : headers) {
+			size += header.getName().length();
+			size += header.getValue() == null ? 0 : header.getValue().length();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Buffers the specified {@code response}. The entity of the response is
+	 * consumed and replaced by an entity, which can still be sent.
+	 *
+	 * @param response
+	 *            the response to be buffered
+	 * @param maxSize
+	 *            the maximal size of the content in bytes
+	 *
+	 * @return the buffered response, or {@code null} if the content is larger
+	 *         than {@code maxSize} or streamed (see {@link StreamingEntity})
+	 *
+	 * @throws IOException
+	 *             if the content cannot be read
+	 */
+	public static CachedResponse create(final HttpResponse response,
+			final int maxSize) throws IOException {
+		final HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			return new CachedResponse(response.getStatusLine(),
+					response.getAllHeaders(), null, null, null);
+		} else if (entity.getContentLength() > maxSize
+				|| entity instanceof StreamingEntity) {
+			return null;
+		}
+
+		// read the content, but not more than the maximum
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(
+				entity.getContentLength() < 0 ? 4096 : (int) entity
+						.getContentLength());
+		final InputStream in = entity.getContent();
+		final byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+
+			// the content is too large, send the read part and the rest
+			if (out.size() > maxSize) {
+				final InputStreamEntity remaining = new InputStreamEntity(
+						new SequenceInputStream(new ByteArrayInputStream(
+								out.toByteArray()), in), -1);
+				setMetaData(remaining, entity.getContentType(),
+						entity.getContentEncoding());
+				response.setEntity(remaining);
+
+				return null;
+			}
+		}
+		in.close();
+
+		final CachedResponse cached = new CachedResponse(
+				response.getStatusLine(), response.getAllHeaders(),
+				out.toByteArray(), entity.getContentType(),
+				entity.getContentEncoding());
+		response.setEntity(cached.createEntity());
+
+		return cached;
+	}
+
+	private static void setMetaData(final AbstractHttpEntity entity,
+			final Header contentType, final Header contentEncoding) {
+		entity.setContentType(contentType);
+		entity.setContentEncoding(contentEncoding);
+	}
+
+	/**
+	 * Creates a new entity sending the buffered content.
+	 *
+	 * @return the entity, or {@code null} if the response doesn't have any
+	 *         entity
+	 */
+	public HttpEntity createEntity() {
+		if (content == null) {
+			return null;
+		}
+
+		final ByteArrayEntity entity = new ByteArrayEntity(content);
+		setMetaData(entity, contentType, contentEncoding);
+
+		return entity;
+	}
+
+	/**
+	 * Applies the buffered response to the specified {@code response}, i.e.
+	 * sets the status, the headers and the entity.
+	 *
+	 * @param response
+	 *            the response to be modified
+	 */
+	public void apply(final HttpResponse response) {
+		response.setStatusLine(statusLine);
+		response.setHeaders(headers);
+		response.setEntity(createEntity());
+	}
+
+	/**
+	 * Gets the status of the response.
+	 *
+	 * @return the status of the response
+	 */
+	public StatusLine getStatusLine() {
+		return statusLine;
+	}
+
+	/**
+	 * Gets the buffered content.
+	 *
+	 * @return the buffered content, {@code null} if the response doesn't have
+	 *         any entity
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * Gets the approximated size of the buffered response in memory.
+	 *
+	 * @return the approximated size in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the time the response was buffered.
+	 *
+	 * @return the time of creation in milliseconds
+	 */
+	public long getCreated() {
+		return created;
+	}
+}
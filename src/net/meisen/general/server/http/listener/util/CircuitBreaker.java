@@ -0,0 +1,236 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A circuit breaker, which stops calling a failing resource. The outcomes of
+ * the latest calls are kept within a sliding window, whereby a call is
+ * considered to be failed if it failed or took longer than the slow-call
+ * threshold. The breaker has the following states:
+ * <ul>
+ * <li>{@code CLOSED}: all calls are permitted, the breaker opens as soon as
+ * the window is filled and the rate of failed calls reaches the
+ * threshold,</li>
+ * <li>{@code OPEN}: all calls are rejected, after the defined time the
+ * breaker becomes half-open,</li>
+ * <li>{@code HALF_OPEN}: one call is permitted to probe the resource, the
+ * breaker is closed if the call succeeds and opened again otherwise.</li>
+ * </ul>
+ *
+ * Each permitted call gets a permit of the current state, i.e. the outcome
+ * of a call permitted before the last change of the state (e.g. a slow call
+ * finishing while the resource is probed) is ignored.
+ *
+ * @author pmeisen
+ *
+ */
+public class CircuitBreaker {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(CircuitBreaker.class);
+
+	/**
+	 * The states of a {@code CircuitBreaker}.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static enum State {
+		/**
+		 * All calls are permitted
+		 */
+		CLOSED,
+		/**
+		 * All calls are rejected
+		 */
+		OPEN,
+		/**
+		 * One call is permitted to probe the resource
+		 */
+		HALF_OPEN;
+	}
+
+	/**
+	 * The permit of a rejected call
+	 */
+	public final static long REJECTED = -1;
+
+	private final String name;
+	private final int failureRate;
+	private final long slowCall;
+	private final long openTime;
+
+	private final boolean[] window;
+	private int position = 0;
+	private int calls = 0;
+	private int failures = 0;
+
+	private State state = State.CLOSED;
+	private long openedAt = 0;
+	private boolean probing = false;
+	private long generation = 0;
+
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final AtomicLong opened = new AtomicLong(0);
+
+	/**
+	 * Creates a closed breaker.
+	 *
+	 * @param name
+	 *            the name of the breaker used when logging
+	 * @param windowSize
+	 *            the amount of calls within the sliding window
+	 * @param failureRate
+	 *            the rate of failed calls (in percent) opening the breaker
+	 * @param slowCall
+	 *            the duration (in milliseconds) after which a call is
+	 *            considered to be failed, {@code 0} to ignore the duration
+	 * @param openTime
+	 *            the time (in milliseconds) the breaker stays open, before a
+	 *            call is permitted to probe the resource
+	 */
+	public CircuitBreaker(final String name, final int windowSize,
+			final int failureRate, final long slowCall, final long openTime) {
+		this.name = name;
+		this.window = new boolean[Math.max(1, windowSize)];
+		this.failureRate = failureRate;
+		this.slowCall = slowCall;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * Checks if a call is permitted. A permitted call must be followed by a
+	 * call of {@link #record(long, boolean, long)} passing the returned
+	 * permit.
+	 *
+	 * @return the permit of the call, or {@link #REJECTED} if the call isn't
+	 *         permitted
+	 */
+	public synchronized long acquire() {
+		if (state == State.CLOSED) {
+			return generation;
+		} else if (state == State.OPEN
+				&& System.currentTimeMillis() - openedAt >= openTime) {
+			changeState(State.HALF_OPEN);
+		}
+
+		if (state == State.HALF_OPEN && !probing) {
+			probing = true;
+			return generation;
+		} else {
+			rejected.incrementAndGet();
+			return REJECTED;
+		}
+	}
+
+	/**
+	 * Records the outcome of a permitted call. The outcome is ignored if the
+	 * state changed since the call was permitted.
+	 *
+	 * @param permit
+	 *            the permit returned by {@link #acquire()}
+	 * @param failed
+	 *            {@code true} if the call failed, otherwise {@code false}
+	 * @param duration
+	 *            the duration of the call in milliseconds
+	 */
+	public synchronized void record(final long permit, final boolean failed,
+			final long duration) {
+		if (permit == REJECTED || permit != generation) {
+			return;
+		}
+		final boolean failure = failed || (slowCall > 0 && duration >= slowCall);
+
+		if (state == State.HALF_OPEN && probing) {
+			probing = false;
+
+			if (failure) {
+				open();
+			} else {
+				reset();
+				changeState(State.CLOSED);
+			}
+		} else if (state == State.CLOSED) {
+
+			// add the outcome to the window
+			if (calls == window.length) {
+				failures -= window[position] ? 1 : 0;
+			} else {
+				calls++;
+			}
+			window[position] = failure;
+			failures += failure ? 1 : 0;
+			position = (position + 1) % window.length;
+
+			if (calls == window.length
+					&& failures * 100 >= failureRate * window.length) {
+				open();
+			}
+		}
+	}
+
+	private void open() {
+		openedAt = System.currentTimeMillis();
+		opened.incrementAndGet();
+		reset();
+		changeState(State.OPEN);
+	}
+
+	private void reset() {
+		position = 0;
+		calls = 0;
+		failures = 0;
+	}
+
+	private void changeState(final State newState) {
+		final State oldState = state;
+		state = newState;
+		generation++;
+
+		if (newState == State.OPEN) {
+			if (LOG.isWarnEnabled()) {
+				LOG.warn("The circuit-breaker '" + name + "' changed from "
+						+ oldState + " to " + newState + " for " + openTime
+						+ "ms");
+			}
+		} else if (LOG.isInfoEnabled()) {
+			LOG.info("The circuit-breaker '" + name + "' changed from "
+					+ oldState + " to " + newState);
+		}
+	}
+
+	/**
+	 * Gets the current state of the breaker.
+	 *
+	 * @return the current state
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Gets the amount of calls rejected.
+	 *
+	 * @return the amount of calls rejected
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Gets the amount of times the breaker was opened.
+	 *
+	 * @return the amount of times the breaker was opened
+	 */
+	public long getOpened() {
+		return opened.get();
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker '" + name + "' (" + getState() + ", "
+				+ getOpened() + " opened, " + getRejected() + " rejected)";
+	}
+}
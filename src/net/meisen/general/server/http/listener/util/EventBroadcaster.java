@@ -0,0 +1,305 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.meisen.general.server.http.listener.api.IResponseStreamer;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A broadcaster of server-sent events to any amount of subscribers. A
+ * servlet subscribes a client by calling {@link #subscribe(HttpResponse)},
+ * which answers the request with a long-lived {@code text/event-stream}.
+ *
+ * An event is serialized once and offered to the bounded queue of each
+ * subscriber, i.e. publishing never waits for a client. A subscriber writes
+ * the queued events to its connection and sends a comment (i.e. a
+ * heartbeat) if no event was sent for some time. If the queue of a slow
+ * subscriber is full, the {@code OverflowPolicy} defines if the new event is
+ * dropped, the oldest event is dropped or if the subscriber is evicted.
+ *
+ * Each subscriber keeps the thread of its connection while it's subscribed.
+ *
+ * @author pmeisen
+ *
+ */
+public class EventBroadcaster {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(EventBroadcaster.class);
+
+	/**
+	 * The type of the content of an event-stream
+	 */
+	public final static ContentType EVENTSTREAM_CONTENTTYPE = ContentType
+			.create("text/event-stream", "UTF-8");
+
+	private final static ServerSentEvent CLOSE = new ServerSentEvent("");
+	private final static byte[] HEARTBEAT = ":\n\n"
+			.getBytes(EVENTSTREAM_CONTENTTYPE.getCharset());
+
+	/**
+	 * The policies applied if the queue of a subscriber is full.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * The new event isn't sent to the subscriber
+		 */
+		DROP_NEWEST,
+		/**
+		 * The oldest queued event isn't sent to the subscriber
+		 */
+		DROP_OLDEST,
+		/**
+		 * The subscriber is closed
+		 */
+		EVICT;
+	}
+
+	/**
+	 * A subscriber, i.e. a client receiving the published events.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public class Subscriber implements IResponseStreamer {
+		private final BlockingQueue<ServerSentEvent> queue;
+		private volatile boolean closed = false;
+
+		private Subscriber() {
+			this.queue = new ArrayBlockingQueue<ServerSentEvent>(queueSize);
+		}
+
+		/**
+		 * Offers the event to the queue of the subscriber, without waiting.
+		 *
+		 * @param event
+		 *            the event to be offered
+		 */
+		protected void offer(final ServerSentEvent event) {
+			if (closed || queue.offer(event)) {
+				return;
+			}
+
+			switch (policy) {
+			case DROP_OLDEST:
+				while (!queue.offer(event)) {
+					if (queue.poll() != null) {
+						dropped.incrementAndGet();
+					}
+				}
+				break;
+			case EVICT:
+				evicted.incrementAndGet();
+				queue.clear();
+				close();
+				break;
+			default:
+				dropped.incrementAndGet();
+				break;
+			}
+		}
+
+		/**
+		 * Closes the subscriber, i.e. the event-stream is ended after the
+		 * queued events are sent.
+		 */
+		public void close() {
+			closed = true;
+			queue.offer(CLOSE);
+			subscribers.remove(this);
+		}
+
+		/**
+		 * Checks if the subscriber is closed.
+		 *
+		 * @return {@code true} if the subscriber is closed, otherwise
+		 *         {@code false}
+		 */
+		public boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * Gets the amount of events queued for the subscriber.
+		 *
+		 * @return the amount of queued events
+		 */
+		public int getQueued() {
+			return queue.size();
+		}
+
+		@Override
+		public void stream(final ResponseWriter writer) throws IOException {
+			try {
+				while (true) {
+					final ServerSentEvent event;
+					try {
+						event = closed ? queue.poll() : queue.poll(heartbeat,
+								TimeUnit.MILLISECONDS);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+
+					if (event == CLOSE) {
+						break;
+					} else if (event == null) {
+						if (closed) {
+							break;
+						}
+
+						// keep the connection alive and detect closed ones
+						writer.write(HEARTBEAT);
+						writer.flush();
+					} else {
+						writer.write(event.getBytes());
+
+						// send several queued events at once
+						if (queue.isEmpty()) {
+							writer.flush();
+						}
+					}
+				}
+			} finally {
+				closed = true;
+				subscribers.remove(this);
+
+				if (LOG.isTraceEnabled()) {
+					LOG.trace("Subscriber of event-stream disconnected.");
+				}
+			}
+		}
+	}
+
+	private final int queueSize;
+	private final OverflowPolicy policy;
+	private final long heartbeat;
+	private final Set<Subscriber> subscribers;
+
+	private final AtomicLong published = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final AtomicLong evicted = new AtomicLong(0);
+
+	/**
+	 * Creates a broadcaster.
+	 *
+	 * @param queueSize
+	 *            the maximal amount of events queued for a subscriber
+	 * @param policy
+	 *            the policy applied if the queue of a subscriber is full
+	 * @param heartbeat
+	 *            the time (in milliseconds) after which a heartbeat is sent,
+	 *            if no event was sent
+	 */
+	public EventBroadcaster(final int queueSize, final OverflowPolicy policy,
+			final long heartbeat) {
+		this.queueSize = Math.max(1, queueSize);
+		this.policy = policy;
+		this.heartbeat = heartbeat;
+		this.subscribers = Collections
+				.newSetFromMap(new ConcurrentHashMap<Subscriber, Boolean>());
+	}
+
+	/**
+	 * Subscribes a client, i.e. answers the {@code response} with the
+	 * event-stream of the subscriber.
+	 *
+	 * @param response
+	 *            the response to be answered
+	 *
+	 * @return the created subscriber
+	 */
+	public Subscriber subscribe(final HttpResponse response) {
+		final Subscriber subscriber = new Subscriber();
+		subscribers.add(subscriber);
+
+		response.setStatusCode(HttpStatus.SC_OK);
+		response.setHeader("Cache-Control", "no-cache");
+		response.setHeader("X-Accel-Buffering", "no");
+		response.setEntity(new StreamingEntity(subscriber,
+				EVENTSTREAM_CONTENTTYPE));
+
+		return subscriber;
+	}
+
+	/**
+	 * Publishes the {@code event} to all subscribers.
+	 *
+	 * @param event
+	 *            the event to be published
+	 */
+	public void publish(final ServerSentEvent event) {
+		published.incrementAndGet();
+
+		for (final Subscriber subscriber : subscribers) {
+			subscriber.offer(event);
+		}
+	}
+
+	/**
+	 * Closes all subscribers.
+	 */
+	public void close() {
+		for (final Subscriber subscriber : subscribers) {
+			subscriber.close();
+		}
+	}
+
+	/**
+	 * Gets the amount of current subscribers.
+	 *
+	 * @return the amount of subscribers
+	 */
+	public int getSubscribers() {
+		return subscribers.size();
+	}
+
+	/**
+	 * Gets the amount of published events.
+	 *
+	 * @return the amount of published events
+	 */
+	public long getPublished() {
+		return published.get();
+	}
+
+	/**
+	 * Gets the amount of events not sent to a subscriber, because its queue
+	 * was full.
+	 *
+	 * @return the amount of dropped events
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Gets the amount of subscribers evicted, because their queue was full.
+	 *
+	 * @return the amount of evicted subscribers
+	 */
+	public long getEvicted() {
+		return evicted.get();
+	}
+
+	@Override
+	public String toString() {
+		return "EventBroadcaster (" + getSubscribers() + " subscribers, "
+				+ published + " published, " + dropped + " dropped, "
+				+ evicted + " evicted)";
+	}
+}
@@ -0,0 +1,125 @@
+package net.meisen.general.server.http.listener.util;
+
+import net.meisen.general.server.settings.pojos.Extension;
+
+/**
+ * Utility class when working with the properties of an {@code Extension}.
+ * The properties of an {@code Extension} might be of different types
+ * depending on the definition, therefore the methods accept any
+ * {@code Number}, {@code Boolean} or {@code String} representation.
+ *
+ * @author pmeisen
+ *
+ */
+public class ExtensionUtilities {
+
+	/**
+	 * Gets the property of the specified {@code Extension} as
+	 * {@code String}.
+	 *
+	 * @param e
+	 *            the {@code Extension} to read the property from, can be
+	 *            {@code null}
+	 * @param property
+	 *            the name of the property
+	 * @param defValue
+	 *            the value to be returned if the property isn't defined
+	 *
+	 * @return the value of the property or {@code defValue}
+	 */
+	public static String getString(final Extension e, final String property,
+			final String defValue) {
+		final Object value = e == null ? null : e.getProperty(property);
+
+		if (value == null || "".equals(value.toString().trim())) {
+			return defValue;
+		} else {
+			return value.toString().trim();
+		}
+	}
+
+	/**
+	 * Gets the property of the specified {@code Extension} as {@code int}.
+	 *
+	 * @param e
+	 *            the {@code Extension} to read the property from, can be
+	 *            {@code null}
+	 * @param property
+	 *            the name of the property
+	 * @param defValue
+	 *            the value to be returned if the property isn't defined
+	 *
+	 * @return the value of the property or {@code defValue}
+	 *
+	 * @throws NumberFormatException
+	 *             if the defined value isn't a valid number
+	 */
+	public static int getInt(final Extension e, final String property,
+			final int defValue) throws NumberFormatException {
+		final Object value = e == null ? null : e.getProperty(property);
+
+		if (value instanceof Number) {
+			return ((Number) value).intValue();
+		} else if (value == null || "".equals(value.toString().trim())) {
+			return defValue;
+		} else {
+			return Integer.parseInt(value.toString().trim());
+		}
+	}
+
+	/**
+	 * Gets the property of the specified {@code Extension} as {@code long}.
+	 *
+	 * @param e
+	 *            the {@code Extension} to read the property from, can be
+	 *            {@code null}
+	 * @param property
+	 *            the name of the property
+	 * @param defValue
+	 *            the value to be returned if the property isn't defined
+	 *
+	 * @return the value of the property or {@code defValue}
+	 *
+	 * @throws NumberFormatException
+	 *             if the defined value isn't a valid number
+	 */
+	public static long getLong(final Extension e, final String property,
+			final long defValue) throws NumberFormatException {
+		final Object value = e == null ? null : e.getProperty(property);
+
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else if (value == null || "".equals(value.toString().trim())) {
+			return defValue;
+		} else {
+			return Long.parseLong(value.toString().trim());
+		}
+	}
+
+	/**
+	 * Gets the property of the specified {@code Extension} as
+	 * {@code boolean}.
+	 *
+	 * @param e
+	 *            the {@code Extension} to read the property from, can be
+	 *            {@code null}
+	 * @param property
+	 *            the name of the property
+	 * @param defValue
+	 *            the value to be returned if the property isn't defined
+	 *
+	 * @return the value of the property or {@code defValue}
+	 */
+	public static boolean getBoolean(final Extension e, final String property,
+			final boolean defValue) {
+		final Object value = e == null ? null : e.getProperty(property);
+
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		} else if (value == null || "".equals(value.toString().trim())) {
+			return defValue;
+		} else {
+			return Boolean.parseBoolean(value.toString().trim());
+		}
+	}
+}
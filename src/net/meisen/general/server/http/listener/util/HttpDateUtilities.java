@@ -0,0 +1,87 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Utility class to format and parse dates used within HTTP headers (e.g.
+ * {@code Last-Modified} or {@code If-Modified-Since}).
+ *
+ * @author pmeisen
+ *
+ */
+public class HttpDateUtilities {
+
+	/**
+	 * The preferred format of HTTP dates (RFC 1123)
+	 */
+	public static final String PATTERN_RFC1123 = "EEE, dd MMM yyyy HH:mm:ss zzz";
+	/**
+	 * The obsolete format of RFC 1036, which still has to be accepted
+	 */
+	public static final String PATTERN_RFC1036 = "EEEE, dd-MMM-yy HH:mm:ss zzz";
+	/**
+	 * The obsolete format of ANSI C's {@code asctime()}, which still has to be
+	 * accepted
+	 */
+	public static final String PATTERN_ASCTIME = "EEE MMM d HH:mm:ss yyyy";
+
+	private static final String[] PATTERNS = new String[] { PATTERN_RFC1123,
+			PATTERN_RFC1036, PATTERN_ASCTIME };
+	private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+	private static final ThreadLocal<SimpleDateFormat[]> FORMATS = new ThreadLocal<SimpleDateFormat[]>() {
+
+		@Override
+		protected SimpleDateFormat[] initialValue() {
+			final SimpleDateFormat[] formats = new SimpleDateFormat[PATTERNS.length];
+			for (int i = 0; i < PATTERNS.length; i++) {
+				formats[i] = new SimpleDateFormat(PATTERNS[i], Locale.US);
+				formats[i].setTimeZone(GMT);
+			}
+
+			return formats;
+		}
+	};
+
+	/**
+	 * Formats the specified time (in milliseconds) as HTTP date.
+	 *
+	 * @param time
+	 *            the time to be formatted
+	 *
+	 * @return the formatted date
+	 */
+	public static String formatDate(final long time) {
+		return FORMATS.get()[0].format(new Date(time));
+	}
+
+	/**
+	 * Parses the specified HTTP date.
+	 *
+	 * @param value
+	 *            the value to be parsed
+	 *
+	 * @return the parsed time in milliseconds, or {@code -1} if the value
+	 *         cannot be parsed
+	 */
+	public static long parseDate(final String value) {
+		if (value == null) {
+			return -1;
+		}
+
+		final String date = value.trim();
+		for (final SimpleDateFormat format : FORMATS.get()) {
+			final ParsePosition pos = new ParsePosition(0);
+			final Date parsed = format.parse(date, pos);
+			if (parsed != null && pos.getIndex() == date.length()) {
+				return parsed.getTime();
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,150 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of a fixed amount of instances, which are borrowed exclusively by
+ * one thread at a time. Borrowing and returning an instance doesn't acquire
+ * any lock, i.e. the idle instances are kept within a non-blocking queue and
+ * the amount of idle instances is counted using compare-and-set operations.
+ * Only if all instances are borrowed, the borrowing thread is parked until
+ * an instance is returned or the timeout is reached.
+ *
+ * @author pmeisen
+ *
+ * @param <T>
+ *            the type of the pooled instances
+ */
+public class InstancePool<T> {
+	private final int size;
+	private final ConcurrentLinkedQueue<T> idle;
+	private final Semaphore available;
+
+	private final AtomicLong borrows = new AtomicLong(0);
+	private final AtomicLong waits = new AtomicLong(0);
+	private final AtomicLong waitTime = new AtomicLong(0);
+	private final AtomicLong timeouts = new AtomicLong(0);
+
+	/**
+	 * Creates a pool of the specified {@code instances}.
+	 *
+	 * @param instances
+	 *            the instances to be pooled
+	 */
+	public InstancePool(final Collection<? extends T> instances) {
+		this.size = instances.size();
+		this.idle = new ConcurrentLinkedQueue<T>(instances);
+		this.available = new Semaphore(size);
+	}
+
+	/**
+	 * Borrows an instance of the pool, which has to be returned using
+	 * {@link #release(Object)}.
+	 *
+	 * @param timeout
+	 *            the time in milliseconds to wait for an instance, if all
+	 *            instances are borrowed
+	 *
+	 * @return the borrowed instance, or {@code null} if no instance was
+	 *         returned within the timeout
+	 *
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public T borrow(final long timeout) throws InterruptedException {
+		borrows.incrementAndGet();
+
+		if (!available.tryAcquire()) {
+			waits.incrementAndGet();
+
+			final long start = System.nanoTime();
+			final boolean acquired = available.tryAcquire(Math.max(0, timeout),
+					TimeUnit.MILLISECONDS);
+			waitTime.addAndGet(System.nanoTime() - start);
+
+			if (!acquired) {
+				timeouts.incrementAndGet();
+				return null;
+			}
+		}
+
+		return idle.poll();
+	}
+
+	/**
+	 * Returns the specified {@code instance} to the pool.
+	 *
+	 * @param instance
+	 *            the instance borrowed before
+	 */
+	public void release(final T instance) {
+		idle.offer(instance);
+		available.release();
+	}
+
+	/**
+	 * Gets the amount of instances of the pool.
+	 *
+	 * @return the amount of instances
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the amount of instances currently not borrowed.
+	 *
+	 * @return the amount of idle instances
+	 */
+	public int getIdle() {
+		return available.availablePermits();
+	}
+
+	/**
+	 * Gets the amount of borrows since the creation of the pool.
+	 *
+	 * @return the amount of borrows
+	 */
+	public long getBorrows() {
+		return borrows.get();
+	}
+
+	/**
+	 * Gets the amount of borrows, which had to wait for an instance to be
+	 * returned.
+	 *
+	 * @return the amount of borrows which had to wait
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	/**
+	 * Gets the total time borrowing threads waited for an instance.
+	 *
+	 * @return the total time waited in milliseconds
+	 */
+	public long getWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+	}
+
+	/**
+	 * Gets the amount of borrows, which didn't get an instance within the
+	 * timeout.
+	 *
+	 * @return the amount of borrows timed out
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	@Override
+	public String toString() {
+		return "InstancePool (" + getIdle() + "/" + size + " idle, " + borrows
+				+ " borrows, " + waits + " waits, " + timeouts + " timeouts)";
+	}
+}
@@ -0,0 +1,262 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, size-bounded cache which evicts the least recently used
+ * entry whenever the maximal amount of entries is exceeded. Additionally a
+ * time-to-live can be specified, after which an entry is considered to be
+ * invalid and is removed on the next access.
+ *
+ * @author pmeisen
+ *
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the cached values
+ */
+public class LruCache<K, V> {
+
+	/**
+	 * The wrapper of a cached value, keeping the time of creation.
+	 *
+	 * @author pmeisen
+	 *
+	 * @param <V>
+	 *            the type of the cached value
+	 */
+	private static class CacheEntry<V> {
+		private final V value;
+		private final long created;
+
+		public CacheEntry(final V value, final long created) {
+			this.value = value;
+			this.created = created;
+		}
+	}
+
+	private final int maxSize;
+	private final long ttl;
+	private final LinkedHashMap<K, CacheEntry<V>> content;
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+
+	/**
+	 * Creates a cache which can hold at most {@code maxSize} entries, whereby
+	 * each entry is valid for {@code ttl} milliseconds.
+	 *
+	 * @param maxSize
+	 *            the maximal amount of entries, a value smaller or equal to
+	 *            {@code 0} disables the cache
+	 * @param ttl
+	 *            the time-to-live of an entry in milliseconds, a value smaller
+	 *            or equal to {@code 0} keeps the entries until these are
+	 *            evicted
+	 */
+	public LruCache(final int maxSize, final long ttl) {
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.content = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<K, CacheEntry<V>> eldest) {
+				return size() > LruCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Checks if the cache is enabled, i.e. if it can keep any entries.
+	 *
+	 * @return {@code true} if the cache can keep entries, otherwise
+	 *         {@code false}
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Gets the value associated to the specified {@code key}.
+	 *
+	 * @param key
+	 *            the key to get the value for
+	 *
+	 * @return the cached value, or {@code null} if no valid value is cached
+	 */
+	public V get(final K key) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		final V value;
+		synchronized (content) {
+			final CacheEntry<V> entry = content.get(key);
+			if (entry == null) {
+				value = null;
+			} else if (isExpired(entry, System.currentTimeMillis())) {
+				content.remove(key);
+				value = null;
+			} else {
+				value = entry.value;
+			}
+		}
+
+		if (value == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+
+		return value;
+	}
+
+	/**
+	 * Associates the {@code value} to the specified {@code key}.
+	 *
+	 * @param key
+	 *            the key to associate the value with
+	 * @param value
+	 *            the value to be cached, {@code null} values are not cached
+	 */
+	public void put(final K key, final V value) {
+		if (!isEnabled() || value == null) {
+			return;
+		}
+
+		final CacheEntry<V> entry = new CacheEntry<V>(value,
+				System.currentTimeMillis());
+		synchronized (content) {
+			content.put(key, entry);
+		}
+	}
+
+	/**
+	 * Removes the value associated to the specified {@code key}.
+	 *
+	 * @param key
+	 *            the key of the value to be removed
+	 *
+	 * @return the removed value, can be {@code null} if no value was cached
+	 */
+	public V remove(final K key) {
+		final CacheEntry<V> entry;
+		synchronized (content) {
+			entry = content.remove(key);
+		}
+
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * Removes all the entries from the cache.
+	 */
+	public void clear() {
+		synchronized (content) {
+			content.clear();
+		}
+	}
+
+	/**
+	 * Removes all expired entries from the cache.
+	 */
+	public void purge() {
+		final long now = System.currentTimeMillis();
+
+		synchronized (content) {
+			final Iterator<CacheEntry<V>> it = content.values().iterator();
+			while (it.hasNext()) {
+				if (isExpired(it.next(), now)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets a snapshot of all the currently cached keys.
+	 *
+	 * @return a snapshot of the cached keys
+	 */
+	public List<K> keys() {
+		synchronized (content) {
+			return new ArrayList<K>(content.keySet());
+		}
+	}
+
+	/**
+	 * Gets a snapshot of all the currently cached values.
+	 *
+	 * @return a snapshot of the cached values
+	 */
+	public List<V> values() {
+		final List<V> values;
+		synchronized (content) {
+			values = new ArrayList<V>(content.size());
+			for (final CacheEntry<V> entry : content.values()) {
+				values.add(entry.value);
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * The amount of currently cached entries, including the ones which are
+	 * expired but not removed yet.
+	 *
+	 * @return the amount of cached entries
+	 */
+	public int size() {
+		synchronized (content) {
+			return content.size();
+		}
+	}
+
+	/**
+	 * Gets the amount of successful lookups.
+	 *
+	 * @return the amount of successful lookups
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of lookups which didn't find any valid entry.
+	 *
+	 * @return the amount of failed lookups
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the maximal amount of entries of the cache.
+	 *
+	 * @return the maximal amount of entries
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the time-to-live of an entry in milliseconds.
+	 *
+	 * @return the time-to-live of an entry
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	private boolean isExpired(final CacheEntry<V> entry, final long now) {
+		return ttl > 0 && now - entry.created > ttl;
+	}
+}
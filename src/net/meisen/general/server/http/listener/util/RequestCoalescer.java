@@ -0,0 +1,186 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent identical requests (i.e. single-flight), so that only
+ * one of the requests (the leader) is executed, while the others wait for
+ * the buffered response of the leader.
+ *
+ * <pre>
+ * final Flight flight = coalescer.join(key);
+ * if (flight.isLeader()) {
+ * 	// execute the request and share the response
+ * 	flight.complete(cachedResponse);
+ * } else {
+ * 	final CachedResponse cachedResponse = flight.await(timeout);
+ * }
+ * </pre>
+ *
+ * @author pmeisen
+ *
+ */
+public class RequestCoalescer {
+
+	/**
+	 * The execution of a request, which is joined by identical concurrent
+	 * requests.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public class Flight {
+		private final String key;
+		private final CompletableFuture<CachedResponse> future;
+		private final boolean leader;
+
+		private Flight(final String key,
+				final CompletableFuture<CachedResponse> future,
+				final boolean leader) {
+			this.key = key;
+			this.future = future;
+			this.leader = leader;
+		}
+
+		/**
+		 * Checks if the request has to be executed, i.e. if it's the first
+		 * of the identical requests.
+		 *
+		 * @return {@code true} if the request has to be executed, otherwise
+		 *         {@code false}
+		 */
+		public boolean isLeader() {
+			return leader;
+		}
+
+		/**
+		 * Completes the execution with the specified {@code response}. The
+		 * method has to be called by the leader, even if the execution
+		 * failed.
+		 *
+		 * @param response
+		 *            the buffered response of the leader, {@code null} if the
+		 *            response cannot be shared
+		 */
+		public void complete(final CachedResponse response) {
+			inFlight.remove(key, future);
+			future.complete(response);
+		}
+
+		/**
+		 * Waits for the response of the leader, but at most {@code timeout}
+		 * milliseconds.
+		 *
+		 * @param timeout
+		 *            the maximal time (in milliseconds) to wait, {@code 0} to
+		 *            wait without a timeout
+		 *
+		 * @return the buffered response of the leader, {@code null} if the
+		 *         response cannot be shared or the leader didn't complete
+		 *         within the {@code timeout}
+		 *
+		 * @throws InterruptedIOException
+		 *             if the thread is interrupted while waiting
+		 */
+		public CachedResponse await(final long timeout)
+				throws InterruptedIOException {
+			try {
+				if (timeout > 0) {
+					return future.get(timeout, TimeUnit.MILLISECONDS);
+				} else {
+					return future.get();
+				}
+			} catch (final TimeoutException e) {
+				timeouts.incrementAndGet();
+				return null;
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for '" + key + "'");
+			} catch (final ExecutionException e) {
+				return null;
+			}
+		}
+	}
+
+	private final ConcurrentMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<String, CompletableFuture<CachedResponse>>();
+
+	private final AtomicLong leaders = new AtomicLong(0);
+	private final AtomicLong coalesced = new AtomicLong(0);
+	private final AtomicLong timeouts = new AtomicLong(0);
+
+	/**
+	 * Joins the execution of the request identified by the specified
+	 * {@code key}, i.e. the request becomes the leader if no identical
+	 * request is executed currently.
+	 *
+	 * @param key
+	 *            the key identifying the request
+	 *
+	 * @return the joined execution
+	 */
+	public Flight join(final String key) {
+		final CompletableFuture<CachedResponse> future = new CompletableFuture<CachedResponse>();
+		final CompletableFuture<CachedResponse> current = inFlight
+				.putIfAbsent(key, future);
+
+		if (current == null) {
+			leaders.incrementAndGet();
+			return new Flight(key, future, true);
+		} else {
+			coalesced.incrementAndGet();
+			return new Flight(key, current, false);
+		}
+	}
+
+	/**
+	 * Gets the amount of requests currently executed.
+	 *
+	 * @return the amount of requests currently executed
+	 */
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+	/**
+	 * Gets the amount of requests, which were executed.
+	 *
+	 * @return the amount of leaders
+	 */
+	public long getLeaders() {
+		return leaders.get();
+	}
+
+	/**
+	 * Gets the amount of requests, which waited for the response of a
+	 * leader.
+	 *
+	 * @return the amount of coalesced requests
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Gets the amount of requests, which didn't receive the response of a
+	 * leader in time.
+	 *
+	 * @return the amount of timed-out requests
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RequestCoalescer (" + getInFlight() + " in flight, " + leaders
+				+ " leaders, " + coalesced + " coalesced)";
+	}
+}
@@ -0,0 +1,286 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache of buffered responses, which is bounded by the total
+ * size of the cached responses. The least recently used responses are
+ * evicted whenever the size is exceeded.
+ *
+ * A cached response is fresh for the time-to-live. Afterwards it is stale
+ * for another period (i.e. stale-while-revalidate), within which it can
+ * still be served while a single refresh is running in the background.
+ * Expired responses are removed on the next access.
+ *
+ * @author pmeisen
+ *
+ */
+public class ResponseCache {
+	private final static int MAX_REFRESHS = 2;
+	private final static int MAX_PENDING_REFRESHS = 100;
+
+	private final long maxSize;
+	private final long ttl;
+	private final long stale;
+	private final LinkedHashMap<String, CachedResponse> content;
+	private final Set<String> revalidating;
+	private final ThreadPoolExecutor executor;
+
+	private long size = 0;
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong staleHits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong refreshs = new AtomicLong(0);
+
+	/**
+	 * Creates a cache keeping at most {@code maxSize} bytes of responses.
+	 *
+	 * @param maxSize
+	 *            the maximal size of all cached responses in bytes
+	 * @param ttl
+	 *            the time-to-live of a response in milliseconds
+	 * @param stale
+	 *            the time in milliseconds an expired response can be served
+	 *            while it is refreshed, {@code 0} to never serve an expired
+	 *            response
+	 */
+	public ResponseCache(final long maxSize, final long ttl, final long stale) {
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.stale = Math.max(0, stale);
+		this.content = new LinkedHashMap<String, CachedResponse>(16, 0.75f,
+				true);
+		this.revalidating = Collections
+				.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		if (this.stale > 0) {
+			this.executor = new ThreadPoolExecutor(MAX_REFRESHS, MAX_REFRESHS,
+					60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+							MAX_PENDING_REFRESHS), new ThreadFactory() {
+
+						@Override
+						public Thread newThread(final Runnable r) {
+							final Thread thread = new Thread(r,
+									"ResponseCache-Refresh");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			this.executor.allowCoreThreadTimeOut(true);
+		} else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Gets the cached response of the specified {@code key}, which is either
+	 * fresh or stale (see {@link #isFresh(CachedResponse)}).
+	 *
+	 * @param key
+	 *            the key of the response
+	 *
+	 * @return the cached response, or {@code null} if no response is cached
+	 *         or if it is expired
+	 */
+	public CachedResponse get(final String key) {
+		final CachedResponse response;
+		synchronized (content) {
+			response = content.get(key);
+
+			if (response == null) {
+				misses.incrementAndGet();
+				return null;
+			} else if (System.currentTimeMillis() - response.getCreated() >= ttl
+					+ stale) {
+				remove(key);
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+
+		if (isFresh(response)) {
+			hits.incrementAndGet();
+		} else {
+			staleHits.incrementAndGet();
+		}
+
+		return response;
+	}
+
+	/**
+	 * Checks if the specified {@code response} is still fresh, i.e. if it
+	 * doesn't have to be refreshed.
+	 *
+	 * @param response
+	 *            the response to be checked
+	 *
+	 * @return {@code true} if the response is fresh, otherwise {@code false}
+	 */
+	public boolean isFresh(final CachedResponse response) {
+		return System.currentTimeMillis() - response.getCreated() < ttl;
+	}
+
+	/**
+	 * Caches the specified {@code response}, replacing any response cached
+	 * for the {@code key}.
+	 *
+	 * @param key
+	 *            the key of the response
+	 * @param response
+	 *            the response to be cached
+	 */
+	public void put(final String key, final CachedResponse response) {
+		final long responseSize = response.getSize();
+		if (responseSize > maxSize) {
+			return;
+		}
+
+		synchronized (content) {
+			remove(key);
+
+			content.put(key, response);
+			size += responseSize;
+
+			// evict the least recently used responses
+			final Iterator<Map.Entry<String, CachedResponse>> it = content
+					.entrySet().iterator();
+			while (size > maxSize && it.hasNext()) {
+				final Map.Entry<String, CachedResponse> eldest = it.next();
+				size -= eldest.getValue().getSize();
+				it.remove();
+			}
+		}
+	}
+
+	private void remove(final String key) {
+		final CachedResponse removed = content.remove(key);
+		if (removed != null) {
+			size -= removed.getSize();
+		}
+	}
+
+	/**
+	 * Runs the specified {@code refresh} of the response of the {@code key}
+	 * in the background, if no other refresh of the response is running.
+	 *
+	 * @param key
+	 *            the key of the response to be refreshed
+	 * @param refresh
+	 *            the refresh, which should put the new response
+	 *
+	 * @return {@code true} if the refresh was scheduled, otherwise
+	 *         {@code false}
+	 */
+	public boolean revalidate(final String key, final Runnable refresh) {
+		if (executor == null || !revalidating.add(key)) {
+			return false;
+		}
+
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						refreshs.incrementAndGet();
+						refresh.run();
+					} finally {
+						revalidating.remove(key);
+					}
+				}
+			});
+
+			return true;
+		} catch (final RejectedExecutionException e) {
+			revalidating.remove(key);
+			return false;
+		}
+	}
+
+	/**
+	 * Removes all the cached responses.
+	 */
+	public void clear() {
+		synchronized (content) {
+			content.clear();
+			size = 0;
+		}
+	}
+
+	/**
+	 * Gets the amount of cached responses.
+	 *
+	 * @return the amount of cached responses
+	 */
+	public int getCount() {
+		synchronized (content) {
+			return content.size();
+		}
+	}
+
+	/**
+	 * Gets the size of all cached responses.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getSize() {
+		synchronized (content) {
+			return size;
+		}
+	}
+
+	/**
+	 * Gets the amount of requests answered with a fresh response.
+	 *
+	 * @return the amount of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of requests answered with a stale response.
+	 *
+	 * @return the amount of stale hits
+	 */
+	public long getStaleHits() {
+		return staleHits.get();
+	}
+
+	/**
+	 * Gets the amount of requests, which couldn't be answered from the cache.
+	 *
+	 * @return the amount of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the amount of refreshes run in the background.
+	 *
+	 * @return the amount of refreshes
+	 */
+	public long getRefreshs() {
+		return refreshs.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ResponseCache (" + getCount() + " responses, " + getSize()
+				+ " bytes, " + hits + " hits, " + staleHits + " stale hits, "
+				+ misses + " misses)";
+	}
+}
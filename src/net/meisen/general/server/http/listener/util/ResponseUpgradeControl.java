@@ -0,0 +1,33 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.io.IOException;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Interceptor correcting the headers of a response switching the protocol
+ * (i.e. with status {@code 101}), which have been added by the preceding
+ * interceptors: such a response must not have a {@code Content-Length} and
+ * its {@code Connection} header has to be {@code Upgrade}.
+ *
+ * @author pmeisen
+ *
+ */
+public class ResponseUpgradeControl implements HttpResponseInterceptor {
+
+	@Override
+	public void process(final HttpResponse response, final HttpContext context)
+			throws HttpException, IOException {
+		if (response.getStatusLine().getStatusCode() != HttpStatus.SC_SWITCHING_PROTOCOLS) {
+			return;
+		}
+
+		response.removeHeaders(HTTP.CONTENT_LEN);
+		response.setHeader(HTTP.CONN_DIRECTIVE, "Upgrade");
+	}
+}
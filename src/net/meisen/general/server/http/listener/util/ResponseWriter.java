@@ -0,0 +1,267 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A stream writing bytes or characters to the connection of a streamed
+ * response. The written data is kept within a buffer of a fixed size, which
+ * is sent (i.e. as one chunk of the response) whenever it is filled or
+ * {@link #flush()} is called. Characters are encoded directly into the
+ * buffer, i.e. the memory used is constant regardless of the amount of data
+ * written. The state of the encoder is kept between the writes of
+ * characters, i.e. a surrogate pair may be split across several writes.
+ * 
+ * The stream doesn't close the underlying stream, which is handled by the
+ * connection.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class ResponseWriter extends OutputStream {
+	private final static int MIN_BUFFERSIZE = 16;
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private final CharsetEncoder encoder;
+
+	private int count = 0;
+	private long written = 0;
+	private Writer writer = null;
+
+	private boolean encoding = false;
+	private boolean pending = false;
+	private char pendingChar;
+
+	/**
+	 * Creates a writer for the specified {@code out}.
+	 * 
+	 * @param out
+	 *            the stream of the connection
+	 * @param bufferSize
+	 *            the size of the buffer in bytes
+	 * @param charset
+	 *            the charset used to encode characters
+	 */
+	public ResponseWriter(final OutputStream out, final int bufferSize,
+			final Charset charset) {
+		this.out = out;
+		this.buffer = new byte[Math.max(MIN_BUFFERSIZE, bufferSize)];
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len)
+			throws IOException {
+
+		// large arrays are written directly
+		if (len >= buffer.length) {
+			flushBuffer();
+			out.write(b, off, len);
+			written += len;
+			return;
+		} else if (len > buffer.length - count) {
+			flushBuffer();
+		}
+
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	/**
+	 * Writes the specified {@code chars} encoded with the charset of the
+	 * writer.
+	 * 
+	 * @param chars
+	 *            the characters to be written
+	 * 
+	 * @throws IOException
+	 *             if the characters cannot be written
+	 */
+	public void print(final CharSequence chars) throws IOException {
+		final CharBuffer in = CharBuffer.wrap(chars);
+		encoding = true;
+
+		// complete the high surrogate of the previous write
+		if (pending) {
+			pending = false;
+
+			final CharBuffer pair = CharBuffer.allocate(2);
+			pair.put(pendingChar);
+			if (in.hasRemaining()) {
+				pair.put(in.get());
+			}
+			pair.flip();
+			encode(pair);
+		}
+
+		encode(in);
+	}
+
+	private void encode(final CharBuffer in) throws IOException {
+		encode(in, false);
+
+		// keep a trailing high surrogate for the next write
+		if (in.hasRemaining()) {
+			pendingChar = in.get();
+			pending = true;
+		}
+	}
+
+	private void encode(final CharBuffer in, final boolean endOfInput)
+			throws IOException {
+		CoderResult result;
+		do {
+			final ByteBuffer target = ByteBuffer.wrap(buffer, count,
+					buffer.length - count);
+			result = encoder.encode(in, target, endOfInput);
+			count = target.position();
+
+			if (result.isOverflow()) {
+				flushBuffer();
+			}
+		} while (result.isOverflow());
+	}
+
+	/**
+	 * Ends the encoding of the written characters, i.e. writes a pending
+	 * high surrogate (replaced, because it's incomplete) and the final bytes
+	 * of the encoder.
+	 * 
+	 * @throws IOException
+	 *             if the bytes cannot be written
+	 */
+	private void endEncoding() throws IOException {
+		if (!encoding) {
+			return;
+		}
+
+		final CharBuffer in = pending ? CharBuffer.wrap(new char[] { pendingChar })
+				: CharBuffer.allocate(0);
+		pending = false;
+		encode(in, true);
+
+		CoderResult result;
+		do {
+			final ByteBuffer target = ByteBuffer.wrap(buffer, count,
+					buffer.length - count);
+			result = encoder.flush(target);
+			count = target.position();
+
+			if (result.isOverflow()) {
+				flushBuffer();
+			}
+		} while (result.isOverflow());
+
+		encoder.reset();
+		encoding = false;
+	}
+
+	/**
+	 * Writes the specified {@code chars} followed by a line-break.
+	 * 
+	 * @param chars
+	 *            the characters to be written
+	 * 
+	 * @throws IOException
+	 *             if the characters cannot be written
+	 */
+	public void println(final CharSequence chars) throws IOException {
+		print(chars);
+		print("\n");
+	}
+
+	/**
+	 * Gets a {@code Writer} writing characters to {@code this}, without any
+	 * additional buffering.
+	 * 
+	 * @return the {@code Writer}
+	 */
+	public Writer getWriter() {
+		if (writer == null) {
+			writer = new Writer() {
+
+				@Override
+				public void write(final char[] cbuf, final int off,
+						final int len) throws IOException {
+					print(CharBuffer.wrap(cbuf, off, len));
+				}
+
+				@Override
+				public void write(final String str, final int off,
+						final int len) throws IOException {
+					print(str.subSequence(off, off + len));
+				}
+
+				@Override
+				public void flush() throws IOException {
+					ResponseWriter.this.flush();
+				}
+
+				@Override
+				public void close() throws IOException {
+					ResponseWriter.this.close();
+				}
+			};
+		}
+
+		return writer;
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			written += count;
+			count = 0;
+		}
+	}
+
+	/**
+	 * Sends the buffered data to the client. A high surrogate, whose low
+	 * surrogate wasn't written yet, is kept.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (!pending) {
+			endEncoding();
+		}
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes the buffered data, the underlying stream isn't closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		endEncoding();
+		flushBuffer();
+	}
+
+	/**
+	 * Gets the amount of bytes written to the underlying stream so far.
+	 * 
+	 * @return the amount of bytes written
+	 */
+	public long getWritten() {
+		return written;
+	}
+}
@@ -0,0 +1,103 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * An event sent to the subscribers of an {@code EventBroadcaster}. The
+ * event is serialized once, when it's created, using the format of
+ * {@code text/event-stream} (see the specification of server-sent events),
+ * i.e. the same bytes are written to every subscriber.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class ServerSentEvent {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String id;
+	private final String event;
+	private final byte[] bytes;
+
+	/**
+	 * Creates an unnamed event without identifier.
+	 * 
+	 * @param data
+	 *            the data of the event
+	 */
+	public ServerSentEvent(final String data) {
+		this(null, null, data);
+	}
+
+	/**
+	 * Creates an event.
+	 * 
+	 * @param id
+	 *            the identifier of the event, can be {@code null}
+	 * @param event
+	 *            the name of the event, can be {@code null}
+	 * @param data
+	 *            the data of the event, can contain line-breaks
+	 */
+	public ServerSentEvent(final String id, final String event,
+			final String data) {
+		this.id = id;
+		this.event = event;
+		this.bytes = serialize(id, event, data).getBytes(UTF8);
+	}
+
+	private static String serialize(final String id, final String event,
+			final String data) {
+		final StringBuilder sb = new StringBuilder();
+		if (id != null) {
+			sb.append("id: ").append(removeLineBreaks(id)).append('\n');
+		}
+		if (event != null) {
+			sb.append("event: ").append(removeLineBreaks(event)).append('\n');
+		}
+
+		// each line of the data is sent as own field
+		for (final String line : (data == null ? "" : data).split(
+				"\r\n|\r|\n", -1)) {
+			sb.append("data: ").append(line).append('\n');
+		}
+		sb.append('\n');
+
+		return sb.toString();
+	}
+
+	private static String removeLineBreaks(final String value) {
+		return value.replace('\r', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * Gets the identifier of the event.
+	 * 
+	 * @return the identifier, can be {@code null}
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the name of the event.
+	 * 
+	 * @return the name, can be {@code null}
+	 */
+	public String getEvent() {
+		return event;
+	}
+
+	/**
+	 * Gets the serialized event.
+	 * 
+	 * @return the serialized event, which must not be modified
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, UTF8);
+	}
+}
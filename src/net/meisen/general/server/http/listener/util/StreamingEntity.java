@@ -0,0 +1,126 @@
+package net.meisen.general.server.http.listener.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import net.meisen.general.server.http.listener.api.IResponseStreamer;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * An {@code HttpEntity} streaming the content produced by an
+ * {@code IResponseStreamer}, i.e. the content is written while the response
+ * is sent using chunked transfer-coding. The content is never materialized,
+ * the memory used is bounded by the size of the buffer of the
+ * {@code ResponseWriter}.
+ * 
+ * <pre>
+ * response.setEntity(new StreamingEntity(new IResponseStreamer() {
+ * 
+ * 	&#064;Override
+ * 	public void stream(final ResponseWriter writer) throws IOException {
+ * 		for (final Row row : report) {
+ * 			writer.println(row.toCsv());
+ * 		}
+ * 	}
+ * }, ContentType.create(&quot;text/csv&quot;, &quot;UTF-8&quot;)));
+ * </pre>
+ * 
+ * The entity isn't repeatable and its content cannot be read as stream,
+ * i.e. it can only be written once.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class StreamingEntity extends AbstractHttpEntity {
+
+	/**
+	 * The default size of the buffer in bytes
+	 */
+	public final static int DEF_BUFFERSIZE = 8192;
+
+	private final IResponseStreamer streamer;
+	private final int bufferSize;
+	private final Charset charset;
+
+	/**
+	 * Creates an entity using a buffer of the default size.
+	 * 
+	 * @param streamer
+	 *            the producer of the content
+	 * @param contentType
+	 *            the type of the content, the charset of the type is used to
+	 *            encode characters ({@code UTF-8} if none is defined)
+	 */
+	public StreamingEntity(final IResponseStreamer streamer,
+			final ContentType contentType) {
+		this(streamer, contentType, DEF_BUFFERSIZE);
+	}
+
+	/**
+	 * Creates an entity using a buffer of the specified size.
+	 * 
+	 * @param streamer
+	 *            the producer of the content
+	 * @param contentType
+	 *            the type of the content, the charset of the type is used to
+	 *            encode characters ({@code UTF-8} if none is defined)
+	 * @param bufferSize
+	 *            the size of the buffer in bytes, i.e. the maximal size of
+	 *            one chunk
+	 */
+	public StreamingEntity(final IResponseStreamer streamer,
+			final ContentType contentType, final int bufferSize) {
+		this.streamer = streamer;
+		this.bufferSize = bufferSize;
+
+		if (contentType == null || contentType.getCharset() == null) {
+			this.charset = Charset.forName("UTF-8");
+		} else {
+			this.charset = contentType.getCharset();
+		}
+		if (contentType != null) {
+			setContentType(contentType.toString());
+		}
+		setChunked(true);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		throw new UnsupportedOperationException(
+				"The content of a streamed entity can only be written.");
+	}
+
+	@Override
+	public void writeTo(final OutputStream outstream) throws IOException {
+		if (outstream == null) {
+			throw new IllegalArgumentException("Output stream may not be null");
+		}
+
+		final ResponseWriter writer = new ResponseWriter(outstream,
+				bufferSize, charset);
+		streamer.stream(writer);
+
+		// end the encoding and send the remaining data
+		writer.close();
+		outstream.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
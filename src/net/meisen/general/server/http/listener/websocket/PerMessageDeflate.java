@@ -0,0 +1,183 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The {@code permessage-deflate} extension (see RFC 7692) of one
+ * connection. The server doesn't keep the context between the messages it
+ * sends (i.e. {@code server_no_context_takeover}), the client may keep it.
+ * The {@code Deflater} and {@code Inflater} are created when they are
+ * needed for the first time and have to be released using
+ * {@link #release()}.
+ *
+ * @author pmeisen
+ *
+ */
+public class PerMessageDeflate {
+	/**
+	 * The name of the extension
+	 */
+	public final static String EXTENSION = "permessage-deflate";
+	/**
+	 * The value of the {@code Sec-WebSocket-Extensions} header accepting the
+	 * extension
+	 */
+	public final static String RESPONSE = EXTENSION
+			+ "; server_no_context_takeover";
+	/**
+	 * Messages smaller than the size (in bytes) are sent uncompressed
+	 */
+	public final static int MIN_SIZE = 64;
+
+	private final static byte[] TAIL = new byte[] { 0x00, 0x00, (byte) 0xff,
+			(byte) 0xff };
+
+	private final byte[] buffer = new byte[4096];
+	private Deflater deflater = null;
+	private Inflater inflater = null;
+
+	/**
+	 * Checks if one of the offers (i.e. the values of the
+	 * {@code Sec-WebSocket-Extensions} headers) contains the extension with
+	 * parameters, which are supported.
+	 *
+	 * @param offers
+	 *            the offered extensions, can be {@code null}
+	 *
+	 * @return {@code true} if the extension can be used, otherwise
+	 *         {@code false}
+	 */
+	public static boolean negotiate(final String offers) {
+		if (offers == null) {
+			return false;
+		}
+
+		for (final String offer : offers.split(",")) {
+			final String[] parts = offer.split(";");
+			if (!EXTENSION.equalsIgnoreCase(parts[0].trim())) {
+				continue;
+			}
+
+			boolean supported = true;
+			for (int i = 1; i < parts.length && supported; i++) {
+				final String[] param = parts[i].split("=", 2);
+				final String name = param[0].trim().toLowerCase();
+				final String value = param.length > 1 ? param[1].trim()
+						.replace("\"", "") : null;
+
+				if ("server_max_window_bits".equals(name)) {
+
+					// the window of the Deflater cannot be reduced
+					supported = "15".equals(value);
+				} else {
+					supported = "server_no_context_takeover".equals(name)
+							|| "client_no_context_takeover".equals(name)
+							|| "client_max_window_bits".equals(name);
+				}
+			}
+
+			if (supported) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Compresses a message.
+	 *
+	 * @param data
+	 *            the message to be compressed
+	 *
+	 * @return the compressed message
+	 */
+	public synchronized byte[] compress(final byte[] data) {
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(
+				data.length / 2 + 16);
+		deflater.setInput(data);
+		int len;
+		do {
+			len = deflater.deflate(buffer, 0, buffer.length,
+					Deflater.SYNC_FLUSH);
+			out.write(buffer, 0, len);
+		} while (len == buffer.length);
+		deflater.reset();
+
+		// remove the tail added by the flush
+		final byte[] compressed = out.toByteArray();
+		return Arrays.copyOf(compressed, compressed.length - TAIL.length);
+	}
+
+	/**
+	 * Decompresses a message.
+	 *
+	 * @param data
+	 *            the compressed message
+	 * @param maxSize
+	 *            the maximal size of the decompressed message
+	 *
+	 * @return the decompressed message
+	 *
+	 * @throws WebSocketException
+	 *             if the message is invalid or too large
+	 */
+	public synchronized byte[] decompress(final byte[] data, final int maxSize)
+			throws WebSocketException {
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+
+		final byte[] input = Arrays.copyOf(data, data.length + TAIL.length);
+		System.arraycopy(TAIL, 0, input, data.length, TAIL.length);
+		inflater.setInput(input);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(
+				data.length * 2);
+		try {
+			while (!inflater.needsInput()) {
+				final int len = inflater.inflate(buffer);
+				out.write(buffer, 0, len);
+
+				if (out.size() > maxSize) {
+					throw new WebSocketException(WebSocketFrame.CLOSE_TOO_BIG,
+							"Message too large");
+				} else if (inflater.finished()) {
+
+					// the client ended the stream, start a new one
+					inflater.reset();
+					break;
+				} else if (len == 0 && inflater.needsDictionary()) {
+					throw new WebSocketException(
+							WebSocketFrame.CLOSE_INVALID_DATA,
+							"Invalid compressed data");
+				}
+			}
+		} catch (final DataFormatException e) {
+			throw new WebSocketException(WebSocketFrame.CLOSE_INVALID_DATA,
+					"Invalid compressed data");
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Releases the resources of the {@code Deflater} and {@code Inflater}.
+	 */
+	public synchronized void release() {
+		if (deflater != null) {
+			deflater.end();
+		}
+		if (inflater != null) {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown whenever a WebSocket connection has to be closed because
+ * of the received data, e.g. because of a violation of the protocol or
+ * because a message is too large.
+ *
+ * @author pmeisen
+ *
+ */
+public class WebSocketException extends IOException {
+	private static final long serialVersionUID = -3216841750873094611L;
+
+	private final int closeCode;
+
+	/**
+	 * Creates an exception closing the connection with the specified
+	 * {@code closeCode}.
+	 *
+	 * @param closeCode
+	 *            the status code sent within the close frame
+	 * @param message
+	 *            the message of the exception, sent as reason of the closing
+	 */
+	public WebSocketException(final int closeCode, final String message) {
+		super(message);
+
+		this.closeCode = closeCode;
+	}
+
+	/**
+	 * Gets the status code sent within the close frame.
+	 *
+	 * @return the status code
+	 */
+	public int getCloseCode() {
+		return closeCode;
+	}
+}
@@ -0,0 +1,278 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A frame of the WebSocket protocol (see RFC 6455). Frames received from a
+ * client are masked, frames sent by the server are never masked.
+ *
+ * @author pmeisen
+ *
+ */
+public class WebSocketFrame {
+	/**
+	 * The opcode of a frame continuing a fragmented message
+	 */
+	public final static int OPCODE_CONTINUATION = 0x0;
+	/**
+	 * The opcode of the first frame of a text message
+	 */
+	public final static int OPCODE_TEXT = 0x1;
+	/**
+	 * The opcode of the first frame of a binary message
+	 */
+	public final static int OPCODE_BINARY = 0x2;
+	/**
+	 * The opcode of a close frame
+	 */
+	public final static int OPCODE_CLOSE = 0x8;
+	/**
+	 * The opcode of a ping frame
+	 */
+	public final static int OPCODE_PING = 0x9;
+	/**
+	 * The opcode of a pong frame
+	 */
+	public final static int OPCODE_PONG = 0xA;
+
+	/**
+	 * The status code of a normal closing
+	 */
+	public final static int CLOSE_NORMAL = 1000;
+	/**
+	 * The status code used if the server goes away
+	 */
+	public final static int CLOSE_GOING_AWAY = 1001;
+	/**
+	 * The status code used if the protocol is violated
+	 */
+	public final static int CLOSE_PROTOCOL_ERROR = 1002;
+	/**
+	 * The status code reported if a close frame didn't contain any status
+	 */
+	public final static int CLOSE_NO_STATUS = 1005;
+	/**
+	 * The status code reported if the connection was closed without a close
+	 * frame
+	 */
+	public final static int CLOSE_ABNORMAL = 1006;
+	/**
+	 * The status code used if a text message isn't valid UTF-8
+	 */
+	public final static int CLOSE_INVALID_DATA = 1007;
+	/**
+	 * The status code used if the server cannot keep up with the client
+	 */
+	public final static int CLOSE_POLICY_VIOLATION = 1008;
+	/**
+	 * The status code used if a message is too large
+	 */
+	public final static int CLOSE_TOO_BIG = 1009;
+	/**
+	 * The status code used if the endpoint failed
+	 */
+	public final static int CLOSE_INTERNAL_ERROR = 1011;
+
+	/**
+	 * The maximal size of the payload of a control frame
+	 */
+	public final static int MAX_CONTROL_PAYLOAD = 125;
+
+	private final boolean fin;
+	private final boolean rsv1;
+	private final int opcode;
+	private final byte[] payload;
+
+	/**
+	 * Creates a frame.
+	 *
+	 * @param fin
+	 *            {@code true} if it's the last frame of a message
+	 * @param rsv1
+	 *            {@code true} if the message is compressed (only set for the
+	 *            first frame of a message)
+	 * @param opcode
+	 *            the opcode of the frame
+	 * @param payload
+	 *            the unmasked payload
+	 */
+	public WebSocketFrame(final boolean fin, final boolean rsv1,
+			final int opcode, final byte[] payload) {
+		this.fin = fin;
+		this.rsv1 = rsv1;
+		this.opcode = opcode;
+		this.payload = payload;
+	}
+
+	/**
+	 * Decodes the frame at the current position of the {@code buffer}. The
+	 * position is moved behind the frame, if the frame is complete.
+	 *
+	 * @param buffer
+	 *            the buffer containing the received data
+	 * @param maxPayload
+	 *            the maximal size of the payload of a frame
+	 *
+	 * @return the decoded frame, or {@code null} if the buffer doesn't
+	 *         contain the whole frame yet
+	 *
+	 * @throws WebSocketException
+	 *             if the frame violates the protocol or is too large
+	 */
+	public static WebSocketFrame decode(final ByteBuffer buffer,
+			final int maxPayload) throws WebSocketException {
+		final int available = buffer.remaining();
+		if (available < 2) {
+			return null;
+		}
+
+		final int pos = buffer.position();
+		final int b0 = buffer.get(pos) & 0xff;
+		final int b1 = buffer.get(pos + 1) & 0xff;
+		final boolean fin = (b0 & 0x80) != 0;
+		final int opcode = b0 & 0x0f;
+
+		if ((b0 & 0x30) != 0) {
+			throw new WebSocketException(CLOSE_PROTOCOL_ERROR,
+					"Reserved bits set");
+		} else if (opcode > OPCODE_BINARY && opcode < OPCODE_CLOSE
+				|| opcode > OPCODE_PONG) {
+			throw new WebSocketException(CLOSE_PROTOCOL_ERROR,
+					"Unknown opcode " + opcode);
+		} else if ((b1 & 0x80) == 0) {
+			throw new WebSocketException(CLOSE_PROTOCOL_ERROR,
+					"Unmasked frame");
+		}
+
+		// determine the length of the payload
+		long length = b1 & 0x7f;
+		int header = 2;
+		if (length == 126) {
+			if (available < 4) {
+				return null;
+			}
+			length = buffer.getShort(pos + 2) & 0xffff;
+			header = 4;
+		} else if (length == 127) {
+			if (available < 10) {
+				return null;
+			}
+			length = buffer.getLong(pos + 2);
+			header = 10;
+		}
+
+		if (opcode >= OPCODE_CLOSE && (!fin || length > MAX_CONTROL_PAYLOAD)) {
+			throw new WebSocketException(CLOSE_PROTOCOL_ERROR,
+					"Invalid control frame");
+		} else if (length < 0 || length > maxPayload) {
+			throw new WebSocketException(CLOSE_TOO_BIG, "Frame too large");
+		} else if (available < header + 4 + length) {
+			return null;
+		}
+
+		// read and unmask the payload
+		final byte[] mask = new byte[4];
+		buffer.position(pos + header);
+		buffer.get(mask);
+		final byte[] payload = new byte[(int) length];
+		buffer.get(payload);
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] ^= mask[i & 3];
+		}
+
+		return new WebSocketFrame(fin, (b0 & 0x40) != 0, opcode, payload);
+	}
+
+	/**
+	 * Encodes an unmasked frame.
+	 *
+	 * @param fin
+	 *            {@code true} if it's the last frame of a message
+	 * @param rsv1
+	 *            {@code true} if the message is compressed (only set for the
+	 *            first frame of a message)
+	 * @param opcode
+	 *            the opcode of the frame
+	 * @param payload
+	 *            the array containing the payload
+	 * @param offset
+	 *            the offset of the payload within the array
+	 * @param length
+	 *            the length of the payload
+	 *
+	 * @return the buffer containing the frame, ready to be written
+	 */
+	public static ByteBuffer encode(final boolean fin, final boolean rsv1,
+			final int opcode, final byte[] payload, final int offset,
+			final int length) {
+		final int header = length < 126 ? 2 : length <= 0xffff ? 4 : 10;
+		final ByteBuffer buffer = ByteBuffer.allocate(header + length);
+
+		buffer.put((byte) ((fin ? 0x80 : 0) | (rsv1 ? 0x40 : 0) | opcode));
+		if (header == 2) {
+			buffer.put((byte) length);
+		} else if (header == 4) {
+			buffer.put((byte) 126);
+			buffer.putShort((short) length);
+		} else {
+			buffer.put((byte) 127);
+			buffer.putLong(length);
+		}
+		buffer.put(payload, offset, length);
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * Checks if it's the last frame of a message.
+	 *
+	 * @return {@code true} if it's the last frame, otherwise {@code false}
+	 */
+	public boolean isFin() {
+		return fin;
+	}
+
+	/**
+	 * Checks if the first reserved bit is set, i.e. if the message is
+	 * compressed.
+	 *
+	 * @return {@code true} if the bit is set, otherwise {@code false}
+	 */
+	public boolean isRsv1() {
+		return rsv1;
+	}
+
+	/**
+	 * Gets the opcode of the frame.
+	 *
+	 * @return the opcode
+	 */
+	public int getOpcode() {
+		return opcode;
+	}
+
+	/**
+	 * Checks if the frame is a control frame, i.e. a close, ping or pong.
+	 *
+	 * @return {@code true} if it's a control frame, otherwise {@code false}
+	 */
+	public boolean isControl() {
+		return opcode >= OPCODE_CLOSE;
+	}
+
+	/**
+	 * Gets the unmasked payload of the frame.
+	 *
+	 * @return the payload
+	 */
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	@Override
+	public String toString() {
+		return "WebSocketFrame (opcode " + opcode + ", " + payload.length
+				+ " bytes" + (fin ? "" : ", fragment") + ")";
+	}
+}
@@ -0,0 +1,134 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+
+/**
+ * Utilities to perform the opening handshake of the WebSocket protocol, i.e.
+ * to validate a request asking for an upgrade and to answer it.
+ *
+ * @author pmeisen
+ *
+ */
+public class WebSocketHandshake {
+	/**
+	 * The supported version of the protocol
+	 */
+	public final static String VERSION = "13";
+
+	private final static String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	/**
+	 * Checks if the {@code request} is a valid request to upgrade the
+	 * connection to the supported version of the WebSocket protocol.
+	 *
+	 * @param request
+	 *            the request to be checked
+	 *
+	 * @return {@code true} if the request asks for an upgrade, otherwise
+	 *         {@code false}
+	 */
+	public static boolean isUpgrade(final HttpRequest request) {
+		final String key = getHeader(request, "Sec-WebSocket-Key");
+
+		return "GET".equals(request.getRequestLine().getMethod())
+				&& containsToken(getHeader(request, "Upgrade"), "websocket")
+				&& containsToken(getHeader(request, "Connection"), "upgrade")
+				&& VERSION.equals(getHeader(request, "Sec-WebSocket-Version"))
+				&& key != null && key.trim().length() == 24;
+	}
+
+	/**
+	 * Answers the upgrade {@code request}, i.e. sets the status {@code 101}
+	 * and the headers of the handshake.
+	 *
+	 * @param request
+	 *            the request asking for the upgrade
+	 * @param response
+	 *            the response to be modified
+	 * @param deflate
+	 *            {@code true} if {@code permessage-deflate} should be used, if
+	 *            offered by the client
+	 *
+	 * @return {@code true} if {@code permessage-deflate} was accepted,
+	 *         otherwise {@code false}
+	 */
+	public static boolean accept(final HttpRequest request,
+			final HttpResponse response, final boolean deflate) {
+		response.setStatusCode(HttpStatus.SC_SWITCHING_PROTOCOLS);
+		response.setReasonPhrase("Switching Protocols");
+		response.setEntity(null);
+		response.setHeader("Upgrade", "websocket");
+		response.setHeader("Sec-WebSocket-Accept",
+				createAccept(getHeader(request, "Sec-WebSocket-Key").trim()));
+
+		if (deflate
+				&& PerMessageDeflate.negotiate(getHeader(request,
+						"Sec-WebSocket-Extensions"))) {
+			response.setHeader("Sec-WebSocket-Extensions",
+					PerMessageDeflate.RESPONSE);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the value of the {@code Sec-WebSocket-Accept} header for the
+	 * specified {@code key}.
+	 *
+	 * @param key
+	 *            the value of the {@code Sec-WebSocket-Key} header
+	 *
+	 * @return the value of the {@code Sec-WebSocket-Accept} header
+	 */
+	public static String createAccept(final String key) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return Base64.getEncoder().encodeToString(
+					digest.digest((key + GUID)
+							.getBytes(StandardCharsets.US_ASCII)));
+		} catch (final NoSuchAlgorithmException e) {
+			// cannot happen, SHA-1 has to be supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String getHeader(final HttpRequest request,
+			final String name) {
+		final Header[] headers = request.getHeaders(name);
+		if (headers.length == 0) {
+			return null;
+		}
+
+		// combine the values of all the headers
+		final StringBuilder value = new StringBuilder(headers[0].getValue());
+		for (int i = 1; i < headers.length; i++) {
+			value.append(',').append(headers[i].getValue());
+		}
+
+		return value.toString();
+	}
+
+	private static boolean containsToken(final String value,
+			final String token) {
+		if (value == null) {
+			return false;
+		}
+
+		for (final String part : value.split(",")) {
+			if (token.equalsIgnoreCase(part.trim())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,401 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.meisen.general.server.http.listener.api.IWebSocketEndpoint;
+
+import org.apache.http.HttpRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles the upgraded WebSocket connections of an endpoint. The
+ * connections are switched to non-blocking mode and are watched by one
+ * selecting thread, i.e. an idle connection doesn't occupy any thread. The
+ * received messages are passed to the endpoint using a bounded amount of
+ * dispatching threads.
+ *
+ * The non-blocking mode needs a {@code Socket} providing a channel, i.e. a
+ * socket accepted by a {@code ServerSocketChannel}. If the socket doesn't
+ * provide a channel, a thread blocks reading the connection instead and
+ * calls the endpoint itself, i.e. an idle connection occupies one thread.
+ * <p>
+ * <b>Note:</b> The {@code HttpListener} accepts its connections using the
+ * {@code AcceptListenerThread} of the server, which is based on a classic
+ * {@code ServerSocket}. The sockets of such connections never provide a
+ * channel, i.e. with the current acceptor every connection is read by a
+ * blocking thread and the selecting thread only checks the timeouts (see
+ * {@link #getBlocking()}).
+ *
+ * @author pmeisen
+ *
+ */
+public class WebSocketSelector {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(WebSocketSelector.class);
+
+	private final static long CHECK_INTERVAL = 1000;
+	private final static long CLOSE_TIMEOUT = 5000;
+
+	private final IWebSocketEndpoint endpoint;
+	private final int maxMessageSize;
+	private final long maxQueue;
+	private final long idleTimeout;
+	private final ThreadPoolExecutor dispatcher;
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final Set<WebSocketSession> sessions;
+
+	private volatile Selector selector = null;
+	private volatile boolean closed = false;
+
+	private final AtomicLong opened = new AtomicLong(0);
+	private final AtomicLong received = new AtomicLong(0);
+	private final AtomicLong blocking = new AtomicLong(0);
+
+	/**
+	 * Creates a selector for the connections of the {@code endpoint}, the
+	 * selecting thread is started when the first connection is upgraded.
+	 *
+	 * @param endpoint
+	 *            the endpoint to pass the messages to
+	 * @param maxMessageSize
+	 *            the maximal size (in bytes) of a received message
+	 * @param maxQueue
+	 *            the maximal amount of bytes queued for a client, before the
+	 *            connection is closed
+	 * @param idleTimeout
+	 *            the time (in milliseconds) after which an idle connection is
+	 *            closed, {@code 0} to keep idle connections
+	 * @param threads
+	 *            the amount of threads calling the endpoint
+	 */
+	public WebSocketSelector(final IWebSocketEndpoint endpoint,
+			final int maxMessageSize, final long maxQueue,
+			final long idleTimeout, final int threads) {
+		this.endpoint = endpoint;
+		this.maxMessageSize = maxMessageSize;
+		this.maxQueue = maxQueue;
+		this.idleTimeout = idleTimeout;
+		this.sessions = Collections
+				.newSetFromMap(new ConcurrentHashMap<WebSocketSession, Boolean>());
+
+		final int size = Math.max(1, threads);
+		this.dispatcher = new ThreadPoolExecutor(size, size, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r,
+								"WebSocket-Dispatcher");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.dispatcher.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Takes over the {@code socket} of an upgraded connection.
+	 *
+	 * @param socket
+	 *            the socket of the connection
+	 * @param request
+	 *            the request which asked for the upgrade
+	 * @param deflate
+	 *            {@code true} if {@code permessage-deflate} was negotiated
+	 *
+	 * @return the session of the connection
+	 *
+	 * @throws IOException
+	 *             if the connection cannot be taken over
+	 */
+	public WebSocketSession open(final Socket socket,
+			final HttpRequest request, final boolean deflate)
+			throws IOException {
+		if (closed) {
+			throw new IOException("The WebSocketSelector is closed.");
+		}
+		start();
+
+		final WebSocketSession session = new WebSocketSession(this, socket,
+				deflate);
+		sessions.add(session);
+		opened.incrementAndGet();
+
+		try {
+			session.start(request);
+		} catch (final IOException e) {
+			sessions.remove(session);
+			throw e;
+		}
+
+		return session;
+	}
+
+	private synchronized void start() throws IOException {
+		if (selector != null) {
+			return;
+		}
+
+		selector = Selector.open();
+		final Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				select();
+			}
+		}, "WebSocket-Selector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void select() {
+		long lastCheck = System.currentTimeMillis();
+
+		while (!closed) {
+			try {
+				selector.select(CHECK_INTERVAL);
+			} catch (final IOException e) {
+				if (LOG.isErrorEnabled()) {
+					LOG.error("Failed to select the WebSocket connections.", e);
+				}
+				break;
+			}
+
+			// run the tasks added by other threads
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+
+			final Iterator<SelectionKey> it = selector.selectedKeys()
+					.iterator();
+			while (it.hasNext()) {
+				final SelectionKey key = it.next();
+				it.remove();
+
+				final WebSocketSession session = (WebSocketSession) key
+						.attachment();
+				try {
+					if (key.isReadable()) {
+						session.read();
+					}
+					if (key.isValid() && key.isWritable()) {
+						session.write();
+					}
+				} catch (final CancelledKeyException e) {
+					// the session was terminated meanwhile
+				}
+			}
+
+			final long now = System.currentTimeMillis();
+			if (now - lastCheck >= CHECK_INTERVAL) {
+				lastCheck = now;
+				for (final WebSocketSession session : sessions) {
+					session.checkTimeouts(now, CLOSE_TIMEOUT, idleTimeout);
+				}
+			}
+		}
+
+		// terminate the remaining connections
+		for (final WebSocketSession session : sessions) {
+			session.terminate();
+		}
+		try {
+			selector.close();
+		} catch (final IOException ignore) {
+			// ignore
+		}
+		dispatcher.shutdown();
+	}
+
+	/**
+	 * Registers the non-blocking {@code channel} of the {@code session}.
+	 *
+	 * @param session
+	 *            the session of the channel
+	 * @param channel
+	 *            the channel to be registered
+	 */
+	void register(final WebSocketSession session, final SocketChannel channel) {
+		execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					session.setKey(channel.register(selector,
+							SelectionKey.OP_READ, session));
+				} catch (final ClosedChannelException e) {
+					session.terminate();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Removes the terminated {@code session}.
+	 *
+	 * @param session
+	 *            the terminated session
+	 */
+	void unregister(final WebSocketSession session) {
+		sessions.remove(session);
+	}
+
+	/**
+	 * Executes the {@code task} within the selecting thread, e.g. to modify
+	 * the registration of a channel.
+	 *
+	 * @param task
+	 *            the task to be executed
+	 */
+	void execute(final Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Executes the {@code calls} of the endpoint using a dispatching thread.
+	 *
+	 * @param calls
+	 *            the calls to be executed
+	 */
+	void dispatch(final Runnable calls) {
+		try {
+			dispatcher.execute(calls);
+		} catch (final RejectedExecutionException e) {
+
+			// the selector is closed, the calls are executed anyway
+			calls.run();
+		}
+	}
+
+	/**
+	 * Counts a connection, which is read by a blocking thread, because its
+	 * socket doesn't provide a channel.
+	 */
+	void blocking() {
+		if (blocking.getAndIncrement() == 0 && LOG.isWarnEnabled()) {
+			LOG.warn("The sockets of the WebSocket connections don't provide "
+					+ "a channel, each connection occupies a reading thread.");
+		}
+	}
+
+	/**
+	 * Counts a received message.
+	 */
+	void received() {
+		received.incrementAndGet();
+	}
+
+	/**
+	 * Gets the endpoint the messages are passed to.
+	 *
+	 * @return the endpoint
+	 */
+	public IWebSocketEndpoint getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Gets the maximal size of a received message.
+	 *
+	 * @return the maximal size in bytes
+	 */
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Gets the maximal amount of bytes queued for a client.
+	 *
+	 * @return the maximal amount of queued bytes
+	 */
+	public long getMaxQueue() {
+		return maxQueue;
+	}
+
+	/**
+	 * Closes all the connections, using the status code {@code 1001}, and
+	 * stops the selecting thread.
+	 */
+	public void close() {
+		for (final WebSocketSession session : sessions) {
+			session.close(WebSocketFrame.CLOSE_GOING_AWAY, "Server shutdown");
+		}
+
+		synchronized (this) {
+			closed = true;
+			if (selector != null) {
+				selector.wakeup();
+			} else {
+				dispatcher.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Gets the amount of open connections.
+	 *
+	 * @return the amount of open connections
+	 */
+	public int getSessions() {
+		return sessions.size();
+	}
+
+	/**
+	 * Gets the amount of connections, which have been upgraded.
+	 *
+	 * @return the amount of upgraded connections
+	 */
+	public long getOpened() {
+		return opened.get();
+	}
+
+	/**
+	 * Gets the amount of upgraded connections, which are read by a blocking
+	 * thread instead of the selecting thread, because the socket doesn't
+	 * provide a channel.
+	 *
+	 * @return the amount of connections read by a blocking thread
+	 */
+	public long getBlocking() {
+		return blocking.get();
+	}
+
+	/**
+	 * Gets the amount of received messages.
+	 *
+	 * @return the amount of received messages
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	@Override
+	public String toString() {
+		return "WebSocketSelector (" + getSessions() + " sessions, " + opened
+				+ " opened, " + blocking + " blocking, " + received
+				+ " received)";
+	}
+}
@@ -0,0 +1,822 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.meisen.general.server.http.listener.api.IWebSocketEndpoint;
+
+import org.apache.http.HttpRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The session of an upgraded WebSocket connection. The session is used by
+ * an {@link IWebSocketEndpoint} to send messages to the client, it can be
+ * used by any thread.
+ *
+ * Received frames are re-assembled to messages, which are passed to the
+ * endpoint one after another. If the endpoint cannot keep up, the reading
+ * of the connection is suspended. Sent messages are queued if the client
+ * doesn't read them fast enough, the connection is closed if the queue
+ * exceeds its limit.
+ *
+ * @author pmeisen
+ *
+ */
+public class WebSocketSession {
+	private final static Logger LOG = LoggerFactory
+			.getLogger(WebSocketSession.class);
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final static int INITIAL_BUFFER_SIZE = 1024;
+	private final static int FRAGMENT_SIZE = 64 * 1024;
+	private final static int MAX_PENDING = 16;
+
+	private final WebSocketSelector owner;
+	private final IWebSocketEndpoint endpoint;
+	private final Socket socket;
+	private final SocketChannel channel;
+	private final PerMessageDeflate deflate;
+
+	// the state of the reading, only accessed by the reading thread
+	private ByteBuffer readBuffer;
+	private ByteArrayOutputStream message = null;
+	private int messageOpcode = -1;
+	private boolean messageCompressed = false;
+	private boolean closeReceived = false;
+
+	// the state of the writing, guarded by the outbound queue
+	private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+	private long queued = 0;
+	private boolean closeSent = false;
+	private long closeSentAt = 0;
+	private boolean terminateOnFlush = false;
+	private volatile boolean terminated = false;
+	private volatile SelectionKey key = null;
+
+	// the messages waiting for the endpoint
+	private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private volatile boolean suspended = false;
+
+	private final AtomicBoolean closeNotified = new AtomicBoolean(false);
+	private volatile long lastActivity = System.currentTimeMillis();
+	private volatile Object attachment = null;
+
+	/**
+	 * Creates the session of the upgraded {@code socket}.
+	 *
+	 * @param owner
+	 *            the {@code WebSocketSelector} handling the session
+	 * @param socket
+	 *            the socket of the upgraded connection
+	 * @param deflate
+	 *            {@code true} if {@code permessage-deflate} was negotiated
+	 */
+	WebSocketSession(final WebSocketSelector owner, final Socket socket,
+			final boolean deflate) {
+		this.owner = owner;
+		this.endpoint = owner.getEndpoint();
+		this.socket = socket;
+		this.channel = socket.getChannel();
+		this.deflate = deflate ? new PerMessageDeflate() : null;
+		this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	}
+
+	/**
+	 * Starts the session, i.e. notifies the endpoint and starts to read.
+	 *
+	 * @param request
+	 *            the request which asked for the upgrade
+	 *
+	 * @throws IOException
+	 *             if the connection cannot be switched to non-blocking mode
+	 */
+	void start(final HttpRequest request) throws IOException {
+		final Runnable open = new Runnable() {
+
+			@Override
+			public void run() {
+				endpoint.onOpen(WebSocketSession.this, request);
+			}
+		};
+
+		if (channel == null) {
+
+			// without a channel a thread has to block for the connection
+			owner.blocking();
+			final Thread reader = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					invoke(open);
+					readBlocking();
+				}
+			}, "WebSocket-Reader");
+			reader.setDaemon(true);
+			reader.start();
+		} else {
+			channel.configureBlocking(false);
+			owner.register(this, channel);
+			dispatch(open);
+		}
+	}
+
+	/**
+	 * Sends a text message.
+	 *
+	 * @param text
+	 *            the message to be sent
+	 *
+	 * @return {@code true} if the message was sent or queued, {@code false}
+	 *         if the session is closed
+	 */
+	public boolean sendText(final String text) {
+		return send(WebSocketFrame.OPCODE_TEXT, text.getBytes(UTF8));
+	}
+
+	/**
+	 * Sends a binary message.
+	 *
+	 * @param data
+	 *            the message to be sent
+	 *
+	 * @return {@code true} if the message was sent or queued, {@code false}
+	 *         if the session is closed
+	 */
+	public boolean sendBinary(final byte[] data) {
+		return send(WebSocketFrame.OPCODE_BINARY, data);
+	}
+
+	/**
+	 * Sends a ping, which is answered with a pong by the client.
+	 *
+	 * @param data
+	 *            the application data of the ping, at most {@code 125} bytes
+	 *
+	 * @return {@code true} if the ping was sent or queued, {@code false} if
+	 *         the session is closed
+	 */
+	public boolean sendPing(final byte[] data) {
+		if (data.length > WebSocketFrame.MAX_CONTROL_PAYLOAD) {
+			throw new IllegalArgumentException("The data of a ping is limited to "
+					+ WebSocketFrame.MAX_CONTROL_PAYLOAD + " bytes.");
+		}
+
+		synchronized (outbound) {
+			if (closeSent || terminated) {
+				return false;
+			}
+
+			enqueue(WebSocketFrame.encode(true, false,
+					WebSocketFrame.OPCODE_PING, data, 0, data.length));
+			return flush();
+		}
+	}
+
+	/**
+	 * Starts the closing handshake, i.e. sends a close frame. No messages
+	 * can be sent afterwards, the connection is closed when the client
+	 * answers the close frame.
+	 *
+	 * @param code
+	 *            the status code of the closing
+	 * @param reason
+	 *            the reason of the closing, can be {@code null}
+	 */
+	public void close(final int code, final String reason) {
+		synchronized (outbound) {
+			sendClose(code, reason);
+		}
+	}
+
+	/**
+	 * Checks if messages can be sent, i.e. if the closing handshake hasn't
+	 * been started.
+	 *
+	 * @return {@code true} if the session is open, otherwise {@code false}
+	 */
+	public boolean isOpen() {
+		synchronized (outbound) {
+			return !closeSent && !terminated;
+		}
+	}
+
+	/**
+	 * Checks if the messages are compressed using
+	 * {@code permessage-deflate}.
+	 *
+	 * @return {@code true} if the messages are compressed, otherwise
+	 *         {@code false}
+	 */
+	public boolean isDeflate() {
+		return deflate != null;
+	}
+
+	/**
+	 * Gets the address of the client.
+	 *
+	 * @return the address of the client
+	 */
+	public SocketAddress getRemoteAddress() {
+		return socket.getRemoteSocketAddress();
+	}
+
+	/**
+	 * Gets the amount of bytes queued, which haven't been sent yet.
+	 *
+	 * @return the amount of queued bytes
+	 */
+	public long getQueued() {
+		synchronized (outbound) {
+			return queued;
+		}
+	}
+
+	/**
+	 * Gets the object attached to the session.
+	 *
+	 * @return the attached object, {@code null} if none was attached
+	 */
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	/**
+	 * Attaches an object (e.g. the state of the endpoint) to the session.
+	 *
+	 * @param attachment
+	 *            the object to be attached
+	 */
+	public void setAttachment(final Object attachment) {
+		this.attachment = attachment;
+	}
+
+	private boolean send(final int opcode, final byte[] data) {
+		synchronized (outbound) {
+			if (closeSent || terminated) {
+				return false;
+			}
+
+			final boolean compress = deflate != null
+					&& data.length >= PerMessageDeflate.MIN_SIZE;
+			final byte[] payload = compress ? deflate.compress(data) : data;
+
+			// fragment large messages
+			int offset = 0;
+			do {
+				final int len = Math.min(FRAGMENT_SIZE, payload.length - offset);
+				enqueue(WebSocketFrame.encode(offset + len == payload.length,
+						compress && offset == 0, offset == 0 ? opcode
+								: WebSocketFrame.OPCODE_CONTINUATION, payload,
+						offset, len));
+				offset += len;
+			} while (offset < payload.length);
+
+			return flush();
+		}
+	}
+
+	private void sendClose(final int code, final String reason) {
+		if (closeSent || terminated) {
+			return;
+		}
+
+		final byte[] payload;
+		if (code == WebSocketFrame.CLOSE_NO_STATUS) {
+			payload = new byte[0];
+		} else {
+
+			// the reason has to fit into the control frame
+			String shortened = reason == null ? "" : reason;
+			byte[] reasonBytes = shortened.getBytes(UTF8);
+			while (reasonBytes.length > WebSocketFrame.MAX_CONTROL_PAYLOAD - 2) {
+				shortened = shortened.substring(0, shortened.length() - 1);
+				reasonBytes = shortened.getBytes(UTF8);
+			}
+
+			payload = new byte[reasonBytes.length + 2];
+			payload[0] = (byte) (code >> 8);
+			payload[1] = (byte) code;
+			System.arraycopy(reasonBytes, 0, payload, 2, reasonBytes.length);
+		}
+
+		closeSent = true;
+		closeSentAt = System.currentTimeMillis();
+		enqueue(WebSocketFrame.encode(true, false,
+				WebSocketFrame.OPCODE_CLOSE, payload, 0, payload.length));
+		flush();
+	}
+
+	private void enqueue(final ByteBuffer frame) {
+		outbound.add(frame);
+		queued += frame.remaining();
+	}
+
+	/**
+	 * Writes the queued frames as far as possible. Has to be called while
+	 * holding the lock of the outbound queue.
+	 *
+	 * @return {@code false} if the connection was terminated, otherwise
+	 *         {@code true}
+	 */
+	private boolean flush() {
+		try {
+			if (channel == null) {
+				final OutputStream out = socket.getOutputStream();
+				for (final ByteBuffer frame : outbound) {
+					out.write(frame.array(), frame.position(), frame.remaining());
+				}
+				out.flush();
+				outbound.clear();
+				queued = 0;
+			} else {
+				while (!outbound.isEmpty()) {
+					final ByteBuffer frame = outbound.peek();
+					queued -= channel.write(frame);
+					if (frame.hasRemaining()) {
+						break;
+					}
+					outbound.poll();
+				}
+			}
+		} catch (final IOException e) {
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Failed to write to the WebSocket connection.", e);
+			}
+			terminate();
+			return false;
+		}
+
+		if (outbound.isEmpty()) {
+			if (terminateOnFlush) {
+				terminate();
+				return false;
+			}
+		} else if (queued > owner.getMaxQueue()) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Closing WebSocket connection, because the client doesn't read the "
+						+ queued + " queued bytes.");
+			}
+			terminate();
+			return false;
+		}
+
+		updateInterest();
+		return true;
+	}
+
+	/**
+	 * Writes the queued frames, called by the {@code WebSocketSelector}
+	 * whenever the channel is writable.
+	 */
+	void write() {
+		synchronized (outbound) {
+			if (!terminated) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Reads the available data, called by the {@code WebSocketSelector}
+	 * whenever the channel is readable.
+	 */
+	void read() {
+		try {
+			final int read = channel.read(readBuffer);
+			if (read < 0) {
+				terminate();
+			} else if (read > 0) {
+				process();
+			}
+		} catch (final IOException e) {
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Failed to read from the WebSocket connection.", e);
+			}
+			terminate();
+		}
+	}
+
+	private void readBlocking() {
+		try {
+			final InputStream in = socket.getInputStream();
+			while (!terminated) {
+				final int read = in.read(readBuffer.array(),
+						readBuffer.position(), readBuffer.remaining());
+				if (read < 0) {
+					break;
+				}
+
+				readBuffer.position(readBuffer.position() + read);
+				process();
+			}
+		} catch (final IOException e) {
+			if (LOG.isTraceEnabled()) {
+				LOG.trace("Failed to read from the WebSocket connection.", e);
+			}
+		} finally {
+			terminate();
+		}
+	}
+
+	private void process() {
+		lastActivity = System.currentTimeMillis();
+		readBuffer.flip();
+
+		try {
+			WebSocketFrame frame;
+			while (!closeReceived
+					&& !terminated
+					&& (frame = WebSocketFrame.decode(readBuffer,
+							owner.getMaxMessageSize())) != null) {
+				handle(frame);
+			}
+		} catch (final WebSocketException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Closing WebSocket connection: " + e.getMessage());
+			}
+
+			fail(e.getCloseCode(), e.getMessage());
+		}
+
+		if (closeReceived) {
+			readBuffer.clear();
+		} else {
+			readBuffer.compact();
+		}
+
+		// adapt the buffer to the size of the incomplete frame
+		if (!readBuffer.hasRemaining()) {
+			final ByteBuffer larger = ByteBuffer.allocate(Math.min(
+					readBuffer.capacity() * 2, owner.getMaxMessageSize() + 14));
+			readBuffer.flip();
+			larger.put(readBuffer);
+			readBuffer = larger;
+		} else if (readBuffer.position() == 0
+				&& readBuffer.capacity() > INITIAL_BUFFER_SIZE) {
+			readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		}
+	}
+
+	private void handle(final WebSocketFrame frame) throws WebSocketException {
+		final byte[] payload = frame.getPayload();
+
+		switch (frame.getOpcode()) {
+		case WebSocketFrame.OPCODE_PING:
+			synchronized (outbound) {
+				if (!closeSent && !terminated) {
+					enqueue(WebSocketFrame.encode(true, false,
+							WebSocketFrame.OPCODE_PONG, payload, 0,
+							payload.length));
+					flush();
+				}
+			}
+			dispatch(new Runnable() {
+
+				@Override
+				public void run() {
+					endpoint.onPing(WebSocketSession.this, payload);
+				}
+			});
+			break;
+		case WebSocketFrame.OPCODE_PONG:
+			dispatch(new Runnable() {
+
+				@Override
+				public void run() {
+					endpoint.onPong(WebSocketSession.this, payload);
+				}
+			});
+			break;
+		case WebSocketFrame.OPCODE_CLOSE:
+			handleClose(payload);
+			break;
+		default:
+			handleData(frame);
+			break;
+		}
+	}
+
+	private void handleClose(final byte[] payload) throws WebSocketException {
+		final int code;
+		final String reason;
+		if (payload.length == 0) {
+			code = WebSocketFrame.CLOSE_NO_STATUS;
+			reason = "";
+		} else if (payload.length == 1) {
+			throw new WebSocketException(WebSocketFrame.CLOSE_PROTOCOL_ERROR,
+					"Invalid close frame");
+		} else {
+			code = ((payload[0] & 0xff) << 8) | (payload[1] & 0xff);
+			if (!isValidCloseCode(code)) {
+				throw new WebSocketException(
+						WebSocketFrame.CLOSE_PROTOCOL_ERROR,
+						"Invalid status code " + code);
+			}
+
+			final byte[] reasonBytes = new byte[payload.length - 2];
+			System.arraycopy(payload, 2, reasonBytes, 0, reasonBytes.length);
+			reason = decodeText(reasonBytes);
+		}
+		closeReceived = true;
+		notifyClose(code, reason);
+
+		// answer the close frame, if it wasn't initiated by the server
+		synchronized (outbound) {
+			sendClose(code, reason);
+			terminateOnFlush = true;
+			flush();
+		}
+	}
+
+	private boolean isValidCloseCode(final int code) {
+		return code >= 1000 && code <= 1003 || code >= 1007 && code <= 1011
+				|| code >= 3000 && code <= 4999;
+	}
+
+	private void handleData(final WebSocketFrame frame)
+			throws WebSocketException {
+		final int opcode = frame.getOpcode();
+
+		if (opcode == WebSocketFrame.OPCODE_CONTINUATION) {
+			if (messageOpcode == -1 || frame.isRsv1()) {
+				throw new WebSocketException(
+						WebSocketFrame.CLOSE_PROTOCOL_ERROR,
+						"Unexpected continuation frame");
+			}
+		} else if (messageOpcode != -1) {
+			throw new WebSocketException(WebSocketFrame.CLOSE_PROTOCOL_ERROR,
+					"Expected continuation frame");
+		} else if (frame.isRsv1() && deflate == null) {
+			throw new WebSocketException(WebSocketFrame.CLOSE_PROTOCOL_ERROR,
+					"Compression not negotiated");
+		} else {
+			messageOpcode = opcode;
+			messageCompressed = frame.isRsv1();
+		}
+
+		// assemble the message, unless it consists of one frame
+		final byte[] data;
+		if (frame.isFin() && message == null) {
+			data = frame.getPayload();
+		} else {
+			if (message == null) {
+				message = new ByteArrayOutputStream(Math.max(256,
+						frame.getPayload().length * 2));
+			}
+			if (message.size() + frame.getPayload().length > owner
+					.getMaxMessageSize()) {
+				throw new WebSocketException(WebSocketFrame.CLOSE_TOO_BIG,
+						"Message too large");
+			}
+			message.write(frame.getPayload(), 0, frame.getPayload().length);
+
+			if (!frame.isFin()) {
+				return;
+			}
+			data = message.toByteArray();
+			message = null;
+		}
+
+		final int type = messageOpcode;
+		final byte[] content = messageCompressed ? deflate.decompress(data,
+				owner.getMaxMessageSize()) : data;
+		messageOpcode = -1;
+		messageCompressed = false;
+
+		if (closeSent) {
+			return;
+		} else if (type == WebSocketFrame.OPCODE_TEXT) {
+			final String text = decodeText(content);
+			dispatch(new Runnable() {
+
+				@Override
+				public void run() {
+					endpoint.onText(WebSocketSession.this, text);
+				}
+			});
+		} else {
+			dispatch(new Runnable() {
+
+				@Override
+				public void run() {
+					endpoint.onBinary(WebSocketSession.this, content);
+				}
+			});
+		}
+		owner.received();
+	}
+
+	private String decodeText(final byte[] data) throws WebSocketException {
+		try {
+			return UTF8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT)
+					.decode(ByteBuffer.wrap(data)).toString();
+		} catch (final CharacterCodingException e) {
+			throw new WebSocketException(WebSocketFrame.CLOSE_INVALID_DATA,
+					"Invalid UTF-8");
+		}
+	}
+
+	private void fail(final int code, final String reason) {
+		closeReceived = true;
+		notifyClose(code, reason);
+
+		synchronized (outbound) {
+			sendClose(code, reason);
+			terminateOnFlush = true;
+			flush();
+		}
+	}
+
+	/**
+	 * Checks the timeouts of the session, i.e. closes the connection if the
+	 * client didn't answer the close frame or if it was idle for too long.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 * @param closeTimeout
+	 *            the time (in milliseconds) to wait for the close frame of the
+	 *            client
+	 * @param idleTimeout
+	 *            the time (in milliseconds) a connection can be idle,
+	 *            {@code 0} to keep idle connections
+	 */
+	void checkTimeouts(final long now, final long closeTimeout,
+			final long idleTimeout) {
+		final boolean closing;
+		synchronized (outbound) {
+			closing = closeSent && now - closeSentAt > closeTimeout;
+		}
+
+		if (closing) {
+			terminate();
+		} else if (idleTimeout > 0 && now - lastActivity > idleTimeout) {
+			close(WebSocketFrame.CLOSE_GOING_AWAY, "Idle timeout");
+		}
+	}
+
+	/**
+	 * Closes the connection immediately, without any closing handshake.
+	 */
+	void terminate() {
+		synchronized (outbound) {
+			if (terminated) {
+				return;
+			}
+
+			terminated = true;
+			outbound.clear();
+			queued = 0;
+		}
+
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			socket.close();
+		} catch (final IOException ignore) {
+			// ignore
+		}
+		if (deflate != null) {
+			deflate.release();
+		}
+
+		owner.unregister(this);
+		notifyClose(WebSocketFrame.CLOSE_ABNORMAL, "");
+	}
+
+	/**
+	 * Sets the key of the registered channel, called by the selecting
+	 * thread.
+	 *
+	 * @param key
+	 *            the key of the channel
+	 */
+	void setKey(final SelectionKey key) {
+		this.key = key;
+		updateInterest();
+	}
+
+	private void updateInterest() {
+		if (channel == null) {
+			return;
+		}
+
+		owner.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				final int ops;
+				synchronized (outbound) {
+					ops = (suspended ? 0 : SelectionKey.OP_READ)
+							| (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+				}
+
+				if (key != null && key.isValid() && key.interestOps() != ops) {
+					key.interestOps(ops);
+				}
+			}
+		});
+	}
+
+	private void notifyClose(final int code, final String reason) {
+		if (closeNotified.compareAndSet(false, true)) {
+			dispatch(new Runnable() {
+
+				@Override
+				public void run() {
+					endpoint.onClose(WebSocketSession.this, code, reason);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Passes a call of the endpoint to the dispatching threads, keeping the
+	 * order of the calls of the session. A thread blocking for the
+	 * connection calls the endpoint itself.
+	 *
+	 * @param call
+	 *            the call of the endpoint
+	 */
+	private void dispatch(final Runnable call) {
+		if (channel == null) {
+			invoke(call);
+			return;
+		}
+
+		inbox.add(call);
+		if (pending.incrementAndGet() >= MAX_PENDING && !suspended) {
+			suspended = true;
+			updateInterest();
+		}
+
+		schedule();
+	}
+
+	private void schedule() {
+		if (!scheduled.compareAndSet(false, true)) {
+			return;
+		}
+
+		owner.dispatch(new Runnable() {
+
+			@Override
+			public void run() {
+				Runnable call;
+				while ((call = inbox.poll()) != null) {
+					invoke(call);
+
+					if (pending.decrementAndGet() < MAX_PENDING / 2
+							&& suspended) {
+						suspended = false;
+						updateInterest();
+					}
+				}
+				scheduled.set(false);
+
+				// calls added after the last poll
+				if (!inbox.isEmpty()) {
+					schedule();
+				}
+			}
+		});
+	}
+
+	private void invoke(final Runnable call) {
+		try {
+			call.run();
+		} catch (final Exception e) {
+			if (LOG.isErrorEnabled()) {
+				LOG.error("The WebSocket endpoint '"
+						+ endpoint.getClass().getName() + "' failed.", e);
+			}
+			close(WebSocketFrame.CLOSE_INTERNAL_ERROR, "Endpoint failed");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WebSocketSession (" + getRemoteAddress() + ", "
+				+ (isOpen() ? "open" : "closed") + ")";
+	}
+}
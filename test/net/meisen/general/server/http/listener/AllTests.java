@@ -1,11 +1,30 @@
 package net.meisen.general.server.http.listener;
 
+import net.meisen.general.server.http.listener.files.TestAcceptEncoding;
+import net.meisen.general.server.http.listener.files.TestCachePolicy;
+import net.meisen.general.server.http.listener.files.TestFileWatcher;
+import net.meisen.general.server.http.listener.files.TestFingerprints;
+import net.meisen.general.server.http.listener.files.TestMimeTypes;
+import net.meisen.general.server.http.listener.files.TestNegativeCache;
+import net.meisen.general.server.http.listener.files.TestPathNormalizer;
+import net.meisen.general.server.http.listener.files.TestRangeRequest;
+import net.meisen.general.server.http.listener.files.TestZipArchive;
+import net.meisen.general.server.http.listener.handler.TestComboHandler;
 import net.meisen.general.server.http.listener.handler.TestDefaultHandlerManager;
 import net.meisen.general.server.http.listener.handler.TestFileHandler;
 import net.meisen.general.server.http.listener.handler.TestServletHandler;
 import net.meisen.general.server.http.listener.servlets.TestScriptedServlet;
+import net.meisen.general.server.http.listener.util.TestCircuitBreaker;
+import net.meisen.general.server.http.listener.util.TestEventBroadcaster;
+import net.meisen.general.server.http.listener.util.TestInstancePool;
+import net.meisen.general.server.http.listener.util.TestRequestCoalescer;
 import net.meisen.general.server.http.listener.util.TestRequestFileHandlingUtilities;
 import net.meisen.general.server.http.listener.util.TestRequestHandlingUtilities;
+import net.meisen.general.server.http.listener.util.TestResponseCache;
+import net.meisen.general.server.http.listener.util.TestResponseWriter;
+import net.meisen.general.server.http.listener.websocket.TestPerMessageDeflate;
+import net.meisen.general.server.http.listener.websocket.TestWebSocketFrame;
+import net.meisen.general.server.http.listener.websocket.TestWebSocketSelector;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -21,7 +40,18 @@ import org.junit.runners.Suite;
 		TestHttpListenerRegistration.class, TestHttpListenerControl.class,
 		TestFileHandler.class, TestServletHandler.class,
 		TestRequestHandlingUtilities.class,
-		TestRequestFileHandlingUtilities.class, TestScriptedServlet.class })
+		TestRequestFileHandlingUtilities.class, TestScriptedServlet.class,
+		TestRangeRequest.class, TestAcceptEncoding.class,
+		TestCachePolicy.class, TestFileWatcher.class,
+		TestMimeTypes.class, TestFingerprints.class,
+		TestZipArchive.class, TestNegativeCache.class,
+		TestComboHandler.class, TestPathNormalizer.class,
+		TestInstancePool.class, TestResponseCache.class,
+		TestRequestCoalescer.class, TestCircuitBreaker.class,
+		TestResponseWriter.class, TestEventBroadcaster.class,
+		TestWebSocketFrame.class, TestPerMessageDeflate.class,
+		TestWebSocketSelector.class, TestHttpListenerFilters.class,
+		TestLoopbackDispatcher.class })
 public class AllTests {
 	// nothing more to do here
 }
@@ -0,0 +1,294 @@
+package net.meisen.general.server.http.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import net.meisen.general.server.http.listener.api.IFilter;
+import net.meisen.general.server.http.listener.handler.FilterChain;
+import net.meisen.general.server.http.listener.testutilities.TestHelper;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+/**
+ * Tests the filters of the <code>HttpListener</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestHttpListenerFilters {
+
+	/**
+	 * A <code>Filter</code> which marks the response and passes the request
+	 * on, for testing purposes only.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class TestHeaderFilter implements IFilter {
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void filter(final HttpRequest request,
+				final HttpResponse response, final HttpContext context,
+				final HttpRequestHandler next) throws HttpException,
+				IOException {
+			response.setHeader("X-Filtered", "true");
+			next.handle(request, response, context);
+		}
+	}
+
+	/**
+	 * A <code>Filter</code> which answers requests without an
+	 * <code>Authorization</code> header itself, for testing purposes only.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class TestAuthFilter implements IFilter {
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void filter(final HttpRequest request,
+				final HttpResponse response, final HttpContext context,
+				final HttpRequestHandler next) throws HttpException,
+				IOException {
+			if (request.containsHeader("Authorization")) {
+				next.handle(request, response, context);
+			} else {
+				response.setStatusCode(HttpStatus.SC_UNAUTHORIZED);
+				response.setEntity(new StringEntity("UNAUTHORIZED",
+						ContentType.DEFAULT_TEXT));
+			}
+		}
+	}
+
+	/**
+	 * Tests the compiled routes, i.e. that a route without filters uses its
+	 * handler directly and that the filters are chained in the order of
+	 * their definition.
+	 */
+	@Test
+	public void testCompiledRoutes() {
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-filteredServlet.xml");
+
+		// get the test-subject
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		assertEquals(2, httpListener.getRoutes().size());
+
+		// the route without filters
+		assertSame(httpListener.getHandlers().get("/open/*"), httpListener
+				.getRoutes().get("/open/*"));
+
+		// the route with filters
+		final HttpRequestHandler route = httpListener.getRoutes().get(
+				"/secure/*");
+		assertTrue(route instanceof FilterChain);
+		final FilterChain first = (FilterChain) route;
+		assertTrue(first.getFilter() instanceof TestHeaderFilter);
+		assertTrue(first.getNext() instanceof FilterChain);
+		final FilterChain second = (FilterChain) first.getNext();
+		assertTrue(second.getFilter() instanceof TestAuthFilter);
+		assertSame(httpListener.getHandlers().get("/secure/*"),
+				second.getNext());
+	}
+
+	/**
+	 * Tests the short-circuiting of a request by a filter.
+	 *
+	 * @throws IOException
+	 *             if the response cannot be read
+	 * @throws HttpException
+	 *             if the request cannot be handled
+	 */
+	@Test
+	public void testShortCircuit() throws IOException, HttpException {
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-filteredServlet.xml");
+
+		// get the test-subject
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		final HttpRequestHandler route = httpListener.getRoutes().get(
+				"/secure/*");
+
+		HttpRequest request;
+		HttpResponse response;
+
+		// a request answered by the filter
+		request = new BasicHttpRequest("GET", "/secure/data");
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		route.handle(request, response, null);
+		assertEquals(HttpStatus.SC_UNAUTHORIZED, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("true", response.getFirstHeader("X-Filtered").getValue());
+		assertEquals("UNAUTHORIZED", EntityUtils.toString(response.getEntity()));
+
+		// a request passed on to the servlet
+		request = new BasicHttpRequest("GET", "/secure/data");
+		request.setHeader("Authorization", "Basic dGVzdDp0ZXN0");
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		route.handle(request, response, null);
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("true", response.getFirstHeader("X-Filtered").getValue());
+		assertEquals("TESTSERVLET", EntityUtils.toString(response.getEntity()));
+
+		// a request of a route without filters
+		request = new BasicHttpRequest("GET", "/open/data");
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		httpListener.getRoutes().get("/open/*")
+				.handle(request, response, null);
+		assertNull(response.getFirstHeader("X-Filtered"));
+		assertEquals("TESTSERVLET", EntityUtils.toString(response.getEntity()));
+	}
+
+	/**
+	 * Tests the matching of the <code>urlMatcher</code> of filters and
+	 * routes.
+	 */
+	@Test
+	public void testMatching() {
+		final HttpListener httpListener = new HttpListener();
+
+		// overlapping urlMatchers
+		assertTrue(httpListener.overlaps("/admin/*", "*"));
+		assertTrue(httpListener.overlaps("*", "/api/*"));
+		assertTrue(httpListener.overlaps("/admin/*", "/admin/users/*"));
+		assertTrue(httpListener.overlaps("/admin/users/*", "/admin/*"));
+		assertTrue(httpListener.overlaps("*.json", "/api/*"));
+		assertTrue(httpListener.overlaps("*.json", "*/data.json"));
+		assertTrue(httpListener.overlaps("/admin/*", "/admin/index.html"));
+		assertTrue(httpListener.overlaps("/admin/index.html", "/admin/*"));
+		assertFalse(httpListener.overlaps("/admin/*", "/api/*"));
+		assertFalse(httpListener.overlaps("*.json", "*.xml"));
+		assertFalse(httpListener.overlaps("/admin/*", "/index.html"));
+
+		// covering urlMatchers
+		assertTrue(httpListener.covers("*", "/api/*"));
+		assertTrue(httpListener.covers("/admin/*", "/admin/users/*"));
+		assertTrue(httpListener.covers("/admin/*", "/admin/index.html"));
+		assertTrue(httpListener.covers("*.json", "*/data.json"));
+		assertFalse(httpListener.covers("/admin/users/*", "/admin/*"));
+		assertFalse(httpListener.covers("/admin/*", "*"));
+		assertFalse(httpListener.covers("*.json", "/api/*"));
+		assertFalse(httpListener.covers("/admin/index.html", "/admin/*"));
+	}
+
+	/**
+	 * Tests filters whose <code>urlMatcher</code> overlaps the one of a
+	 * route, i.e. the path of each request is checked.
+	 *
+	 * @throws IOException
+	 *             if the response cannot be read
+	 * @throws HttpException
+	 *             if the request cannot be handled
+	 */
+	@Test
+	public void testOverlappingFilters() throws IOException, HttpException {
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-overlappingFilters.xml");
+
+		// get the test-subject
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		final HttpRequestHandler defRoute = httpListener.getRoutes().get("*");
+		final HttpRequestHandler apiRoute = httpListener.getRoutes().get(
+				"/api/*");
+
+		// both filters are checked for the default route
+		assertTrue(defRoute instanceof FilterChain);
+		assertEquals("/admin/*", ((FilterChain) defRoute).getUrlMatcher());
+		assertEquals("*.json",
+				((FilterChain) ((FilterChain) defRoute).getNext())
+						.getUrlMatcher());
+
+		// the authorization isn't checked for the api
+		assertTrue(apiRoute instanceof FilterChain);
+		assertTrue(((FilterChain) apiRoute).getFilter() instanceof TestHeaderFilter);
+		assertSame(httpListener.getHandlers().get("/api/*"),
+				((FilterChain) apiRoute).getNext());
+
+		HttpResponse response;
+
+		// requests of the protected path
+		response = handle(defRoute, "/admin/users");
+		assertEquals(HttpStatus.SC_UNAUTHORIZED, response.getStatusLine()
+				.getStatusCode());
+		response = handle(defRoute, "/%61dmin/users");
+		assertEquals(HttpStatus.SC_UNAUTHORIZED, response.getStatusLine()
+				.getStatusCode());
+		response = handle(defRoute, "/public/../admin/users");
+		assertEquals(HttpStatus.SC_UNAUTHORIZED, response.getStatusLine()
+				.getStatusCode());
+
+		// requests of other paths
+		response = handle(defRoute, "/public/index.html?q=/admin/");
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertNull(response.getFirstHeader("X-Filtered"));
+		assertEquals("TESTSERVLET", EntityUtils.toString(response.getEntity()));
+		response = handle(apiRoute, "/api/data.json?q=1");
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("true", response.getFirstHeader("X-Filtered").getValue());
+		response = handle(apiRoute, "/api/data.xml");
+		assertNull(response.getFirstHeader("X-Filtered"));
+	}
+
+	private HttpResponse handle(final HttpRequestHandler route,
+			final String uri) throws HttpException, IOException {
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		route.handle(new BasicHttpRequest("GET", uri), response, null);
+
+		return response;
+	}
+
+	/**
+	 * Tests the usage of the filters by a running <code>HttpListener</code>.
+	 */
+	@Test
+	public void testUsage() {
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-filteredServlet.xml");
+
+		// get the test-subject
+		final HttpListener httpListener = TestHelper.getHttpListener();
+
+		// start the listener
+		httpListener.open();
+
+		assertEquals("UNAUTHORIZED", TestHelper.getStringResponse(
+				httpListener.getPort(), "secure/data"));
+		assertEquals("TESTSERVLET", TestHelper.getStringResponse(
+				httpListener.getPort(), "open/data"));
+
+		// close the listener
+		httpListener.close();
+	}
+}
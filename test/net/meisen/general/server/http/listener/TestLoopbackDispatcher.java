@@ -0,0 +1,293 @@
+package net.meisen.general.server.http.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.meisen.general.server.http.listener.api.IServlet;
+import net.meisen.general.server.http.listener.testutilities.TestHelper;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>LoopbackDispatcher</code>.
+ *
+ * @author pmeisen
+ *
+ */
+public class TestLoopbackDispatcher {
+
+	/**
+	 * A <code>Servlet</code> which answers after some time, for testing
+	 * purposes only.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class TestSlowServlet implements IServlet {
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void handle(final HttpRequest request,
+				final HttpResponse response, final HttpContext context) {
+			try {
+				Thread.sleep(300);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setEntity(new StringEntity("SLOWSERVLET",
+					ContentType.DEFAULT_TEXT));
+		}
+	}
+
+	/**
+	 * A <code>Servlet</code> which aggregates the responses of other routes,
+	 * for testing purposes only.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class TestAggregatingServlet implements IServlet {
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void handle(final HttpRequest request,
+				final HttpResponse response, final HttpContext context) {
+			final LoopbackDispatcher dispatcher = LoopbackDispatcher
+					.getDispatcher(context);
+
+			final List<HttpResponse> responses = dispatcher.dispatchAll(
+					Arrays.asList(new BasicHttpRequest("GET", "/slow/data"),
+							new BasicHttpRequest("GET", "/test/data")),
+					context, 0);
+
+			final StringBuilder content = new StringBuilder();
+			for (final HttpResponse r : responses) {
+				try {
+					content.append(content.length() == 0 ? "" : ",").append(
+							EntityUtils.toString(r.getEntity()));
+				} catch (final IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setEntity(new StringEntity(content.toString(),
+					ContentType.DEFAULT_TEXT));
+		}
+	}
+
+	/**
+	 * A <code>Servlet</code> which dispatches the request to itself, for
+	 * testing purposes only.
+	 *
+	 * @author pmeisen
+	 *
+	 */
+	public static class TestLoopingServlet implements IServlet {
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void handle(final HttpRequest request,
+				final HttpResponse response, final HttpContext context) {
+			final HttpResponse r;
+			try {
+				r = LoopbackDispatcher.getDispatcher(context).dispatch(
+						request, context);
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+
+			response.setStatusCode(r.getStatusLine().getStatusCode());
+			response.setEntity(r.getEntity());
+		}
+	}
+
+	/**
+	 * Tests the dispatching of a single request.
+	 *
+	 * @throws IOException
+	 *             if the response cannot be read
+	 */
+	@Test
+	public void testDispatch() throws IOException {
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-loopbackServlet.xml");
+
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		final LoopbackDispatcher dispatcher = httpListener.getDispatcher();
+		assertNotNull(dispatcher);
+
+		HttpResponse response;
+
+		// a request of a route
+		response = dispatcher.dispatch(new BasicHttpRequest("GET",
+				"/test/data?value=1"), null);
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("TESTSERVLET", EntityUtils.toString(response.getEntity()));
+
+		// a request without a route
+		response = dispatcher.dispatch(new BasicHttpRequest("GET",
+				"/unknown"), null);
+		assertEquals(HttpStatus.SC_NOT_IMPLEMENTED, response.getStatusLine()
+				.getStatusCode());
+
+		// a request dispatched to itself
+		response = dispatcher.dispatch(new BasicHttpRequest("GET",
+				"/loop/data"), null);
+		assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response
+				.getStatusLine().getStatusCode());
+		assertTrue(EntityUtils.toString(response.getEntity()).contains(
+				"depth"));
+	}
+
+	/**
+	 * Tests the concurrent dispatching of several requests.
+	 *
+	 * @throws IOException
+	 *             if the response cannot be read
+	 */
+	@Test
+	public void testDispatchAll() throws IOException {
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-loopbackServlet.xml");
+
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		final LoopbackDispatcher dispatcher = httpListener.getDispatcher();
+
+		// the requests are handled concurrently
+		final List<HttpRequest> requests = new ArrayList<HttpRequest>();
+		for (int i = 0; i < 4; i++) {
+			requests.add(new BasicHttpRequest("GET", "/slow/" + i));
+		}
+		final long start = System.currentTimeMillis();
+		List<HttpResponse> responses = dispatcher.dispatchAll(requests, null,
+				0);
+		assertTrue(System.currentTimeMillis() - start < 4 * 300);
+		assertEquals(4, responses.size());
+		for (final HttpResponse response : responses) {
+			assertEquals("SLOWSERVLET",
+					EntityUtils.toString(response.getEntity()));
+		}
+
+		// a request which doesn't complete within the timeout
+		responses = dispatcher.dispatchAll(
+				Arrays.asList(new BasicHttpRequest("GET", "/slow/data"),
+						new BasicHttpRequest("GET", "/test/data")), null, 100);
+		assertEquals(HttpStatus.SC_GATEWAY_TIMEOUT, responses.get(0)
+				.getStatusLine().getStatusCode());
+		assertEquals(HttpStatus.SC_OK, responses.get(1).getStatusLine()
+				.getStatusCode());
+		assertEquals("TESTSERVLET",
+				EntityUtils.toString(responses.get(1).getEntity()));
+
+		// the timeout bounds the last request as well
+		final long startTimeout = System.currentTimeMillis();
+		responses = dispatcher.dispatchAll(
+				Arrays.asList(new BasicHttpRequest("GET", "/test/data"),
+						new BasicHttpRequest("GET", "/slow/data")), null, 100);
+		assertTrue(System.currentTimeMillis() - startTimeout < 300);
+		assertEquals(HttpStatus.SC_OK, responses.get(0).getStatusLine()
+				.getStatusCode());
+		assertEquals(HttpStatus.SC_GATEWAY_TIMEOUT, responses.get(1)
+				.getStatusLine().getStatusCode());
+	}
+
+	/**
+	 * Tests nested fan-outs with a timeout, which cannot be handled by the
+	 * threads of the dispatcher, because these wait for the nested requests.
+	 */
+	@Test
+	public void testNestedDispatchAll() {
+		final Map<String, HttpRequestHandler> routes = new HashMap<String, HttpRequestHandler>();
+		routes.put("/leaf/*", new HttpRequestHandler() {
+
+			@Override
+			public void handle(final HttpRequest request,
+					final HttpResponse response, final HttpContext context) {
+				response.setStatusCode(HttpStatus.SC_OK);
+			}
+		});
+		routes.put("/nested/*", new HttpRequestHandler() {
+
+			@Override
+			public void handle(final HttpRequest request,
+					final HttpResponse response, final HttpContext context) {
+				final List<HttpResponse> responses = LoopbackDispatcher
+						.getDispatcher(context).dispatchAll(
+								Arrays.asList(new BasicHttpRequest("GET",
+										"/leaf/data")), context, 1000);
+				response.setStatusCode(responses.get(0).getStatusLine()
+						.getStatusCode());
+			}
+		});
+
+		// a single thread, which is occupied by the nested fan-out
+		final LoopbackDispatcher dispatcher = new LoopbackDispatcher(routes, 1);
+		final long start = System.currentTimeMillis();
+		final List<HttpResponse> responses = dispatcher.dispatchAll(
+				Arrays.asList(new BasicHttpRequest("GET", "/nested/1"),
+						new BasicHttpRequest("GET", "/nested/2")), null, 2000);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		for (final HttpResponse response : responses) {
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+		}
+	}
+
+	/**
+	 * Tests the usage of the <code>LoopbackDispatcher</code> of the
+	 * <code>HttpContext</code> by a running <code>HttpListener</code>.
+	 */
+	@Test
+	public void testUsage() {
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-loopbackServlet.xml");
+
+		// get the test-subject
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		assertNull(LoopbackDispatcher.getDispatcher(null));
+
+		// start the listener
+		httpListener.open();
+
+		assertEquals("SLOWSERVLET,TESTSERVLET", TestHelper.getStringResponse(
+				httpListener.getPort(), "all/data"));
+
+		// close the listener
+		httpListener.close();
+	}
+}
@@ -0,0 +1,57 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>AcceptEncoding</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestAcceptEncoding {
+	private final List<String> all = Arrays.asList(AcceptEncoding.BROTLI,
+			AcceptEncoding.GZIP);
+
+	/**
+	 * Tests the selection if no encoding is accepted or available.
+	 */
+	@Test
+	public void testNoEncoding() {
+		assertNull(AcceptEncoding.select(null, all));
+		assertNull(AcceptEncoding.select("", all));
+		assertNull(AcceptEncoding.select("identity", all));
+		assertNull(AcceptEncoding.select("deflate", all));
+		assertNull(AcceptEncoding.select("gzip", null));
+		assertNull(AcceptEncoding.select("gzip",
+				Arrays.asList(AcceptEncoding.BROTLI)));
+	}
+
+	/**
+	 * Tests the selection using the preference of the server.
+	 */
+	@Test
+	public void testPreference() {
+		assertEquals("br", AcceptEncoding.select("gzip, deflate, br", all));
+		assertEquals("gzip", AcceptEncoding.select("gzip, deflate", all));
+		assertEquals("gzip", AcceptEncoding.select("x-gzip", all));
+		assertEquals("br", AcceptEncoding.select("*", all));
+	}
+
+	/**
+	 * Tests the selection using quality-values.
+	 */
+	@Test
+	public void testQualityValues() {
+		assertEquals("gzip", AcceptEncoding.select("gzip;q=1.0, br;q=0.5", all));
+		assertEquals("gzip", AcceptEncoding.select("br;q=0, *", all));
+		assertNull(AcceptEncoding.select("gzip;q=0, br;q=0", all));
+		assertNull(AcceptEncoding.select("gzip;q=invalid", all));
+		assertNull(AcceptEncoding.select("*;q=0", all));
+	}
+}
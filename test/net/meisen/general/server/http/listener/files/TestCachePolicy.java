@@ -0,0 +1,105 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import net.meisen.general.server.http.listener.util.HttpDateUtilities;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>CachePolicy</code> and the
+ * <code>CachePolicies</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestCachePolicy {
+
+	/**
+	 * Tests the matching of glob-patterns.
+	 */
+	@Test
+	public void testPatterns() {
+		final CachePolicy policy = new CachePolicy(Arrays.asList("*.js",
+				"*.CSS", "logo-??.png", "/assets/**", "lib/*/dist/*.map"),
+				null, 60, false, false);
+
+		assertTrue(policy.matches("app.js", null));
+		assertTrue(policy.matches("/sub/folder/app.JS", null));
+		assertTrue(policy.matches("style.css", null));
+		assertTrue(policy.matches("images/logo-01.png", null));
+		assertTrue(policy.matches("assets/fonts/font.woff2", null));
+		assertTrue(policy.matches("/assets/a", null));
+		assertTrue(policy.matches("lib/jquery/dist/jquery.map", null));
+
+		assertFalse(policy.matches("app.json", null));
+		assertFalse(policy.matches("app.js.txt", null));
+		assertFalse(policy.matches("logo-1.png", null));
+		assertFalse(policy.matches("sub/assets/a", null));
+		assertFalse(policy.matches("lib/jquery/src/dist/jquery.map", null));
+	}
+
+	/**
+	 * Tests the matching of mime-types.
+	 */
+	@Test
+	public void testMimeTypes() {
+		final CachePolicy policy = new CachePolicy(null, Arrays.asList(
+				"text/html", "image/*"), 60, false, false);
+
+		assertTrue(policy.matches("index.htm", "text/html"));
+		assertTrue(policy.matches("logo", "image/png"));
+		assertFalse(policy.matches("style.css", "text/css"));
+		assertFalse(policy.matches("style.css", null));
+	}
+
+	/**
+	 * Tests the created headers.
+	 */
+	@Test
+	public void testHeaders() {
+		CachePolicy policy;
+
+		policy = new CachePolicy(null, null, 31536000, true, false);
+		assertEquals("max-age=31536000, immutable", policy.getCacheControl());
+		assertEquals(HttpDateUtilities.formatDate(1000000000000l + 31536000000l),
+				policy.getExpires(1000000000000l));
+		assertSame(policy.getExpires(1000000000500l),
+				policy.getExpires(1000000000999l));
+
+		policy = new CachePolicy(null, null, -1, false, true);
+		assertEquals("no-cache", policy.getCacheControl());
+		assertNull(policy.getExpires(1000000000000l));
+
+		policy = new CachePolicy(null, null, 0, true, true);
+		assertEquals("no-cache, max-age=0", policy.getCacheControl());
+
+		policy = new CachePolicy(null, null, -1, false, false);
+		assertNull(policy.getCacheControl());
+	}
+
+	/**
+	 * Tests that the first matching rule is used.
+	 */
+	@Test
+	public void testPolicies() {
+		final CachePolicy html = new CachePolicy(null,
+				Arrays.asList("text/html"), -1, false, true);
+		final CachePolicy assets = new CachePolicy(Arrays.asList("assets/**"),
+				null, 3600, true, false);
+		final CachePolicies policies = new CachePolicies(Arrays.asList(html,
+				assets));
+
+		assertSame(html, policies.find("assets/index.html", "text/html"));
+		assertSame(assets, policies.find("assets/app.js", "text/javascript"));
+		assertNull(policies.find("app.js", "text/javascript"));
+		assertNull(policies.find(null, "text/html"));
+		assertTrue(new CachePolicies(null).isEmpty());
+	}
+}
@@ -0,0 +1,179 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.meisen.general.genmisc.types.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>FileWatcher</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestFileWatcher {
+	private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+	private final IFileChangeListener listener = new IFileChangeListener() {
+
+		@Override
+		public void fileChanged(final File root, final File file,
+				final Change change, final boolean directory) {
+			events.add(change + " " + file.getName()
+					+ (directory ? " (dir)" : ""));
+		}
+
+		@Override
+		public void overflow(final File root) {
+			events.add("OVERFLOW");
+		}
+	};
+
+	private FileWatcher watcher;
+	private File testDir;
+
+	/**
+	 * Creates the directory to be watched.
+	 */
+	@Before
+	public void before() {
+		testDir = new File(System.getProperty("java.io.tmpdir"), UUID
+				.randomUUID().toString());
+		assertTrue(testDir.mkdirs());
+
+		watcher = new FileWatcher();
+	}
+
+	/**
+	 * Tests the events fired for a file within the watched directory.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testFileEvents() throws Exception {
+		watcher.watch(testDir, listener);
+		assertTrue(watcher.isRunning());
+
+		final File file = new File(testDir, "file.txt");
+		Files.writeToFile(file, "created", "UTF-8");
+		assertEquals("CREATED file.txt", nextEvent());
+
+		assertTrue(file.delete());
+		assertEquals("DELETED file.txt", nextEvent());
+	}
+
+	/**
+	 * Tests that sub-directories created after the registration are watched
+	 * as well.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testRecursiveEvents() throws Exception {
+		final File existingDir = new File(testDir, "existing");
+		assertTrue(existingDir.mkdir());
+		watcher.watch(testDir, listener);
+
+		Files.writeToFile(new File(existingDir, "a.txt"), "a", "UTF-8");
+		assertEquals("CREATED a.txt", nextEvent());
+
+		final File newDir = new File(testDir, "new");
+		assertTrue(newDir.mkdir());
+		assertEquals("CREATED new (dir)", nextEvent());
+
+		Files.writeToFile(new File(newDir, "b.txt"), "b", "UTF-8");
+		assertEquals("CREATED b.txt", nextEvent());
+	}
+
+	/**
+	 * Tests that no events are fired after the listener is removed.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testUnwatch() throws Exception {
+		watcher.watch(testDir, listener);
+		watcher.unwatch(listener);
+
+		Files.writeToFile(new File(testDir, "file.txt"), "created", "UTF-8");
+		assertEquals(null, events.poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Tests the watching of a file, which is not a directory.
+	 * 
+	 * @throws IOException
+	 *             the expected exception
+	 */
+	@Test(expected = IOException.class)
+	public void testWatchOfFile() throws IOException {
+		final File file = new File(testDir, "file.txt");
+		Files.writeToFile(file, "created", "UTF-8");
+
+		watcher.watch(file, listener);
+	}
+
+	/**
+	 * Tests the watching of a single file, which is replaced by renaming
+	 * another file.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testFileWatch() throws Exception {
+		final File file = new File(testDir, "file.txt");
+		Files.writeToFile(file, "created", "UTF-8");
+		watcher.watchFile(file, listener);
+
+		// other files of the directory are not of interest
+		Files.writeToFile(new File(testDir, "other.txt"), "other", "UTF-8");
+		assertTrue(new File(testDir, "sub").mkdir());
+
+		// replace the file
+		final File tmpFile = new File(testDir, "file.tmp");
+		Files.writeToFile(tmpFile, "replaced", "UTF-8");
+		assertTrue(file.delete());
+		assertEquals("DELETED file.txt", nextEvent());
+		assertTrue(tmpFile.renameTo(file));
+		assertEquals("CREATED file.txt", nextEvent());
+	}
+
+	/**
+	 * Stops the watcher and removes the directory.
+	 */
+	@After
+	public void after() {
+		watcher.close();
+		assertFalse(watcher.isRunning());
+
+		assertTrue(Files.deleteDir(testDir));
+	}
+
+	private String nextEvent() throws InterruptedException {
+		String event;
+
+		// skip any modification of directories or files fired in between
+		do {
+			event = events.poll(10, TimeUnit.SECONDS);
+			assertNotNull(event);
+		} while (event.startsWith("MODIFIED"));
+
+		return event;
+	}
+}
@@ -0,0 +1,126 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.meisen.general.genmisc.types.Files;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>Fingerprints</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestFingerprints {
+
+	/**
+	 * Tests the creation of fingerprinted names.
+	 */
+	@Test
+	public void testCreateName() {
+		assertEquals("app.3f9a1c2b.js",
+				Fingerprints.createName("app.js", "3f9a1c2b"));
+		assertEquals("app.min.3f9a1c2b.js",
+				Fingerprints.createName("app.min.js", "3f9a1c2b"));
+		assertEquals("README.3f9a1c2b",
+				Fingerprints.createName("README", "3f9a1c2b"));
+		assertEquals(".htaccess.3f9a1c2b",
+				Fingerprints.createName(".htaccess", "3f9a1c2b"));
+	}
+
+	/**
+	 * Tests the parsing of fingerprinted paths.
+	 */
+	@Test
+	public void testParse() {
+		assertArrayEquals(new String[] { "/js/app.js", "3f9a1c2b" },
+				Fingerprints.parse("/js/app.3f9a1c2b.js"));
+		assertArrayEquals(new String[] { "app.min.js", "3f9a1c2b" },
+				Fingerprints.parse("app.min.3f9a1c2b.js"));
+		assertArrayEquals(new String[] { "README", "3f9a1c2b" },
+				Fingerprints.parse("README.3f9a1c2b"));
+		assertArrayEquals(new String[] { ".htaccess", "3f9a1c2b" },
+				Fingerprints.parse(".htaccess.3f9a1c2b"));
+
+		assertNull(Fingerprints.parse(null));
+		assertNull(Fingerprints.parse("/js/app.js"));
+		assertNull(Fingerprints.parse("/js/app.3F9A1C2B.js"));
+		assertNull(Fingerprints.parse("/js/app.3f9a1c.js"));
+		assertNull(Fingerprints.parse("/js/.3f9a1c2b.js"));
+		assertNull(Fingerprints.parse("/js.3f9a1c2b/app.js"));
+	}
+
+	/**
+	 * Tests the hashing of the content of files.
+	 * 
+	 * @throws IOException
+	 *             if the test-file cannot be written
+	 */
+	@Test
+	public void testHashing() throws IOException {
+		final File file = File.createTempFile("fingerprint", ".js");
+		try {
+			final Fingerprints fingerprints = new Fingerprints(10);
+
+			Files.writeToFile(file, "first", "UTF-8");
+			final String first = fingerprints.get(new FileMetaData(file));
+			assertEquals(Fingerprints.LENGTH, first.length());
+			assertTrue(first.matches("[0-9a-f]+"));
+			assertEquals(first, fingerprints.get(new FileMetaData(file)));
+			assertEquals(1, fingerprints.size());
+
+			// a modified file gets a new fingerprint
+			Files.writeToFile(file, "second", "UTF-8");
+			assertFalse(first.equals(fingerprints.get(new FileMetaData(file))));
+			assertEquals(1, fingerprints.size());
+		} finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	/**
+	 * Tests the creation of fingerprinted URIs and the caching rules of
+	 * fingerprinted requests.
+	 * 
+	 * @throws IOException
+	 *             if the test-file cannot be written
+	 */
+	@Test
+	public void testUriAndPolicy() throws IOException {
+		final File dir = File.createTempFile("fingerprint", "");
+		assertTrue(dir.delete());
+		assertTrue(dir.mkdir());
+		final File file = new File(dir, "my app.js");
+		try {
+			final Fingerprints fingerprints = new Fingerprints(10);
+
+			Files.writeToFile(file, "content", "UTF-8");
+			final FileMetaData metaData = new FileMetaData(file);
+			final String fingerprint = fingerprints.get(metaData);
+
+			// the name is replaced or added
+			final String name = "my%20app." + fingerprint + ".js";
+			assertEquals("/js/" + name,
+					fingerprints.createUri("/js/my%20app.js", metaData));
+			assertEquals("/js/" + name,
+					fingerprints.createUri("/js/", metaData));
+			assertEquals("/js/" + name,
+					fingerprints.createUri("/js", metaData));
+
+			assertEquals(Fingerprints.IMMUTABLE_POLICY,
+					fingerprints.getPolicy(metaData, fingerprint));
+			assertEquals(Fingerprints.OUTDATED_POLICY,
+					fingerprints.getPolicy(metaData, "00000000"));
+		} finally {
+			assertTrue(Files.deleteDir(dir));
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.entity.ContentType;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>MimeTypes</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestMimeTypes {
+
+	/**
+	 * Tests the default mapping.
+	 */
+	@Test
+	public void testDefaults() {
+		final MimeTypes mimeTypes = new MimeTypes();
+
+		assertEquals("text/html", mimeTypes.getContentType(new File("a.html"))
+				.getMimeType());
+		assertEquals("text/html", mimeTypes.getContentType(new File("A.HTM"))
+				.getMimeType());
+		assertEquals("application/javascript",
+				mimeTypes.getContentType(new File("app.min.js")).getMimeType());
+		assertEquals("font/woff2", mimeTypes.getContentType("woff2")
+				.getMimeType());
+		assertNull(mimeTypes.getContentType("unknownextension"));
+
+		// the instances are shared
+		assertSame(mimeTypes.getContentType(new File("a.css")),
+				mimeTypes.getContentType(new File("b.css")));
+		assertSame(mimeTypes.getContentType("css"),
+				new MimeTypes().getContentType("css"));
+	}
+
+	/**
+	 * Tests the extension and overriding of the defaults.
+	 */
+	@Test
+	public void testMappings() {
+		final Map<String, String> mappings = new HashMap<String, String>();
+		mappings.put("html", "text/html; charset=UTF-8");
+		mappings.put(".LOG", "text/plain");
+
+		final MimeTypes mimeTypes = new MimeTypes(mappings);
+		final ContentType html = mimeTypes.getContentType(new File("a.html"));
+		assertEquals("text/html", html.getMimeType());
+		assertEquals("UTF-8", html.getCharset().name());
+		assertEquals("text/plain", mimeTypes.getContentType(new File("a.log"))
+				.getMimeType());
+
+		// the defaults are not modified
+		assertNull(new MimeTypes().getContentType("html").getCharset());
+	}
+
+	/**
+	 * Tests the usage of an invalid mime-type.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMapping() {
+		final Map<String, String> mappings = new HashMap<String, String>();
+		mappings.put("html", " ");
+
+		new MimeTypes(mappings);
+	}
+
+	/**
+	 * Tests that unknown extensions are probed only once.
+	 */
+	@Test
+	public void testProbing() {
+		final AtomicInteger probes = new AtomicInteger(0);
+		final MimeTypes mimeTypes = new MimeTypes() {
+
+			@Override
+			protected ContentType probe(final File file) {
+				probes.incrementAndGet();
+				return ContentType.TEXT_PLAIN;
+			}
+		};
+
+		assertSame(ContentType.TEXT_PLAIN,
+				mimeTypes.getContentType(new File("a.unknown")));
+		assertSame(ContentType.TEXT_PLAIN,
+				mimeTypes.getContentType(new File("b.UNKNOWN")));
+		assertEquals(1, probes.get());
+		assertEquals(1, mimeTypes.getProbedExtensions());
+
+		// files without any extension are probed every time
+		mimeTypes.getContentType(new File("README"));
+		mimeTypes.getContentType(new File("README"));
+		assertEquals(3, probes.get());
+		assertEquals(1, mimeTypes.getProbedExtensions());
+
+		// known extensions aren't probed
+		mimeTypes.getContentType(new File("index.html"));
+		assertEquals(3, probes.get());
+	}
+}
@@ -0,0 +1,69 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>NegativeCache</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestNegativeCache {
+
+	/**
+	 * Tests the adding and clearing of paths.
+	 */
+	@Test
+	public void testContains() {
+		final NegativeCache cache = new NegativeCache(10, 0);
+		assertTrue(cache.isEnabled());
+		assertFalse(cache.contains("/.env"));
+
+		cache.add("/.env");
+		cache.add("wp-admin/index.php");
+		assertTrue(cache.contains("/.env"));
+		assertTrue(cache.contains("wp-admin/index.php"));
+		assertFalse(cache.contains("wp-admin"));
+		assertEquals(2, cache.size());
+
+		cache.clear();
+		assertFalse(cache.contains("/.env"));
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * Tests the eviction of paths, i.e. that the filter is rebuilt and only
+	 * the latest paths are kept.
+	 */
+	@Test
+	public void testEviction() {
+		final NegativeCache cache = new NegativeCache(100, 0);
+		for (int i = 0; i < 1000; i++) {
+			cache.add("/probe/" + i);
+		}
+
+		assertEquals(100, cache.size());
+		for (int i = 900; i < 1000; i++) {
+			assertTrue(cache.contains("/probe/" + i));
+		}
+		for (int i = 0; i < 900; i++) {
+			assertFalse(cache.contains("/probe/" + i));
+		}
+	}
+
+	/**
+	 * Tests a disabled cache.
+	 */
+	@Test
+	public void testDisabled() {
+		final NegativeCache cache = new NegativeCache(0, 0);
+		assertFalse(cache.isEnabled());
+
+		cache.add("/.env");
+		assertFalse(cache.contains("/.env"));
+	}
+}
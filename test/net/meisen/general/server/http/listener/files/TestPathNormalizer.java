@@ -0,0 +1,135 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>PathNormalizer</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestPathNormalizer {
+	private final static char[] ALPHABET = { '.', '/', '\\', '%', '2', 'e',
+			'E', 'f', 'F', '5', 'c', 'C', '0', 'a', ':', '\0' };
+
+	/**
+	 * Tests the normalization of valid paths.
+	 */
+	@Test
+	public void testNormalize() {
+		assertEquals("", PathNormalizer.normalize(""));
+		assertEquals("", PathNormalizer.normalize("/"));
+		assertEquals("a/b", PathNormalizer.normalize("/a/b/"));
+		assertEquals("a/b", PathNormalizer.normalize("a//./b"));
+		assertEquals("b", PathNormalizer.normalize("a/../b"));
+		assertEquals("a/b", PathNormalizer.normalize("a\\b"));
+		assertEquals("a/..b/c..", PathNormalizer.normalize("a/..b/c.."));
+		assertEquals("", PathNormalizer.normalize("a/.."));
+	}
+
+	/**
+	 * Tests the rejection of paths pointing outside of the document-root.
+	 */
+	@Test
+	public void testTraversal() {
+		assertNull(PathNormalizer.normalize(null));
+		assertNull(PathNormalizer.normalize(".."));
+		assertNull(PathNormalizer.normalize("/../a"));
+		assertNull(PathNormalizer.normalize("a/../../b"));
+		assertNull(PathNormalizer.normalize("a\\..\\..\\b"));
+		assertNull(PathNormalizer.normalize("a/\0/b"));
+
+		assertNull(PathNormalizer.normalizeUri("/%2e%2e/a"));
+		assertNull(PathNormalizer.normalizeUri("/%2E%2E%2Fa"));
+		assertNull(PathNormalizer.normalizeUri("/..%2fa"));
+		assertNull(PathNormalizer.normalizeUri("/..%5ca"));
+		assertNull(PathNormalizer.normalizeUri("/a/%2e%2e%5c%2e%2e/b"));
+	}
+
+	/**
+	 * Tests the decoding of paths.
+	 */
+	@Test
+	public void testDecode() {
+		assertEquals("a b", PathNormalizer.decode("a%20b"));
+		assertEquals("a+b", PathNormalizer.decode("a+b"));
+		assertEquals("\u00e4", PathNormalizer.decode("%C3%A4"));
+		assertEquals("a/b", PathNormalizer.decode("a%2Fb"));
+
+		// invalid encodings
+		assertNull(PathNormalizer.decode("%"));
+		assertNull(PathNormalizer.decode("a%2"));
+		assertNull(PathNormalizer.decode("%zz"));
+		assertNull(PathNormalizer.decode("%C3"));
+		assertNull(PathNormalizer.decode("%C0%AE"));
+		assertNull(PathNormalizer.decode("%E0%80%AE"));
+
+		// null bytes
+		assertNull(PathNormalizer.decode("a%00b"));
+		assertNull(PathNormalizer.decode("a\0b"));
+	}
+
+	/**
+	 * Tests the removal of query and fragment.
+	 */
+	@Test
+	public void testNormalizeUri() {
+		assertEquals("a/b.html", PathNormalizer.normalizeUri("/a/b.html?c=d"));
+		assertEquals("a/b.html", PathNormalizer.normalizeUri("/a/b.html#e"));
+		assertEquals("a/b c.html",
+				PathNormalizer.normalizeUri("/a/./b%20c.html?x=/../.."));
+	}
+
+	/**
+	 * Normalizes randomly generated paths consisting of characters used
+	 * within traversals and validates that every accepted path is normalized
+	 * and stays within the document-root.
+	 */
+	@Test
+	public void testFuzzing() {
+		final Path root = Paths.get("/docroot").toAbsolutePath().normalize();
+		final Random rnd = new Random(20141019);
+
+		int accepted = 0;
+		for (int i = 0; i < 100000; i++) {
+			final char[] chars = new char[1 + rnd.nextInt(24)];
+			for (int k = 0; k < chars.length; k++) {
+				chars[k] = ALPHABET[rnd.nextInt(ALPHABET.length)];
+			}
+			final String uri = new String(chars);
+
+			final String path = PathNormalizer.normalizeUri(uri);
+			if (path == null) {
+				continue;
+			}
+			accepted++;
+
+			// the path must be normalized
+			assertEquals(uri, path, PathNormalizer.normalize(path));
+			assertFalse(uri, path.startsWith("/"));
+			assertFalse(uri, path.indexOf('\\') != -1);
+			assertFalse(uri, path.indexOf('\0') != -1);
+			for (final String segment : path.split("/")) {
+				assertFalse(uri, ".".equals(segment) || "..".equals(segment));
+			}
+
+			// and resolved it must stay within the root (decoded characters
+			// are replaced, because those may not be supported by the system)
+			final String resolved = root.toString() + "/"
+					+ path.replaceAll("[^\\x20-\\x7e]", "_");
+			assertTrue(uri, Paths.get(resolved).normalize().startsWith(root));
+		}
+
+		// make sure that the test isn't void
+		assertTrue(accepted > 1000);
+	}
+}
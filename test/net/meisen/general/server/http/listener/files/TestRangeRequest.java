@@ -0,0 +1,111 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>RangeRequest</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestRangeRequest {
+
+	/**
+	 * Tests the parsing of headers which have to be ignored.
+	 */
+	@Test
+	public void testIgnoredHeaders() {
+		assertNull(RangeRequest.parse(null, 100));
+		assertNull(RangeRequest.parse("", 100));
+		assertNull(RangeRequest.parse("items=0-10", 100));
+		assertNull(RangeRequest.parse("bytes=a-10", 100));
+		assertNull(RangeRequest.parse("bytes=10-5", 100));
+		assertNull(RangeRequest.parse("bytes=-", 100));
+		assertNull(RangeRequest.parse("bytes=10", 100));
+
+		// too many ranges
+		final StringBuilder sb = new StringBuilder("bytes=");
+		for (int i = 0; i <= RangeRequest.MAX_RANGES; i++) {
+			sb.append(i > 0 ? "," : "").append(i * 2).append("-")
+					.append(i * 2);
+		}
+		assertNull(RangeRequest.parse(sb.toString(), 1000));
+	}
+
+	/**
+	 * Tests the parsing of a single range.
+	 */
+	@Test
+	public void testSingleRange() {
+		List<ByteRange> ranges;
+
+		ranges = RangeRequest.parse("bytes=0-9", 100);
+		assertEquals(1, ranges.size());
+		assertEquals(new ByteRange(0, 9), ranges.get(0));
+		assertEquals(10, ranges.get(0).getLength());
+		assertEquals("bytes 0-9/100", ranges.get(0).toContentRange(100));
+
+		// open end
+		ranges = RangeRequest.parse("bytes=90-", 100);
+		assertEquals(new ByteRange(90, 99), ranges.get(0));
+
+		// last beyond the end
+		ranges = RangeRequest.parse("bytes=90-1000", 100);
+		assertEquals(new ByteRange(90, 99), ranges.get(0));
+
+		// suffix
+		ranges = RangeRequest.parse("bytes=-10", 100);
+		assertEquals(new ByteRange(90, 99), ranges.get(0));
+		ranges = RangeRequest.parse("bytes=-1000", 100);
+		assertEquals(new ByteRange(0, 99), ranges.get(0));
+	}
+
+	/**
+	 * Tests the parsing of ranges of files larger than 2 GB.
+	 */
+	@Test
+	public void testLargeRange() {
+		final long length = 5l * 1024 * 1024 * 1024;
+
+		final List<ByteRange> ranges = RangeRequest.parse(
+				"bytes=4294967296-, -100", length);
+		assertEquals(1, ranges.size());
+		assertEquals(new ByteRange(4294967296l, length - 1), ranges.get(0));
+	}
+
+	/**
+	 * Tests the parsing of not satisfiable ranges.
+	 */
+	@Test
+	public void testNotSatisfiable() {
+		assertEquals(0, RangeRequest.parse("bytes=100-", 100).size());
+		assertEquals(0, RangeRequest.parse("bytes=200-300, 100-150", 100)
+				.size());
+		assertEquals(0, RangeRequest.parse("bytes=-0", 100).size());
+		assertEquals(0, RangeRequest.parse("bytes=0-10", 0).size());
+	}
+
+	/**
+	 * Tests the parsing of multiple ranges, including the merging of
+	 * overlapping ranges.
+	 */
+	@Test
+	public void testMultipleRanges() {
+		List<ByteRange> ranges;
+
+		ranges = RangeRequest.parse("bytes=0-9, 20-29, 200-300", 100);
+		assertEquals(2, ranges.size());
+		assertEquals(new ByteRange(0, 9), ranges.get(0));
+		assertEquals(new ByteRange(20, 29), ranges.get(1));
+
+		ranges = RangeRequest.parse("bytes=20-29,0-10,5-20,50-60", 100);
+		assertEquals(2, ranges.size());
+		assertEquals(new ByteRange(0, 29), ranges.get(0));
+		assertEquals(new ByteRange(50, 60), ranges.get(1));
+	}
+}
@@ -0,0 +1,156 @@
+package net.meisen.general.server.http.listener.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import net.meisen.general.genmisc.types.Streams;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>ZipArchive</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestZipArchive {
+
+	/**
+	 * Creates an archive with the specified entries, the entries are defined
+	 * by pairs of name and content. Entries with a name starting with
+	 * <code>stored:</code> are stored without compression.
+	 * 
+	 * @param file
+	 *            the file to write the archive to
+	 * @param entries
+	 *            the names and contents of the entries
+	 * 
+	 * @throws IOException
+	 *             if the archive cannot be written
+	 */
+	public static void createArchive(final File file, final String... entries)
+			throws IOException {
+		final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(
+				file));
+		try {
+			for (int i = 0; i < entries.length; i += 2) {
+				final byte[] content = entries[i + 1].getBytes("UTF-8");
+
+				final ZipEntry entry;
+				if (entries[i].startsWith("stored:")) {
+					final CRC32 crc = new CRC32();
+					crc.update(content);
+
+					entry = new ZipEntry(entries[i].substring(7));
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(content.length);
+					entry.setCrc(crc.getValue());
+				} else {
+					entry = new ZipEntry(entries[i]);
+				}
+
+				out.putNextEntry(entry);
+				out.write(content);
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Tests the reading of the central directory and the entries.
+	 * 
+	 * @throws IOException
+	 *             if the archive cannot be created
+	 */
+	@Test
+	public void testEntries() throws IOException {
+		final StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			large.append("line ").append(i).append("\n");
+		}
+
+		final File file = File.createTempFile("archive", ".zip");
+		try {
+			createArchive(file, "stored:index.html", "<html></html>",
+					"js/", "", "js/app.js", large.toString());
+			assertTrue(ZipArchive.isArchive(file));
+
+			final ZipArchive archive = new ZipArchive(file);
+			assertEquals(2, archive.getEntries().size());
+			assertNull(archive.getEntry("js/"));
+			assertNull(archive.getEntry("notAvailable.js"));
+
+			// a stored entry is a slice of the mapping
+			final ZipArchive.Entry stored = archive.getEntry("index.html");
+			assertFalse(stored.isDeflated());
+			assertEquals(13, stored.getSize());
+			final ByteBuffer data = stored.getData();
+			final byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			assertEquals("<html></html>", new String(bytes, "UTF-8"));
+			assertEquals("<html></html>", read(stored.openStream()));
+
+			// a deflated entry is inflated when read
+			final ZipArchive.Entry deflated = archive.getEntry("js/app.js");
+			assertTrue(deflated.isDeflated());
+			assertEquals(large.length(), deflated.getSize());
+			assertTrue(deflated.getCompressedSize() < deflated.getSize());
+			assertEquals(large.toString(), read(deflated.openStream()));
+
+			final Adler32 adler32 = new Adler32();
+			adler32.update(large.toString().getBytes("UTF-8"));
+			assertEquals(adler32.getValue(), deflated.getAdler32());
+		} finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	/**
+	 * Tests the opening of a file, which isn't an archive.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	@Test
+	public void testInvalidArchive() throws IOException {
+		final File file = File.createTempFile("archive", ".zip");
+		try {
+			final FileOutputStream out = new FileOutputStream(file);
+			out.write("no archive at all, just some text".getBytes("UTF-8"));
+			out.close();
+
+			try {
+				new ZipArchive(file);
+				fail("Expected exception not thrown");
+			} catch (final IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains(
+						"not a valid archive"));
+			}
+		} finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	private String read(final InputStream in) throws IOException {
+		try {
+			return new String(Streams.copyStreamToByteArray(in), "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package net.meisen.general.server.http.listener.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import net.meisen.general.genmisc.types.Files;
+import net.meisen.general.genmisc.types.Streams;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>ComboHandler</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestComboHandler {
+	private File tmpDir;
+	private ComboHandler handler;
+
+	/**
+	 * Creates the files and the handler used by the tests.
+	 * 
+	 * @throws IOException
+	 *             if the files cannot be created
+	 */
+	@Before
+	public void before() throws IOException {
+		tmpDir = new File(System.getProperty("java.io.tmpdir"),
+				"test-combo-handler");
+		assertTrue(new File(tmpDir, "js").mkdirs());
+		Files.writeToFile(new File(tmpDir, "js/lib.js"), "var lib = {};",
+				"UTF-8");
+		Files.writeToFile(new File(tmpDir, "js/app.js"), "var app = {};\n",
+				"UTF-8");
+		Files.writeToFile(new File(tmpDir, "app.css"), "body {}", "UTF-8");
+
+		handler = new ComboHandler();
+		handler.initialize(createExtension());
+	}
+
+	private Extension createExtension() {
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, tmpDir.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_CACHESIZE, "0");
+		e.setProperty(ComboHandler.PROPERTY_COMBOMAXFILES, "3");
+
+		return e;
+	}
+
+	/**
+	 * Removes the files used by the tests.
+	 */
+	@After
+	public void after() {
+		assertTrue(Files.deleteDir(tmpDir));
+	}
+
+	/**
+	 * Tests the concatenation of files.
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCombination() throws Exception {
+		HttpResponse response = handle("/combo?js/lib.js&js/app.js&v=3", null);
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("var lib = {};\nvar app = {};\n",
+				EntityUtils.toString(response.getEntity()));
+		final String etag = response.getFirstHeader("ETag").getValue();
+		assertEquals(1, handler.getCombined().size());
+
+		// the second request uses the cached content
+		response = handle("/combo?js/lib.js&js/app.js", null);
+		assertEquals(etag, response.getFirstHeader("ETag").getValue());
+		assertEquals(1, handler.getCombined().getHits());
+
+		// the order matters
+		response = handle("/combo?js/app.js&js/lib.js", null);
+		assertEquals("var app = {};\nvar lib = {};\n",
+				EntityUtils.toString(response.getEntity()));
+		assertFalse(etag.equals(response.getFirstHeader("ETag").getValue()));
+
+		// a valid version isn't sent again
+		final BasicHttpRequest request = new BasicHttpRequest("GET",
+				"/combo?js/lib.js&js/app.js");
+		request.setHeader("If-None-Match", etag);
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(request, response, null);
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusLine()
+				.getStatusCode());
+
+		// a modification leads to a new version
+		final File lib = new File(tmpDir, "js/lib.js");
+		Files.writeToFile(lib, "var lib = [];", "UTF-8");
+		assertTrue(lib.setLastModified(lib.lastModified() + 2000));
+		response = handle("/combo?js/lib.js&js/app.js", null);
+		assertEquals("var lib = [];\nvar app = {};\n",
+				EntityUtils.toString(response.getEntity()));
+		assertFalse(etag.equals(response.getFirstHeader("ETag").getValue()));
+	}
+
+	/**
+	 * Tests the compression of the concatenated content.
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCompression() throws Exception {
+		final HttpResponse response = handle("/combo?js/lib.js&js/app.js",
+				"gzip");
+		assertEquals("gzip", response.getEntity().getContentEncoding()
+				.getValue());
+		assertTrue(response.getFirstHeader("ETag").getValue()
+				.endsWith("-gzip\""));
+
+		final GZIPInputStream in = new GZIPInputStream(
+				new ByteArrayInputStream(EntityUtils.toByteArray(response
+						.getEntity())));
+		try {
+			assertEquals("var lib = {};\nvar app = {};\n", new String(
+					Streams.copyStreamToByteArray(in), "UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Tests invalid requests.
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testInvalidRequests() throws Exception {
+		assertEquals(HttpStatus.SC_NOT_FOUND, status("/combo"));
+		assertEquals(HttpStatus.SC_NOT_FOUND, status("/combo?js/missing.js"));
+		assertEquals(HttpStatus.SC_NOT_FOUND, status("/combo?../js/app.js"));
+		assertEquals(HttpStatus.SC_BAD_REQUEST,
+				status("/combo?js/app.js&app.css"));
+		assertEquals(HttpStatus.SC_BAD_REQUEST,
+				status("/combo?js/app.js&js/app.js&js/app.js&js/app.js"));
+
+		// the size of the files is limited
+		final Extension e = createExtension();
+		e.setProperty(ComboHandler.PROPERTY_COMBOMAXSIZE, "20");
+		handler = new ComboHandler();
+		handler.initialize(e);
+		assertEquals(HttpStatus.SC_OK, status("/combo?js/lib.js"));
+		assertEquals(HttpStatus.SC_BAD_REQUEST,
+				status("/combo?js/lib.js&js/app.js"));
+
+		// the added line-breaks are counted, i.e. 28 bytes are assembled
+		e.setProperty(ComboHandler.PROPERTY_COMBOMAXSIZE, "27");
+		handler = new ComboHandler();
+		handler.initialize(e);
+		assertEquals(HttpStatus.SC_BAD_REQUEST,
+				status("/combo?js/lib.js&js/app.js"));
+	}
+
+	/**
+	 * Tests the bounding of the cache by the bytes of the assembled and the
+	 * compressed contents.
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCacheBytes() throws Exception {
+
+		// the compressed copy is counted as well
+		HttpResponse response = handle("/combo?js/lib.js&js/app.js", "gzip");
+		final long gzipped = EntityUtils.toByteArray(response.getEntity()).length;
+		assertEquals(1, handler.getCombined().size());
+		assertEquals(28 + gzipped, handler.getCombined().getBytes());
+
+		// the least recently used contents are removed
+		final Extension e = createExtension();
+		e.setProperty(ComboHandler.PROPERTY_COMBOCACHE, "40");
+		handler = new ComboHandler();
+		handler.initialize(e);
+
+		handle("/combo?js/lib.js&js/app.js", null);
+		assertEquals(1, handler.getCombined().size());
+		assertEquals(28, handler.getCombined().getBytes());
+		response = handle("/combo?js/app.js&js/lib.js", null);
+		assertEquals("var app = {};\nvar lib = {};\n",
+				EntityUtils.toString(response.getEntity()));
+		assertEquals(1, handler.getCombined().size());
+		assertEquals(28, handler.getCombined().getBytes());
+
+		// a compressed copy exceeding the bytes removes the content
+		handle("/combo?js/app.js&js/lib.js", "gzip");
+		assertTrue(handler.getCombined().getBytes() <= 40);
+	}
+
+	private int status(final String uri) throws Exception {
+		return handle(uri, null).getStatusLine().getStatusCode();
+	}
+
+	private HttpResponse handle(final String uri, final String acceptEncoding)
+			throws Exception {
+		final BasicHttpRequest request = new BasicHttpRequest("GET", uri);
+		if (acceptEncoding != null) {
+			request.setHeader("Accept-Encoding", acceptEncoding);
+		}
+
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(request, response, null);
+
+		return response;
+	}
+}
@@ -1,24 +1,52 @@
 package net.meisen.general.server.http.listener.handler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertArrayEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import net.meisen.general.genmisc.types.Files;
+import net.meisen.general.genmisc.types.Streams;
 import net.meisen.general.server.http.listener.HttpListener;
+import net.meisen.general.server.http.listener.api.IHandler;
 import net.meisen.general.server.http.listener.exceptions.FileHandlerException;
+import net.meisen.general.server.http.listener.files.CompressedContentCache;
+import net.meisen.general.server.http.listener.files.FileMetaData;
+import net.meisen.general.server.http.listener.files.TestZipArchive;
 import net.meisen.general.server.http.listener.testutilities.TestHelper;
 import net.meisen.general.server.settings.pojos.Extension;
 
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -482,6 +510,624 @@ public class TestFileHandler {
 		assertEquals(rndFile.getCanonicalFile(), file);
 	}
 
+	/**
+	 * Tests that a traversal (encoded or not) never resolves a file outside
+	 * of the document-root.
+	 * 
+	 * @throws IOException
+	 *             if the test-files cannot be created or decoding fails
+	 */
+	@Test
+	public void testFileDeterminationWithTraversal() throws IOException {
+		final File docRoot = new File(testDir, "root");
+		final File secret = new File(testDir, "secret.txt");
+		assertTrue(docRoot.mkdirs());
+		assertTrue(secret.createNewFile());
+		assertTrue(new File(docRoot, "index.html").createNewFile());
+
+		final Extension e = new Extension();
+		e.setProperty(HttpListener.PROPERTY_URLMATCHER, "/doc/*");
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, docRoot.getAbsolutePath());
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+
+		// paths staying within the document-root are resolved
+		assertEquals(new File(docRoot, "index.html").getCanonicalFile(),
+				h.determineFile("/doc/sub/../index.html"));
+		assertEquals(new File(docRoot, "index.html").getCanonicalFile(),
+				h.determineFile("/doc/.%2Findex.html"));
+
+		// traversals are rejected
+		assertNull(h.determineFile("/doc/../secret.txt"));
+		assertNull(h.determineFile("/doc/%2e%2e/secret.txt"));
+		assertNull(h.determineFile("/doc/..%2Fsecret.txt"));
+		assertNull(h.determineFile("/doc/..%5Csecret.txt"));
+		assertNull(h.determineFile("/doc/%c0%ae%c0%ae/secret.txt"));
+		assertNull(h.determineFile("/doc/index.html%00.txt"));
+
+		assertTrue(secret.delete());
+		assertTrue(Files.deleteDir(docRoot));
+	}
+
+	/**
+	 * Tests the caching of resolved files, i.e. that a second lookup of the
+	 * same URI doesn't access the file-system.
+	 *
+	 * @throws IOException
+	 *             if the test-file cannot be created or decoding fails
+	 */
+	@Test
+	public void testFileDeterminationCache() throws IOException {
+		final Extension e = new Extension();
+		e.setProperty(HttpListener.PROPERTY_URLMATCHER, "/cache/*");
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, testDir.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_CACHETTL, "60000");
+
+		// create the file
+		final File tmpFile = new File(testDir, "cachedFile.html");
+		assertTrue(tmpFile.createNewFile());
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+
+		// the first lookup has to hit the file-system
+		File file = h.determineFile("/cache/cachedFile.html");
+		assertEquals(tmpFile.getCanonicalFile(), file);
+		assertEquals(1, h.getFileLookups());
+
+		// the second one is answered by the cache
+		file = h.determineFile("/cache/cachedFile.html?param=1");
+		assertEquals(tmpFile.getCanonicalFile(), file);
+		assertEquals(1, h.getFileLookups());
+		assertEquals(1, h.getResolvedFiles().getHits());
+
+		// unknown files are looked up once
+		assertNull(h.determineFile("/cache/unknownFile.html"));
+		assertNull(h.determineFile("/cache/unknownFile.html"));
+		assertEquals(2, h.getFileLookups());
+		assertEquals(1, h.getNotFound().getHits());
+
+		assertTrue(tmpFile.delete());
+	}
+
+	/**
+	 * Tests the determination of files with a disabled cache.
+	 *
+	 * @throws IOException
+	 *             if the test-file cannot be created or decoding fails
+	 */
+	@Test
+	public void testFileDeterminationWithoutCache() throws IOException {
+		final Extension e = new Extension();
+		e.setProperty(HttpListener.PROPERTY_URLMATCHER, "/nocache/*");
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, testDir.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_CACHESIZE, "0");
+
+		// create the file
+		final File tmpFile = new File(testDir, "notCachedFile.html");
+		assertTrue(tmpFile.createNewFile());
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+
+		File file = h.determineFile("/nocache/notCachedFile.html");
+		assertEquals(tmpFile.getCanonicalFile(), file);
+
+		// after the deletion the file must not be found anymore
+		assertTrue(tmpFile.delete());
+		file = h.determineFile("/nocache/notCachedFile.html");
+		assertNull(file);
+		assertEquals(2, h.getFileLookups());
+	}
+
+	/**
+	 * Tests the caching headers defined by <code>cache</code> rules.
+	 */
+	@Test
+	public void testCachingHeaders() {
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, testDir.getAbsolutePath());
+
+		final List<Extension> extensions = new ArrayList<Extension>();
+		final Extension immutable = new Extension();
+		immutable.setId(FileHandler.EXTENSION_CACHE);
+		immutable.setProperty(FileHandler.PROPERTY_CACHEPATTERN,
+				"assets/**, *.woff2");
+		immutable.setProperty(FileHandler.PROPERTY_CACHEMAXAGE, "31536000");
+		immutable.setProperty(FileHandler.PROPERTY_CACHEIMMUTABLE, "true");
+		extensions.add(immutable);
+		final Extension html = new Extension();
+		html.setId(FileHandler.EXTENSION_CACHE);
+		html.setProperty(FileHandler.PROPERTY_CACHETYPE, "text/html");
+		html.setProperty(FileHandler.PROPERTY_CACHENOCACHE, true);
+		extensions.add(html);
+		e.setExtensions(extensions);
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+		assertEquals(2, h.getCachePolicies().getPolicies().size());
+
+		HttpResponse response;
+
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		h.addCachingHeaders(response, "assets/app.js", "text/javascript");
+		assertEquals("max-age=31536000, immutable",
+				response.getFirstHeader("Cache-Control").getValue());
+		assertNotNull(response.getFirstHeader("Expires"));
+
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		h.addCachingHeaders(response, "index.html", "text/html");
+		assertEquals("no-cache", response.getFirstHeader("Cache-Control")
+				.getValue());
+		assertNull(response.getFirstHeader("Expires"));
+
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		h.addCachingHeaders(response, "app.js", "text/javascript");
+		assertNull(response.getFirstHeader("Cache-Control"));
+	}
+
+	/**
+	 * Tests the invalidation of the cache when the locations are watched.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testFileDeterminationWithWatch() throws Exception {
+		final File tmpDir = new File(testDir, "watched");
+		assertTrue(tmpDir.mkdirs());
+
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, tmpDir.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_WATCH, "true");
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+		assertEquals(0, h.getResolvedFiles().getTtl());
+
+		try {
+			final File tmpFile = new File(tmpDir, "watchedFile.html");
+			Files.writeToFile(tmpFile, "first", "UTF-8");
+
+			// resolve the file, the second time it's cached
+			FileMetaData metaData = h.determineMetaData("/watchedFile.html");
+			assertEquals(5, metaData.getLength());
+			assertEquals(metaData, h.determineMetaData("/watchedFile.html"));
+			assertEquals(1, h.getFileLookups());
+
+			// modify the file, the cache must be invalidated
+			Files.writeToFile(tmpFile, "second", "UTF-8");
+			for (int i = 0; i < 100 && metaData.getLength() == 5; i++) {
+				Thread.sleep(100);
+				metaData = h.determineMetaData("/watchedFile.html");
+			}
+			assertEquals(6, metaData.getLength());
+
+			// delete the file, it must not be found anymore
+			assertTrue(tmpFile.delete());
+			for (int i = 0; i < 100 && metaData != null; i++) {
+				Thread.sleep(100);
+				metaData = h.determineMetaData("/watchedFile.html");
+			}
+			assertNull(metaData);
+		} finally {
+			h.unwatchDocRoot();
+			assertTrue(Files.deleteDir(tmpDir));
+		}
+	}
+
+	/**
+	 * Tests the resolution of files using an index, which must be equal to
+	 * the resolution without an index.
+	 * 
+	 * @throws IOException
+	 *             if a test-file cannot be created or if the decoding failed
+	 */
+	@Test
+	public void testFileDeterminationWithIndex() throws IOException {
+		final File tmpDir = new File(testDir, "indexed");
+		final File loc1 = new File(tmpDir, "loc1");
+		final File loc2 = new File(tmpDir, "loc2");
+		assertTrue(new File(loc1, "sub").mkdirs());
+		assertTrue(new File(loc2, "sub/deeper").mkdirs());
+		assertTrue(new File(loc2, "other").mkdirs());
+
+		assertTrue(new File(loc1, "both.html").createNewFile());
+		assertTrue(new File(loc2, "both.html").createNewFile());
+		assertTrue(new File(loc2, "sub/deeper/only2.html").createNewFile());
+		assertTrue(new File(loc1, "sub/index.html").createNewFile());
+		assertTrue(new File(loc2, "sub/index.htm").createNewFile());
+		assertTrue(new File(loc2, "other/index.htm").createNewFile());
+		assertTrue(new File(loc2, "index.html").createNewFile());
+
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, loc1.getAbsolutePath());
+		final Extension ex = new Extension();
+		ex.setId(FileHandler.EXTENSION_LOCATION);
+		ex.setProperty(FileHandler.PROPERTY_DOCROOT, loc2.getAbsolutePath());
+		final List<Extension> extensions = new ArrayList<Extension>();
+		extensions.add(ex);
+		e.setExtensions(extensions);
+
+		final FileHandler resolving = new FileHandler();
+		resolving.initialize(e);
+
+		e.setProperty(FileHandler.PROPERTY_INDEX, "true");
+		final FileHandler indexed = new FileHandler();
+		indexed.initialize(e);
+		assertEquals(6, indexed.getIndex().size());
+
+		// both must resolve everything the same way
+		for (final String path : new String[] { "/both.html", "both.html",
+				"/sub/deeper/only2.html", "/sub", "/sub/", "/other/", "/",
+				"", "/notAvailable.html", "/sub/notAvailable/",
+				"/sub/../both.html" }) {
+			final File expected = resolving.determineFile(path);
+			final File actual = indexed.determineFile(path);
+			assertEquals(path, expected == null ? null : expected
+					.getCanonicalFile(), actual == null ? null : actual
+					.getCanonicalFile());
+		}
+		assertEquals(0, indexed.getFileLookups());
+
+		// a not indexed file is found after the refresh
+		assertTrue(new File(loc2, "new.html").createNewFile());
+		assertNull(indexed.determineFile("/new.html"));
+		indexed.refreshIndex();
+		assertEquals(new File(loc2, "new.html").getCanonicalFile(), indexed
+				.determineFile("/new.html").getCanonicalFile());
+
+		assertTrue(Files.deleteDir(tmpDir));
+	}
+
+	/**
+	 * Tests the retrieval of files using fingerprinted names.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testFingerprintedRetrieval() throws Exception {
+		final File tmpDir = new File(testDir, "fingerprinted");
+		assertTrue(new File(tmpDir, "js").mkdirs());
+		final File tmpFile = new File(tmpDir, "js/app.js");
+		Files.writeToFile(tmpFile, "var app = {};", "UTF-8");
+		assertTrue(new File(tmpDir, "index.html").createNewFile());
+
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, tmpDir.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_FINGERPRINT, "true");
+		e.setProperty(FileHandler.PROPERTY_INDEX, "true");
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+		assertEquals(2, h.getFingerprints().size());
+
+		// get the fingerprinted name using the handler and the parameter
+		final String uri = h.getFingerprintedUri("/js/app.js");
+		assertTrue(uri, uri.matches("/js/app\\.[0-9a-f]{8}\\.js"));
+		assertTrue(h.getFingerprintedUri("/").matches(
+				"/index\\.[0-9a-f]{8}\\.html"));
+		assertNull(h.getFingerprintedUri("/notAvailable.js"));
+
+		HttpResponse response;
+		response = handle(h, "/js/app.js?fingerprint");
+		assertEquals(uri, EntityUtils.toString(response.getEntity()));
+
+		// request the fingerprinted file
+		response = handle(h, uri);
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("max-age=31536000, immutable",
+				response.getFirstHeader("Cache-Control").getValue());
+		assertEquals("var app = {};",
+				EntityUtils.toString(response.getEntity()));
+
+		// request an outdated fingerprint
+		response = handle(h, "/js/app.00000000.js");
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("no-cache", response.getFirstHeader("Cache-Control")
+				.getValue());
+
+		// the plain file is still available
+		response = handle(h, "/js/app.js");
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertNull(response.getFirstHeader("Cache-Control"));
+
+		assertTrue(Files.deleteDir(tmpDir));
+	}
+
+	/**
+	 * Tests the retrieval of entries of an archive used as location.
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testArchiveRetrieval() throws Exception {
+		final File tmpDir = new File(testDir, "archived");
+		assertTrue(tmpDir.mkdirs());
+		Files.writeToFile(new File(tmpDir, "app.js"), "var dir = {};",
+				"UTF-8");
+
+		final StringBuilder css = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			css.append(".c").append(i).append(" { color: red; }\n");
+		}
+		final File archive = new File(testDir, "archived.zip");
+		TestZipArchive.createArchive(archive, "stored:index.html",
+				"<html></html>", "app.js", "var zip = {};", "css/app.css",
+				css.toString());
+
+		for (final String index : new String[] { "false", "true" }) {
+			final Extension e = new Extension();
+			e.setProperty(FileHandler.PROPERTY_DOCROOT,
+					tmpDir.getAbsolutePath());
+			e.setProperty(FileHandler.PROPERTY_INDEX, index);
+			final Extension loc = new Extension();
+			loc.setId(FileHandler.EXTENSION_LOCATION);
+			loc.setProperty(FileHandler.PROPERTY_DOCROOT,
+					archive.getAbsolutePath());
+			e.setExtensions(Arrays.asList(loc));
+
+			final FileHandler h = new FileHandler();
+			h.initialize(e);
+
+			// the first location has precedence
+			HttpResponse response = handle(h, "/app.js");
+			assertEquals("var dir = {};",
+					EntityUtils.toString(response.getEntity()));
+
+			// a stored entry is used as default file
+			response = handle(h, "/");
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+			assertEquals("<html></html>",
+					EntityUtils.toString(response.getEntity()));
+			assertEquals("none", response.getFirstHeader("Accept-Ranges")
+					.getValue());
+
+			// a deflated entry is inflated without an Accept-Encoding
+			response = handle(h, "/css/app.css");
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+			assertEquals("text/css", ContentType.get(response.getEntity())
+					.getMimeType());
+			assertEquals(css.toString(),
+					EntityUtils.toString(response.getEntity()));
+			final String etag = response.getFirstHeader("ETag").getValue();
+
+			// a deflated entry is sent as is if deflate is accepted
+			final BasicHttpRequest request = new BasicHttpRequest("GET",
+					"/css/app.css");
+			request.setHeader("Accept-Encoding", "deflate, gzip;q=0.5");
+			response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+			h.handle(request, response, null);
+			assertEquals("deflate", response.getEntity().getContentEncoding()
+					.getValue());
+			assertFalse(etag.equals(response.getFirstHeader("ETag").getValue()));
+			final InflaterInputStream in = new InflaterInputStream(response
+					.getEntity().getContent());
+			try {
+				assertEquals(css.toString(), new String(
+						Streams.copyStreamToByteArray(in), "UTF-8"));
+			} finally {
+				in.close();
+			}
+
+			// revalidate the entry
+			final BasicHttpRequest conditional = new BasicHttpRequest("GET",
+					"/css/app.css");
+			conditional.setHeader("If-None-Match", etag);
+			response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+			h.handle(conditional, response, null);
+			assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusLine()
+					.getStatusCode());
+
+			response = handle(h, "/notAvailable.js");
+			assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusLine()
+					.getStatusCode());
+			h.unwatchDocRoot();
+		}
+
+		assertTrue(Files.deleteDir(tmpDir));
+		assertTrue(archive.delete());
+	}
+
+	/**
+	 * Tests that an archive used as location is mapped again, if it's
+	 * replaced atomically (i.e. by renaming a new archive).
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testArchiveReplacement() throws Exception {
+		final File tmpDir = new File(testDir, "replaced");
+		assertTrue(tmpDir.mkdirs());
+		final File archive = new File(tmpDir, "app.zip");
+		TestZipArchive.createArchive(archive, "app.js", "var first = {};");
+
+		// the archive is watched even without watch
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, archive.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_CACHETTL, "0");
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+
+		try {
+			FileMetaData metaData = h.determineMetaData("/app.js");
+			assertEquals(15, metaData.getLength());
+			assertNull(h.determineMetaData("/lib.js"));
+
+			// replace the archive by renaming a new one
+			final File newArchive = new File(tmpDir, "app.tmp");
+			TestZipArchive.createArchive(newArchive, "app.js",
+					"var second = {};", "lib.js", "var lib = {};");
+			assertTrue(archive.delete());
+			assertTrue(newArchive.renameTo(archive));
+
+			for (int i = 0; i < 100 && metaData.getLength() == 15; i++) {
+				Thread.sleep(100);
+				metaData = h.determineMetaData("/app.js");
+			}
+			assertEquals(16, metaData.getLength());
+			assertNotNull(h.determineMetaData("/lib.js"));
+			assertEquals("var second = {};",
+					EntityUtils.toString(handle(h, "/app.js").getEntity()));
+
+			// a deleted archive is skipped, and not served as file
+			assertTrue(archive.delete());
+			for (int i = 0; i < 100 && metaData != null; i++) {
+				Thread.sleep(100);
+				metaData = h.determineMetaData("/app.js");
+			}
+			assertNull(metaData);
+		} finally {
+			h.unwatchDocRoot();
+			assertTrue(Files.deleteDir(tmpDir));
+		}
+	}
+
+	/**
+	 * Tests the caching of paths which couldn't be resolved.
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testNotFoundCache() throws Exception {
+		final File tmpDir = new File(testDir, "notfound");
+		assertTrue(tmpDir.mkdirs());
+
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, tmpDir.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_CACHETTL, "0");
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+
+		// the file-system is only checked once
+		for (int i = 0; i < 5; i++) {
+			final HttpResponse response = handle(h, "/.env");
+			assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusLine()
+					.getStatusCode());
+			assertEquals("<html><body><h1>File not found</h1></body></html>",
+					EntityUtils.toString(response.getEntity()));
+		}
+		assertEquals(1, h.getFileLookups());
+		assertEquals(1, h.getNotFound().size());
+
+		// a created file is found after the invalidation
+		Files.writeToFile(new File(tmpDir, ".env"), "found", "UTF-8");
+		assertEquals(HttpStatus.SC_NOT_FOUND, handle(h, "/.env")
+				.getStatusLine().getStatusCode());
+		h.invalidateAll();
+		assertEquals("found",
+				EntityUtils.toString(handle(h, "/.env").getEntity()));
+		assertEquals(2, h.getFileLookups());
+
+		assertTrue(Files.deleteDir(tmpDir));
+	}
+
+	/**
+	 * Tests the retrieval of several files as ZIP archive.
+	 * 
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testBundleRetrieval() throws Exception {
+		final File tmpDir = new File(testDir, "bundled");
+		assertTrue(new File(tmpDir, "js/lib").mkdirs());
+		Files.writeToFile(new File(tmpDir, "js/app.js"), "var app = {};",
+				"UTF-8");
+		Files.writeToFile(new File(tmpDir, "js/lib/lib.js"), "var lib = {};",
+				"UTF-8");
+		Files.writeToFile(new File(tmpDir, "js/logo.png"), "png", "UTF-8");
+		Files.writeToFile(new File(tmpDir, "index.html"), "<html></html>",
+				"UTF-8");
+
+		final Extension e = new Extension();
+		e.setProperty(FileHandler.PROPERTY_DOCROOT, tmpDir.getAbsolutePath());
+		e.setProperty(FileHandler.PROPERTY_BUNDLE, "true");
+		e.setProperty(FileHandler.PROPERTY_BUNDLEMAXFILES, "3");
+
+		final FileHandler h = new FileHandler();
+		h.initialize(e);
+
+		// request all the files of a directory
+		HttpResponse response = handle(h, "/js/?bundle");
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("application/zip", response.getEntity().getContentType()
+				.getValue());
+		assertEquals("attachment; filename=\"js.zip\"",
+				response.getFirstHeader("Content-Disposition").getValue());
+		assertTrue(response.getEntity().isChunked());
+
+		final List<String> names = new ArrayList<String>();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.getEntity().writeTo(out);
+		final ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(
+				out.toByteArray()));
+		try {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				names.add(entry.getName());
+
+				final String content = new String(
+						Streams.copyStreamToByteArray(zip), "UTF-8");
+				if ("app.js".equals(entry.getName())) {
+					assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+					assertEquals("var app = {};", content);
+				} else if ("logo.png".equals(entry.getName())) {
+					assertEquals(ZipEntry.STORED, entry.getMethod());
+					assertEquals("png", content);
+				}
+			}
+		} finally {
+			zip.close();
+		}
+		assertEquals(Arrays.asList("app.js", "lib/lib.js", "logo.png"), names);
+
+		// request some files of a directory
+		response = handle(h, "/?bundle=index.html,js%2Fapp.js");
+		assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("attachment; filename=\"bundle.zip\"",
+				response.getFirstHeader("Content-Disposition").getValue());
+
+		// missing files or files outside of the document-root
+		assertEquals(HttpStatus.SC_NOT_FOUND,
+				handle(h, "/?bundle=index.html,missing.js").getStatusLine()
+						.getStatusCode());
+		assertEquals(HttpStatus.SC_NOT_FOUND,
+				handle(h, "/js/?bundle=../index.html").getStatusLine()
+						.getStatusCode());
+
+		// too many files, the listing stops at the limit
+		assertEquals(HttpStatus.SC_FORBIDDEN, handle(h, "/?bundle")
+				.getStatusLine().getStatusCode());
+		assertEquals(2, h.getLister().listFiles("", 2).size());
+		assertEquals(4, h.getLister().listFiles("", 10).size());
+
+		assertTrue(Files.deleteDir(tmpDir));
+	}
+
+	private HttpResponse handle(final FileHandler h, final String uri)
+			throws Exception {
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		h.handle(new BasicHttpRequest("GET", uri), response, null);
+
+		return response;
+	}
+
 	/**
 	 * Tests the determination of default files with a <code>null</code>
 	 * <code>Extension</code>.
@@ -598,6 +1244,303 @@ public class TestFileHandler {
 		assertEquals(expFileContent, fileContent);
 	}
 
+	/**
+	 * Tests the retrieval of a file, which is larger than any buffer used.
+	 *
+	 * @throws IOException
+	 *             if the file or data cannot be read
+	 */
+	@Test
+	public void testLargeFileRetrieval() throws IOException {
+		final byte[] expFileContent = new byte[5 * 1024 * 1024 + 13];
+		new Random(4711).nextBytes(expFileContent);
+
+		// create a test-file which we want to retrieve
+		final File file = new File(testDir, UUID.randomUUID().toString());
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(expFileContent);
+		} finally {
+			out.close();
+		}
+
+		// get the response
+		final byte[] response = TestHelper.getResponse(httpListener.getPort(),
+				file.getName());
+
+		// check the result
+		assertArrayEquals(expFileContent, response);
+	}
+
+	/**
+	 * Tests the answering of conditional requests, i.e. that validators are
+	 * sent and that a <code>304</code> is returned if those match.
+	 *
+	 * @throws IOException
+	 *             if the file or data cannot be read
+	 */
+	@Test
+	public void testConditionalRetrieval() throws IOException {
+		final File file = new File(testDir, UUID.randomUUID().toString());
+		Files.writeToFile(file, "This is a conditional test-entry", "UTF-8");
+
+		final String url = "http://localhost:" + httpListener.getPort() + "/"
+				+ file.getName();
+		final CloseableHttpClient httpClient = HttpClientBuilder.create()
+				.build();
+		try {
+
+			// get the validators
+			HttpGet httpGet = new HttpGet(url);
+			HttpResponse response = httpClient.execute(httpGet);
+			EntityUtils.consume(response.getEntity());
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+			final Header etag = response.getFirstHeader("ETag");
+			final Header lastModified = response
+					.getFirstHeader("Last-Modified");
+			assertNotNull(etag);
+			assertNotNull(lastModified);
+
+			// use the ETag
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("If-None-Match", etag.getValue());
+			response = httpClient.execute(httpGet);
+			assertNull(response.getEntity());
+			assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusLine()
+					.getStatusCode());
+
+			// use the date
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("If-Modified-Since", lastModified.getValue());
+			response = httpClient.execute(httpGet);
+			assertNull(response.getEntity());
+			assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusLine()
+					.getStatusCode());
+
+			// use an invalid ETag
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("If-None-Match", "\"invalid\"");
+			httpGet.setHeader("If-Modified-Since", lastModified.getValue());
+			response = httpClient.execute(httpGet);
+			EntityUtils.consume(response.getEntity());
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+		} finally {
+			httpClient.close();
+		}
+	}
+
+	/**
+	 * Tests the retrieval of ranges of a file.
+	 *
+	 * @throws IOException
+	 *             if the file or data cannot be read
+	 */
+	@Test
+	public void testRangeRetrieval() throws IOException {
+		final File file = new File(testDir, UUID.randomUUID().toString());
+		Files.writeToFile(file, "0123456789abcdefghij", "UTF-8");
+
+		final String url = "http://localhost:" + httpListener.getPort() + "/"
+				+ file.getName();
+		final CloseableHttpClient httpClient = HttpClientBuilder.create()
+				.build();
+		try {
+
+			// single range
+			HttpGet httpGet = new HttpGet(url);
+			httpGet.setHeader("Range", "bytes=5-9");
+			HttpResponse response = httpClient.execute(httpGet);
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response
+					.getStatusLine().getStatusCode());
+			assertEquals("bytes 5-9/20", response
+					.getFirstHeader("Content-Range").getValue());
+			assertEquals("56789", EntityUtils.toString(response.getEntity()));
+
+			// multiple ranges
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("Range", "bytes=0-1,-2");
+			response = httpClient.execute(httpGet);
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response
+					.getStatusLine().getStatusCode());
+			assertTrue(response.getEntity().getContentType().getValue()
+					.startsWith("multipart/byteranges; boundary="));
+			final String multipart = EntityUtils.toString(response
+					.getEntity());
+			assertTrue(multipart
+					.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+			assertTrue(multipart
+					.contains("Content-Range: bytes 18-19/20\r\n\r\nij\r\n"));
+
+			// not satisfiable
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("Range", "bytes=30-");
+			response = httpClient.execute(httpGet);
+			EntityUtils.consume(response.getEntity());
+			assertEquals(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+					response.getStatusLine().getStatusCode());
+			assertEquals("bytes */20", response
+					.getFirstHeader("Content-Range").getValue());
+
+			// If-Range which doesn't match
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("Range", "bytes=5-9");
+			httpGet.setHeader("If-Range", "\"outdated\"");
+			response = httpClient.execute(httpGet);
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+			assertEquals("0123456789abcdefghij",
+					EntityUtils.toString(response.getEntity()));
+		} finally {
+			httpClient.close();
+		}
+	}
+
+	/**
+	 * Tests the retrieval of a file compressed on-the-fly.
+	 *
+	 * @throws IOException
+	 *             if the file or data cannot be read
+	 */
+	@Test
+	public void testCompressedRetrieval() throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("This is a compressible test-entry.\n");
+		}
+		final String expFileContent = sb.toString();
+
+		final File file = new File(testDir, UUID.randomUUID().toString()
+				+ ".txt");
+		Files.writeToFile(file, expFileContent, "UTF-8");
+
+		final String url = "http://localhost:" + httpListener.getPort() + "/"
+				+ file.getName();
+		final CloseableHttpClient httpClient = HttpClientBuilder.create()
+				.disableContentCompression().build();
+		try {
+
+			// get the compressed file
+			HttpGet httpGet = new HttpGet(url);
+			httpGet.setHeader("Accept-Encoding", "gzip, deflate");
+			HttpResponse response = httpClient.execute(httpGet);
+			byte[] content = EntityUtils.toByteArray(response.getEntity());
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+			assertEquals("gzip", response.getFirstHeader("Content-Encoding")
+					.getValue());
+			assertEquals("Accept-Encoding", response.getFirstHeader("Vary")
+					.getValue());
+			assertTrue(content.length < expFileContent.length());
+			assertEquals(expFileContent, gunzip(content));
+			final String etag = response.getFirstHeader("ETag").getValue();
+
+			// the second request is answered by the cache
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("Accept-Encoding", "gzip");
+			response = httpClient.execute(httpGet);
+			content = EntityUtils.toByteArray(response.getEntity());
+			assertEquals(expFileContent, gunzip(content));
+			assertEquals(etag, response.getFirstHeader("ETag").getValue());
+
+			// the encoded representation is validated with its own tag,
+			// without compressing the file
+			final CompressedContentCache cache = getFileHandler()
+					.getCompressedContents();
+			cache.clear();
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("Accept-Encoding", "gzip");
+			httpGet.setHeader("If-None-Match", etag);
+			response = httpClient.execute(httpGet);
+			assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusLine()
+					.getStatusCode());
+			assertEquals(etag, response.getFirstHeader("ETag").getValue());
+			assertEquals(0, cache.size());
+
+			// without any Accept-Encoding the file isn't compressed
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("If-None-Match", etag);
+			response = httpClient.execute(httpGet);
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine()
+					.getStatusCode());
+			assertNull(response.getFirstHeader("Content-Encoding"));
+			assertEquals("Accept-Encoding", response.getFirstHeader("Vary")
+					.getValue());
+			assertEquals(expFileContent,
+					EntityUtils.toString(response.getEntity()));
+		} finally {
+			httpClient.close();
+		}
+	}
+
+	/**
+	 * Tests the retrieval of a precompressed sibling of a file.
+	 *
+	 * @throws IOException
+	 *             if the file or data cannot be read
+	 */
+	@Test
+	public void testPrecompressedRetrieval() throws IOException {
+		final File file = new File(testDir, UUID.randomUUID().toString());
+		Files.writeToFile(file, "The plain test-entry", "UTF-8");
+		final File sibling = new File(file.getPath() + ".gz");
+		final OutputStream out = new GZIPOutputStream(new FileOutputStream(
+				sibling));
+		try {
+			out.write("The precompressed test-entry".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		sibling.setLastModified(file.lastModified());
+
+		final String url = "http://localhost:" + httpListener.getPort() + "/"
+				+ file.getName();
+		final CloseableHttpClient httpClient = HttpClientBuilder.create()
+				.disableContentCompression().build();
+		try {
+			HttpGet httpGet = new HttpGet(url);
+			httpGet.setHeader("Accept-Encoding", "br, gzip");
+			HttpResponse response = httpClient.execute(httpGet);
+			assertEquals("gzip", response.getFirstHeader("Content-Encoding")
+					.getValue());
+			assertEquals("The precompressed test-entry",
+					gunzip(EntityUtils.toByteArray(response.getEntity())));
+
+			// a range is always sent from the plain file
+			httpGet = new HttpGet(url);
+			httpGet.setHeader("Accept-Encoding", "gzip");
+			httpGet.setHeader("Range", "bytes=4-8");
+			response = httpClient.execute(httpGet);
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response
+					.getStatusLine().getStatusCode());
+			assertNull(response.getFirstHeader("Content-Encoding"));
+			assertEquals("plain", EntityUtils.toString(response.getEntity()));
+		} finally {
+			httpClient.close();
+		}
+	}
+
+	private FileHandler getFileHandler() {
+		for (final IHandler handler : httpListener.getHandlers().values()) {
+			if (handler instanceof FileHandler) {
+				return (FileHandler) handler;
+			}
+		}
+
+		return null;
+	}
+
+	private String gunzip(final byte[] content) throws IOException {
+		final GZIPInputStream in = new GZIPInputStream(
+				new ByteArrayInputStream(content));
+		try {
+			return new String(Streams.copyStreamToByteArray(in), "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
 	/**
 	 * Check the retrieval of a default-file.
 	 * 
@@ -3,23 +3,55 @@ package net.meisen.general.server.http.listener.handler;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.meisen.general.server.http.listener.AllTests;
 import net.meisen.general.server.http.listener.HttpListener;
+import net.meisen.general.server.http.listener.api.IAsyncServlet;
 import net.meisen.general.server.http.listener.api.IHandler;
 import net.meisen.general.server.http.listener.api.IServlet;
+import net.meisen.general.server.http.listener.api.IWebSocketEndpoint;
 import net.meisen.general.server.http.listener.exceptions.ServletHandlerException;
 import net.meisen.general.server.http.listener.testutilities.TestHelper;
+import net.meisen.general.server.http.listener.util.CircuitBreaker;
+import net.meisen.general.server.http.listener.websocket.PerMessageDeflate;
+import net.meisen.general.server.http.listener.websocket.WebSocketFrame;
+import net.meisen.general.server.http.listener.websocket.WebSocketHandshake;
+import net.meisen.general.server.http.listener.websocket.WebSocketSelector;
+import net.meisen.general.server.http.listener.websocket.WebSocketSession;
 import net.meisen.general.server.settings.pojos.Extension;
 
+import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.junit.Test;
 
 /**
@@ -52,6 +84,208 @@ public class TestServletHandler {
 		}
 	}
 
+	/**
+	 * An implementation of a <code>Servlet</code>, which isn't thread-safe,
+	 * for testing purposes only.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	public static class TestPooledServlet implements IServlet {
+		/**
+		 * The amount of created instances.
+		 */
+		public final static AtomicInteger INSTANCES = new AtomicInteger(0);
+		/**
+		 * The amount of concurrent calls of one instance.
+		 */
+		public final static AtomicInteger CONCURRENT = new AtomicInteger(0);
+
+		private final AtomicBoolean inUse = new AtomicBoolean(false);
+
+		/**
+		 * Default constructor.
+		 */
+		public TestPooledServlet() {
+			INSTANCES.incrementAndGet();
+		}
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void handle(final HttpRequest request,
+				final HttpResponse response, final HttpContext context) {
+			if (!inUse.compareAndSet(false, true)) {
+				CONCURRENT.incrementAndGet();
+			}
+
+			try {
+				Thread.sleep(5);
+			} catch (final InterruptedException e) {
+				// ignore
+			}
+
+			inUse.set(false);
+			response.setStatusCode(HttpStatus.SC_OK);
+		}
+	}
+
+	/**
+	 * An implementation of a <code>Servlet</code> counting its calls for
+	 * testing purposes only.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	public static class TestCountingServlet implements IServlet {
+		/**
+		 * The amount of calls.
+		 */
+		public final static AtomicInteger CALLS = new AtomicInteger(0);
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void handle(final HttpRequest request,
+				final HttpResponse response, final HttpContext context) {
+			final int call = CALLS.incrementAndGet();
+			final String uri = request.getRequestLine().getUri();
+
+			if (uri.contains("cookie")) {
+				response.setHeader("Set-Cookie", "session=" + call);
+			}
+			if (uri.contains("private")) {
+				response.setHeader("Cache-Control", "private");
+			} else if (uri.contains("fail")) {
+				throw new IllegalStateException("FAILED" + call);
+			} else if (uri.contains("slow")) {
+				try {
+					Thread.sleep(200);
+				} catch (final InterruptedException e) {
+					// ignore
+				}
+			}
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setEntity(new StringEntity("CALL" + call,
+					ContentType.DEFAULT_TEXT));
+		}
+	}
+
+	/**
+	 * An implementation of an asynchronous <code>Servlet</code> for testing
+	 * purposes only. The stage is completed by another thread depending on
+	 * the requested URI.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	public static class TestAsyncServlet implements IAsyncServlet {
+		/**
+		 * The last stage, which is never completed by the servlet.
+		 */
+		public final static AtomicReference<CompletableFuture<HttpResponse>> NEVER = new AtomicReference<CompletableFuture<HttpResponse>>();
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public CompletionStage<HttpResponse> handle(final HttpRequest request,
+				final HttpResponse response, final HttpContext context) {
+			final String uri = request.getRequestLine().getUri();
+			final CompletableFuture<HttpResponse> stage = new CompletableFuture<HttpResponse>();
+
+			if ("/never".equals(uri)) {
+				NEVER.set(stage);
+				return stage;
+			}
+
+			new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(50);
+					} catch (final InterruptedException e) {
+						// ignore
+					}
+
+					if ("/fail".equals(uri)) {
+						stage.completeExceptionally(new IllegalStateException(
+								"BACKENDDOWN"));
+					} else {
+						response.setStatusCode(HttpStatus.SC_CREATED);
+						response.setHeader("X-Async", "true");
+						response.setEntity(new StringEntity("ASYNCSERVLET",
+								ContentType.DEFAULT_TEXT));
+						stage.complete(response);
+					}
+				}
+			}.start();
+
+			return stage;
+		}
+	}
+
+	/**
+	 * An implementation of a WebSocket <code>Endpoint</code> echoing the
+	 * received messages, for testing purposes only.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	public static class TestEchoEndpoint implements IWebSocketEndpoint {
+		/**
+		 * The status code of the last closed session.
+		 */
+		public final static AtomicInteger CLOSED = new AtomicInteger(0);
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void onOpen(final WebSocketSession session,
+				final HttpRequest request) {
+			session.sendText("WELCOME");
+		}
+
+		@Override
+		public void onText(final WebSocketSession session, final String message) {
+			session.sendText("ECHO:" + message);
+		}
+
+		@Override
+		public void onBinary(final WebSocketSession session,
+				final byte[] message) {
+			session.sendBinary(message);
+		}
+
+		@Override
+		public void onPing(final WebSocketSession session, final byte[] data) {
+			// nothing to do
+		}
+
+		@Override
+		public void onPong(final WebSocketSession session, final byte[] data) {
+			// nothing to do
+		}
+
+		@Override
+		public void onClose(final WebSocketSession session, final int code,
+				final String reason) {
+			CLOSED.set(code);
+		}
+	}
+
 	/**
 	 * Helper method to get the defined <code>ServletHandler</code>.
 	 * 
@@ -143,4 +377,531 @@ public class TestServletHandler {
 		// close the listener
 		httpListener.close();
 	}
+
+	/**
+	 * Tests the usage of an asynchronous <code>Servlet</code>, i.e. the
+	 * completion, the failure and the timeout of the stage.
+	 * 
+	 * @throws IOException
+	 *             if the response cannot be read
+	 * @throws HttpException
+	 *             if the request cannot be handled
+	 */
+	@Test
+	public void testAsyncUsage() throws IOException, HttpException {
+		final ServletHandler handler = getHandler("serverHttp-test-asyncServlet.xml");
+
+		HttpResponse response;
+
+		// a completed stage
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(new BasicHttpRequest("GET", "/ok"), response, null);
+		assertEquals(HttpStatus.SC_CREATED, response.getStatusLine()
+				.getStatusCode());
+		assertEquals("true", response.getFirstHeader("X-Async").getValue());
+		assertEquals("ASYNCSERVLET", EntityUtils.toString(response.getEntity()));
+
+		// a failed stage
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(new BasicHttpRequest("GET", "/fail"), response, null);
+		assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response
+				.getStatusLine().getStatusCode());
+		assertTrue(EntityUtils.toString(response.getEntity()).contains(
+				"BACKENDDOWN"));
+
+		// a stage never completed
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(new BasicHttpRequest("GET", "/never"), response, null);
+		assertEquals(HttpStatus.SC_GATEWAY_TIMEOUT, response.getStatusLine()
+				.getStatusCode());
+		assertTrue(TestAsyncServlet.NEVER.get().isCancelled());
+	}
+
+	/**
+	 * Tests the usage of pooled instances of a <code>Servlet</code>, i.e.
+	 * that an instance is never called concurrently.
+	 * 
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testPooledUsage() throws InterruptedException {
+		TestPooledServlet.INSTANCES.set(0);
+		TestPooledServlet.CONCURRENT.set(0);
+
+		final ServletHandler handler = getHandler("serverHttp-test-pooledServlet.xml");
+		assertEquals(2, TestPooledServlet.INSTANCES.get());
+		assertEquals(2, handler.getPool().getSize());
+
+		final AtomicInteger failures = new AtomicInteger(0);
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 6; i++) {
+			final Thread t = new Thread() {
+
+				@Override
+				public void run() {
+					for (int k = 0; k < 20; k++) {
+						final HttpResponse response = new BasicHttpResponse(
+								HttpVersion.HTTP_1_1, 500, "FAILED");
+						try {
+							handler.handle(new BasicHttpRequest("GET", "/"),
+									response, null);
+						} catch (final Exception e) {
+							failures.incrementAndGet();
+						}
+
+						if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+
+		for (final Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(0, failures.get());
+		assertEquals(0, TestPooledServlet.CONCURRENT.get());
+		assertEquals(120, handler.getPool().getBorrows());
+		assertTrue(handler.getPool().getWaits() > 0);
+		assertEquals(2, handler.getPool().getIdle());
+	}
+
+	private String get(final ServletHandler handler, final String uri,
+			final String language) throws IOException, HttpException {
+		final HttpRequest request = new BasicHttpRequest("GET", uri);
+		if (language != null) {
+			request.setHeader("Accept-Language", language);
+		}
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(request, response, null);
+
+		return EntityUtils.toString(response.getEntity());
+	}
+
+	/**
+	 * Tests the caching of the responses of a <code>Servlet</code>.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testCachedUsage() throws Exception {
+		TestCountingServlet.CALLS.set(0);
+		final ServletHandler handler = getHandler("serverHttp-test-cachedServlet.xml");
+
+		// the response is cached, other parameters are ignored
+		assertEquals("CALL1", get(handler, "/list?q=a", null));
+		assertEquals("CALL1", get(handler, "/list?q=a", null));
+		assertEquals("CALL1", get(handler, "/list?q=a&_=1234", null));
+
+		// the selected parameters and headers are part of the key
+		assertEquals("CALL2", get(handler, "/list?q=b", null));
+		assertEquals("CALL3", get(handler, "/list?q=a", "de"));
+		assertEquals("CALL3", get(handler, "/list?q=a", "de"));
+
+		// private responses aren't cached
+		assertEquals("CALL4", get(handler, "/private", null));
+		assertEquals("CALL5", get(handler, "/private", null));
+
+		// a stale response is served and refreshed in the background
+		Thread.sleep(250);
+		assertEquals("CALL1", get(handler, "/list?q=a", null));
+		for (int i = 0; i < 100 && TestCountingServlet.CALLS.get() < 6; i++) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		assertEquals("CALL6", get(handler, "/list?q=a", null));
+
+		assertEquals(1, handler.getResponseCache().getStaleHits());
+		assertEquals(1, handler.getResponseCache().getRefreshs());
+	}
+
+	/**
+	 * Tests that the responses of requests with different credentials aren't
+	 * shared by the cache of a running <code>HttpListener</code>.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testCachedPrivateUsage() throws Exception {
+		TestCountingServlet.CALLS.set(0);
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-cachedServlet.xml");
+
+		// start the listener
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		httpListener.open();
+
+		try {
+			final int port = httpListener.getPort();
+			final String alice = get(port, "list?q=a", "Basic YWxpY2U6YQ==");
+			final String bob = get(port, "list?q=a", "Basic Ym9iOmI=");
+			assertEquals("CALL1", alice);
+			assertEquals("CALL2", bob);
+
+			// neither the cache is used nor filled
+			assertEquals("CALL3", get(port, "list?q=a", null));
+			assertEquals("CALL3", get(port, "list?q=a", null));
+			assertEquals("CALL4", get(port, "list?q=a", "Basic YWxpY2U6YQ=="));
+		} finally {
+			httpListener.close();
+		}
+	}
+
+	private String get(final int port, final String suffix,
+			final String authorization) throws IOException {
+		final CloseableHttpClient httpClient = HttpClientBuilder.create()
+				.build();
+		try {
+			final HttpGet httpGet = new HttpGet("http://localhost:" + port
+					+ "/" + suffix);
+			if (authorization != null) {
+				httpGet.setHeader("Authorization", authorization);
+			}
+
+			return EntityUtils.toString(httpClient.execute(httpGet)
+					.getEntity());
+		} finally {
+			httpClient.close();
+		}
+	}
+
+	/**
+	 * Tests the coalescing of identical concurrent requests.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testCoalescedUsage() throws Exception {
+		TestCountingServlet.CALLS.set(0);
+		final ServletHandler handler = getHandler("serverHttp-test-coalescedServlet.xml");
+
+		final AtomicInteger failures = new AtomicInteger(0);
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			final Thread t = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						if (!"CALL1".equals(get(handler, "/slow", null))) {
+							failures.incrementAndGet();
+						}
+					} catch (final Exception e) {
+						failures.incrementAndGet();
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+
+		for (final Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(0, failures.get());
+		assertEquals(1, TestCountingServlet.CALLS.get());
+		assertEquals(1, handler.getCoalescer().getLeaders());
+		assertEquals(7, handler.getCoalescer().getCoalesced());
+		assertEquals(0, handler.getCoalescer().getInFlight());
+
+		// later requests are executed again
+		assertEquals("CALL2", get(handler, "/slow", null));
+	}
+
+	/**
+	 * Tests that responses which cannot be cached (e.g. setting a cookie)
+	 * and requests identifying a user aren't shared by coalesced requests.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testCoalescedPrivateUsage() throws Exception {
+		TestCountingServlet.CALLS.set(0);
+		final ServletHandler handler = getHandler("serverHttp-test-coalescedServlet.xml");
+
+		// the leader sets a cookie, so each request executes the servlet
+		final Set<String> responses = Collections
+				.synchronizedSet(new HashSet<String>());
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			final Thread t = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						final HttpRequest request = new BasicHttpRequest(
+								"GET", "/slow/cookie");
+						final HttpResponse response = new BasicHttpResponse(
+								HttpVersion.HTTP_1_1, 200, "OK");
+						handler.handle(request, response, null);
+
+						final String content = EntityUtils.toString(response
+								.getEntity());
+						if (response.getFirstHeader("Set-Cookie").getValue()
+								.equals("session=" + content.substring(4))) {
+							responses.add(content);
+						}
+					} catch (final Exception e) {
+						// the response is missing
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+		assertEquals(4, responses.size());
+		assertEquals(4, TestCountingServlet.CALLS.get());
+
+		// requests with credentials aren't coalesced
+		threads.clear();
+		for (int i = 0; i < 4; i++) {
+			final Thread t = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						final HttpRequest request = new BasicHttpRequest(
+								"GET", "/slow");
+						request.setHeader("Authorization", "Basic dGVzdDp0ZXN0");
+						handler.handle(request, new BasicHttpResponse(
+								HttpVersion.HTTP_1_1, 200, "OK"), null);
+					} catch (final Exception e) {
+						// nothing to do
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+		assertEquals(8, TestCountingServlet.CALLS.get());
+	}
+
+	/**
+	 * Tests that a coalesced request executes the servlet itself, if the
+	 * response of the identical request isn't available in time.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testCoalescedTimeout() throws Exception {
+		TestCountingServlet.CALLS.set(0);
+		final ServletHandler handler = getHandler("serverHttp-test-coalescedTimeoutServlet.xml");
+
+		final AtomicReference<String> leader = new AtomicReference<String>();
+		final Thread t = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					leader.set(get(handler, "/slow", null));
+				} catch (final Exception e) {
+					// the response is missing
+				}
+			}
+		};
+		t.start();
+		for (int i = 0; i < 100 && handler.getCoalescer().getInFlight() == 0; i++) {
+			Thread.sleep(5);
+		}
+
+		// the follower doesn't wait for the slow leader
+		assertEquals("CALL2", get(handler, "/slow", null));
+		t.join();
+		assertEquals("CALL1", leader.get());
+		assertEquals(1, handler.getCoalescer().getTimeouts());
+	}
+
+	/**
+	 * Tests the circuit-breaker of a failing <code>Servlet</code>.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testBreakerUsage() throws Exception {
+		TestCountingServlet.CALLS.set(0);
+		final ServletHandler handler = getHandler("serverHttp-test-breakerServlet.xml");
+
+		HttpResponse response;
+
+		// fill the window, the failures open the breaker
+		assertEquals("CALL1", get(handler, "/", null));
+		assertEquals("CALL2", get(handler, "/", null));
+		assertTrue(get(handler, "/fail", null).contains("FAILED3"));
+		assertTrue(get(handler, "/fail", null).contains("FAILED4"));
+		assertEquals(CircuitBreaker.State.OPEN, handler.getCircuitBreaker()
+				.getState());
+
+		// the servlet isn't called anymore
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(new BasicHttpRequest("GET", "/"), response, null);
+		assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response
+				.getStatusLine().getStatusCode());
+		assertEquals("1", response.getFirstHeader("Retry-After").getValue());
+		assertEquals(4, TestCountingServlet.CALLS.get());
+		assertEquals(1, handler.getCircuitBreaker().getRejected());
+
+		// after the open time a succeeding probe closes it again
+		Thread.sleep(250);
+		assertEquals("CALL5", get(handler, "/", null));
+		assertEquals(CircuitBreaker.State.CLOSED, handler.getCircuitBreaker()
+				.getState());
+		assertEquals("CALL6", get(handler, "/", null));
+	}
+
+	private void writeFrame(final OutputStream out, final int b0,
+			final byte[] payload) throws IOException {
+		final byte[] mask = new byte[] { 0x12, 0x34, 0x56, 0x78 };
+
+		out.write(b0);
+		out.write(0x80 | payload.length);
+		out.write(mask);
+		for (int i = 0; i < payload.length; i++) {
+			out.write(payload[i] ^ mask[i & 3]);
+		}
+		out.flush();
+	}
+
+	private byte[] readFrame(final DataInputStream in, final int b0)
+			throws IOException {
+		assertEquals(b0, in.readUnsignedByte());
+
+		int length = in.readUnsignedByte();
+		if (length == 126) {
+			length = in.readUnsignedShort();
+		}
+		final byte[] payload = new byte[length];
+		in.readFully(payload);
+
+		return payload;
+	}
+
+	private String readHead(final InputStream in) throws IOException {
+		final ByteArrayOutputStream head = new ByteArrayOutputStream();
+		while (!head.toString("ISO-8859-1").endsWith("\r\n\r\n")) {
+			final int b = in.read();
+			assertTrue(b != -1);
+			head.write(b);
+		}
+
+		return head.toString("ISO-8859-1");
+	}
+
+	/**
+	 * Tests the usage of a WebSocket <code>Endpoint</code>, i.e. the
+	 * handshake, fragmented and compressed messages, ping and the closing
+	 * handshake.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testWebSocketUsage() throws Exception {
+		TestEchoEndpoint.CLOSED.set(0);
+		System.setProperty("server.settings.selector",
+				"serverHttp-test-webSocketEndpoint.xml");
+
+		final HttpListener httpListener = TestHelper.getHttpListener();
+		final ServletHandler handler = (ServletHandler) httpListener
+				.getHandlers().values().iterator().next();
+
+		// a request without upgrade
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		handler.handle(new BasicHttpRequest("GET", "/"), response, null);
+		assertEquals(426, response.getStatusLine().getStatusCode());
+		assertEquals("13", response.getFirstHeader("Sec-WebSocket-Version")
+				.getValue());
+
+		httpListener.open();
+		final Socket socket = new Socket("localhost", httpListener.getPort());
+		socket.setSoTimeout(5000);
+		final OutputStream out = socket.getOutputStream();
+		final DataInputStream in = new DataInputStream(socket.getInputStream());
+
+		// the opening handshake
+		out.write(("GET /chat HTTP/1.1\r\n" + "Host: localhost\r\n"
+				+ "Upgrade: websocket\r\n" + "Connection: Upgrade\r\n"
+				+ "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+				+ "Sec-WebSocket-Version: 13\r\n"
+				+ "Sec-WebSocket-Extensions: permessage-deflate\r\n\r\n")
+				.getBytes("ISO-8859-1"));
+		out.flush();
+
+		final String head = readHead(in);
+		assertTrue(head, head.startsWith("HTTP/1.1 101"));
+		assertTrue(head.contains("Sec-WebSocket-Accept: "
+				+ WebSocketHandshake.createAccept("dGhlIHNhbXBsZSBub25jZQ==")));
+		assertTrue(head.contains("Sec-WebSocket-Extensions: "
+				+ PerMessageDeflate.RESPONSE));
+		assertTrue(head.contains("Connection: Upgrade"));
+		assertTrue(!head.contains("Content-Length"));
+		assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=",
+				WebSocketHandshake.createAccept("dGhlIHNhbXBsZSBub25jZQ=="));
+
+		assertEquals("WELCOME", new String(readFrame(in, 0x81), "UTF-8"));
+
+		// a fragmented message
+		writeFrame(out, WebSocketFrame.OPCODE_TEXT, "Hel".getBytes("UTF-8"));
+		writeFrame(out, 0x80 | WebSocketFrame.OPCODE_CONTINUATION,
+				"lo".getBytes("UTF-8"));
+		assertEquals("ECHO:Hello", new String(readFrame(in, 0x81), "UTF-8"));
+
+		// a compressed message, which is sent back compressed
+		final PerMessageDeflate deflate = new PerMessageDeflate();
+		final byte[] message = new byte[1000];
+		writeFrame(out, 0xc0 | WebSocketFrame.OPCODE_BINARY,
+				deflate.compress(message));
+		final byte[] compressed = readFrame(in, 0xc2);
+		assertTrue(compressed.length < 100);
+		assertEquals(1000, deflate.decompress(compressed, 1000).length);
+		deflate.release();
+
+		// a ping is answered with a pong
+		writeFrame(out, 0x80 | WebSocketFrame.OPCODE_PING,
+				"PING".getBytes("UTF-8"));
+		assertEquals("PING", new String(readFrame(in, 0x8a), "UTF-8"));
+
+		// the closing handshake
+		writeFrame(out, 0x80 | WebSocketFrame.OPCODE_CLOSE, new byte[] { 0x03,
+				(byte) 0xe8 });
+		assertEquals(1000, readFrame(in, 0x88)[1] & 0xff | 0x300);
+		assertEquals(-1, in.read());
+		socket.close();
+
+		final WebSocketSelector selector = handler.getWebSocketSelector();
+		for (int i = 0; i < 50
+				&& (TestEchoEndpoint.CLOSED.get() == 0 || selector
+						.getSessions() > 0); i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(WebSocketFrame.CLOSE_NORMAL, TestEchoEndpoint.CLOSED.get());
+		assertEquals(1, selector.getOpened());
+		assertEquals(2, selector.getReceived());
+
+		// the sockets accepted by the listener don't provide a channel
+		assertEquals(1, selector.getBlocking());
+		assertEquals(0, selector.getSessions());
+
+		selector.close();
+		httpListener.close();
+	}
 }
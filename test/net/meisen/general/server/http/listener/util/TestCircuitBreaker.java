@@ -0,0 +1,157 @@
+package net.meisen.general.server.http.listener.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.meisen.general.server.http.listener.util.CircuitBreaker.State;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>CircuitBreaker</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestCircuitBreaker {
+
+	private void call(final CircuitBreaker breaker, final boolean failed,
+			final long duration) {
+		final long permit = breaker.acquire();
+		assertTrue(permit != CircuitBreaker.REJECTED);
+		breaker.record(permit, failed, duration);
+	}
+
+	/**
+	 * Tests the opening of the breaker when the threshold is reached.
+	 */
+	@Test
+	public void testOpen() {
+		final CircuitBreaker breaker = new CircuitBreaker("test", 4, 50, 0,
+				10000);
+
+		// the window isn't filled yet
+		call(breaker, true, 0);
+		call(breaker, true, 0);
+		call(breaker, true, 0);
+		assertEquals(State.CLOSED, breaker.getState());
+
+		// the rate of failed calls is 75%
+		call(breaker, false, 0);
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(1, breaker.getOpened());
+
+		// calls are rejected
+		assertEquals(CircuitBreaker.REJECTED, breaker.acquire());
+		assertEquals(CircuitBreaker.REJECTED, breaker.acquire());
+		assertEquals(2, breaker.getRejected());
+	}
+
+	/**
+	 * Tests the sliding of the window, i.e. that old outcomes are
+	 * forgotten.
+	 */
+	@Test
+	public void testSlidingWindow() {
+		final CircuitBreaker breaker = new CircuitBreaker("test", 4, 50, 0,
+				10000);
+
+		call(breaker, true, 0);
+		for (int i = 0; i < 10; i++) {
+			call(breaker, false, 0);
+		}
+
+		// only one of the last four calls fails
+		call(breaker, true, 0);
+		assertEquals(State.CLOSED, breaker.getState());
+
+		// two of the last four calls fail
+		call(breaker, true, 0);
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	/**
+	 * Tests that slow calls are considered to be failed.
+	 */
+	@Test
+	public void testSlowCalls() {
+		final CircuitBreaker breaker = new CircuitBreaker("test", 2, 100, 100,
+				10000);
+
+		call(breaker, false, 150);
+		call(breaker, false, 50);
+		assertEquals(State.CLOSED, breaker.getState());
+
+		call(breaker, false, 100);
+		call(breaker, false, 200);
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	/**
+	 * Tests the half-open state, i.e. the probing of the resource.
+	 * 
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testHalfOpen() throws InterruptedException {
+		final CircuitBreaker breaker = new CircuitBreaker("test", 1, 100, 0,
+				50);
+
+		call(breaker, true, 0);
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(CircuitBreaker.REJECTED, breaker.acquire());
+
+		// one probe is permitted, which fails
+		Thread.sleep(60);
+		long permit = breaker.acquire();
+		assertTrue(permit != CircuitBreaker.REJECTED);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertEquals(CircuitBreaker.REJECTED, breaker.acquire());
+		breaker.record(permit, true, 0);
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(2, breaker.getOpened());
+
+		// the next probe succeeds
+		Thread.sleep(60);
+		permit = breaker.acquire();
+		assertTrue(permit != CircuitBreaker.REJECTED);
+		breaker.record(permit, false, 0);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.acquire() != CircuitBreaker.REJECTED);
+	}
+
+	/**
+	 * Tests that the outcome of a call permitted before the breaker opened
+	 * doesn't resolve the probe of the half-open breaker.
+	 * 
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testStaleOutcome() throws InterruptedException {
+		final CircuitBreaker breaker = new CircuitBreaker("test", 1, 100, 0,
+				50);
+
+		// two calls are permitted, the first one opens the breaker
+		final long slowSuccess = breaker.acquire();
+		final long slowFailure = breaker.acquire();
+		call(breaker, true, 0);
+		assertEquals(State.OPEN, breaker.getState());
+
+		// the slow calls finish while the resource is probed
+		Thread.sleep(60);
+		final long probe = breaker.acquire();
+		assertTrue(probe != CircuitBreaker.REJECTED);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.record(slowSuccess, false, 0);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.record(slowFailure, true, 0);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertEquals(CircuitBreaker.REJECTED, breaker.acquire());
+
+		// only the probe resolves the state
+		breaker.record(probe, false, 0);
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+}
@@ -0,0 +1,162 @@
+package net.meisen.general.server.http.listener.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import net.meisen.general.server.http.listener.util.EventBroadcaster.OverflowPolicy;
+import net.meisen.general.server.http.listener.util.EventBroadcaster.Subscriber;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>EventBroadcaster</code> and the
+ * <code>ServerSentEvent</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestEventBroadcaster {
+
+	private HttpResponse createResponse() {
+		return new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+	}
+
+	private String stream(final HttpResponse response) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.getEntity().writeTo(out);
+		return new String(out.toByteArray(), "UTF-8");
+	}
+
+	/**
+	 * Tests the serialization of events.
+	 */
+	@Test
+	public void testSerialization() {
+		assertEquals("data: hello\n\n", new ServerSentEvent("hello").toString());
+		assertEquals("id: 1\nevent: update\ndata: a\ndata: b\n\n",
+				new ServerSentEvent("1", "update", "a\r\nb").toString());
+		assertEquals("data: \n\n", new ServerSentEvent(null).toString());
+	}
+
+	/**
+	 * Tests the publishing of events to several subscribers.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testPublish() throws Exception {
+		final EventBroadcaster broadcaster = new EventBroadcaster(10,
+				OverflowPolicy.DROP_NEWEST, 10000);
+
+		final HttpResponse response1 = createResponse();
+		final HttpResponse response2 = createResponse();
+		broadcaster.subscribe(response1);
+		broadcaster.subscribe(response2);
+		assertEquals(2, broadcaster.getSubscribers());
+		assertEquals("text/event-stream; charset=UTF-8", response1.getEntity()
+				.getContentType().getValue());
+		assertEquals("no-cache", response1.getFirstHeader("Cache-Control")
+				.getValue());
+
+		// stream one of the subscribers while publishing
+		final String[] result = new String[1];
+		final Thread t = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					result[0] = stream(response1);
+				} catch (final IOException e) {
+					result[0] = e.getMessage();
+				}
+			}
+		};
+		t.start();
+
+		final ServerSentEvent event = new ServerSentEvent("1", null, "first");
+		broadcaster.publish(event);
+		broadcaster.publish(new ServerSentEvent("second"));
+		broadcaster.close();
+		t.join(5000);
+
+		assertEquals("id: 1\ndata: first\n\ndata: second\n\n", result[0]);
+		assertEquals("id: 1\ndata: first\n\ndata: second\n\n",
+				stream(response2));
+		assertEquals(0, broadcaster.getSubscribers());
+		assertEquals(2, broadcaster.getPublished());
+	}
+
+	/**
+	 * Tests the heartbeat sent if no event is published.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testHeartbeat() throws Exception {
+		final EventBroadcaster broadcaster = new EventBroadcaster(10,
+				OverflowPolicy.DROP_NEWEST, 20);
+		final HttpResponse response = createResponse();
+		final Subscriber subscriber = broadcaster.subscribe(response);
+
+		new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (final InterruptedException e) {
+					// ignore
+				}
+				subscriber.close();
+			}
+		}.start();
+
+		assertTrue(stream(response).startsWith(":\n\n:\n\n"));
+	}
+
+	/**
+	 * Tests the policies applied to slow subscribers.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testOverflow() throws Exception {
+		for (final OverflowPolicy policy : OverflowPolicy.values()) {
+			final EventBroadcaster broadcaster = new EventBroadcaster(2,
+					policy, 10000);
+			final HttpResponse response = createResponse();
+			final Subscriber subscriber = broadcaster.subscribe(response);
+
+			for (int i = 1; i <= 3; i++) {
+				broadcaster.publish(new ServerSentEvent("" + i));
+			}
+
+			if (OverflowPolicy.EVICT.equals(policy)) {
+				assertTrue(subscriber.isClosed());
+				assertEquals(0, broadcaster.getSubscribers());
+				assertEquals(1, broadcaster.getEvicted());
+				assertEquals("", stream(response));
+			} else {
+				assertFalse(subscriber.isClosed());
+				assertEquals(2, subscriber.getQueued());
+				assertEquals(1, broadcaster.getDropped());
+
+				broadcaster.close();
+				final String expected = OverflowPolicy.DROP_OLDEST
+						.equals(policy) ? "data: 2\n\ndata: 3\n\n"
+						: "data: 1\n\ndata: 2\n\n";
+				assertEquals(expected, stream(response));
+			}
+		}
+	}
+}
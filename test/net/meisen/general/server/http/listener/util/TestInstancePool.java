@@ -0,0 +1,109 @@
+package net.meisen.general.server.http.listener.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>InstancePool</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestInstancePool {
+
+	/**
+	 * Tests the borrowing and returning of instances.
+	 * 
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testBorrow() throws InterruptedException {
+		final InstancePool<String> pool = new InstancePool<String>(
+				Arrays.asList("A", "B"));
+		assertEquals(2, pool.getSize());
+		assertEquals(2, pool.getIdle());
+
+		final String first = pool.borrow(0);
+		final String second = pool.borrow(0);
+		assertNotNull(first);
+		assertNotNull(second);
+		assertFalse(first.equals(second));
+		assertEquals(0, pool.getIdle());
+		assertEquals(0, pool.getWaits());
+
+		// the pool is exhausted
+		assertNull(pool.borrow(10));
+		assertEquals(1, pool.getWaits());
+		assertEquals(1, pool.getTimeouts());
+
+		// return one and borrow it again
+		pool.release(first);
+		assertEquals(1, pool.getIdle());
+		assertEquals(first, pool.borrow(0));
+		assertEquals(4, pool.getBorrows());
+	}
+
+	/**
+	 * Tests that an instance is never used by several threads at the same
+	 * time.
+	 * 
+	 * @throws InterruptedException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testConcurrentBorrow() throws InterruptedException {
+		final List<AtomicBoolean> instances = new ArrayList<AtomicBoolean>();
+		for (int i = 0; i < 3; i++) {
+			instances.add(new AtomicBoolean(false));
+		}
+		final InstancePool<AtomicBoolean> pool = new InstancePool<AtomicBoolean>(
+				instances);
+
+		final AtomicInteger failures = new AtomicInteger(0);
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 10; i++) {
+			final Thread t = new Thread() {
+
+				@Override
+				public void run() {
+					for (int k = 0; k < 1000; k++) {
+						try {
+							final AtomicBoolean inUse = pool.borrow(10000);
+							if (!inUse.compareAndSet(false, true)) {
+								failures.incrementAndGet();
+							}
+							Thread.yield();
+							inUse.set(false);
+							pool.release(inUse);
+						} catch (final InterruptedException e) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+
+		for (final Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(0, failures.get());
+		assertEquals(3, pool.getIdle());
+		assertEquals(10000, pool.getBorrows());
+		assertTrue(pool.getTimeouts() == 0);
+	}
+}
@@ -0,0 +1,70 @@
+package net.meisen.general.server.http.listener.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InterruptedIOException;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>RequestCoalescer</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestRequestCoalescer {
+
+	/**
+	 * Tests the joining of identical requests.
+	 * 
+	 * @throws InterruptedIOException
+	 *             if the test is interrupted
+	 */
+	@Test
+	public void testJoin() throws InterruptedIOException {
+		final RequestCoalescer coalescer = new RequestCoalescer();
+		final CachedResponse response = new CachedResponse(
+				new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+				new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK")
+						.getAllHeaders(), new byte[0], null, null);
+
+		final RequestCoalescer.Flight leader = coalescer.join("A");
+		final RequestCoalescer.Flight follower = coalescer.join("A");
+		final RequestCoalescer.Flight other = coalescer.join("B");
+		assertTrue(leader.isLeader());
+		assertFalse(follower.isLeader());
+		assertTrue(other.isLeader());
+		assertEquals(2, coalescer.getInFlight());
+
+		leader.complete(response);
+		assertSame(response, follower.await(0));
+		assertEquals(1, coalescer.getInFlight());
+
+		// a new request becomes a leader again
+		final RequestCoalescer.Flight next = coalescer.join("A");
+		assertTrue(next.isLeader());
+		assertEquals(3, coalescer.getLeaders());
+		assertEquals(1, coalescer.getCoalesced());
+
+		// a response which cannot be shared
+		final RequestCoalescer.Flight nextFollower = coalescer.join("A");
+		next.complete(null);
+		assertNull(nextFollower.await(0));
+
+		// a leader which doesn't complete in time
+		final RequestCoalescer.Flight hanging = coalescer.join("C");
+		final RequestCoalescer.Flight waiting = coalescer.join("C");
+		assertTrue(hanging.isLeader());
+		final long start = System.currentTimeMillis();
+		assertNull(waiting.await(50));
+		assertTrue(System.currentTimeMillis() - start >= 50);
+		assertEquals(1, coalescer.getTimeouts());
+	}
+}
@@ -0,0 +1,201 @@
+package net.meisen.general.server.http.listener.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>ResponseCache</code> and the
+ * <code>CachedResponse</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestResponseCache {
+
+	private CachedResponse create(final String content) throws IOException {
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new StringEntity(content, ContentType.TEXT_PLAIN));
+		return CachedResponse.create(response, 1024);
+	}
+
+	/**
+	 * Tests the buffering of a response.
+	 * 
+	 * @throws IOException
+	 *             if the response cannot be read
+	 */
+	@Test
+	public void testBuffering() throws IOException {
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		response.setHeader("X-Test", "value");
+		response.setEntity(new InputStreamEntity(new ByteArrayInputStream(
+				"CONTENT".getBytes("UTF-8")), -1, ContentType.TEXT_PLAIN));
+
+		final CachedResponse cached = CachedResponse.create(response, 1024);
+		assertNotNull(cached);
+
+		// the response can still be sent
+		assertEquals("CONTENT", EntityUtils.toString(response.getEntity()));
+
+		// and applied several times
+		for (int i = 0; i < 2; i++) {
+			final HttpResponse target = new BasicHttpResponse(
+					HttpVersion.HTTP_1_1, 500, "FAILED");
+			cached.apply(target);
+			assertEquals(200, target.getStatusLine().getStatusCode());
+			assertEquals("value", target.getFirstHeader("X-Test").getValue());
+			assertEquals("CONTENT", EntityUtils.toString(target.getEntity()));
+			final Header contentType = target.getEntity().getContentType();
+			assertTrue(contentType.getValue().startsWith("text/plain"));
+		}
+	}
+
+	/**
+	 * Tests that a response larger than the maximum isn't buffered, but can
+	 * still be sent completely.
+	 * 
+	 * @throws IOException
+	 *             if the response cannot be read
+	 */
+	@Test
+	public void testBufferingTooLarge() throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		final String content = sb.toString();
+
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new InputStreamEntity(new ByteArrayInputStream(
+				content.getBytes("UTF-8")), -1, ContentType.TEXT_PLAIN));
+
+		assertNull(CachedResponse.create(response, 5000));
+		assertEquals(content, EntityUtils.toString(response.getEntity()));
+	}
+
+	/**
+	 * Tests the freshness and the expiration of cached responses.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testExpiration() throws Exception {
+		final ResponseCache cache = new ResponseCache(1024, 100, 200);
+		final CachedResponse response = create("A");
+		cache.put("A", response);
+
+		assertSame(response, cache.get("A"));
+		assertTrue(cache.isFresh(response));
+		assertEquals(1, cache.getHits());
+
+		// the response becomes stale
+		Thread.sleep(150);
+		assertSame(response, cache.get("A"));
+		assertFalse(cache.isFresh(response));
+		assertEquals(1, cache.getStaleHits());
+
+		// and expires
+		Thread.sleep(200);
+		assertNull(cache.get("A"));
+		assertEquals(1, cache.getMisses());
+		assertEquals(0, cache.getCount());
+		assertEquals(0, cache.getSize());
+	}
+
+	/**
+	 * Tests the eviction of responses when the size is exceeded.
+	 * 
+	 * @throws IOException
+	 *             if the response cannot be created
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		final ResponseCache cache = new ResponseCache(25, 10000, 0);
+		cache.put("A", create("0123456789"));
+		cache.put("B", create("0123456789"));
+		assertEquals(2, cache.getCount());
+		assertEquals(20, cache.getSize());
+
+		// use A, so that B is evicted
+		assertNotNull(cache.get("A"));
+		cache.put("C", create("0123456789"));
+		assertEquals(2, cache.getCount());
+		assertNotNull(cache.get("A"));
+		assertNull(cache.get("B"));
+		assertNotNull(cache.get("C"));
+
+		// a response larger than the cache is never added
+		cache.put("D", create("01234567890123456789012345"));
+		assertNull(cache.get("D"));
+		assertEquals(2, cache.getCount());
+	}
+
+	/**
+	 * Tests that only one refresh of a response runs at a time.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testRevalidate() throws Exception {
+		final ResponseCache cache = new ResponseCache(1024, 10, 10000);
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+
+		final Runnable refresh = new Runnable() {
+
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					finish.await();
+				} catch (final InterruptedException e) {
+					// ignore
+				}
+			}
+		};
+
+		assertTrue(cache.revalidate("A", refresh));
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		assertFalse(cache.revalidate("A", refresh));
+		finish.countDown();
+
+		// after the refresh finished, another one can be started
+		final CountDownLatch second = new CountDownLatch(1);
+		final Runnable countDown = new Runnable() {
+
+			@Override
+			public void run() {
+				second.countDown();
+			}
+		};
+		for (int i = 0; i < 100 && !cache.revalidate("A", countDown); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(second.await(5, TimeUnit.SECONDS));
+		assertEquals(2, cache.getRefreshs());
+	}
+}
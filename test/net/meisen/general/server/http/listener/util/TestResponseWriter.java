@@ -0,0 +1,181 @@
+package net.meisen.general.server.http.listener.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+import net.meisen.general.server.http.listener.api.IResponseStreamer;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>ResponseWriter</code> and the
+ * <code>StreamingEntity</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestResponseWriter {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * An {@code OutputStream} validating the size of the writes and
+	 * calculating the checksum of the written data, without keeping it.
+	 */
+	private static class CheckingOutputStream extends OutputStream {
+		private final CRC32 crc = new CRC32();
+		private long length = 0;
+		private int maxWrite = 0;
+		private int flushs = 0;
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			crc.update(b, off, len);
+			length += len;
+			maxWrite = Math.max(maxWrite, len);
+		}
+
+		@Override
+		public void flush() {
+			flushs++;
+		}
+	}
+
+	/**
+	 * Tests the writing of bytes and characters.
+	 * 
+	 * @throws IOException
+	 *             if the writing fails
+	 */
+	@Test
+	public void testWrite() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ResponseWriter writer = new ResponseWriter(out, 16, UTF8);
+
+		writer.write('A');
+		writer.print("\u00e4\u20ac\uD83D\uDE00");
+		writer.println(" done");
+		final Writer w = writer.getWriter();
+		w.write("writer");
+		w.write(new char[] { '-', '!' });
+		assertEquals(16, out.size());
+
+		writer.flush();
+		assertEquals("A\u00e4\u20ac\uD83D\uDE00 done\nwriter-!",
+				new String(out.toByteArray(), UTF8));
+		assertEquals(out.size(), writer.getWritten());
+	}
+
+	/**
+	 * Tests the writing of a surrogate pair split across several writes.
+	 * 
+	 * @throws IOException
+	 *             if the writing fails
+	 */
+	@Test
+	public void testSplitSurrogatePair() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ResponseWriter writer = new ResponseWriter(out, 16, UTF8);
+		final Writer w = writer.getWriter();
+
+		// each half is written separately
+		w.write('\uD83D');
+		w.write('\uDE00');
+
+		// a flush between the halves keeps the high surrogate
+		w.write("A\uD83D");
+		w.flush();
+		w.write("\uDE00B");
+
+		// an incomplete pair is replaced when the writer is closed
+		w.write('\uD83D');
+		w.close();
+
+		assertEquals("\uD83D\uDE00A\uD83D\uDE00B?",
+				new String(out.toByteArray(), UTF8));
+	}
+
+	/**
+	 * Tests that the memory used is bounded, i.e. that the writes to the
+	 * underlying stream are never larger than the buffer (except for large
+	 * arrays written directly).
+	 * 
+	 * @throws IOException
+	 *             if the writing fails
+	 */
+	@Test
+	public void testBoundedBuffer() throws IOException {
+		final CheckingOutputStream out = new CheckingOutputStream();
+		final ResponseWriter writer = new ResponseWriter(out, 1024, UTF8);
+
+		final CRC32 expected = new CRC32();
+		long expectedLength = 0;
+		for (int i = 0; i < 200000; i++) {
+			final String line = "line " + i + " \u00e4\u00f6\u00fc";
+			writer.println(line);
+
+			final byte[] bytes = (line + "\n").getBytes(UTF8);
+			expected.update(bytes);
+			expectedLength += bytes.length;
+		}
+		writer.flush();
+
+		assertEquals(expectedLength, out.length);
+		assertEquals(expected.getValue(), out.crc.getValue());
+		assertTrue(out.maxWrite <= 1024);
+		assertEquals(1, out.flushs);
+	}
+
+	/**
+	 * Tests the writing of a <code>StreamingEntity</code>.
+	 * 
+	 * @throws IOException
+	 *             if the writing fails
+	 */
+	@Test
+	public void testStreamingEntity() throws IOException {
+		final StreamingEntity entity = new StreamingEntity(
+				new IResponseStreamer() {
+
+					@Override
+					public void stream(final ResponseWriter writer)
+							throws IOException {
+						writer.print("first");
+						writer.flush();
+						writer.print("\u00e4");
+					}
+				}, ContentType.create("text/plain", "ISO-8859-1"));
+
+		assertTrue(entity.isChunked());
+		assertEquals(-1, entity.getContentLength());
+		assertEquals("text/plain; charset=ISO-8859-1", entity.getContentType()
+				.getValue());
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertEquals("first\u00e4",
+				new String(out.toByteArray(), "ISO-8859-1"));
+
+		// a streamed response is never buffered
+		final HttpResponse response = new BasicHttpResponse(
+				HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(entity);
+		assertNull(CachedResponse.create(response, Integer.MAX_VALUE));
+	}
+}
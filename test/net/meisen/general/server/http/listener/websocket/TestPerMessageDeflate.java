@@ -0,0 +1,110 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>PerMessageDeflate</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestPerMessageDeflate {
+
+	/**
+	 * Tests the negotiation of the extension.
+	 */
+	@Test
+	public void testNegotiate() {
+		assertFalse(PerMessageDeflate.negotiate(null));
+		assertFalse(PerMessageDeflate.negotiate("x-webkit-deflate-frame"));
+		assertTrue(PerMessageDeflate.negotiate("permessage-deflate"));
+		assertTrue(PerMessageDeflate
+				.negotiate("permessage-deflate; client_max_window_bits"));
+		assertTrue(PerMessageDeflate
+				.negotiate("permessage-deflate; server_max_window_bits=\"15\""));
+
+		// the window of the server cannot be reduced
+		assertFalse(PerMessageDeflate
+				.negotiate("permessage-deflate; server_max_window_bits=10"));
+		assertTrue(PerMessageDeflate
+				.negotiate("permessage-deflate; server_max_window_bits=10, permessage-deflate"));
+
+		// unknown parameters
+		assertFalse(PerMessageDeflate
+				.negotiate("permessage-deflate; unknown_parameter"));
+	}
+
+	/**
+	 * Tests the decompression of the example of RFC 7692.
+	 * 
+	 * @throws WebSocketException
+	 *             if the data is invalid
+	 */
+	@Test
+	public void testDecompress() throws WebSocketException {
+		final PerMessageDeflate deflate = new PerMessageDeflate();
+		final byte[] hello = new byte[] { (byte) 0xf2, 0x48, (byte) 0xcd,
+				(byte) 0xc9, (byte) 0xc9, 0x07, 0x00 };
+
+		assertEquals("Hello", new String(deflate.decompress(hello, 1000)));
+
+		// the context is kept by the client
+		assertEquals("Hello", new String(deflate.decompress(new byte[] {
+				(byte) 0xf2, 0x00, 0x11, 0x00, 0x00 }, 1000)));
+
+		deflate.release();
+	}
+
+	/**
+	 * Tests the compression and decompression of messages.
+	 * 
+	 * @throws WebSocketException
+	 *             if the data is invalid
+	 */
+	@Test
+	public void testRoundTrip() throws WebSocketException {
+		final PerMessageDeflate server = new PerMessageDeflate();
+		final PerMessageDeflate client = new PerMessageDeflate();
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			sb.append("message ").append(i % 10).append(';');
+		}
+		final byte[] message = sb.toString().getBytes();
+
+		// the context isn't kept, i.e. each message is compressed alike
+		final byte[] compressed = server.compress(message);
+		assertTrue(compressed.length < message.length / 4);
+		assertArrayEquals(compressed, server.compress(message));
+
+		assertArrayEquals(message, client.decompress(compressed, 10000));
+		assertArrayEquals(message, client.decompress(compressed, 10000));
+
+		server.release();
+		client.release();
+	}
+
+	/**
+	 * Tests the limit of the size of a decompressed message.
+	 */
+	@Test
+	public void testDecompressTooLarge() {
+		final PerMessageDeflate deflate = new PerMessageDeflate();
+		final byte[] compressed = deflate.compress(new byte[100000]);
+
+		try {
+			deflate.decompress(compressed, 1000);
+			fail("Message should be too large");
+		} catch (final WebSocketException e) {
+			assertEquals(WebSocketFrame.CLOSE_TOO_BIG, e.getCloseCode());
+		}
+
+		deflate.release();
+	}
+}
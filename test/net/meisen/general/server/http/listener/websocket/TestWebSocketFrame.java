@@ -0,0 +1,161 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>WebSocketFrame</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestWebSocketFrame {
+
+	private ByteBuffer buffer(final int... bytes) {
+		final ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+		for (final int b : bytes) {
+			buffer.put((byte) b);
+		}
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private void assertInvalid(final int closeCode, final int... bytes) {
+		try {
+			WebSocketFrame.decode(buffer(bytes), 1000);
+			fail("Frame should be invalid");
+		} catch (final WebSocketException e) {
+			assertEquals(closeCode, e.getCloseCode());
+		}
+	}
+
+	/**
+	 * Tests the decoding of the masked example of RFC 6455.
+	 * 
+	 * @throws WebSocketException
+	 *             if the frame is invalid
+	 */
+	@Test
+	public void testDecode() throws WebSocketException {
+		final ByteBuffer buffer = buffer(0x81, 0x85, 0x37, 0xfa, 0x21, 0x3d,
+				0x7f, 0x9f, 0x4d, 0x51, 0x58, 0x89);
+
+		final WebSocketFrame frame = WebSocketFrame.decode(buffer, 1000);
+		assertTrue(frame.isFin());
+		assertFalse(frame.isRsv1());
+		assertEquals(WebSocketFrame.OPCODE_TEXT, frame.getOpcode());
+		assertEquals("Hello", new String(frame.getPayload()));
+
+		// the position is behind the frame
+		assertEquals(11, buffer.position());
+	}
+
+	/**
+	 * Tests the decoding of incomplete frames, i.e. that the buffer isn't
+	 * consumed.
+	 * 
+	 * @throws WebSocketException
+	 *             if the frame is invalid
+	 */
+	@Test
+	public void testDecodeIncomplete() throws WebSocketException {
+		assertNull(WebSocketFrame.decode(buffer(0x81), 1000));
+		assertNull(WebSocketFrame.decode(buffer(0x82, 0xfe, 0x01), 1000));
+
+		final ByteBuffer buffer = buffer(0x81, 0x85, 0x37, 0xfa, 0x21, 0x3d,
+				0x7f, 0x9f);
+		assertNull(WebSocketFrame.decode(buffer, 1000));
+		assertEquals(0, buffer.position());
+	}
+
+	/**
+	 * Tests the decoding of a frame with a 16-bit length.
+	 * 
+	 * @throws WebSocketException
+	 *             if the frame is invalid
+	 */
+	@Test
+	public void testDecodeExtendedLength() throws WebSocketException {
+		final ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 300);
+		buffer.put((byte) 0x02).put((byte) 0xfe).putShort((short) 300);
+		buffer.put(new byte[] { 1, 2, 3, 4 });
+		for (int i = 0; i < 300; i++) {
+			buffer.put((byte) (i ^ ((i & 3) + 1)));
+		}
+		buffer.flip();
+
+		final WebSocketFrame frame = WebSocketFrame.decode(buffer, 1000);
+		assertFalse(frame.isFin());
+		assertEquals(WebSocketFrame.OPCODE_BINARY, frame.getOpcode());
+		assertEquals(300, frame.getPayload().length);
+		assertEquals((byte) 299, frame.getPayload()[299]);
+	}
+
+	/**
+	 * Tests the rejection of frames violating the protocol.
+	 */
+	@Test
+	public void testDecodeInvalid() {
+
+		// unmasked frame
+		assertInvalid(WebSocketFrame.CLOSE_PROTOCOL_ERROR, 0x81, 0x05, 0x48,
+				0x65, 0x6c, 0x6c, 0x6f);
+
+		// reserved bit and unknown opcode
+		assertInvalid(WebSocketFrame.CLOSE_PROTOCOL_ERROR, 0xa1, 0x80, 0, 0,
+				0, 0);
+		assertInvalid(WebSocketFrame.CLOSE_PROTOCOL_ERROR, 0x83, 0x80, 0, 0,
+				0, 0);
+
+		// fragmented and too large control frames
+		assertInvalid(WebSocketFrame.CLOSE_PROTOCOL_ERROR, 0x09, 0x80, 0, 0,
+				0, 0);
+		assertInvalid(WebSocketFrame.CLOSE_PROTOCOL_ERROR, 0x89, 0xfe, 0x00,
+				0x7e);
+
+		// frame larger than the limit
+		assertInvalid(WebSocketFrame.CLOSE_TOO_BIG, 0x82, 0xff, 0, 0, 0, 0,
+				0, 0, 0x10, 0);
+	}
+
+	/**
+	 * Tests the encoding of unmasked frames.
+	 */
+	@Test
+	public void testEncode() {
+		final byte[] hello = "Hello".getBytes();
+
+		ByteBuffer buffer = WebSocketFrame.encode(true, false,
+				WebSocketFrame.OPCODE_TEXT, hello, 0, hello.length);
+		assertArrayEquals(new byte[] { (byte) 0x81, 0x05, 0x48, 0x65, 0x6c,
+				0x6c, 0x6f }, buffer.array());
+
+		// a fragment
+		buffer = WebSocketFrame.encode(false, true,
+				WebSocketFrame.OPCODE_TEXT, hello, 0, 3);
+		assertArrayEquals(new byte[] { 0x41, 0x03, 0x48, 0x65, 0x6c },
+				buffer.array());
+
+		// the extended lengths
+		buffer = WebSocketFrame.encode(true, false,
+				WebSocketFrame.OPCODE_BINARY, new byte[256], 0, 256);
+		assertEquals(4 + 256, buffer.remaining());
+		assertEquals(126, buffer.get(1));
+		assertEquals(256, buffer.getShort(2));
+
+		buffer = WebSocketFrame.encode(true, false,
+				WebSocketFrame.OPCODE_BINARY, new byte[70000], 0, 70000);
+		assertEquals(10 + 70000, buffer.remaining());
+		assertEquals(127, buffer.get(1));
+		assertEquals(70000, buffer.getLong(2));
+	}
+}
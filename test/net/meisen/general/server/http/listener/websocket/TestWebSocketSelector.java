@@ -0,0 +1,189 @@
+package net.meisen.general.server.http.listener.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+
+import net.meisen.general.server.http.listener.api.IWebSocketEndpoint;
+import net.meisen.general.server.settings.pojos.Extension;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.junit.Test;
+
+/**
+ * Tests the implementation of the <code>WebSocketSelector</code>.
+ * 
+ * @author pmeisen
+ * 
+ */
+public class TestWebSocketSelector {
+
+	/**
+	 * An endpoint sending the received text messages in upper-case.
+	 * 
+	 * @author pmeisen
+	 * 
+	 */
+	private static class UpperCaseEndpoint implements IWebSocketEndpoint {
+		private volatile String closed = null;
+
+		@Override
+		public void initialize(final Extension e) {
+			// nothing to do
+		}
+
+		@Override
+		public void onOpen(final WebSocketSession session,
+				final HttpRequest request) {
+			// nothing to do
+		}
+
+		@Override
+		public void onText(final WebSocketSession session, final String message) {
+			session.sendText(message.toUpperCase());
+		}
+
+		@Override
+		public void onBinary(final WebSocketSession session,
+				final byte[] message) {
+			session.close(WebSocketFrame.CLOSE_INVALID_DATA, "TEXT ONLY");
+		}
+
+		@Override
+		public void onPing(final WebSocketSession session, final byte[] data) {
+			// nothing to do
+		}
+
+		@Override
+		public void onPong(final WebSocketSession session, final byte[] data) {
+			// nothing to do
+		}
+
+		@Override
+		public void onClose(final WebSocketSession session, final int code,
+				final String reason) {
+			closed = code + " " + reason;
+		}
+	}
+
+	private void writeFrame(final OutputStream out, final int b0,
+			final String payload) throws IOException {
+		final byte[] data = payload.getBytes("UTF-8");
+
+		out.write(b0);
+		out.write(0x80 | data.length);
+		out.write(new byte[4]);
+		out.write(data);
+		out.flush();
+	}
+
+	private String readFrame(final DataInputStream in, final int b0)
+			throws IOException {
+		assertEquals(b0, in.readUnsignedByte());
+
+		final byte[] payload = new byte[in.readUnsignedByte()];
+		in.readFully(payload);
+
+		return new String(payload, "UTF-8");
+	}
+
+	private void waitFor(final UpperCaseEndpoint endpoint,
+			final WebSocketSelector selector) throws InterruptedException {
+		for (int i = 0; i < 100
+				&& (endpoint.closed == null || selector.getSessions() > 0); i++) {
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * Tests the session of a connection without a channel, which is read by
+	 * a blocking thread.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testBlockingSession() throws Exception {
+		final UpperCaseEndpoint endpoint = new UpperCaseEndpoint();
+		final WebSocketSelector selector = new WebSocketSelector(endpoint,
+				1000, 10000, 0, 1);
+
+		final ServerSocket server = new ServerSocket(0);
+		final Socket client = new Socket("localhost", server.getLocalPort());
+		client.setSoTimeout(5000);
+		final Socket accepted = server.accept();
+		assertNull(accepted.getChannel());
+
+		selector.open(accepted, new BasicHttpRequest("GET", "/"), false);
+		final OutputStream out = client.getOutputStream();
+		final DataInputStream in = new DataInputStream(client.getInputStream());
+
+		writeFrame(out, 0x81, "hello");
+		assertEquals("HELLO", readFrame(in, 0x81));
+
+		// the endpoint closes the session
+		writeFrame(out, 0x82, "binary");
+		assertEquals("TEXT ONLY", readFrame(in, 0x88).substring(2));
+		writeFrame(out, 0x88, "");
+		assertEquals(-1, in.read());
+
+		waitFor(endpoint, selector);
+		assertEquals("1005 ", endpoint.closed);
+		assertEquals(0, selector.getSessions());
+		assertEquals(1, selector.getBlocking());
+
+		client.close();
+		server.close();
+		selector.close();
+	}
+
+	/**
+	 * Tests the closing of an idle connection.
+	 * 
+	 * @throws Exception
+	 *             if the test fails unexpectedly
+	 */
+	@Test
+	public void testIdleTimeout() throws Exception {
+		final UpperCaseEndpoint endpoint = new UpperCaseEndpoint();
+		final WebSocketSelector selector = new WebSocketSelector(endpoint,
+				1000, 10000, 200, 1);
+
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress("localhost", 0));
+		final Socket client = new Socket("localhost", server.socket()
+				.getLocalPort());
+		client.setSoTimeout(5000);
+		final Socket accepted = server.accept().socket();
+
+		selector.open(accepted, new BasicHttpRequest("GET", "/"), false);
+		final OutputStream out = client.getOutputStream();
+		final DataInputStream in = new DataInputStream(client.getInputStream());
+
+		writeFrame(out, 0x81, "idle");
+		assertEquals("IDLE", readFrame(in, 0x81));
+
+		// the close frame is sent after the idle time
+		assertEquals("Idle timeout", readFrame(in, 0x88).substring(2));
+		writeFrame(out, 0x88, "");
+		assertEquals(-1, in.read());
+
+		waitFor(endpoint, selector);
+		assertEquals("1005 ", endpoint.closed);
+		assertEquals(1, selector.getOpened());
+		assertEquals(1, selector.getReceived());
+		assertEquals(0, selector.getBlocking());
+
+		client.close();
+		server.close();
+		selector.close();
+	}
+}